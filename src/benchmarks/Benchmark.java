@@ -0,0 +1,129 @@
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A small benchmark harness: runs an operation for a number of warmup and measurement iterations
+ * and reports the time and the amount of bytes allocated per operation.
+ * The project has no build module to pull in JMH, so this harness follows the same approach
+ * (warmup, fixed-time iterations, consuming every result) with only the JDK.
+ * The allocation numbers come from the per-thread allocation counter of the JVM,
+ * which is also what the JMH GC profiler reports as gc.alloc.rate.norm.
+ * The iterations can be changed with -Dothello.benchmark.warmup=5, -Dothello.benchmark.iterations=5
+ * and -Dothello.benchmark.time=1000 (milliseconds per iteration).
+ */
+public final class Benchmark {
+    /**
+     * An operation to measure. The returned value is consumed, so the JIT cannot remove the work.
+     */
+    public interface Operation {
+        /**
+         * Runs the operation once.
+         * @return any value that depends on the work that is done.
+         */
+        long run();
+    }
+
+    public static final int WARMUP_ITERATIONS = Integer.getInteger("othello.benchmark.warmup", 5);
+    public static final int ITERATIONS = Math.max(1, Integer.getInteger("othello.benchmark.iterations", 5));
+    public static final long ITERATION_NANOS = Long.getLong("othello.benchmark.time", 1000) * 1_000_000L;
+    private static final int BATCH = 64; // the most operations between two reads of the clock.
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static long sink; // consumes the results of the operations.
+    // ns/op and B/op of every benchmark that ran, in the order they ran.
+    private static final Map<String, double[]> RESULTS = new LinkedHashMap<>();
+
+    private Benchmark() {
+    }
+
+    /**
+     * Measures the operation and prints one line with the result.
+     * @param name the name of the benchmark.
+     * @param operation the operation to measure.
+     * @return the average time of one operation in nanoseconds.
+     */
+    public static double run(String name, Operation operation) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iterate(operation);
+        }
+        long operations = 0;
+        long nanos = 0;
+        long allocated = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            long count = iterate(operation);
+            nanos += System.nanoTime() - start;
+            allocated += allocatedBytes() - bytes;
+            operations += count;
+        }
+        double nanosPerOp = (double) nanos / operations;
+        double bytesPerOp = (double) allocated / operations;
+        System.out.println(String.format(Locale.ROOT, "%-50s %12.1f ns/op %14.0f ops/s %10.1f B/op %8.1f MB/s alloc",
+                name, nanosPerOp, 1e9 / nanosPerOp, bytesPerOp, allocated / (nanos / 1e9) / (1 << 20)));
+        RESULTS.put(name, new double[] {nanosPerOp, bytesPerOp});
+        return nanosPerOp;
+    }
+
+    /**
+     * Prints the header of the result table.
+     * @param title the title of the benchmark suite.
+     */
+    public static void header(String title) {
+        System.out.println();
+        System.out.println(title);
+        System.out.println("-".repeat(title.length()));
+    }
+
+    /**
+     * Returns the results of all benchmarks that ran so far.
+     * @return the ns/op and B/op of every benchmark by name, in the order they ran.
+     */
+    public static Map<String, double[]> results() {
+        return Collections.unmodifiableMap(RESULTS);
+    }
+
+    /**
+     * Returns the consumed results, so the sink is used.
+     * @return the sum of all results.
+     */
+    public static long sink() {
+        return sink;
+    }
+
+    /**
+     * Runs the operation for one iteration. The clock is read after 1, 2, 4, ... operations and then every 64,
+     * so a slow operation, like a deep search, does not run 64 times past the end of the iteration.
+     * @param operation the operation to run.
+     * @return the amount of operations that are done.
+     */
+    private static long iterate(Operation operation) {
+        long end = System.nanoTime() + ITERATION_NANOS;
+        long count = 0;
+        long result = 0;
+        int batch = 1;
+        do {
+            for (int i = 0; i < batch; i++) {
+                result += operation.run();
+            }
+            count += batch;
+            batch = Math.min(batch * 2, BATCH);
+        } while (System.nanoTime() < end);
+        sink += result;
+        return count;
+    }
+
+    /**
+     * Returns the amount of bytes allocated by the current thread so far.
+     * @return the allocated bytes.
+     */
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,151 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs the benchmark suites and compares the results with a baseline, so a change that makes
+ * an operation slower or allocate more is noticed. It is configured with system properties:
+ * <pre>
+ * -Dothello.benchmark.suites=board,strategy,protocol,journal   the suites to run.
+ * -Dothello.benchmark.baseline=&lt;file&gt;   compare with this baseline and exit with status 1 on a regression.
+ * -Dothello.benchmark.tolerance=25       how many percent slower or more allocating than the baseline is a regression.
+ * -Dothello.benchmark.save=&lt;file&gt;       write the results as a new baseline.
+ * </pre>
+ * A baseline has one benchmark per line: the name, ns/op and B/op separated by tabs; lines starting with # are skipped.
+ * The committed baseline is src/benchmarks/baseline.tsv. Times only compare on the same machine and JVM,
+ * so a baseline is saved again on the machine that gates; the allocations hold everywhere.
+ */
+public class BenchmarkSuite {
+    private static final double ALLOCATION_SLACK = 16; // bytes per operation that are never a regression.
+
+    public static void main(String[] args) throws IOException {
+        List<String> suites = Arrays.asList(System.getProperty("othello.benchmark.suites",
+                "board,strategy,protocol,journal").split(","));
+        if (suites.contains("board")) {
+            Benchmark.header("Board and game");
+            BoardBenchmark.run();
+        }
+        if (suites.contains("strategy")) {
+            Benchmark.header("Strategies");
+            StrategyBenchmark.run();
+        }
+        if (suites.contains("protocol")) {
+            Benchmark.header("Protocol parsing and encoding");
+            ProtocolBenchmark.run();
+        }
+        if (suites.contains("journal")) {
+            Benchmark.header("Game journal");
+            JournalBenchmark.run();
+        }
+        System.out.println("(sink " + Benchmark.sink() + ")");
+
+        String save = System.getProperty("othello.benchmark.save");
+        if (save != null) {
+            write(Paths.get(save), Benchmark.results());
+            System.out.println("Saved the results to " + save);
+        }
+        String baseline = System.getProperty("othello.benchmark.baseline");
+        if (baseline != null) {
+            int tolerance = Integer.getInteger("othello.benchmark.tolerance", 25);
+            if (compare(read(Paths.get(baseline)), Benchmark.results(), tolerance) > 0) {
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Compares the results with the baseline and prints every benchmark with its change.
+     * Benchmarks that are not in the baseline are only printed.
+     * @param baseline the ns/op and B/op of the baseline by name.
+     * @param results the ns/op and B/op of this run by name.
+     * @param tolerance the percentage by which a result may be worse than the baseline.
+     * @return the amount of regressions.
+     */
+    static int compare(Map<String, double[]> baseline, Map<String, double[]> results, int tolerance) {
+        Benchmark.header("Compared with the baseline (tolerance " + tolerance + "%)");
+        double factor = 1 + tolerance / 100.0;
+        int regressions = 0;
+        for (Map.Entry<String, double[]> result : results.entrySet()) {
+            double[] now = result.getValue();
+            double[] before = baseline.get(result.getKey());
+            if (before == null) {
+                System.out.println(String.format(Locale.ROOT, "%-50s %12.1f ns/op %10.1f B/op   new",
+                        result.getKey(), now[0], now[1]));
+                continue;
+            }
+            boolean slower = now[0] > before[0] * factor;
+            boolean allocates = now[1] > before[1] * factor + ALLOCATION_SLACK;
+            if (slower || allocates) {
+                regressions++;
+            }
+            System.out.println(String.format(Locale.ROOT, "%-50s %+11.1f%% time %+11.1f%% alloc   %s",
+                    result.getKey(), change(before[0], now[0]), change(before[1], now[1]),
+                    slower || allocates ? "REGRESSION" : "ok"));
+        }
+        System.out.println(regressions + " regressions.");
+        return regressions;
+    }
+
+    /**
+     * Returns how many percent a value changed.
+     * @param before the value of the baseline.
+     * @param now the value of this run.
+     * @return the change in percent, 0 when both are 0.
+     */
+    private static double change(double before, double now) {
+        return before == 0 ? (now == 0 ? 0 : 100) : (now - before) * 100 / before;
+    }
+
+    /**
+     * Reads a baseline.
+     * @param file the file of the baseline.
+     * @return the ns/op and B/op by name.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if a line is not a name, ns/op and B/op.
+     */
+    static Map<String, double[]> read(Path file) throws IOException {
+        Map<String, double[]> baseline = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] columns = line.split("\t");
+            if (columns.length != 3) {
+                throw new IllegalArgumentException("Expected \"name<tab>ns/op<tab>B/op\": " + line);
+            }
+            try {
+                baseline.put(columns[0], new double[] {Double.parseDouble(columns[1]), Double.parseDouble(columns[2])});
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected \"name<tab>ns/op<tab>B/op\": " + line);
+            }
+        }
+        return baseline;
+    }
+
+    /**
+     * Writes the results as a baseline.
+     * @param file the file to write.
+     * @param results the ns/op and B/op by name.
+     * @throws IOException if the file cannot be written.
+     */
+    static void write(Path file, Map<String, double[]> results) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("# name\tns/op\tB/op, saved with java " + System.getProperty("java.version") + " on "
+                + System.getProperty("os.arch") + " with " + Runtime.getRuntime().availableProcessors() + " processors");
+        for (Map.Entry<String, double[]> result : results.entrySet()) {
+            lines.add(String.format(Locale.ROOT, "%s\t%.1f\t%.1f", result.getKey(), result.getValue()[0],
+                    result.getValue()[1]));
+        }
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+}
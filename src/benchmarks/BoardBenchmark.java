@@ -0,0 +1,80 @@
+package benchmarks;
+
+import exceptions.IllegalMoveException;
+import exceptions.InvalidFieldException;
+import game.Board;
+import game.Mark;
+import game.OthelloGame;
+
+/**
+ * Measures the operations of OthelloBoard that the strategies and the server use, and OthelloGame.update
+ * and applyMove. Every operation runs on the fixed Positions in turn, so the numbers are an average over
+ * an opening, two middle games and an endgame.
+ */
+public class BoardBenchmark {
+
+    public static void main(String[] args) {
+        Benchmark.header("Board and game");
+        run();
+        System.out.println("(sink " + Benchmark.sink() + ")");
+    }
+
+    /**
+     * Runs all the board and game benchmarks.
+     */
+    public static void run() {
+        Positions.Position[] positions = Positions.all();
+        int count = positions.length;
+        Board[] boards = new Board[count];
+        OthelloGame[] games = new OthelloGame[count];
+        Mark[] marks = new Mark[count];
+        int[] moves = new int[count]; // a legal move of the mark to move in each position.
+        long[] flips = new long[count]; // the fields that move flips.
+        for (int i = 0; i < count; i++) {
+            boards[i] = positions[i].board();
+            games[i] = positions[i].game();
+            marks[i] = positions[i].getMark();
+            moves[i] = Long.numberOfTrailingZeros(boards[i].legalMoves(marks[i]));
+            flips[i] = boards[i].deepCopy().applyMove(moves[i], marks[i]);
+        }
+        int[] next = new int[1];
+
+        Benchmark.run("board possibleMoves(mark)", () -> {
+            int i = next[0]++ % count;
+            return boards[i].possibleMoves(marks[i]).size();
+        });
+        Benchmark.run("board calculateFlips", () -> {
+            int i = next[0]++ % count;
+            return boards[i].calculateFlips(moves[i], marks[i]).size();
+        });
+        Benchmark.run("board setField", () -> {
+            int i = next[0]++ % count;
+            try {
+                boards[i].setField(moves[i], marks[i]);
+            } catch (IllegalMoveException | InvalidFieldException e) {
+                throw new IllegalStateException(e);
+            }
+            boards[i].undoMove(moves[i], flips[i], marks[i]);
+            return moves[i];
+        });
+        Benchmark.run("board deepCopy", () -> boards[next[0]++ % count].deepCopy().getFields()[27].ordinal());
+        Benchmark.run("board legalMoves (bitboard)", () -> {
+            int i = next[0]++ % count;
+            return boards[i].legalMoves(marks[i]);
+        });
+        Benchmark.run("board applyMove + undoMove", () -> {
+            int i = next[0]++ % count;
+            long flipped = boards[i].applyMove(moves[i], marks[i]);
+            boards[i].undoMove(moves[i], flipped, marks[i]);
+            return flipped;
+        });
+        Benchmark.run("game update", () -> games[next[0]++ % count].update().length());
+        Benchmark.run("game applyMove + undo", () -> {
+            OthelloGame game = games[next[0]++ % count];
+            long flipped = game.applyMove(Long.numberOfTrailingZeros(game.getBoard()
+                    .legalMoves(game.getCurrent().getMark()))).getFlips();
+            game.undo();
+            return flipped;
+        });
+    }
+}
@@ -0,0 +1,41 @@
+package benchmarks;
+
+import network.server.journal.GameJournal;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Measures what the GameJournal adds to a move: appending a MOVE record to the mapped segment.
+ * The forces to disk happen on the committer thread and are not part of the move.
+ */
+public class JournalBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        Benchmark.header("Game journal");
+        run();
+        System.out.println("(sink " + Benchmark.sink() + ")");
+    }
+
+    /**
+     * Runs all the journal benchmarks in a temporary directory.
+     * @throws IOException if the journal cannot be opened.
+     */
+    public static void run() throws IOException {
+        Path directory = Files.createTempDirectory("journal-benchmark");
+        try (GameJournal journal = new GameJournal(directory)) {
+            // the game is over at once, so the committer can delete the segments that fill up.
+            long game = journal.newGame("alice", "bob");
+            journal.gameOver(game, 0);
+            int[] ply = new int[1];
+            Benchmark.run("journal MOVE", () -> journal.move(game, ply[0]++ & 0xFFFF, 19));
+            Benchmark.run("journal NEWGAME + GAMEOVER", () ->
+                    journal.gameOver(journal.newGame("alice", "bob"), 0));
+        } finally {
+            try (var files = Files.list(directory)) {
+                files.forEach(file -> file.toFile().delete());
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+}
@@ -0,0 +1,475 @@
+package benchmarks;
+
+import exceptions.IllegalMoveException;
+import exceptions.InvalidFieldException;
+import game.Bitboards;
+import game.Board;
+import game.DefaultConfiguration;
+import game.Mark;
+import game.MoveResult;
+import game.OthelloBoard;
+import game.OthelloGame;
+import game.Player;
+import game.SnapshotConfiguration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Verifies the move generation by counting the positions that are reached after exactly n moves (perft),
+ * and measures how fast every move generator does it. A player without moves passes, which counts as a move;
+ * a game that ends before the depth counts as one position. From the starting position the counts are compared
+ * with the known reference values, and the generators are always compared with each other, so a new board
+ * representation proves that it matches the old one and shows how much faster it is.
+ * The first levels of the tree are split into tasks on a ForkJoin pool. It is configured with system properties:
+ * <pre>
+ * -Dothello.perft.depth=8            count from depth 1 up to this depth.
+ * -Dothello.perft.generators=sets,board,game,bitboards   the generators to run, the first is the one to compare with.
+ * -Dothello.perft.position=&lt;64 characters&gt;   the position: b for black, w for white and - for empty, row by row
+ *                                    from the top left. The starting position by default.
+ * -Dothello.perft.color=black        the color to move in the position.
+ * -Dothello.perft.threads=n          the threads of the pool, all processors by default.
+ * -Dothello.perft.split=2            the amount of levels that are split into tasks.
+ * </pre>
+ */
+public class Perft {
+    /**
+     * The counts of the starting position, by depth.
+     */
+    public static final long[] REFERENCE = {1L, 4L, 12L, 56L, 244L, 1396L, 8200L, 55092L, 390216L, 3005288L,
+            24571284L, 212258800L, 1939886636L, 18429641748L};
+
+    /**
+     * A way to generate and play moves. Every generator works on its own representation of the board,
+     * and only exchanges positions as the fields of black and white, one bit per field.
+     */
+    public enum Generator {
+        /**
+         * Board.possibleMoves and Board.setField on a deepCopy, as the strategies do.
+         */
+        SETS {
+            @Override
+            long moves(long black, long white, Mark mark) {
+                long moves = 0;
+                for (int field : board(black, white).possibleMoves(mark)) {
+                    moves |= 1L << field;
+                }
+                return moves;
+            }
+
+            @Override
+            long[] play(long black, long white, Mark mark, int move) {
+                Board board = board(black, white);
+                setField(board, move, mark);
+                return new long[] {board.getBits(Mark.BLACK), board.getBits(Mark.WHITE)};
+            }
+
+            @Override
+            long count(long black, long white, Mark mark, int depth) {
+                return countSets(board(black, white), mark, depth);
+            }
+        },
+        /**
+         * Board.legalMoves, Board.applyMove and Board.undoMove on one board.
+         */
+        BOARD {
+            @Override
+            long moves(long black, long white, Mark mark) {
+                return board(black, white).legalMoves(mark);
+            }
+
+            @Override
+            long[] play(long black, long white, Mark mark, int move) {
+                Board board = board(black, white);
+                board.applyMove(move, mark);
+                return new long[] {board.getBits(Mark.BLACK), board.getBits(Mark.WHITE)};
+            }
+
+            @Override
+            long count(long black, long white, Mark mark, int depth) {
+                return countBoard(board(black, white), mark, depth);
+            }
+        },
+        /**
+         * OthelloGame.applyMove, with 64 to pass, and OthelloGame.undo, as the server and the clients play.
+         */
+        GAME {
+            @Override
+            long moves(long black, long white, Mark mark) {
+                return game(black, white, mark).getBoard().legalMoves(mark);
+            }
+
+            @Override
+            long[] play(long black, long white, Mark mark, int move) {
+                OthelloGame game = game(black, white, mark);
+                apply(game, move);
+                return new long[] {game.getBoard().getBits(Mark.BLACK), game.getBoard().getBits(Mark.WHITE)};
+            }
+
+            @Override
+            long count(long black, long white, Mark mark, int depth) {
+                OthelloGame game = game(black, white, mark);
+                long own = game.getBoard().getBits(mark);
+                long opponent = game.getBoard().getBits(mark.other());
+                long legal = Bitboards.legalMoves(own, opponent);
+                if (legal == 0 && Bitboards.legalMoves(opponent, own) == 0) {
+                    return 1;
+                }
+                return countGame(game, legal, depth);
+            }
+        },
+        /**
+         * Bitboards.legalMoves and Bitboards.flips on two longs, without a Board.
+         */
+        BITBOARDS {
+            @Override
+            long moves(long black, long white, Mark mark) {
+                return mark == Mark.BLACK ? Bitboards.legalMoves(black, white) : Bitboards.legalMoves(white, black);
+            }
+
+            @Override
+            long[] play(long black, long white, Mark mark, int move) {
+                long bit = 1L << move;
+                if (mark == Mark.BLACK) {
+                    long flips = Bitboards.flips(move, black, white);
+                    return new long[] {black | flips | bit, white & ~flips};
+                }
+                long flips = Bitboards.flips(move, white, black);
+                return new long[] {black & ~flips, white | flips | bit};
+            }
+
+            @Override
+            long count(long black, long white, Mark mark, int depth) {
+                return mark == Mark.BLACK ? countBits(black, white, depth) : countBits(white, black, depth);
+            }
+        };
+
+        /**
+         * Returns the legal moves of a mark, generated with this representation.
+         * @param black the fields of black.
+         * @param white the fields of white.
+         * @param mark the mark to move.
+         * @return the moves, one bit per field.
+         */
+        abstract long moves(long black, long white, Mark mark);
+
+        /**
+         * Plays a legal move with this representation.
+         * @param black the fields of black.
+         * @param white the fields of white.
+         * @param mark the mark to move.
+         * @param move the field of the move.
+         * @return the fields of black and white after the move.
+         */
+        abstract long[] play(long black, long white, Mark mark, int move);
+
+        /**
+         * Counts the positions after depth moves with this representation.
+         * @param black the fields of black.
+         * @param white the fields of white.
+         * @param mark the mark to move.
+         * @param depth the amount of moves.
+         * @return the amount of positions.
+         */
+        abstract long count(long black, long white, Mark mark, int depth);
+    }
+
+    /**
+     * Counts the positions below one position, splitting the first levels into tasks.
+     */
+    private static class Task extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final Generator generator;
+        private final long black;
+        private final long white;
+        private final Mark mark;
+        private final int depth;
+        private final int split;
+
+        Task(Generator generator, long black, long white, Mark mark, int depth, int split) {
+            this.generator = generator;
+            this.black = black;
+            this.white = white;
+            this.mark = mark;
+            this.depth = depth;
+            this.split = split;
+        }
+
+        @Override
+        protected Long compute() {
+            if (split == 0 || depth <= 1) {
+                return generator.count(black, white, mark, depth);
+            }
+            long moves = generator.moves(black, white, mark);
+            List<Task> tasks = new ArrayList<>();
+            if (moves == 0) {
+                if (generator.moves(black, white, mark.other()) == 0) {
+                    return 1L;
+                }
+                tasks.add(new Task(generator, black, white, mark.other(), depth - 1, split - 1));
+            }
+            for (long rest = moves; rest != 0; rest &= rest - 1) {
+                long[] next = generator.play(black, white, mark, Long.numberOfTrailingZeros(rest));
+                tasks.add(new Task(generator, next[0], next[1], mark.other(), depth - 1, split - 1));
+            }
+            long count = 0;
+            for (Task task : invokeAll(tasks)) {
+                count += task.join();
+            }
+            return count;
+        }
+    }
+
+    private Perft() {
+    }
+
+    /**
+     * Returns an OthelloBoard with a position.
+     * @param black the fields of black.
+     * @param white the fields of white.
+     * @return the board.
+     */
+    private static Board board(long black, long white) {
+        return new OthelloBoard(new SnapshotConfiguration(black, white));
+    }
+
+    /**
+     * Returns an OthelloGame with a position.
+     * @param black the fields of black.
+     * @param white the fields of white.
+     * @param mark the mark to move.
+     * @return the game, with the player of the mark to move.
+     */
+    private static OthelloGame game(long black, long white, Mark mark) {
+        OthelloGame game = new OthelloGame(new Player("black", Mark.BLACK), new Player("white", Mark.WHITE),
+                new SnapshotConfiguration(black, white));
+        if (mark == Mark.WHITE) {
+            game.pass();
+        }
+        return game;
+    }
+
+    /**
+     * Calls setField, which also flips the captured fields.
+     * @param board the board.
+     * @param move the field of the move.
+     * @param mark the mark of the move.
+     * @throws IllegalStateException if the board refuses a move that it generated itself.
+     */
+    private static void setField(Board board, int move, Mark mark) {
+        try {
+            board.setField(move, mark);
+        } catch (IllegalMoveException | InvalidFieldException e) {
+            throw new IllegalStateException("setField refused the generated move " + move, e);
+        }
+    }
+
+    /**
+     * Plays a move on a game.
+     * @param game the game.
+     * @param move the field of the move, 64 to pass.
+     * @return the result of the move.
+     * @throws IllegalStateException if the game refuses the move.
+     */
+    private static MoveResult apply(OthelloGame game, int move) {
+        MoveResult result = game.applyMove(move);
+        if (!result.isLegal()) {
+            throw new IllegalStateException("applyMove refused the generated move " + move);
+        }
+        return result;
+    }
+
+    /**
+     * Counts with possibleMoves and setField on copies of the board.
+     * @param board the board, which is not changed.
+     * @param mark the mark to move.
+     * @param depth the amount of moves.
+     * @return the amount of positions.
+     */
+    private static long countSets(Board board, Mark mark, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        long count = 0;
+        for (int move : board.possibleMoves(mark)) {
+            Board copy = board.deepCopy();
+            setField(copy, move, mark);
+            count += countSets(copy, mark.other(), depth - 1);
+        }
+        if (count == 0) {
+            return board.possibleMoves(mark.other()).isEmpty() ? 1 : countSets(board, mark.other(), depth - 1);
+        }
+        return count;
+    }
+
+    /**
+     * Counts with legalMoves, applyMove and undoMove on one board.
+     * @param board the board, which is the same again afterwards.
+     * @param mark the mark to move.
+     * @param depth the amount of moves.
+     * @return the amount of positions.
+     */
+    private static long countBoard(Board board, Mark mark, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        long moves = board.legalMoves(mark);
+        if (moves == 0) {
+            return board.legalMoves(mark.other()) == 0 ? 1 : countBoard(board, mark.other(), depth - 1);
+        }
+        long count = 0;
+        for (long rest = moves; rest != 0; rest &= rest - 1) {
+            int move = Long.numberOfTrailingZeros(rest);
+            long flips = board.applyMove(move, mark);
+            count += countBoard(board, mark.other(), depth - 1);
+            board.undoMove(move, flips, mark);
+        }
+        return count;
+    }
+
+    /**
+     * Counts with applyMove and undo on a game that is not over, using the legal moves that applyMove reports.
+     * @param game the game, which is in the same position again afterwards.
+     * @param legal the legal moves of the current player.
+     * @param depth the amount of moves.
+     * @return the amount of positions.
+     */
+    private static long countGame(OthelloGame game, long legal, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        if (legal == 0) {
+            long count = countGame(game, apply(game, OthelloGame.PASS).getLegalMoves(), depth - 1);
+            game.undo();
+            return count;
+        }
+        long count = 0;
+        for (long rest = legal; rest != 0; rest &= rest - 1) {
+            MoveResult result = apply(game, Long.numberOfTrailingZeros(rest));
+            count += result.isGameOver() ? 1 : countGame(game, result.getLegalMoves(), depth - 1);
+            game.undo();
+        }
+        return count;
+    }
+
+    /**
+     * Counts with Bitboards on two longs.
+     * @param own the fields of the player to move.
+     * @param opponent the fields of the opponent.
+     * @param depth the amount of moves.
+     * @return the amount of positions.
+     */
+    private static long countBits(long own, long opponent, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        long moves = Bitboards.legalMoves(own, opponent);
+        if (moves == 0) {
+            return Bitboards.legalMoves(opponent, own) == 0 ? 1 : countBits(opponent, own, depth - 1);
+        }
+        if (depth == 1) {
+            return Long.bitCount(moves);
+        }
+        long count = 0;
+        for (long rest = moves; rest != 0; rest &= rest - 1) {
+            int move = Long.numberOfTrailingZeros(rest);
+            long flips = Bitboards.flips(move, own, opponent);
+            count += countBits(opponent & ~flips, own | flips | (1L << move), depth - 1);
+        }
+        return count;
+    }
+
+    /**
+     * Counts the positions after depth moves with a generator on a pool.
+     * @param pool the pool to run on.
+     * @param generator the generator.
+     * @param black the fields of black.
+     * @param white the fields of white.
+     * @param mark the mark to move.
+     * @param depth the amount of moves.
+     * @param split the amount of levels that are split into tasks.
+     * @return the amount of positions.
+     */
+    public static long perft(ForkJoinPool pool, Generator generator, long black, long white, Mark mark,
+                             int depth, int split) {
+        return pool.invoke(new Task(generator, black, white, mark, depth, split));
+    }
+
+    public static void main(String[] args) {
+        int depth = Integer.getInteger("othello.perft.depth", 8);
+        int split = Integer.getInteger("othello.perft.split", 2);
+        List<Generator> generators = new ArrayList<>();
+        String position = System.getProperty("othello.perft.position");
+        String color = System.getProperty("othello.perft.color", "black");
+        try {
+            for (String name : System.getProperty("othello.perft.generators", "sets,board,game,bitboards")
+                    .split(",")) {
+                try {
+                    generators.add(Generator.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Unknown generator: " + name + ".");
+                }
+            }
+            if (depth < 1 || split < 0 || (position != null && !position.matches("[bw-]{64}"))
+                    || !color.matches("black|white")) {
+                throw new IllegalArgumentException("Invalid depth, split, position or color.");
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage() + " See the Javadoc of Perft for the options.");
+            System.exit(-1);
+            return;
+        }
+        Board start = board(0, 0);
+        start.setupConfig(new DefaultConfiguration());
+        long black = start.getBits(Mark.BLACK);
+        long white = start.getBits(Mark.WHITE);
+        if (position != null) {
+            black = 0;
+            white = 0;
+            for (int i = 0; i < 64; i++) {
+                if (position.charAt(i) == 'b') {
+                    black |= 1L << i;
+                } else if (position.charAt(i) == 'w') {
+                    white |= 1L << i;
+                }
+            }
+        }
+        Mark mark = color.equals("black") ? Mark.BLACK : Mark.WHITE;
+        boolean reference = position == null && mark == Mark.BLACK;
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Integer.getInteger("othello.perft.threads",
+                Runtime.getRuntime().availableProcessors())));
+        System.out.println("Perft to depth " + depth + " on " + pool.getParallelism() + " threads"
+                + (reference ? ", compared with the reference counts." : "."));
+        int mismatches = 0;
+        for (int d = 1; d <= depth; d++) {
+            long expected = reference && d < REFERENCE.length ? REFERENCE[d] : -1;
+            double first = 0;
+            for (Generator generator : generators) {
+                long started = System.nanoTime();
+                long count = perft(pool, generator, black, white, mark, d, split);
+                double seconds = (System.nanoTime() - started) / 1e9;
+                if (expected == -1) {
+                    expected = count; // without a reference, the first generator is the reference.
+                }
+                if (first == 0) {
+                    first = seconds;
+                }
+                boolean ok = count == expected;
+                if (!ok) {
+                    mismatches++;
+                }
+                System.out.println(String.format(Locale.ROOT, "depth %2d  %-9s %,16d  %9.3f s  %,14.0f /s  %8.1fx  %s",
+                        d, generator.name().toLowerCase(Locale.ROOT), count, seconds, count / seconds,
+                        first / seconds, ok ? "ok" : "MISMATCH, expected " + expected));
+            }
+        }
+        pool.shutdown();
+        System.out.println(mismatches == 0 ? "All counts match." : mismatches + " counts do not match.");
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+}
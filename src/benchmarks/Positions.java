@@ -0,0 +1,97 @@
+package benchmarks;
+
+import game.Board;
+import game.Mark;
+import game.OthelloGame;
+import game.Player;
+import game.SnapshotConfiguration;
+import java.util.Random;
+
+/**
+ * The fixed positions the board and strategy benchmarks run on: an opening, two middle games and an endgame,
+ * taken from one game of random moves with a fixed seed, so every run measures the same positions.
+ */
+public final class Positions {
+    public static final long SEED = 20240601L;
+    public static final int[] PLIES = {8, 20, 32, 44};
+
+    /**
+     * A position and the mark that is to move in it.
+     */
+    public static final class Position {
+        private final long black;
+        private final long white;
+        private final Mark mark;
+
+        Position(long black, long white, Mark mark) {
+            this.black = black;
+            this.white = white;
+            this.mark = mark;
+        }
+
+        /**
+         * Returns a new board with this position.
+         * @return the board.
+         */
+        public Board board() {
+            return new OthelloGame(new Player("black", Mark.BLACK), new Player("white", Mark.WHITE),
+                    new SnapshotConfiguration(black, white)).getBoard();
+        }
+
+        /**
+         * Returns a new game in this position, with the mark to move as the current player.
+         * @return the game.
+         */
+        public OthelloGame game() {
+            OthelloGame game = new OthelloGame(new Player("black", Mark.BLACK), new Player("white", Mark.WHITE),
+                    new SnapshotConfiguration(black, white));
+            if (mark == Mark.WHITE) {
+                game.pass();
+            }
+            return game;
+        }
+
+        /**
+         * Returns the mark that is to move.
+         * @return the mark.
+         */
+        public Mark getMark() {
+            return mark;
+        }
+    }
+
+    private Positions() {
+    }
+
+    /**
+     * Plays the game of the seed and returns the positions at the PLIES.
+     * The player to move has at least one move in every position.
+     * @return the positions, in the order of PLIES.
+     */
+    public static Position[] all() {
+        Random random = new Random(SEED);
+        OthelloGame game = new OthelloGame(new Player("black", Mark.BLACK), new Player("white", Mark.WHITE));
+        Position[] positions = new Position[PLIES.length];
+        int found = 0;
+        for (int ply = 0; found < PLIES.length; ply++) {
+            if (game.getBoard().gameOver()) {
+                throw new IllegalStateException("The game of the seed ended before ply " + PLIES[found]);
+            }
+            Mark mark = game.getCurrent().getMark();
+            long legal = game.getBoard().legalMoves(mark);
+            if (ply >= PLIES[found] && legal != 0) {
+                positions[found++] = new Position(game.getBoard().getBits(Mark.BLACK),
+                        game.getBoard().getBits(Mark.WHITE), mark);
+            }
+            if (legal == 0) {
+                game.applyMove(OthelloGame.PASS);
+                continue;
+            }
+            for (int skip = random.nextInt(Long.bitCount(legal)); skip > 0; skip--) {
+                legal &= legal - 1;
+            }
+            game.applyMove(Long.numberOfTrailingZeros(legal));
+        }
+        return positions;
+    }
+}
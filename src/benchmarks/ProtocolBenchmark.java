@@ -0,0 +1,62 @@
+package benchmarks;
+
+import network.protocol.Command;
+import network.protocol.Frames;
+import network.protocol.ProtocolCodec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compares the split-based parsing and the string concatenation of ClientHandler and Client
+ * with the ProtocolCodec and the pre-encoded Frames.
+ */
+public class ProtocolBenchmark {
+    private static final String[] LINES = {"MOVE~19", "MOVE~44", "MOVE~64", "MOVE~2"};
+
+    public static void main(String[] args) {
+        Benchmark.header("Protocol parsing and encoding");
+        run();
+        System.out.println("(sink " + Benchmark.sink() + ")");
+    }
+
+    /**
+     * Runs all the protocol benchmarks.
+     */
+    public static void run() {
+        ByteBuffer moves = ByteBuffer.wrap(String.join("\n", LINES).concat("\n")
+                .getBytes(StandardCharsets.UTF_8));
+        ByteBuffer login = ByteBuffer.wrap("LOGIN~alice\n".getBytes(StandardCharsets.UTF_8));
+        Command command = new Command();
+        int[] next = new int[1];
+
+        Benchmark.run("parse MOVE: split + parseInt", () -> {
+            String line = LINES[next[0]++ & 3];
+            String[] fields = line.split("~");
+            return fields[0].equals("MOVE") ? Integer.parseInt(fields[1]) : -1;
+        });
+        Benchmark.run("parse MOVE: ProtocolCodec", () -> {
+            if (!moves.hasRemaining()) {
+                moves.rewind();
+            }
+            ProtocolCodec.next(moves, command);
+            return command.getOpcode().ordinal() + command.intArgument(1);
+        });
+        Benchmark.run("parse LOGIN: split", () -> {
+            String[] fields = "LOGIN~alice".split("~");
+            return fields[1].length();
+        });
+        Benchmark.run("parse LOGIN: ProtocolCodec + argument", () -> {
+            login.rewind();
+            ProtocolCodec.next(login, command);
+            return command.argument(1).length();
+        });
+        Benchmark.run("encode MOVE: concatenation + getBytes", () -> {
+            int move = next[0]++ & 63;
+            return ("MOVE~" + move + "\n").getBytes(StandardCharsets.UTF_8).length;
+        });
+        Benchmark.run("encode MOVE: Frames.move", () -> Frames.move(next[0]++ & 63).text().length);
+        Benchmark.run("encode GAMEOVER~DRAW: getBytes", () ->
+                ("GAMEOVER~DRAW" + "\n").getBytes(StandardCharsets.UTF_8).length);
+        Benchmark.run("encode GAMEOVER~DRAW: Frames", () -> Frames.GAMEOVER_DRAW.text().length);
+    }
+}
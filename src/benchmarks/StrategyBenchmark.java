@@ -0,0 +1,70 @@
+package benchmarks;
+
+import game.Board;
+import game.Mark;
+import strategies.FieldValueStrategy;
+import strategies.LimitingStrategy;
+import strategies.MiniMaxStrategy;
+import strategies.NaiveStrategy;
+import strategies.StackStrategy;
+import strategies.StackableStrategy;
+import strategies.Strategy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Measures how long the strategies take to choose a move on the fixed Positions: MiniMax at several depths,
+ * every StackableStrategy on its own, a stack of them, and the NaiveStrategy.
+ */
+public class StrategyBenchmark {
+    public static final int[] DEPTHS = {1, 2, 3, 4};
+
+    public static void main(String[] args) {
+        Benchmark.header("Strategies");
+        run();
+        System.out.println("(sink " + Benchmark.sink() + ")");
+    }
+
+    /**
+     * Runs all the strategy benchmarks.
+     */
+    public static void run() {
+        Positions.Position[] positions = Positions.all();
+        int count = positions.length;
+        Board[] boards = new Board[count];
+        Mark[] marks = new Mark[count];
+        List<Set<Integer>> possible = new ArrayList<>(); // the moves a stackable strategy filters.
+        for (int i = 0; i < count; i++) {
+            boards[i] = positions[i].board();
+            marks[i] = positions[i].getMark();
+            possible.add(boards[i].possibleMoves(marks[i]));
+        }
+        int[] next = new int[1];
+
+        for (int depth : DEPTHS) {
+            Strategy minimax = new MiniMaxStrategy(depth);
+            Benchmark.run("strategy MiniMax depth " + depth, () -> {
+                int i = next[0]++ % count;
+                return minimax.determineMove(boards[i], marks[i]);
+            });
+        }
+        List<StackableStrategy> stackable = List.of(new FieldValueStrategy(), new LimitingStrategy());
+        for (StackableStrategy strategy : stackable) {
+            Benchmark.run("strategy " + strategy.getName() + " determineMoveSet", () -> {
+                int i = next[0]++ % count;
+                return strategy.determineMoveSet(boards[i], marks[i], possible.get(i)).size();
+            });
+        }
+        Strategy stack = new StackStrategy(new ArrayList<>(stackable));
+        Benchmark.run("strategy stack Field Value + Limiting", () -> {
+            int i = next[0]++ % count;
+            return stack.determineMove(boards[i], marks[i]);
+        });
+        Strategy naive = new NaiveStrategy();
+        Benchmark.run("strategy " + naive.getName(), () -> {
+            int i = next[0]++ % count;
+            return naive.determineMove(boards[i], marks[i]);
+        });
+    }
+}
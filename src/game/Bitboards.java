@@ -0,0 +1,91 @@
+package game;
+
+/**
+ * Move generation on bitboards: a board is described by two masks with one bit per field
+ * (bit i is field i, see the numbering in Board), one for each mark.
+ * All eight directions are handled with shifts, so generating every legal move of a position
+ * takes a few dozen instructions instead of a search from every field.
+ */
+public final class Bitboards {
+    public static final long FILE_A = 0x0101010101010101L; // the fields in column 0.
+    public static final long FILE_H = 0x8080808080808080L; // the fields in column 7.
+    public static final long FULL = -1L;
+
+    // N, NE, E, SE, S, SW, W, NW as (shift, mask that removes the fields that wrapped around a side).
+    private static final int[] SHIFTS = {-8, -7, 1, 9, 8, 7, -1, -9};
+    private static final long[] MASKS = {FULL, ~FILE_A, ~FILE_A, ~FILE_A, FULL, ~FILE_H, ~FILE_H, ~FILE_H};
+
+    private Bitboards() {
+    }
+
+    /**
+     * Moves every field of the mask one step in a direction.
+     * @param bits the fields to move.
+     * @param direction the index of the direction in SHIFTS.
+     * @return the moved fields, without the ones that left the board.
+     */
+    private static long shift(long bits, int direction) {
+        int shift = SHIFTS[direction];
+        long moved = shift > 0 ? bits << shift : bits >>> -shift;
+        return moved & MASKS[direction];
+    }
+
+    /**
+     * Calculates all legal moves for the player that owns the own fields.
+     * @param own the fields of the player to move.
+     * @param opponent the fields of the opponent.
+     * @return the legal moves, one bit per field.
+     */
+    public static long legalMoves(long own, long opponent) {
+        long empty = ~(own | opponent);
+        long moves = 0;
+        for (int direction = 0; direction < SHIFTS.length; direction++) {
+            long line = shift(own, direction) & opponent;
+            for (int i = 0; i < 5; i++) {
+                line |= shift(line, direction) & opponent;
+            }
+            moves |= shift(line, direction) & empty;
+        }
+        return moves;
+    }
+
+    /**
+     * Calculates the fields that are flipped when the player plays on the square.
+     * @param square the field of the move.
+     * @param own the fields of the player to move.
+     * @param opponent the fields of the opponent.
+     * @return the flipped fields, one bit per field. Zero if the move flips nothing.
+     */
+    public static long flips(int square, long own, long opponent) {
+        long start = 1L << square;
+        long flips = 0;
+        for (int direction = 0; direction < SHIFTS.length; direction++) {
+            long line = 0;
+            long next = shift(start, direction);
+            while ((next & opponent) != 0) {
+                line |= next;
+                next = shift(next, direction);
+            }
+            if ((next & own) != 0) {
+                flips |= line;
+            }
+        }
+        return flips;
+    }
+
+    /**
+     * Returns the fields of the board with the mark.
+     * @param fields the fields of the board.
+     * @param mark the mark to look for.
+     * @return the fields with the mark, one bit per field.
+     */
+    public static long bits(Mark[] fields, Mark mark) {
+        long bits = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] == mark) {
+                bits |= 1L << i;
+            }
+        }
+        return bits;
+    }
+}
@@ -227,4 +227,46 @@ public interface Board {
      * @return the amount of marks in fields
      */
     int getScore(Mark mark);
+
+    /**
+     * Gets all the fields that contain the mark as a mask.
+     * @param mark the mark to filter on
+     * @return the fields with the mark, bit i is field i
+     */
+    long getBits(Mark mark);
+
+    /**
+     * Calculates all possible moves for the mark in one pass over the board.
+     * @param mark the mark to search for
+     * @return the possible moves, bit i is field i
+     */
+    long legalMoves(Mark mark);
+
+    /**
+     * Places the mark on the field and flips the captured fields, without checking if the move is possible.
+     * The caller must make sure the move is one of the legalMoves of the mark.
+     * @param index the field of the move
+     * @param mark the mark of the move
+     * @return the flipped fields, bit i is field i
+     */
+    //@ requires (legalMoves(mark) & (1L << index)) != 0;
+    long applyMove(int index, Mark mark);
+
+    /**
+     * Takes back a move of applyMove: empties the field of the move and gives the flipped fields back to the other mark.
+     * @param index the field of the move
+     * @param flips the fields that the move flipped, as returned by applyMove
+     * @param mark the mark of the move
+     */
+    //@ requires getField(index) == mark;
+    void undoMove(int index, long flips, Mark mark);
+
+    /**
+     * Plays a move that was taken back again with the flips it had, without calculating them.
+     * @param index the field of the move
+     * @param flips the fields that the move flipped, as returned by applyMove
+     * @param mark the mark of the move
+     */
+    //@ requires getField(index) == Mark.EMPTY;
+    void redoMove(int index, long flips, Mark mark);
 }
@@ -0,0 +1,84 @@
+package game;
+
+/**
+ * Draws the board of a game in a terminal, updating it in place.
+ * The first frame is the whole board, as OthelloGame.update returns it. Every next frame only rewrites the fields,
+ * move letters and scores that changed since the previous frame, with ANSI escape codes that move the cursor to them.
+ * The frames are meant for a listener that prints every message on its own line, with nothing printed in between:
+ * each frame leaves the cursor where the next line break puts it right below the board again.
+ */
+public class BoardRenderer {
+    private static final String ESC = "\u001B[";
+    private static final String SAVE = "\u001B7";
+    private static final String RESTORE = "\u001B8";
+    private static final int SCORE_COLUMN = 20; // the column at which the name and score of a player start.
+    private final OthelloGame game;
+    private final String[] shown = new String[Board.DIM * Board.DIM]; // the fields of the last frame.
+    private final String[] next = new String[Board.DIM * Board.DIM];
+    private final int[] scores = new int[OthelloGame.NUMBER_PLAYERS];
+    private final StringBuilder out = new StringBuilder(1024);
+    private boolean drawn;
+
+    /**
+     * Constructs a renderer of a game that has not been drawn yet.
+     * @param game the game to draw.
+     */
+    public BoardRenderer(OthelloGame game) {
+        this.game = game;
+    }
+
+    /**
+     * Returns the next frame: the whole board the first time, and after that only the changes.
+     * @return the frame, without a final line break.
+     */
+    public String render() {
+        out.setLength(0);
+        if (!drawn) {
+            game.fillCells(shown);
+            game.appendFrame(out, shown);
+            out.setLength(out.length() - 2); // the line break and the space after the last row.
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = game.getScore(i);
+            }
+            drawn = true;
+            return out.toString();
+        }
+        game.fillCells(next);
+        out.append(SAVE);
+        for (int i = 0; i < next.length; i++) {
+            if (!next[i].equals(shown[i])) {
+                moveTo(i / Board.DIM, 3 + 2 * (i % Board.DIM));
+                out.append(next[i]);
+                shown[i] = next[i];
+            }
+        }
+        for (int i = 0; i < scores.length; i++) {
+            int score = game.getScore(i);
+            if (score != scores[i]) {
+                moveTo(1 + i, SCORE_COLUMN);
+                game.appendScore(out, i);
+                out.append(ESC).append('K');
+                scores[i] = score;
+            }
+        }
+        // back to the last row, so the line break of the listener ends right below the board.
+        out.append(RESTORE).append(ESC).append("1A");
+        return out.toString();
+    }
+
+    /**
+     * Draws the whole board again in the next frame, for example after other text was printed below it.
+     */
+    public void reset() {
+        drawn = false;
+    }
+
+    /**
+     * Appends the codes that move the cursor from right below the board to a position of the board.
+     * @param row the row of the board, from 0 to 7.
+     * @param column the column in the terminal, starting at 1.
+     */
+    private void moveTo(int row, int column) {
+        out.append(RESTORE).append(ESC).append(Board.DIM - row).append('A').append(ESC).append(column).append('G');
+    }
+}
@@ -15,6 +15,15 @@ public interface Game {
      */
     void makeMove(int index) throws IllegalMoveException, InvalidFieldException;
 
+    /**
+     * Validates and makes a move for the current player, passes the turn to the other player
+     * and reports the outcome in a single pass: the flipped fields, the legal moves of the next player
+     * and whether the game is over. An illegal move changes nothing.
+     * @param index the index on the board where to put the mark, or 64 to pass when there are no possible moves.
+     * @return the result of the move.
+     */
+    MoveResult applyMove(int index);
+
     /**
      * Returns the current situation of the game on the board.
      * @return representation of the current board.
@@ -45,4 +54,42 @@ public interface Game {
      */
     void pass();
 
+    /**
+     * Takes back the last move or pass, so the player who made it is to move again.
+     * @return false if there is no move to take back.
+     */
+    boolean undo();
+
+    /**
+     * Plays the move or pass that was taken back last again.
+     * @return false if no move was taken back, or a new move was made after it.
+     */
+    boolean redo();
+
+    /**
+     * Takes back or plays again moves until the given amount of moves is played.
+     * @param ply the amount of moves and passes since the start, from 0 to getPlies().
+     * @throws IndexOutOfBoundsException when ply is not between 0 and getPlies().
+     */
+    void goTo(int ply);
+
+    /**
+     * Returns the amount of moves and passes that are played since the start.
+     * @return the current ply.
+     */
+    int getPly();
+
+    /**
+     * Returns the amount of moves and passes in the history, including the ones that were taken back.
+     * @return the last ply that can be reached with redo.
+     */
+    int getPlies();
+
+    /**
+     * Returns a move of the history.
+     * @param ply the index of the move, from 0 to getPlies() - 1.
+     * @return the field of the move, 64 for a pass.
+     * @throws IndexOutOfBoundsException when there is no move at that ply.
+     */
+    int getMove(int ply);
 }
@@ -0,0 +1,126 @@
+package game;
+
+/**
+ * The outcome of Game.applyMove: whether the move was made, which fields were flipped,
+ * who has to move next, the legal moves of that player and whether the game is over.
+ */
+public class MoveResult {
+    /**
+     * What happened with the requested move.
+     */
+    public enum Status {
+        /**
+         * A mark is placed on the board.
+         */
+        MOVED,
+        /**
+         * The player passed, because there were no legal moves.
+         */
+        PASSED,
+        /**
+         * The move is not legal, so nothing changed.
+         */
+        ILLEGAL
+    }
+
+    private final Status status;
+    private final int square;
+    private final long flips;
+    private final Player next;
+    private final long legalMoves;
+    private final boolean gameOver;
+    private final Player winner;
+
+    /**
+     * Constructs a MoveResult.
+     * @param status what happened with the move.
+     * @param square the requested field (64 for a pass).
+     * @param flips the flipped fields, one bit per field.
+     * @param next the player that has to move now.
+     * @param legalMoves the legal moves of the player that has to move now, one bit per field.
+     * @param gameOver whether the game is over.
+     * @param winner the winner if the game is over, null if it is a draw or not over.
+     */
+    public MoveResult(Status status, int square, long flips, Player next, long legalMoves,
+                      boolean gameOver, Player winner) {
+        this.status = status;
+        this.square = square;
+        this.flips = flips;
+        this.next = next;
+        this.legalMoves = legalMoves;
+        this.gameOver = gameOver;
+        this.winner = winner;
+    }
+
+    /**
+     * Returns what happened with the move.
+     * @return the status of the move.
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns whether the move is made (a mark is placed or the player passed).
+     * @return true if the move was legal.
+     */
+    public boolean isLegal() {
+        return status != Status.ILLEGAL;
+    }
+
+    /**
+     * Returns the requested field.
+     * @return the field of the move, 64 for a pass.
+     */
+    public int getSquare() {
+        return square;
+    }
+
+    /**
+     * Returns the fields that are flipped by the move.
+     * @return the flipped fields, one bit per field.
+     */
+    public long getFlips() {
+        return flips;
+    }
+
+    /**
+     * Returns the player that has to move now. For an illegal move, this is still the same player.
+     * @return the player to move.
+     */
+    public Player getNext() {
+        return next;
+    }
+
+    /**
+     * Returns the legal moves of the player that has to move now.
+     * @return the legal moves, one bit per field. Zero means that the player has to pass.
+     */
+    public long getLegalMoves() {
+        return legalMoves;
+    }
+
+    /**
+     * Returns whether the game is over after this move.
+     * @return true if neither player can move anymore.
+     */
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * Returns whether the game ended in a draw.
+     * @return true if the game is over and nobody won.
+     */
+    public boolean isDraw() {
+        return gameOver && winner == null;
+    }
+
+    /**
+     * Returns the winner of the game.
+     * @return the winner, or null if the game is not over or is a draw.
+     */
+    public Player getWinner() {
+        return winner;
+    }
+}
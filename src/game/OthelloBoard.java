@@ -350,4 +350,45 @@ public class OthelloBoard implements Board {
     public int getScore(Mark mark) {
         return (int) Arrays.stream(fields).filter(m -> m == mark).count();
     }
+
+    @Override
+    public long getBits(Mark mark) {
+        return Bitboards.bits(fields, mark);
+    }
+
+    @Override
+    public long legalMoves(Mark mark) {
+        return Bitboards.legalMoves(getBits(mark), getBits(mark.other()));
+    }
+
+    @Override
+    public long applyMove(int index, Mark mark) {
+        long flips = Bitboards.flips(index, getBits(mark), getBits(mark.other()));
+        fields[index] = mark;
+        setFields(flips, mark);
+        return flips;
+    }
+
+    @Override
+    public void undoMove(int index, long flips, Mark mark) {
+        fields[index] = Mark.EMPTY;
+        setFields(flips, mark.other());
+    }
+
+    @Override
+    public void redoMove(int index, long flips, Mark mark) {
+        fields[index] = mark;
+        setFields(flips, mark);
+    }
+
+    /**
+     * Puts the mark on all given fields.
+     * @param bits the fields, bit i is field i
+     * @param mark the mark to put
+     */
+    private void setFields(long bits, Mark mark) {
+        for (long rest = bits; rest != 0; rest &= rest - 1) {
+            fields[Long.numberOfTrailingZeros(rest)] = mark;
+        }
+    }
 }
@@ -2,8 +2,7 @@ package game;
 
 import exceptions.IllegalMoveException;
 import exceptions.InvalidFieldException;
-
-import java.util.*;
+import java.util.Arrays;
 
 /**
  * Represents the Othello (Reversi) Game.
@@ -11,10 +10,28 @@ import java.util.*;
 public class OthelloGame implements Game {
     public static final int NUMBER_PLAYERS = 2;
     public static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    public static final int PASS = 64;
+    private static final String[] LETTERS = ALPHABET.split(""); // the letters as strings, so a frame allocates none.
+    private static final String EMPTY = " ";
+    private static final int HISTORY = 64; // the initial capacity of the history; 60 moves and a few passes.
     private final Board board;
     private final Player[] players;
     private Player current;
-    private ArrayList<Integer> charFields;
+    private final int[] charFields = new int[ALPHABET.length()]; // the field of each move letter of the last frame.
+    private int letters; // the amount of move letters of the last frame.
+    private final String[] cells = new String[Board.DIM * Board.DIM];
+    private final StringBuilder frame = new StringBuilder(1024);
+    // The legal moves of the current player, calculated by the previous applyMove for the position (own, opponent).
+    private long cachedOwn;
+    private long cachedOpponent;
+    private long cachedLegal;
+    private boolean cached;
+    // The history: the field of every move, 64 for a pass, and the fields it flipped, so a move is taken back
+    // and played again without calculating anything. A new move after an undo forgets the moves after it.
+    private byte[] moves = new byte[HISTORY];
+    private long[] flips = new long[HISTORY];
+    private int ply; // the amount of moves played, the index of the next move in the history.
+    private int plies; // the amount of moves in the history, including the ones that were taken back.
 
     /**
      * Constructs a game of Othello with initial setup:
@@ -64,11 +81,8 @@ public class OthelloGame implements Game {
         if (!in.matches(regex)) {
             return -1;
         }
-        try {
-            return charFields.get(ALPHABET.indexOf(in));
-        } catch (IndexOutOfBoundsException e) {
-            return -1;
-        }
+        int index = ALPHABET.indexOf(in);
+        return index < letters ? charFields[index] : -1;
     }
 
     /**
@@ -77,9 +91,10 @@ public class OthelloGame implements Game {
      * @return move represented as a letter.
      */
     public char convertMove(int input) {
-        if (charFields.contains(input)) {
-            int index = charFields.indexOf(input);
-            return ALPHABET.charAt(index);
+        for (int i = 0; i < letters; i++) {
+            if (charFields[i] == input) {
+                return ALPHABET.charAt(i);
+            }
         }
         return '-';
     }
@@ -116,55 +131,221 @@ public class OthelloGame implements Game {
      */
     @Override
     public String update() {
-        this.charFields = new ArrayList<>();
-        StringBuilder result = new StringBuilder();
-        result.append("\u007C ");
-        Mark[] marks = board.getFields();
-        Set<Integer> possibleMoves = board.possibleMoves(current.getMark());
-        int count = 0;
-        for (int i = 0; i < 64; i++) {
-            if (marks[i] == Mark.WHITE || marks[i] == Mark.BLACK) {
-                result.append(getMarkChar(marks[i]));
-            }
-            if (marks[i] == Mark.EMPTY) {
-                if (possibleMoves.contains(i)) {
-                    result.append(ALPHABET.charAt(count));
-                    charFields.add(i);
-                    count++;
-                } else {
-                    result.append(" ");
-                }
+        fillCells(cells);
+        frame.setLength(0);
+        appendFrame(frame, cells);
+        return frame.toString();
+    }
+
+    /**
+     * Fills what each field of the board shows: a mark, the letter of a possible move of the current player
+     * or a space. The letters are numbered again, so convertMove uses the letters of this frame.
+     * At most 26 moves get a letter; any further moves are shown as empty fields.
+     * @param cells the 64 strings to fill.
+     */
+    void fillCells(String[] cells) {
+        long black = board.getBits(Mark.BLACK);
+        long white = board.getBits(Mark.WHITE);
+        long legal = legalMoves();
+        letters = 0;
+        for (int i = 0; i < cells.length; i++) {
+            long bit = 1L << i;
+            if ((black & bit) != 0) {
+                cells[i] = getMarkChar(Mark.BLACK);
+            } else if ((white & bit) != 0) {
+                cells[i] = getMarkChar(Mark.WHITE);
+            } else if ((legal & bit) != 0 && letters < charFields.length) {
+                charFields[letters] = i;
+                cells[i] = LETTERS[letters++];
+            } else {
+                cells[i] = EMPTY;
             }
+        }
+    }
+
+    /**
+     * Appends the board with the given fields and the scores next to it, as update returns it.
+     * @param out the builder to append to.
+     * @param cells the 64 fields, as filled by fillCells.
+     */
+    void appendFrame(StringBuilder out, String[] cells) {
+        out.append("\u007C ");
+        for (int i = 0; i < 64; i++) {
+            out.append(cells[i]);
             if ((i + 1) % 8 == 0) {
-                result.append(" \u007C");
+                out.append(" \u007C");
                 if (i == 15) {
-                    result.append(" ".repeat(Math.max(0, 15 - players[0].getUsername().length())));
-                    result.append(players[0].getUsername()).append(" (").append(getMarkChar(players[0].getMark())).append("): ");
-                    result.append(board.getScore(players[0].getMark()));
+                    appendScore(out, 0);
                 }
                 if (i == 23) {
-                    result.append(" ".repeat(Math.max(0, 15 - players[1].getUsername().length())));
-                    result.append(players[1].getUsername()).append(" (").append(getMarkChar(players[1].getMark())).append("): ");
-                    result.append(board.getScore(players[1].getMark()));
+                    appendScore(out, 1);
                 }
-                result.append("\n");
+                out.append("\n");
                 if (i != 63) {
-                    result.append("\u007C");
+                    out.append("\u007C");
                 }
             }
-            result.append(" ");
+            out.append(" ");
         }
-        return result.toString();
+    }
+
+    /**
+     * Appends the name, mark and score of a player, as shown to the right of the board.
+     * @param out the builder to append to.
+     * @param player the index of the player, 0 or 1.
+     */
+    void appendScore(StringBuilder out, int player) {
+        String username = players[player].getUsername();
+        for (int i = username.length(); i < 15; i++) {
+            out.append(' ');
+        }
+        out.append(username).append(" (").append(getMarkChar(players[player].getMark())).append("): ")
+                .append(getScore(player));
+    }
+
+    /**
+     * Returns the amount of fields of a player.
+     * @param player the index of the player, 0 or 1.
+     * @return the score of the player.
+     */
+    int getScore(int player) {
+        return Long.bitCount(board.getBits(players[player].getMark()));
+    }
+
+    /**
+     * Returns the legal moves of the current player, from the cache of the previous applyMove when the board did not change.
+     * @return the legal moves as bits.
+     */
+    private long legalMoves() {
+        long own = board.getBits(current.getMark());
+        long opponent = board.getBits(current.getMark().other());
+        return cached && own == cachedOwn && opponent == cachedOpponent
+                ? cachedLegal : Bitboards.legalMoves(own, opponent);
     }
 
     @Override
     public void makeMove(int index) throws IllegalMoveException, InvalidFieldException {
-        if (index == 64 && getBoard().possibleMoves(current.getMark()).isEmpty()) {
-            pass(); // if the index is 64 and don't have any other moves, pass the turn
+        if (index < 0 || index > PASS) {
+            throw new InvalidFieldException("The index " + index +
+                    " does not appear in the scope of an " + Board.DIM + " * " + Board.DIM + " board.");
+        }
+        // if the index is 64 and the player doesn't have any other moves, the turn is passed
+        if (!applyMove(index).isLegal()) {
+            throw new IllegalMoveException("The move you try to make is not possible. " +
+                    "You must flip stones.\nPossible moves are: " + board.possibleMoves(current.getMark()));
+        }
+    }
+
+    @Override
+    public MoveResult applyMove(int index) {
+        Mark mark = current.getMark();
+        long own = board.getBits(mark);
+        long opponent = board.getBits(mark.other());
+        // the previous move already calculated the legal moves of this player, unless the board changed since
+        long legal = legalMoves();
+        long flips = 0;
+        MoveResult.Status status;
+        if (index == PASS && legal == 0) {
+            status = MoveResult.Status.PASSED;
+        } else if (index >= 0 && index < PASS && (legal & (1L << index)) != 0) {
+            flips = board.applyMove(index, mark);
+            own |= flips | (1L << index);
+            opponent &= ~flips;
+            status = MoveResult.Status.MOVED;
         } else {
-            board.setField(index, current.getMark());
-            pass();
+            return new MoveResult(MoveResult.Status.ILLEGAL, index, 0, current, legal, false, null);
+        }
+        record(index, flips);
+        pass();
+        long next = Bitboards.legalMoves(opponent, own);
+        boolean gameOver = next == 0 && Bitboards.legalMoves(own, opponent) == 0;
+        cachedOwn = opponent;
+        cachedOpponent = own;
+        cachedLegal = next;
+        cached = true;
+        Player winner = null;
+        if (gameOver) {
+            int ownCount = Long.bitCount(own);
+            int opponentCount = Long.bitCount(opponent);
+            if (ownCount > opponentCount) {
+                winner = current == players[0] ? players[1] : players[0];
+            } else if (opponentCount > ownCount) {
+                winner = current;
+            }
+        }
+        return new MoveResult(status, index, flips, current, next, gameOver, winner);
+    }
+
+    /**
+     * Adds a move to the history at the current ply and forgets the moves that were taken back.
+     * @param index the field of the move, 64 for a pass.
+     * @param flipped the fields that the move flipped.
+     */
+    private void record(int index, long flipped) {
+        if (ply == moves.length) {
+            moves = Arrays.copyOf(moves, ply * 2);
+            flips = Arrays.copyOf(flips, ply * 2);
+        }
+        moves[ply] = (byte) index;
+        flips[ply] = flipped;
+        plies = ++ply;
+    }
+
+    @Override
+    public boolean undo() {
+        if (ply == 0) {
+            return false;
+        }
+        ply--;
+        pass();
+        if (moves[ply] != PASS) {
+            board.undoMove(moves[ply], flips[ply], current.getMark());
+        }
+        return true;
+    }
+
+    @Override
+    public boolean redo() {
+        if (ply == plies) {
+            return false;
+        }
+        if (moves[ply] != PASS) {
+            board.redoMove(moves[ply], flips[ply], current.getMark());
+        }
+        pass();
+        ply++;
+        return true;
+    }
+
+    @Override
+    public void goTo(int target) {
+        if (target < 0 || target > plies) {
+            throw new IndexOutOfBoundsException("Ply " + target + " is not between 0 and " + plies + ".");
+        }
+        while (ply > target) {
+            undo();
+        }
+        while (ply < target) {
+            redo();
+        }
+    }
+
+    @Override
+    public int getPly() {
+        return ply;
+    }
+
+    @Override
+    public int getPlies() {
+        return plies;
+    }
+
+    @Override
+    public int getMove(int index) {
+        if (index < 0 || index >= plies) {
+            throw new IndexOutOfBoundsException("There is no move at ply " + index + ".");
         }
+        return moves[index];
     }
 
     @Override
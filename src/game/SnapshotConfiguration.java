@@ -0,0 +1,42 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This class represents a configuration of the board taken from a snapshot,
+ * in which every mark is given as a mask with one bit per field (bit i is field i).
+ */
+public class SnapshotConfiguration implements BoardConfiguration {
+    private final HashMap<Mark, ArrayList<Integer>> config;
+
+    /**
+     * Constructor for the SnapshotConfiguration class.
+     * @param black the fields with a black mark, one bit per field.
+     * @param white the fields with a white mark, one bit per field.
+     */
+    public SnapshotConfiguration(long black, long white) {
+        config = new HashMap<>();
+        config.put(Mark.BLACK, fields(black));
+        config.put(Mark.WHITE, fields(white));
+    }
+
+    /**
+     * Returns the indexes of the bits that are set.
+     * @param mask the mask.
+     * @return the list of indexes.
+     */
+    private static ArrayList<Integer> fields(long mask) {
+        ArrayList<Integer> fields = new ArrayList<>();
+        while (mask != 0) {
+            fields.add(Long.numberOfTrailingZeros(mask));
+            mask &= mask - 1;
+        }
+        return fields;
+    }
+
+    @Override
+    public HashMap<Mark, ArrayList<Integer>> getConfig() {
+        return config;
+    }
+}
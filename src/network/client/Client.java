@@ -6,23 +6,34 @@ import exceptions.IllegalMoveException;
 import exceptions.InvalidUsername;
 import exceptions.InvalidFieldException;
 import game.*;
-import java.io.BufferedReader;
+import network.protocol.BinaryCodec;
+import network.protocol.Command;
+import network.protocol.Opcode;
+import network.protocol.ProtocolReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.Socket;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Represents a Client for the Othello game.
  */
 public class Client implements GameClient, Runnable {
+    private static final int MAX_LINE = 1 << 24; // a LIST of a crowded server can be a few MB.
+    private static final int HANDSHAKE_TIMEOUT = 5; // seconds to wait for the reply to HELLO.
 
     private Socket socket;
-    private BufferedReader in;
+    private ProtocolReader in;
     private PrintWriter out;
     private String username;
     private OthelloGame game;
+    private OthelloGame watched; // the game that the client watches, null if none.
+    private BoardRenderer renderer; // draws the watched game in place, null without ANSI.
+    private boolean ansi;
     private Player clientPlayer;
     private Player opponent;
     private boolean isAI;
@@ -30,6 +41,13 @@ public class Client implements GameClient, Runnable {
     private boolean queue;
     private Strategy strategy;
     private List<GameListener> listeners;
+    private OutputStream rawOut;
+    private boolean binaryRequested;
+    private volatile boolean binary; // whether the binary protocol is used after the handshake.
+    private volatile CountDownLatch handshake = new CountDownLatch(1); // a new one for every connection.
+    private boolean redirected; // whether the client moved to another server and has to log in and queue there.
+    private volatile CompletableFuture<Void> reply = CompletableFuture.completedFuture(null); // the reply the user waits for.
+    private volatile Set<Opcode> replies = EnumSet.noneOf(Opcode.class); // the opcodes that answer the request.
 
     /**
      * Returns whether the client is logged into the server or not.
@@ -39,6 +57,91 @@ public class Client implements GameClient, Runnable {
         return isLogged;
     }
 
+    /**
+     * Asks the server for the binary protocol in the HELLO handshake. Must be called before connecting.
+     * If the server does not support it, the client keeps using the text protocol.
+     */
+    public void requestBinaryProtocol() {
+        this.binaryRequested = true;
+    }
+
+    /**
+     * Draws the board of a watched game in place with ANSI escape codes, instead of printing it again after every move.
+     * Only for a listener that prints every message on its own line in a terminal, like the TUI.
+     */
+    public void useAnsi() {
+        this.ansi = true;
+    }
+
+    /**
+     * Returns whether the client uses the binary protocol.
+     * @return true if the binary protocol is used.
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Returns the reply to the last command of the user that the server answers, such as LOGIN, LIST or MOVE.
+     * The future completes as soon as the reply is handled and shown to the listeners, so a TUI can show
+     * its prompt again without waiting a fixed time. It is already complete when the command needs no reply.
+     * @return the future of the reply.
+     */
+    public CompletableFuture<Void> getReply() {
+        return reply;
+    }
+
+    /**
+     * Sends a command of the user to which the server replies; getReply completes when the reply is handled.
+     * An ERROR always answers the command.
+     * @param message the message in the text format.
+     * @param first an opcode of the reply.
+     * @param rest the other opcodes that can answer the command.
+     */
+    private void request(String message, Opcode first, Opcode... rest) {
+        replies = EnumSet.of(first, rest);
+        reply = new CompletableFuture<>();
+        send(message);
+    }
+
+    /**
+     * Completes the future of the reply that the user waits for, if the message answers the command.
+     * Messages that the server sends on its own, such as the move of the opponent, leave it waiting.
+     * @param opcode the opcode of the message that was handled.
+     */
+    private void replied(Opcode opcode) {
+        if (opcode == Opcode.ERROR || replies.contains(opcode)) {
+            reply.complete(null);
+        }
+    }
+
+    /**
+     * Sends a message to the server in the protocol that was agreed on in the handshake.
+     * When the binary protocol is requested, messages wait until the server answered the HELLO.
+     * @param message the message in the text format.
+     */
+    private void send(String message) {
+        if (binaryRequested) {
+            try {
+                handshake.await(HANDSHAKE_TIMEOUT, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (binary) {
+                try {
+                    rawOut.write(BinaryCodec.encode(message));
+                    rawOut.flush();
+                } catch (IOException e) {
+                    sendToListener("Failed to send the message to the server.");
+                }
+            } else {
+                out.println(message);
+            }
+        }
+    }
+
     @Override
     public void connect(String address, int port) throws FailedConnection {
         try {
@@ -48,15 +151,59 @@ public class Client implements GameClient, Runnable {
         }
 
         try {
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            out = new PrintWriter(socket.getOutputStream(), true);
-            out.println("HELLO~Othello Client");
+            in = new ProtocolReader(socket.getInputStream(), MAX_LINE);
+            rawOut = socket.getOutputStream();
+            out = new PrintWriter(rawOut, true);
+            if (binaryRequested) {
+                out.println("HELLO~Othello Client~" + BinaryCodec.HELLO_OPTION);
+            } else {
+                out.println("HELLO~Othello Client");
+                handshake.countDown();
+            }
         } catch (IOException e) {
             close();
         }
         new Thread(this).start();
     }
 
+    /**
+     * Moves the client to another server of the federation, which hosts its next game.
+     * The client connects, does the handshake again, and logs in and queues as soon as the new server answers the HELLO.
+     * @param address the IP address or hostname of the new server.
+     * @param port the port of the new server.
+     */
+    private void redirect(String address, int port) {
+        Socket old = socket;
+        try {
+            Socket moved = new Socket(address, port);
+            handshake = new CountDownLatch(1);
+            synchronized (this) {
+                socket = moved;
+                in = new ProtocolReader(moved.getInputStream(), MAX_LINE);
+                rawOut = moved.getOutputStream();
+                out = new PrintWriter(rawOut, true);
+                binary = false;
+            }
+            redirected = true;
+            if (binaryRequested) {
+                out.println("HELLO~Othello Client~" + BinaryCodec.HELLO_OPTION);
+            } else {
+                out.println("HELLO~Othello Client");
+                handshake.countDown();
+            }
+        } catch (IOException e) {
+            queue = false;
+            sendToListener("Could not move to the server " + address + ":" + port + ". Queue again to play on this server.");
+            return;
+        }
+        sendToListener("Your next game is on the server " + address + ":" + port + ", moving there.");
+        try {
+            old.close();
+        } catch (IOException ignored) {
+
+        }
+    }
+
     @Override
     public void close() {
         try {
@@ -74,8 +221,8 @@ public class Client implements GameClient, Runnable {
     @Override
     public void sendUsername(String name) throws InvalidUsername {
         if (name != null && !name.contains("~")) {
-            out.println("LOGIN~" + name);
             this.username = name;
+            request("LOGIN~" + name, Opcode.LOGIN, Opcode.ALREADYLOGGEDIN);
         } else {
             throw new InvalidUsername("Username is not valid!!! Contains ~ or is null.");
         }
@@ -84,11 +231,22 @@ public class Client implements GameClient, Runnable {
     @Override
     public void handleMessages(String message) {
         String wrongCommand = "Wrong command parameter.";
+        reply.complete(null); // a new command does not wait for the reply to an older one.
+        if (renderer != null) {
+            renderer.reset(); // the command was echoed below the board, so the next frame is drawn in full.
+        }
         String[] command = message.split(" ");
         switch (command[0]) {
             case "list":
                 if (command.length == 1) {
-                    out.println("LIST");
+                    request("LIST", Opcode.LIST);
+                } else if (command.length == 2 && command[1].equals("subscribe")) {
+                    request("LIST~SUBSCRIBE", Opcode.LIST);
+                } else if (command.length == 2 && command[1].equals("unsubscribe")) {
+                    send("LIST~UNSUBSCRIBE");
+                    sendToListener("You will no longer be notified when users join or leave.");
+                } else if (command.length == 3 && command[1].matches("\\d+") && command[2].matches("\\d+")) {
+                    request("LIST~" + command[1] + "~" + command[2], Opcode.LISTPAGE);
                 } else {
                     sendToListener(wrongCommand);
                 }
@@ -96,7 +254,7 @@ public class Client implements GameClient, Runnable {
             case "queue":
                 if (command.length == 1) {
                     if (this.game == null) {
-                        out.println("QUEUE");
+                        send("QUEUE");
                         if (queue) {
                             queue = false;
                             sendToListener("You are removed from the queue.");
@@ -119,7 +277,7 @@ public class Client implements GameClient, Runnable {
                             if (game.getCurrent() == opponent) {
                                 sendToListener("It's not your turn. Wait for your opponent's move.");
                             } else {
-                                out.println("MOVE~" + move);
+                                request("MOVE~" + move, Opcode.MOVE, Opcode.GAMEOVER);
                             }
                         } else {
                             sendToListener("Invalid move. Please choose a valid move.");
@@ -208,6 +366,63 @@ public class Client implements GameClient, Runnable {
                     sendToListener(wrongCommand);
                 }
                 break;
+            case "challenge":
+                if (command.length == 2) {
+                    if (this.game == null) {
+                        request("CHALLENGE~" + command[1], Opcode.NEWGAME);
+                    } else {
+                        sendToListener("Command not available when you are already in a game.");
+                    }
+                } else {
+                    sendToListener(wrongCommand);
+                }
+                break;
+            case "games":
+                if (command.length == 1) {
+                    request("GAMES", Opcode.GAMES);
+                } else {
+                    sendToListener(wrongCommand);
+                }
+                break;
+            case "rating":
+                if (command.length == 1) {
+                    request("RATING", Opcode.RATING);
+                } else if (command.length == 2) {
+                    request("RATING~" + command[1], Opcode.RATING);
+                } else {
+                    sendToListener(wrongCommand);
+                }
+                break;
+            case "top":
+                if (command.length == 1) {
+                    request("TOP", Opcode.TOP);
+                } else if (command.length == 2 && command[1].matches("\\d+")) {
+                    request("TOP~" + command[1], Opcode.TOP);
+                } else {
+                    sendToListener(wrongCommand);
+                }
+                break;
+            case "watch":
+                if (command.length == 2 && command[1].matches("\\d+")) {
+                    if (this.game == null) {
+                        request("WATCH~" + command[1], Opcode.BOARD);
+                    } else {
+                        sendToListener("Command not available when you are already in a game.");
+                    }
+                } else {
+                    sendToListener(wrongCommand);
+                }
+                break;
+            case "unwatch":
+                if (command.length == 1) {
+                    send("UNWATCH");
+                    watched = null;
+                    renderer = null;
+                    sendToListener("You stopped watching the game.");
+                } else {
+                    sendToListener(wrongCommand);
+                }
+                break;
             case "exit":
                 if (command.length == 1) {
                     sendToListener("Exiting the program. Goodbye!!!");
@@ -247,9 +462,8 @@ public class Client implements GameClient, Runnable {
         int move = strategy.determineMove(game.getBoard(), game.getCurrent().getMark());
         // the AI will send move -1 if there's no available moves.
         if (move != -1) {
-            // make the move of the AI by sending the move to handleMessages.
-            // as if the user sent it.
-            handleMessages("move " + game.convertMove(move));
+            // the move of the AI is legal and it is the turn of the client, so it is sent as is.
+            send("MOVE~" + move);
         }
     }
 
@@ -260,41 +474,145 @@ public class Client implements GameClient, Runnable {
      */
     @Override
     public void run() {
-        String line;
+        Command command = new Command();
         try {
-            while ((line = in.readLine()) != null) {
-                String[] command = line.split("~");
-                switch (command[0]) {
-                    case "LOGIN":
+            while (in.next(command)) {
+                switch (command.getOpcode()) {
+                    case HELLO:
+                        if (command.length() == 3 && command.argumentEquals(2, BinaryCodec.HELLO_OPTION)) {
+                            synchronized (this) {
+                                binary = true;
+                                in.setBinary(true);
+                            }
+                        }
+                        handshake.countDown();
+                        if (redirected) {
+                            redirected = false;
+                            send("LOGIN~" + username);
+                            send("QUEUE");
+                        }
+                        break;
+                    case REDIRECT:
+                        if (command.length() == 3 && command.isInt(2)) {
+                            redirect(command.argument(1), command.intArgument(2));
+                        }
+                        break;
+                    case ERROR:
+                        if (handshake.getCount() > 0) {
+                            // the server does not know the binary option, so do the handshake in text.
+                            out.println("HELLO~Othello Client");
+                        } else if (command.length() > 1) {
+                            sendToListener("Server error: " + command.argument(1));
+                            replied(command.getOpcode());
+                        }
+                        break;
+                    case PING:
+                        send("PONG");
+                        break;
+                    case PONG:
+                        break;
+                    case LOGIN:
                         sendToListener("Welcome " + this.username + " to the server.\n\n");
                         isLogged = true;
+                        replied(command.getOpcode());
                         break;
-                    case "ALREADYLOGGEDIN":
+                    case ALREADYLOGGEDIN:
                         sendToListener("The username " + this.username + " is already used. Please try another username.");
+                        replied(command.getOpcode());
                         break;
-                    case "LIST" :
+                    case LIST:
                         String list = "Connected users in the server: ";
-                        for (int i = 1; i < command.length; i++) {
+                        for (int i = 1; i < command.length(); i++) {
                             if (i == 1) {
-                                list += command[i];
+                                list += command.argument(i);
                             } else {
-                                list += "~" + command[i];
+                                list += "~" + command.argument(i);
                             }
                         }
                         sendToListener(list);
+                        replied(command.getOpcode());
+                        break;
+                    case LISTPAGE:
+                        // LISTPAGE~version~total~offset~name1~name2~...
+                        StringBuilder page = new StringBuilder("Connected users in the server (");
+                        int first = command.intArgument(3);
+                        int last = first + command.length() - 4;
+                        page.append(last > first ? (first + 1) + "-" + last : "none").append(" of ")
+                                .append(command.argument(2)).append("): ");
+                        for (int i = 4; i < command.length(); i++) {
+                            page.append(i == 4 ? "" : "~").append(command.argument(i));
+                        }
+                        sendToListener(page.toString());
+                        replied(command.getOpcode());
+                        break;
+                    case PRESENCE:
+                        if (command.argumentEquals(1, "JOIN")) {
+                            sendToListener("User " + command.argument(2) + " joined the server.");
+                        } else {
+                            sendToListener("User " + command.argument(2) + " left the server.");
+                        }
                         break;
-                    case "NEWGAME":
-                        if (command[1].equals(this.username)) {
-                            clientPlayer = new Player(command[1], Mark.BLACK);
-                            opponent = new Player(command[2], Mark.WHITE);
-                            game = new OthelloGame(clientPlayer, opponent);
+                    case GAMES:
+                        // GAMES~id~black~white~id~black~white...
+                        StringBuilder games = new StringBuilder("Games being played:");
+                        for (int i = 1; i + 2 < command.length(); i += 3) {
+                            games.append("\n  ").append(command.argument(i)).append(": ")
+                                    .append(command.argument(i + 1)).append(" vs ").append(command.argument(i + 2));
+                        }
+                        sendToListener(command.length() > 1 ? games.toString() : "No games are being played.");
+                        replied(command.getOpcode());
+                        break;
+                    case RATING:
+                        // RATING~username~rating~rank~players~wins~draws~losses
+                        sendToListener(command.argument(1) + " has a rating of " + command.argument(2) + " (rank "
+                                + command.argument(3) + " of " + command.argument(4) + ", " + command.argument(5)
+                                + " wins, " + command.argument(6) + " draws, " + command.argument(7) + " losses).");
+                        replied(command.getOpcode());
+                        break;
+                    case TOP:
+                        // TOP~username~rating~username~rating...
+                        StringBuilder top = new StringBuilder("Highest ratings:");
+                        for (int i = 1; i + 1 < command.length(); i += 2) {
+                            top.append("\n  ").append((i + 1) / 2).append(". ").append(command.argument(i))
+                                    .append(" ").append(command.argument(i + 1));
+                        }
+                        sendToListener(command.length() > 1 ? top.toString() : "Nobody has played a rated game yet.");
+                        replied(command.getOpcode());
+                        break;
+                    case BOARD:
+                        // BOARD~id~black~white~black fields~white fields~player to move
+                        Player black = new Player(command.argument(2), Mark.BLACK);
+                        Player white = new Player(command.argument(3), Mark.WHITE);
+                        watched = new OthelloGame(black, white, new SnapshotConfiguration(
+                                Long.parseLong(command.argument(4)), Long.parseLong(command.argument(5))));
+                        if (command.argumentEquals(6, white.getUsername())) {
+                            watched.pass();
+                        }
+                        sendToListener("\nWatching game " + command.argument(1) + ": " + black.getUsername() + " "
+                                + watched.getMarkChar(Mark.BLACK) + " vs " + white.getUsername() + " "
+                                + watched.getMarkChar(Mark.WHITE));
+                        renderer = ansi ? new BoardRenderer(watched) : null;
+                        sendToListener(renderer != null ? renderer.render() : watched.update());
+                        replied(command.getOpcode());
+                        break;
+                    case NEWGAME:
+                        watched = null;
+                        renderer = null;
+                        // the binary protocol can send the board to start from.
+                        BoardConfiguration configuration = command.hasSnapshot()
+                                ? new SnapshotConfiguration(command.getBlack(), command.getWhite())
+                                : new DefaultConfiguration();
+                        if (command.argument(1).equals(this.username)) {
+                            clientPlayer = new Player(command.argument(1), Mark.BLACK);
+                            opponent = new Player(command.argument(2), Mark.WHITE);
+                            game = new OthelloGame(clientPlayer, opponent, configuration);
                         } else {
-                            clientPlayer = new Player(command[2], Mark.WHITE);
-                            opponent = new Player(command[1], Mark.BLACK);
-                            game = new OthelloGame(opponent, clientPlayer);
+                            clientPlayer = new Player(command.argument(2), Mark.WHITE);
+                            opponent = new Player(command.argument(1), Mark.BLACK);
+                            game = new OthelloGame(opponent, clientPlayer, configuration);
                         }
-                        sendToListener("\nNew Game: " + command[1] + " " + game.getMarkChar(game.getPlayers()[0].getMark()) +
-                                " vs " + command[2] + " " + game.getMarkChar(game.getPlayers()[1].getMark()));
+                        sendToListener("\nNew Game: " + command.argument(1) + " " + game.getMarkChar(game.getPlayers()[0].getMark()) +
+                                " vs " + command.argument(2) + " " + game.getMarkChar(game.getPlayers()[1].getMark()));
                         sendToListener(game.getCurrent().getUsername() + " " + game.getMarkChar(game.getCurrent().getMark()) + " may start the game.");
                         sendToListener(game.update());
                         if (game.getCurrent() == clientPlayer) {
@@ -307,9 +625,21 @@ public class Client implements GameClient, Runnable {
                         } else {
                             sendToListener("Waiting for your opponent's move...");
                         }
+                        replied(command.getOpcode());
                         break;
-                    case "MOVE":
-                        if (Integer.parseInt(command[1]) == 64 && game.getCurrent() == opponent) {
+                    case MOVE:
+                        if (game == null) {
+                            if (watched != null && renderer != null) {
+                                watched.makeMove(command.intArgument(1));
+                                sendToListener(renderer.render());
+                            } else if (watched != null) {
+                                sendToListener("\nPlayer " + watched.getCurrent().getUsername() + " made a move.");
+                                watched.makeMove(command.intArgument(1));
+                                sendToListener(watched.update());
+                            }
+                            break;
+                        }
+                        if (command.intArgument(1) == 64 && game.getCurrent() == opponent) {
                             sendToListener("\nPlayer " + opponent.getUsername() + " doesn't have any legal moves. His turn is passed to you.");
                         } else if (game.getCurrent().getUsername().equals(clientPlayer.getUsername())) {
                             if (isAI) {
@@ -320,14 +650,14 @@ public class Client implements GameClient, Runnable {
                             sendToListener("\nPlayer " + opponent.getUsername() + " made his move.");
                             sendToListener("Current board:");
                         }
-                        game.makeMove(Integer.parseInt(command[1]));
+                        game.makeMove(command.intArgument(1));
                         sendToListener(game.update());
                         if (game.getCurrent() == clientPlayer) {
                             //checks if the player doesn't have possible moves, but the opponent does.
                             if (game.getBoard().possibleMoves(clientPlayer.getMark()).isEmpty() &&
                                     !game.getBoard().possibleMoves(opponent.getMark()).isEmpty()) {
                                 sendToListener("You don't have any possible moves. Your turn is passed to the opponent.");
-                                out.println("MOVE~64"); //automatically send to the server move 64
+                                send("MOVE~64"); //automatically send to the server move 64
                             } else if (isAI) {
                                 processMoveAI();
                             } else {
@@ -337,38 +667,61 @@ public class Client implements GameClient, Runnable {
                         } else {
                             sendToListener("Waiting for your opponent's move...");
                         }
+                        // the GAMEOVER that follows the last move is the reply too.
+                        if (!game.getBoard().gameOver()) {
+                            replied(command.getOpcode());
+                        }
                         break;
-                    case "GAMEOVER":
-                        switch (command[1]) {
+                    case GAMEOVER:
+                        if (game == null) {
+                            if (watched != null && command.argumentEquals(1, "DRAW")) {
+                                sendToListener("\nGAMEOVER: The game you watched is a draw!");
+                            } else if (watched != null) {
+                                sendToListener("\nGAMEOVER: Player " + command.argument(2) + " has won the game"
+                                        + (command.argumentEquals(1, "DISCONNECT")
+                                        ? " because the opponent disconnected!"
+                                        : command.argumentEquals(1, "TIMEOUT") ? " because the opponent ran out of time!" : "."));
+                            }
+                            watched = null;
+                            renderer = null;
+                            break;
+                        }
+                        switch (command.argument(1)) {
                             case "DRAW":
                                 sendToListener("\nGAMEOVER: It's a draw!");
                                 break;
                             case "VICTORY":
                                 Mark winner = game.getBoard().getWinner();
                                 Mark loser = game.getBoard().getWinner().other();
-                                sendToListener("\nGAMEOVER: Player " + command[2] + " " + game.getMarkChar(winner) + " has won the game.\n" +
+                                sendToListener("\nGAMEOVER: Player " + command.argument(2) + " " + game.getMarkChar(winner) + " has won the game.\n" +
                                         "SCORE: " + game.getMarkChar(winner) + " " + game.getBoard().getScore(winner)
                                         + " vs " + game.getMarkChar(loser) + " " + game.getBoard().getScore(loser));
                                 break;
                             case "DISCONNECT":
                                 Mark win;
                                 //check which mark won by disconnect
-                                if (game.getPlayers()[0].getUsername().equals(command[2])) {
+                                if (game.getPlayers()[0].getUsername().equals(command.argument(2))) {
                                     win = game.getPlayers()[0].getMark();
                                 } else {
                                     win = game.getPlayers()[1].getMark();
                                 }
-                                sendToListener("\nGAMEOVER: Player " + command[2] + " " + game.getMarkChar(win) + " has won the game because the opponent disconnected!");
+                                sendToListener("\nGAMEOVER: Player " + command.argument(2) + " " + game.getMarkChar(win) + " has won the game because the opponent disconnected!");
+                                break;
+                            case "TIMEOUT":
+                                Mark timeWinner = game.getPlayers()[0].getUsername().equals(command.argument(2))
+                                        ? game.getPlayers()[0].getMark() : game.getPlayers()[1].getMark();
+                                sendToListener("\nGAMEOVER: Player " + command.argument(2) + " " + game.getMarkChar(timeWinner) + " has won the game because the opponent ran out of time!");
                                 break;
                             default:
-                                out.println("ERROR~Wrong command received.");
+                                send("ERROR~Wrong command received.");
                         }
                         // after game over, reset the queue and the game fields.
                         queue = false;
                         game = null;
+                        replied(command.getOpcode());
                         break;
                     default:
-                        out.println("ERROR~Wrong command received.");
+                        send("ERROR~Wrong command received.");
                 }
             }
             sendToListener("Server crash!!!.");
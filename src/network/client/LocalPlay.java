@@ -0,0 +1,335 @@
+package network.client;
+
+import exceptions.IllegalMoveException;
+import exceptions.InvalidFieldException;
+import game.Mark;
+import game.OthelloGame;
+import game.Player;
+import game.SnapshotConfiguration;
+import network.client.fleet.SearchEngine;
+import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Plays Othello without a server, directly on an OthelloGame: a human against the engine, the engine against
+ * itself or two humans on one console. Moves can be taken back and played again, any position can be set up,
+ * and the engine can analyze a position, showing its best line every time it searched one level deeper.
+ * The engine is the SearchEngine of the bot fleet, on one thread.
+ */
+public class LocalPlay {
+    public static final int DEFAULT_DEPTH = 12;
+    public static final long DEFAULT_TIME = 1000; // milliseconds per move of the engine.
+    private static final int ANALYSIS_DEPTH = 60;
+
+    private final Scanner sc;
+    private final SearchEngine engine;
+    private final Player black;
+    private final Player white;
+    private OthelloGame game;
+    private boolean engineBlack;
+    private boolean engineWhite;
+    private int depth;
+    private long time;
+
+    /**
+     * Constructs a local game from the starting position, in which nobody is played by the engine.
+     * @param sc the scanner of the console.
+     */
+    public LocalPlay(Scanner sc) {
+        this.sc = sc;
+        this.engine = new SearchEngine(1, 64);
+        this.black = new Player("Black", Mark.BLACK);
+        this.white = new Player("White", Mark.WHITE);
+        this.game = new OthelloGame(black, white);
+        this.depth = DEFAULT_DEPTH;
+        this.time = DEFAULT_TIME;
+    }
+
+    /**
+     * Returns the help menu of the local mode.
+     * @return the menu with all the available commands.
+     */
+    private static String menu() {
+        return "List of available commands: \n"
+                + "-move A/a                       - Play the move with that letter on the board.\n"
+                + "-undo / redo                    - Take back the last move, or play a move that was taken back again.\n"
+                + "-goto n                         - Go to the position after n moves and passes, taking back or playing again.\n"
+                + "-moves                          - Print the moves of the game, a star after the current one.\n"
+                + "-engine black/white/both/none   - Choose which colors the engine plays. It moves as soon as it is its turn.\n"
+                + "-go                             - Let the engine play one move for the player to move.\n"
+                + "-depth n / time ms              - The deepest search of the engine (12) and its time per move in milliseconds (1000).\n"
+                + "-analyze                        - Analyze the position: the engine shows its best line after every depth. Press Enter to stop.\n"
+                + "-setup fields black/white       - Set up a position: 64 characters, b for black, w for white and - for empty,\n"
+                + "                                  row by row from the top left, followed by the color to move.\n"
+                + "-new                            - Start again from the starting position.\n"
+                + "-board                          - Print the board.\n"
+                + "-help                           - Print the help menu.\n"
+                + "-exit                           - Exit the program.\n";
+    }
+
+    /**
+     * Returns the name of a field as a column letter and a row number, like d3.
+     * @param field the field, 64 for a pass.
+     * @return the name of the field.
+     */
+    static String square(int field) {
+        if (field == OthelloGame.PASS) {
+            return "pass";
+        }
+        return (char) ('a' + field % 8) + String.valueOf(field / 8 + 1);
+    }
+
+    /**
+     * Reads and runs commands until the user exits.
+     */
+    public void run() {
+        System.out.println("Local game without a server. Type 'help' for the commands.");
+        System.out.println(menu());
+        advance();
+        while (true) {
+            System.out.print("Command: ");
+            String[] command = sc.nextLine().trim().split("\\s+");
+            switch (command[0]) {
+                case "move":
+                    if (command.length == 2 && game.convertMove(command[1]) != -1) {
+                        play(game.convertMove(command[1]));
+                        advance();
+                    } else {
+                        System.out.println("Invalid move. Please choose a valid move.");
+                    }
+                    break;
+                case "undo":
+                    undo();
+                    break;
+                case "redo":
+                    redo();
+                    break;
+                case "goto":
+                    if (command.length == 2 && command[1].matches("\\d{1,3}")
+                            && Integer.parseInt(command[1]) <= game.getPlies()) {
+                        game.goTo(Integer.parseInt(command[1]));
+                        System.out.print(game.update());
+                    } else {
+                        System.out.println("Use: goto n, with n from 0 to " + game.getPlies());
+                    }
+                    break;
+                case "moves":
+                    System.out.println(moves());
+                    break;
+                case "engine":
+                    if (command.length == 2 && command[1].matches("black|white|both|none")) {
+                        engineBlack = command[1].equals("black") || command[1].equals("both");
+                        engineWhite = command[1].equals("white") || command[1].equals("both");
+                        advance();
+                    } else {
+                        System.out.println("Use: engine black/white/both/none");
+                    }
+                    break;
+                case "go":
+                    if (!game.getBoard().gameOver()) {
+                        play(search());
+                    }
+                    advance();
+                    break;
+                case "depth":
+                    if (command.length == 2 && command[1].matches("\\d{1,2}") && Integer.parseInt(command[1]) > 0) {
+                        depth = Integer.parseInt(command[1]);
+                    } else {
+                        System.out.println("Use: depth n, with n from 1 to 99");
+                    }
+                    break;
+                case "time":
+                    if (command.length == 2 && command[1].matches("\\d{1,9}")) {
+                        time = Long.parseLong(command[1]);
+                    } else {
+                        System.out.println("Use: time milliseconds");
+                    }
+                    break;
+                case "analyze":
+                    analyze();
+                    break;
+                case "setup":
+                    if (command.length == 3 && command[1].matches("[bw-]{64}") && command[2].matches("black|white")) {
+                        setup(command[1], command[2].equals("black"));
+                    } else {
+                        System.out.println("Use: setup <64 characters b, w or -> black/white");
+                    }
+                    break;
+                case "new":
+                    game = new OthelloGame(black, white);
+                    advance();
+                    break;
+                case "board":
+                    System.out.print(game.update());
+                    break;
+                case "help":
+                    System.out.println(menu());
+                    break;
+                case "exit":
+                    engine.shutdown();
+                    System.out.println("Exiting the program. Goodbye!!!");
+                    return;
+                default:
+                    System.out.println("Unavailable command. Check help menu.");
+            }
+        }
+    }
+
+    /**
+     * Lets the engine play while it is its turn and passes for a player without moves, then prints the board.
+     */
+    private void advance() {
+        while (!game.getBoard().gameOver()) {
+            Mark mark = game.getCurrent().getMark();
+            if (!game.getBoard().hasMoves(mark)) {
+                System.out.println(game.getCurrent().getUsername() + " has no moves and passes.");
+                play(OthelloGame.PASS);
+            } else if (mark == Mark.BLACK ? engineBlack : engineWhite) {
+                System.out.print(game.update());
+                play(search());
+            } else {
+                break;
+            }
+        }
+        System.out.print(game.update());
+        if (game.getBoard().gameOver()) {
+            int blackScore = game.getBoard().getScore(Mark.BLACK);
+            int whiteScore = game.getBoard().getScore(Mark.WHITE);
+            System.out.println("GAMEOVER: " + (blackScore == whiteScore ? "It's a draw!"
+                    : (blackScore > whiteScore ? "Black" : "White") + " has won the game.")
+                    + " SCORE: " + blackScore + " vs " + whiteScore);
+        } else {
+            System.out.println(game.getCurrent().getUsername() + " " + game.getMarkChar(game.getCurrent().getMark())
+                    + " to move.");
+        }
+    }
+
+    /**
+     * Plays a move; the game forgets the moves that were taken back.
+     * @param move the field of the move, 64 for a pass.
+     */
+    private void play(int move) {
+        try {
+            game.makeMove(move);
+        } catch (IllegalMoveException | InvalidFieldException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Takes back the last move, and the moves of the engine and the passes before it,
+     * so it is the turn of a human again. When the engine plays both colors, one move is taken back.
+     */
+    private void undo() {
+        if (!game.undo()) {
+            System.out.println("There is no move to take back.");
+            return;
+        }
+        while (game.getPly() > 0 && !(engineBlack && engineWhite)
+                && ((game.getCurrent() == black ? engineBlack : engineWhite)
+                || !game.getBoard().hasMoves(game.getCurrent().getMark()))) {
+            game.undo();
+        }
+        System.out.print(game.update());
+    }
+
+    /**
+     * Plays the last move that was taken back again, without letting the engine move.
+     */
+    private void redo() {
+        if (!game.redo()) {
+            System.out.println("There is no move to play again.");
+            return;
+        }
+        System.out.print(game.update());
+    }
+
+    /**
+     * Returns the moves of the game, numbered, with a star after the move that was played last.
+     * @return the moves, including the ones that were taken back.
+     */
+    private String moves() {
+        if (game.getPlies() == 0) {
+            return "No moves were played.";
+        }
+        StringBuilder moves = new StringBuilder();
+        for (int i = 0; i < game.getPlies(); i++) {
+            moves.append(i + 1).append(". ").append(square(game.getMove(i))).append(i + 1 == game.getPly() ? "* " : " ");
+        }
+        return moves.toString().trim();
+    }
+
+    /**
+     * Sets up a position and forgets the moves before it.
+     * @param fields 64 characters: b for black, w for white and - for empty.
+     * @param blackToMove whether black moves first.
+     */
+    private void setup(String fields, boolean blackToMove) {
+        long blackFields = 0;
+        long whiteFields = 0;
+        for (int i = 0; i < 64; i++) {
+            if (fields.charAt(i) == 'b') {
+                blackFields |= 1L << i;
+            } else if (fields.charAt(i) == 'w') {
+                whiteFields |= 1L << i;
+            }
+        }
+        game = new OthelloGame(black, white, new SnapshotConfiguration(blackFields, whiteFields));
+        if (!blackToMove) {
+            game.pass();
+        }
+        advance();
+    }
+
+    /**
+     * Searches the move of the player to move with the depth and time of the engine.
+     * @return the field of the move, 64 to pass.
+     */
+    private int search() {
+        Mark mark = game.getCurrent().getMark();
+        if (!game.getBoard().hasMoves(mark)) {
+            return OthelloGame.PASS;
+        }
+        CompletableFuture<Integer> move = new CompletableFuture<>();
+        long started = System.nanoTime();
+        engine.search(game.getBoard().getBits(mark), game.getBoard().getBits(mark.other()), depth,
+                time * 1_000_000, move::complete);
+        try {
+            int field = move.get();
+            System.out.printf("The engine plays %s for %s (%d ms).%n", square(field),
+                    game.getCurrent().getUsername(), (System.nanoTime() - started) / 1_000_000);
+            return field;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.out.println("The engine failed: " + e.getCause());
+        }
+        return OthelloGame.PASS;
+    }
+
+    /**
+     * Analyzes the position until the user presses Enter: every complete depth prints its score and best line.
+     */
+    private void analyze() {
+        Mark mark = game.getCurrent().getMark();
+        if (game.getBoard().gameOver() || !game.getBoard().hasMoves(mark)) {
+            System.out.println("There is nothing to analyze: the player to move has no moves.");
+            return;
+        }
+        System.out.println("Analyzing for " + game.getCurrent().getUsername() + ". Press Enter to stop.");
+        Future<?> analysis = engine.analyze(game.getBoard().getBits(mark), game.getBoard().getBits(mark.other()),
+                ANALYSIS_DEPTH, (reached, score, line, nodes, nanos) -> {
+                    StringBuilder moves = new StringBuilder();
+                    for (int field : line) {
+                        moves.append(' ').append(square(field));
+                    }
+                    System.out.printf("depth %2d  score %-12s nodes %,12d  %7.2f s %s%n", reached,
+                            SearchEngine.describe(score), nodes, nanos / 1e9, moves);
+                });
+        sc.nextLine();
+        analysis.cancel(true);
+        System.out.println("Analysis stopped.");
+    }
+}
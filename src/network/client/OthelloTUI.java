@@ -4,6 +4,9 @@ import exceptions.FailedConnection;
 import exceptions.InvalidUsername;
 
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * The main Othello game class. It implements the GameListener interface.
@@ -11,8 +14,23 @@ import java.util.Scanner;
  * the possibility to connect to the server as a client.
  */
 public class OthelloTUI implements GameListener {
+    private static final int REPLY_TIMEOUT = 5; // seconds to wait for a reply before the prompt is shown anyway.
     private static Client client;
 
+    /**
+     * Waits until the server answered the last command, so the prompt is shown right after the reply.
+     * A reply that takes too long is not waited for; it is shown when it arrives.
+     */
+    private static void awaitReply() {
+        try {
+            client.getReply().get(REPLY_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ignored) {
+
+        }
+    }
+
     /**
      * Returns the help menu with all the available commands.
      * @return the menu with all the available commands.
@@ -20,7 +38,14 @@ public class OthelloTUI implements GameListener {
     private static String menu() {
         return  "List of available commands: \n"
                 + "-list                           - List of connected users in the server separated by ~.\n"
+                + "-list offset limit              - List at most limit connected users, starting from the user at position offset.\n"
+                + "-list subscribe/unsubscribe     - Get notified (or stop getting notified) when users join or leave the server.\n"
+                + "-games                          - List of the games that are being played, with their ids.\n"
+                + "-watch id                       - Watch the game with that id. Use unwatch to stop watching.\n"
+                + "-rating [username]              - Your rating (or that of another user), with the rank and the wins, draws and losses.\n"
+                + "-top [n]                        - The n users with the highest ratings (10 by default, at most 100).\n"
                 + "-queue                          - Adds you to the queue to play a game. If used again, removes you from the queue. \n"
+                + "-challenge bot                  - Play a game against a bot of the server: NaiveBot, LimitingBot, FieldValueBot, StackBot or MiniMaxBot.\n"
                 + "-move A/a                       - Make your move in the game: A/a - letter where you want to place your mark.\n"
                 + "                                  You will see all available moves represented as letters on the board. Make a move with one of the letters. \n"
                 + "                                  You can use both lowercase and uppercase letters to make your move. \n"
@@ -49,8 +74,12 @@ public class OthelloTUI implements GameListener {
         Scanner sc = new Scanner(System.in);
         boolean connection = false;
         while (!connection) { //repeatedly ask for address and port until a connection can be established.
-            System.out.print("Please provide an IP address or hostname (leave blank for localhost):");
+            System.out.print("Please provide an IP address or hostname (leave blank for localhost, 'local' to play without a server):");
             String address = sc.nextLine();
+            if (address.equals("local")) {
+                new LocalPlay(sc).run();
+                System.exit(0);
+            }
             if (address.equals("")) {
                 address = "localhost"; //default address is localhost
             }
@@ -77,6 +106,14 @@ public class OthelloTUI implements GameListener {
             }
 
             client = new Client(); // create a new client for the user
+            // bots and scripts can ask for the compact binary protocol with -Dothello.protocol=binary
+            if ("binary".equalsIgnoreCase(System.getProperty("othello.protocol"))) {
+                client.requestBinaryProtocol();
+            }
+            // with -Dothello.ansi=true a watched game is updated in place instead of printed again after every move
+            if (Boolean.getBoolean("othello.ansi")) {
+                client.useAnsi();
+            }
 
             try {
                 client.connect(address, port);
@@ -96,12 +133,7 @@ public class OthelloTUI implements GameListener {
             } catch (InvalidUsername e) {
                 System.out.println(e.getMessage());
             }
-            // wait a little time to receive the message from server
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                System.out.println(e.getMessage());
-            }
+            awaitReply();
         }
         //Print the welcome message and the help menu
         String welcome = "-".repeat(80) + "Welcome to the Othello Game Server!!!" + "-".repeat(80);
@@ -118,12 +150,8 @@ public class OthelloTUI implements GameListener {
             } else {
                 client.handleMessages(line);
             }
-            // wait a little time to receive the message from server, then type Command: prompt
-            try {
-                Thread.sleep(500);
-            } catch (InterruptedException e) {
-                System.out.println(e.getMessage());
-            }
+            // wait for the reply of the server, then type Command: prompt
+            awaitReply();
             System.out.print("Command: ");
         }
     }
@@ -131,7 +159,7 @@ public class OthelloTUI implements GameListener {
     @Override
     public void messageReceived(String message) {
         System.out.println(message);
-        if (message.contains("GAMEOVER") && message.contains("disconnected")) {
+        if (message.contains("GAMEOVER") && (message.contains("disconnected") || message.contains("ran out of time"))) {
             System.out.print("Command: ");
         }
     }
@@ -0,0 +1,189 @@
+package network.client.fleet;
+
+import network.client.load.EventLoop;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A headless host for many bot accounts in one JVM. The bots are multiplexed over a few EventLoop threads,
+ * and the bots that search share one SearchEngine: a fixed pool of threads and one TranspositionTable.
+ * A bot that loses its connection connects again; the process only stops when it is killed.
+ * Every interval it prints how many bots are logged in and the counters of the fleet and the engine.
+ * It is configured with system properties:
+ * <pre>
+ * -Dothello.fleet.host=localhost    the address of the server.
+ * -Dothello.fleet.port=44444        the port of the server.
+ * -Dothello.fleet.bots=&lt;file&gt;       the bots, one "username strategy" per line; lines starting with # are skipped.
+ *                                   The strategy is random, first, greedy or corners (see BotStrategies), or
+ *                                   search[:depth[:milliseconds]] to search on the engine, like search:6:200.
+ * -Dothello.fleet.count=10          without a file: the amount of bots, named prefix0, prefix1, ...
+ * -Dothello.fleet.prefix=fleet      without a file: the prefix of the usernames.
+ * -Dothello.fleet.strategy=search   without a file: the strategy of every bot.
+ * -Dothello.fleet.loops=1           the amount of event loops.
+ * -Dothello.fleet.threads=n         the threads of the engine, half of the processors by default.
+ * -Dothello.fleet.table=64          the megabytes of the transposition table.
+ * -Dothello.fleet.rampup=50         the amount of bots that connect per second, 0 to connect all at once.
+ * -Dothello.fleet.interval=10       the seconds between two status lines.
+ * -Dothello.fleet.protocol=text     text or binary.
+ * </pre>
+ */
+public class BotFleet {
+    private final String host;
+    private final int port;
+    private final boolean binary;
+    private final List<BotProfile> profiles;
+    private final int loops;
+    private final int rampup;
+    private final long interval; // seconds
+    private final SearchEngine engine;
+    private final FleetStats stats;
+
+    /**
+     * Constructs a fleet from the system properties.
+     * @throws IllegalArgumentException if a property or a line of the file has an invalid value.
+     * @throws IOException if the file of the bots cannot be read.
+     */
+    public BotFleet() throws IOException {
+        this.host = System.getProperty("othello.fleet.host", "localhost");
+        this.port = Integer.getInteger("othello.fleet.port", 44444);
+        this.binary = "binary".equalsIgnoreCase(System.getProperty("othello.fleet.protocol"));
+        this.profiles = readProfiles();
+        this.loops = Math.max(1, Integer.getInteger("othello.fleet.loops", 1));
+        this.rampup = Integer.getInteger("othello.fleet.rampup", 50);
+        this.interval = Math.max(1, Long.getLong("othello.fleet.interval", 10));
+        this.engine = new SearchEngine(Math.max(1, Integer.getInteger("othello.fleet.threads",
+                Runtime.getRuntime().availableProcessors() / 2)), Integer.getInteger("othello.fleet.table", 64));
+        this.stats = new FleetStats();
+    }
+
+    /**
+     * Reads the profiles of the bots from the file of -Dothello.fleet.bots, or makes them from the count,
+     * prefix and strategy.
+     * @return the profiles.
+     * @throws IOException if the file cannot be read.
+     */
+    private static List<BotProfile> readProfiles() throws IOException {
+        List<BotProfile> profiles = new ArrayList<>();
+        String file = System.getProperty("othello.fleet.bots");
+        if (file == null) {
+            String prefix = System.getProperty("othello.fleet.prefix", "fleet");
+            String strategy = System.getProperty("othello.fleet.strategy", "search");
+            int count = Integer.getInteger("othello.fleet.count", 10);
+            for (int i = 0; i < count; i++) {
+                profiles.add(BotProfile.parse(prefix + i, strategy));
+            }
+            return profiles;
+        }
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] words = trimmed.split("\\s+");
+            if (words.length != 2) {
+                throw new IllegalArgumentException("Expected \"username strategy\": " + line);
+            }
+            profiles.add(BotProfile.parse(words[0], words[1]));
+        }
+        return profiles;
+    }
+
+    /**
+     * Returns the address of the server.
+     * @return the host name or IP address.
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Returns the port of the server.
+     * @return the port.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Returns whether the bots ask for the binary protocol.
+     * @return true if the binary protocol is used.
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Returns the engine that the searching bots share.
+     * @return the engine.
+     */
+    public SearchEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Returns the counters of the fleet.
+     * @return the stats.
+     */
+    public FleetStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Runs the fleet until the process is stopped: starts the event loops and prints the status every interval.
+     * @throws IOException if a selector cannot be opened.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void run() throws IOException, InterruptedException {
+        EventLoop[] running = new EventLoop[loops];
+        for (int i = 0; i < loops; i++) {
+            running[i] = new EventLoop(i);
+        }
+        List<FleetBot> bots = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < profiles.size(); i++) {
+            long connectAt = rampup > 0 ? start + i * 1_000_000_000L / rampup : start;
+            bots.add(new FleetBot(this, running[i % loops], profiles.get(i), connectAt));
+        }
+        Thread[] threads = new Thread[loops];
+        for (int i = 0; i < loops; i++) {
+            threads[i] = new Thread(running[i], "fleet-loop-" + i);
+            threads[i].start();
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (EventLoop loop : running) {
+                loop.stop();
+            }
+            engine.shutdown();
+        }, "fleet-shutdown"));
+        System.out.println("Fleet of " + bots.size() + " bots for " + host + ":" + port + " on " + loops
+                + " event loops (" + (binary ? "binary" : "text") + " protocol).");
+        while (true) {
+            Thread.sleep(interval * 1000);
+            int loggedIn = 0;
+            for (FleetBot bot : bots) {
+                if (bot.isLoggedIn()) {
+                    loggedIn++;
+                }
+            }
+            System.out.println(stats.format(loggedIn, bots.size()) + "; " + engine.status());
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            new BotFleet().run();
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.exit(-1);
+        } catch (IOException e) {
+            System.out.println("Could not start the fleet: " + e.getMessage());
+            System.exit(-1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
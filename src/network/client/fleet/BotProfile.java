@@ -0,0 +1,96 @@
+package network.client.fleet;
+
+import network.client.load.BotStrategies;
+import network.client.load.BotStrategy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The account and strategy of one bot of a BotFleet. A bot either plays a cheap BotStrategy on the thread of its
+ * event loop, or searches its moves on the shared SearchEngine up to a depth and within a time budget per move.
+ */
+public class BotProfile {
+    public static final int DEFAULT_DEPTH = 8;
+    public static final long DEFAULT_BUDGET = 500; // milliseconds per move.
+
+    private final String username;
+    private final BotStrategy strategy; // null for a bot that searches.
+    private final int depth;
+    private final long budget; // nanoseconds
+
+    /**
+     * Constructs a profile.
+     * @param username the username of the bot.
+     * @param strategy the strategy of the bot, null to search on the engine.
+     * @param depth the deepest search.
+     * @param budget the milliseconds that a search may take.
+     */
+    public BotProfile(String username, BotStrategy strategy, int depth, long budget) {
+        this.username = username;
+        this.strategy = strategy;
+        this.depth = depth;
+        this.budget = TimeUnit.MILLISECONDS.toNanos(budget);
+    }
+
+    /**
+     * Returns the profile of a strategy in the format of the fleet file: random, first, greedy or corners
+     * (see BotStrategies), or search with an optional depth and time budget, like search:6:200.
+     * @param username the username of the bot.
+     * @param strategy the strategy.
+     * @return the profile.
+     * @throws IllegalArgumentException if the strategy is not known or the numbers are not valid.
+     */
+    public static BotProfile parse(String username, String strategy) {
+        if (username.isEmpty() || username.contains("~")) {
+            throw new IllegalArgumentException("Invalid username: " + username);
+        }
+        String[] parts = strategy.trim().split(":");
+        if (!parts[0].equalsIgnoreCase("search")) {
+            if (parts.length > 1) {
+                throw new IllegalArgumentException("Only search has a depth and time: " + strategy);
+            }
+            return new BotProfile(username, BotStrategies.parse(parts[0]), 0, 0);
+        }
+        try {
+            int depth = parts.length > 1 ? Integer.parseInt(parts[1]) : DEFAULT_DEPTH;
+            long budget = parts.length > 2 ? Long.parseLong(parts[2]) : DEFAULT_BUDGET;
+            if (depth < 1 || depth > 60 || budget < 0 || parts.length > 3) {
+                throw new IllegalArgumentException("Invalid search: " + strategy);
+            }
+            return new BotProfile(username, null, depth, budget);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid search: " + strategy);
+        }
+    }
+
+    /**
+     * Returns the username of the bot.
+     * @return the username.
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns the cheap strategy of the bot.
+     * @return the strategy, or null if the bot searches on the engine.
+     */
+    public BotStrategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Returns the deepest search of the bot.
+     * @return the depth.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the time that the bot may search for one move.
+     * @return the budget in nanoseconds.
+     */
+    public long getBudget() {
+        return budget;
+    }
+}
@@ -0,0 +1,458 @@
+package network.client.fleet;
+
+import game.Bitboards;
+import network.client.load.EventLoop;
+import network.client.load.LoopClient;
+import network.protocol.BinaryCodec;
+import network.protocol.Command;
+import network.protocol.Frame;
+import network.protocol.Frames;
+import network.protocol.MalformedFrameException;
+import network.protocol.ProtocolCodec;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * One bot account of a BotFleet on a non-blocking connection. It logs in, queues, plays its game and queues
+ * again after every GAMEOVER, for as long as the fleet runs. A lost connection is not the end of the bot:
+ * it connects and logs in again after a delay that doubles with every failed attempt, up to a minute.
+ * All methods are called by the thread of its EventLoop; moves that are searched on the SearchEngine
+ * come back to that thread with EventLoop.execute.
+ */
+public class FleetBot implements LoopClient {
+    private static final int BUFFER_SIZE = 1024;
+    private static final long BLACK_START = 1L << 28 | 1L << 35; // the fields of the DefaultConfiguration.
+    private static final long WHITE_START = 1L << 27 | 1L << 36;
+    private static final long FIRST_RETRY = 1_000_000_000L; // nanoseconds before the first reconnect.
+    private static final long LAST_RETRY = 60_000_000_000L; // the longest delay between two reconnects.
+
+    /**
+     * What the bot is doing.
+     */
+    private enum State {
+        NEW, CONNECTING, HELLO, LOGIN, QUEUED, PLAYING, CLOSED
+    }
+
+    private final BotFleet fleet;
+    private final EventLoop loop;
+    private final BotProfile profile;
+    private final Frame login;
+    private String host; // the server of the bot, which changes when the server redirects it.
+    private int port;
+    private State state;
+    private SocketChannel channel;
+    private SelectionKey key;
+    private ByteBuffer in;
+    private ByteBuffer out; // The bytes that could not be written yet, in write mode.
+    private boolean binaryRequested;
+    private boolean binary;
+    private long wakeAt;
+    private long retry; // the delay before the next reconnect.
+    private int position; // counts the moves and games, so a search of an older position is not played.
+    private boolean searching;
+    private boolean isBlack;
+    private boolean blackToMove;
+    private long black;
+    private long white;
+
+    /**
+     * Constructs a bot that connects at the given time.
+     * @param fleet the fleet with the server, the engine and the stats.
+     * @param loop the event loop that runs the bot.
+     * @param profile the account and strategy of the bot.
+     * @param connectAt the System.nanoTime at which the bot connects.
+     */
+    public FleetBot(BotFleet fleet, EventLoop loop, BotProfile profile, long connectAt) {
+        this.fleet = fleet;
+        this.loop = loop;
+        this.profile = profile;
+        this.login = Frame.of("LOGIN~" + profile.getUsername());
+        this.host = fleet.getHost();
+        this.port = fleet.getPort();
+        this.state = State.NEW;
+        this.wakeAt = EventLoop.NOT_SCHEDULED;
+        this.retry = FIRST_RETRY;
+        this.in = ByteBuffer.allocate(BUFFER_SIZE);
+        this.out = ByteBuffer.allocate(BUFFER_SIZE);
+        loop.add(this);
+        loop.schedule(this, connectAt);
+    }
+
+    @Override
+    public long getWakeAt() {
+        return wakeAt;
+    }
+
+    @Override
+    public void setWakeAt(long wakeAt) {
+        this.wakeAt = wakeAt;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return state != State.NEW && state != State.CLOSED;
+    }
+
+    /**
+     * Returns whether the bot is logged in and queued or playing.
+     * @return true if the bot is logged in.
+     */
+    public boolean isLoggedIn() {
+        return state == State.QUEUED || state == State.PLAYING;
+    }
+
+    @Override
+    public void onTimer() {
+        if (state == State.NEW) {
+            connect();
+        }
+    }
+
+    /**
+     * Starts to connect to the server without blocking.
+     */
+    private void connect() {
+        state = State.CONNECTING;
+        binary = false;
+        binaryRequested = fleet.isBinary();
+        in.clear();
+        out.clear();
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            key = channel.register(loop.getSelector(), SelectionKey.OP_CONNECT, this);
+            if (channel.connect(new InetSocketAddress(host, port))) {
+                onConnectable();
+            }
+        } catch (IOException e) {
+            reconnect();
+        }
+    }
+
+    @Override
+    public void onConnectable() {
+        try {
+            if (channel.isConnectionPending() && !channel.finishConnect()) {
+                return;
+            }
+        } catch (IOException e) {
+            reconnect();
+            return;
+        }
+        fleet.getStats().connects.increment();
+        key.interestOps(SelectionKey.OP_READ);
+        state = State.HELLO;
+        sendHello();
+    }
+
+    /**
+     * Sends the HELLO, asking for the binary protocol if that is configured.
+     */
+    private void sendHello() {
+        send(Frames.encode(binaryRequested ? "HELLO~Othello Bot Fleet~" + BinaryCodec.HELLO_OPTION
+                : "HELLO~Othello Bot Fleet"));
+    }
+
+    @Override
+    public void onWritable() {
+        out.flip();
+        try {
+            channel.write(out);
+        } catch (IOException e) {
+            out.compact();
+            reconnect();
+            return;
+        }
+        out.compact();
+        if (out.position() == 0) {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    @Override
+    public void onReadable() {
+        int read;
+        try {
+            read = channel.read(in);
+        } catch (IOException e) {
+            reconnect();
+            return;
+        }
+        if (read < 0) {
+            reconnect();
+            return;
+        }
+        in.flip();
+        Command command = loop.getCommand();
+        try {
+            while (isOpen() && (binary ? BinaryCodec.next(in, command) : ProtocolCodec.next(in, command))) {
+                handle(command);
+            }
+        } catch (MalformedFrameException e) {
+            reconnect();
+            return;
+        }
+        if (!isOpen()) {
+            // reconnecting or redirected: what is left is from the old connection.
+            in.clear();
+            return;
+        }
+        in.compact();
+        if (!in.hasRemaining()) {
+            // a message that does not fit yet.
+            ByteBuffer larger = ByteBuffer.allocate(in.capacity() * 2);
+            in.flip();
+            larger.put(in);
+            in = larger;
+        }
+    }
+
+    /**
+     * Handles one message of the server.
+     * @param command the parsed message.
+     */
+    private void handle(Command command) {
+        switch (command.getOpcode()) {
+            case HELLO:
+                binary = binaryRequested && command.length() == 3
+                        && command.argumentEquals(2, BinaryCodec.HELLO_OPTION);
+                state = State.LOGIN;
+                send(login);
+                break;
+            case ERROR:
+                if (state == State.HELLO && binaryRequested) {
+                    // the server does not know the binary option, so do the handshake in text.
+                    binaryRequested = false;
+                    sendHello();
+                } else {
+                    fleet.getStats().errors.increment();
+                }
+                break;
+            case PING:
+                send(Frames.PONG);
+                break;
+            case LOGIN:
+                fleet.getStats().logins.increment();
+                retry = FIRST_RETRY;
+                queue();
+                break;
+            case ALREADYLOGGEDIN:
+                // the server may still hold the old connection of this account, so try again later.
+                fleet.getStats().errors.increment();
+                reconnect();
+                break;
+            case REDIRECT:
+                if (command.length() == 3 && command.isInt(2)) {
+                    redirect(command.argument(1), command.intArgument(2));
+                }
+                break;
+            case NEWGAME:
+                startGame(command);
+                break;
+            case MOVE:
+                if (state == State.PLAYING) {
+                    applyMove(command.intArgument(1));
+                }
+                break;
+            case GAMEOVER:
+                if (state == State.PLAYING) {
+                    position++;
+                    queue();
+                }
+                break;
+            default:
+        }
+    }
+
+    /**
+     * Queues for the next game.
+     */
+    private void queue() {
+        state = State.QUEUED;
+        send(Frames.QUEUE);
+    }
+
+    /**
+     * Moves to another server of a federation, which hosts the next game: the bot connects to it right away.
+     * @param newHost the host of the new server.
+     * @param newPort the port of the new server.
+     */
+    private void redirect(String newHost, int newPort) {
+        disconnect();
+        host = newHost;
+        port = newPort;
+        loop.schedule(this, System.nanoTime());
+    }
+
+    /**
+     * Starts a game from a NEWGAME~black~white.
+     * @param command the NEWGAME.
+     */
+    private void startGame(Command command) {
+        isBlack = command.argumentEquals(1, profile.getUsername());
+        if (isBlack) {
+            fleet.getStats().games.increment(); // counted by one of the two players only, when both are bots.
+        }
+        black = command.hasSnapshot() ? command.getBlack() : BLACK_START;
+        white = command.hasSnapshot() ? command.getWhite() : WHITE_START;
+        blackToMove = true;
+        position++;
+        searching = false;
+        state = State.PLAYING;
+        if (isBlack) {
+            move();
+        }
+    }
+
+    /**
+     * Applies a MOVE of the server to the board, and moves if it is the bot's turn.
+     * @param move the field of the move, 64 for a pass.
+     */
+    private void applyMove(int move) {
+        if (move >= 0 && move < Frames.PASS) {
+            long bit = 1L << move;
+            if (blackToMove) {
+                long flips = Bitboards.flips(move, black, white);
+                black |= flips | bit;
+                white &= ~flips;
+            } else {
+                long flips = Bitboards.flips(move, white, black);
+                white |= flips | bit;
+                black &= ~flips;
+            }
+        }
+        blackToMove = !blackToMove;
+        position++;
+        searching = false;
+        if (isBlack == blackToMove) {
+            move();
+        }
+    }
+
+    /**
+     * Chooses a move: at once with a cheap strategy, or by a search on the engine that plays the move when it is
+     * done. The bot passes when it has no legal moves but the opponent has; when neither can move, the server
+     * ends the game.
+     */
+    private void move() {
+        long own = isBlack ? black : white;
+        long opponent = isBlack ? white : black;
+        long legal = Bitboards.legalMoves(own, opponent);
+        if (legal == 0) {
+            if (Bitboards.legalMoves(opponent, own) != 0) {
+                play(Frames.PASS);
+            }
+        } else if (profile.getStrategy() != null) {
+            play(profile.getStrategy().choose(own, opponent, legal, loop.getRandom()));
+        } else if (Long.bitCount(legal) == 1) {
+            play(Long.numberOfTrailingZeros(legal));
+        } else {
+            int searched = position;
+            searching = true;
+            fleet.getEngine().search(own, opponent, profile.getDepth(), profile.getBudget(),
+                    move -> loop.execute(() -> {
+                        if (searching && position == searched && state == State.PLAYING) {
+                            searching = false;
+                            play(move);
+                        }
+                    }));
+        }
+    }
+
+    /**
+     * Sends a move.
+     * @param move the field of the move, 64 to pass.
+     */
+    private void play(int move) {
+        fleet.getStats().moves.increment();
+        send(Frames.move(move));
+    }
+
+    /**
+     * Sends a pre-encoded message in the protocol of the connection.
+     * @param frame the message.
+     */
+    private void send(Frame frame) {
+        send(frame.bytes(binary));
+    }
+
+    /**
+     * Sends bytes, writing directly to the channel if nothing is waiting to be written.
+     * What cannot be written now is kept until the loop reports that the channel is writable.
+     * @param bytes the encoded message.
+     */
+    private void send(byte[] bytes) {
+        if (!isOpen()) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (out.position() == 0) {
+            try {
+                channel.write(buffer);
+            } catch (IOException e) {
+                reconnect();
+                return;
+            }
+            if (!buffer.hasRemaining()) {
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+        if (out.remaining() < buffer.remaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + buffer.remaining()));
+            out.flip();
+            larger.put(out);
+            out = larger;
+        }
+        out.put(buffer);
+    }
+
+    /**
+     * Closes the connection and connects to the server of the fleet again after the retry delay,
+     * which doubles for the next attempt. Does nothing when the fleet is stopping.
+     */
+    private void reconnect() {
+        disconnect();
+        if (loop.isStopped()) {
+            state = State.CLOSED;
+            return;
+        }
+        fleet.getStats().reconnects.increment();
+        host = fleet.getHost();
+        port = fleet.getPort();
+        loop.schedule(this, System.nanoTime() + retry);
+        retry = Math.min(retry * 2, LAST_RETRY);
+    }
+
+    /**
+     * Closes the channel; the bot waits in the NEW state for its next connect.
+     */
+    private void disconnect() {
+        state = State.NEW;
+        position++;
+        searching = false;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+
+            }
+        }
+    }
+
+    /**
+     * Closes the connection for good, when the fleet stops.
+     */
+    @Override
+    public void close() {
+        if (state == State.CLOSED) {
+            return;
+        }
+        disconnect();
+        state = State.CLOSED;
+    }
+}
@@ -0,0 +1,27 @@
+package network.client.fleet;
+
+import network.server.metrics.Counter;
+
+/**
+ * The counters of a BotFleet, shared by all event loops.
+ */
+public class FleetStats {
+    final Counter connects = new Counter();
+    final Counter logins = new Counter();
+    final Counter reconnects = new Counter();
+    final Counter games = new Counter();
+    final Counter moves = new Counter();
+    final Counter errors = new Counter();
+
+    /**
+     * Returns a line with the totals of the counters.
+     * @param loggedIn the amount of bots that are logged in now.
+     * @param bots the amount of bots of the fleet.
+     * @return the line.
+     */
+    public String format(int loggedIn, int bots) {
+        return "logged in " + loggedIn + "/" + bots + ", connects " + connects.get() + ", logins " + logins.get()
+                + ", reconnects " + reconnects.get() + ", games " + games.get() + ", moves " + moves.get()
+                + ", errors " + errors.get();
+    }
+}
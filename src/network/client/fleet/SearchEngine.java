@@ -0,0 +1,358 @@
+package network.client.fleet;
+
+import game.Bitboards;
+import strategies.FieldValueStrategy;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * The engine that all searching bots of a BotFleet share: one fixed pool of threads and one TranspositionTable.
+ * A search is an alpha-beta search on bitboards that deepens one level at a time until its depth or its time
+ * budget is reached, and plays the move of the last complete depth. Depth 1 always completes.
+ * Searches are run in the order in which they are submitted.
+ */
+public class SearchEngine {
+    public static final int WIN = 1_000_000; // the score of a won game, plus the difference in fields.
+    public static final int PASS = 64;
+    private static final int INFINITY = Integer.MAX_VALUE - 1;
+    private static final int CHECK_INTERVAL = 1023; // nodes between two looks at the clock.
+    private static final int[] ORDER = order(); // the fields from the highest to the lowest value.
+
+    private final ThreadPoolExecutor executor;
+    private final TranspositionTable table;
+    private final LongAdder searches;
+    private final LongAdder nodes;
+    private final LongAdder probes;
+    private final LongAdder hits;
+
+    /**
+     * Constructs an engine. Its threads are only started when the first search is submitted.
+     * @param threads the amount of threads.
+     * @param megabytes the memory of the transposition table.
+     */
+    public SearchEngine(int threads, int megabytes) {
+        AtomicInteger created = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "engine-" + created.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 2);
+                    return thread;
+                });
+        this.table = new TranspositionTable(megabytes);
+        this.searches = new LongAdder();
+        this.nodes = new LongAdder();
+        this.probes = new LongAdder();
+        this.hits = new LongAdder();
+    }
+
+    /**
+     * Returns the fields sorted from the highest to the lowest positional value, so good moves are searched first.
+     * @return the fields.
+     */
+    private static int[] order() {
+        Integer[] fields = new Integer[64];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = i;
+        }
+        Arrays.sort(fields, (a, b) -> FieldValueStrategy.value(b) - FieldValueStrategy.value(a));
+        int[] order = new int[fields.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = fields[i];
+        }
+        return order;
+    }
+
+    /**
+     * Queues a search for the best move of a position. The move is passed to the callback on a thread of the engine.
+     * @param own the fields of the player to move, which has at least one legal move.
+     * @param opponent the fields of the opponent.
+     * @param depth the deepest search.
+     * @param budget the nanoseconds that the search may take, from now on.
+     * @param done the callback that gets the field of the move.
+     */
+    public void search(long own, long opponent, int depth, long budget, IntConsumer done) {
+        long deadline = System.nanoTime() + budget;
+        try {
+            executor.execute(() -> done.accept(new Search(deadline, null).run(own, opponent, depth)));
+        } catch (RejectedExecutionException ignored) {
+            // the fleet is stopping.
+        }
+    }
+
+    /**
+     * Queues an analysis of a position without a time limit: it deepens until the depth is reached or it is
+     * cancelled, and reports every complete depth with its best line to the listener.
+     * @param own the fields of the player to move, which has at least one legal move.
+     * @param opponent the fields of the opponent.
+     * @param depth the deepest search.
+     * @param listener the listener of the depths.
+     * @return the future of the analysis, which stops it when it is cancelled with an interrupt.
+     */
+    public Future<?> analyze(long own, long opponent, int depth, SearchListener listener) {
+        return executor.submit(() -> {
+            new Search(System.nanoTime() + Long.MAX_VALUE / 2, listener).run(own, opponent, depth);
+        });
+    }
+
+    /**
+     * Returns a score as text: the value of the position, or who wins and by how many fields.
+     * @param score the score for the player to move.
+     * @return the text.
+     */
+    public static String describe(int score) {
+        if (score > WIN / 2) {
+            return "wins by " + (score - WIN);
+        }
+        if (score < -WIN / 2) {
+            return "loses by " + (-WIN - score);
+        }
+        return (score > 0 ? "+" : "") + score;
+    }
+
+    /**
+     * Stops the threads of the engine. Searches that are still queued are dropped.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns a line with the amount of searches and nodes, the searches that wait and the hit rate of the table.
+     * @return the status of the engine.
+     */
+    public String status() {
+        long probed = probes.sum();
+        return String.format("searches %d (%d queued), nodes %d, table %d MB with %.1f%% hits", searches.sum(),
+                executor.getQueue().size(), nodes.sum(), table.megabytes(), probed == 0 ? 0.0 : 100.0 * hits.sum() / probed);
+    }
+
+    /**
+     * Thrown inside a search when its time is up. Has no stack trace, so throwing it is cheap.
+     */
+    private static class Timeout extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Timeout() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * One search, run by one thread of the engine.
+     */
+    private class Search {
+        private final long deadline;
+        private final SearchListener listener; // null for a search that only returns its move.
+        private final Timeout timeout;
+        private long visited;
+        private long probed;
+        private long found;
+        private int score; // the score of the last complete depth.
+
+        /**
+         * Constructs a search.
+         * @param deadline the System.nanoTime at which the search stops.
+         * @param listener the listener of the depths, or null.
+         */
+        Search(long deadline, SearchListener listener) {
+            this.deadline = deadline;
+            this.listener = listener;
+            this.timeout = new Timeout();
+        }
+
+        /**
+         * Deepens the search one level at a time and returns the move of the last complete depth.
+         * @param own the fields of the player to move.
+         * @param opponent the fields of the opponent.
+         * @param maxDepth the deepest search.
+         * @return the field of the move.
+         */
+        int run(long own, long opponent, int maxDepth) {
+            long legal = Bitboards.legalMoves(own, opponent);
+            int best = Long.numberOfTrailingZeros(legal);
+            long started = System.nanoTime();
+            try {
+                for (int depth = 1; depth <= maxDepth; depth++) {
+                    best = root(own, opponent, legal, depth, depth > 1);
+                    if (listener != null) {
+                        listener.depthDone(depth, score, line(own, opponent, depth), visited, System.nanoTime() - started);
+                    }
+                    if (System.nanoTime() - deadline >= 0 || Thread.currentThread().isInterrupted()) {
+                        break;
+                    }
+                }
+            } catch (Timeout ignored) {
+                // the move of the last complete depth is played.
+            }
+            searches.increment();
+            nodes.add(visited);
+            probes.add(probed);
+            hits.add(found);
+            return best;
+        }
+
+        /**
+         * Searches every legal move of the root, starting with the best move of the previous depth.
+         * @param own the fields of the player to move.
+         * @param opponent the fields of the opponent.
+         * @param legal the legal moves.
+         * @param depth the depth of the search.
+         * @param timed whether the search stops at the deadline.
+         * @return the field of the best move.
+         */
+        private int root(long own, long opponent, long legal, int depth, boolean timed) {
+            long hash = TranspositionTable.hash(own, opponent);
+            int first = TranspositionTable.move(table.probe(hash));
+            int best = -1;
+            int alpha = -INFINITY;
+            for (int i = -1; i < ORDER.length; i++) {
+                int move = i < 0 ? first : ORDER[i];
+                if (move >= 64 || (legal & 1L << move) == 0 || (i >= 0 && move == first)) {
+                    continue;
+                }
+                long flips = Bitboards.flips(move, own, opponent);
+                int score = -negamax(opponent & ~flips, own | flips | 1L << move, depth - 1, -INFINITY, -alpha, timed);
+                if (best < 0 || score > alpha) {
+                    alpha = score;
+                    best = move;
+                }
+            }
+            table.store(hash, alpha, depth, TranspositionTable.EXACT, best);
+            score = alpha;
+            return best;
+        }
+
+        /**
+         * Returns the best line of a position, following the best moves of the table from the root.
+         * @param own the fields of the player to move.
+         * @param opponent the fields of the opponent.
+         * @param depth the amount of moves to follow at most, passes not counted.
+         * @return the fields of the moves, 64 for a pass.
+         */
+        private int[] line(long own, long opponent, int depth) {
+            int[] line = new int[2 * depth];
+            int length = 0;
+            int moves = 0;
+            while (moves < depth) {
+                long legal = Bitboards.legalMoves(own, opponent);
+                if (legal == 0) {
+                    if (Bitboards.legalMoves(opponent, own) == 0) {
+                        break;
+                    }
+                    line[length++] = PASS;
+                } else {
+                    int move = TranspositionTable.move(table.probe(TranspositionTable.hash(own, opponent)));
+                    if (move >= 64 || (legal & 1L << move) == 0) {
+                        break;
+                    }
+                    long flips = Bitboards.flips(move, own, opponent);
+                    own |= flips | 1L << move;
+                    opponent &= ~flips;
+                    line[length++] = move;
+                    moves++;
+                }
+                long swap = own;
+                own = opponent;
+                opponent = swap;
+            }
+            return Arrays.copyOf(line, length);
+        }
+
+        /**
+         * Returns the score of a position for the player to move.
+         * @param own the fields of the player to move.
+         * @param opponent the fields of the opponent.
+         * @param depth the remaining depth.
+         * @param alpha the score that the player to move already has.
+         * @param beta the score above which the opponent avoids this position.
+         * @param timed whether the search stops at the deadline.
+         * @return the score.
+         */
+        private int negamax(long own, long opponent, int depth, int alpha, int beta, boolean timed) {
+            if ((++visited & CHECK_INTERVAL) == 0 && timed
+                    && (System.nanoTime() - deadline >= 0 || Thread.currentThread().isInterrupted())) {
+                throw timeout;
+            }
+            long legal = Bitboards.legalMoves(own, opponent);
+            if (legal == 0) {
+                if (Bitboards.legalMoves(opponent, own) == 0) {
+                    int difference = Long.bitCount(own) - Long.bitCount(opponent);
+                    return difference > 0 ? WIN + difference : difference < 0 ? -WIN + difference : 0;
+                }
+                return -negamax(opponent, own, depth, -beta, -alpha, timed);
+            }
+            if (depth == 0) {
+                return evaluate(own, opponent, legal);
+            }
+            long hash = TranspositionTable.hash(own, opponent);
+            long entry = table.probe(hash);
+            probed++;
+            int first = TranspositionTable.NO_MOVE;
+            if (entry != 0) {
+                found++;
+                first = TranspositionTable.move(entry);
+                if (TranspositionTable.depth(entry) >= depth) {
+                    int score = TranspositionTable.score(entry);
+                    int bound = TranspositionTable.bound(entry);
+                    if (bound == TranspositionTable.EXACT
+                            || (bound == TranspositionTable.LOWER && score >= beta)
+                            || (bound == TranspositionTable.UPPER && score <= alpha)) {
+                        return score;
+                    }
+                }
+            }
+            int start = alpha;
+            int best = -INFINITY;
+            int bestMove = TranspositionTable.NO_MOVE;
+            for (int i = -1; i < ORDER.length; i++) {
+                int move = i < 0 ? first : ORDER[i];
+                if (move >= 64 || (legal & 1L << move) == 0 || (i >= 0 && move == first)) {
+                    continue;
+                }
+                long flips = Bitboards.flips(move, own, opponent);
+                int score = -negamax(opponent & ~flips, own | flips | 1L << move, depth - 1, -beta, -alpha, timed);
+                if (score > best) {
+                    best = score;
+                    bestMove = move;
+                    if (score > alpha) {
+                        alpha = score;
+                        if (alpha >= beta) {
+                            break;
+                        }
+                    }
+                }
+            }
+            int bound = best >= beta ? TranspositionTable.LOWER
+                    : best <= start ? TranspositionTable.UPPER : TranspositionTable.EXACT;
+            table.store(hash, best, depth, bound, bestMove);
+            return best;
+        }
+
+        /**
+         * Returns the value of a position that is not searched deeper: the positional values of the fields of
+         * both players, and the difference in mobility.
+         * @param own the fields of the player to move.
+         * @param opponent the fields of the opponent.
+         * @param legal the legal moves of the player to move.
+         * @return the score for the player to move.
+         */
+        private int evaluate(long own, long opponent, long legal) {
+            int score = 0;
+            for (long fields = own; fields != 0; fields &= fields - 1) {
+                score += FieldValueStrategy.value(Long.numberOfTrailingZeros(fields));
+            }
+            for (long fields = opponent; fields != 0; fields &= fields - 1) {
+                score -= FieldValueStrategy.value(Long.numberOfTrailingZeros(fields));
+            }
+            return score + 5 * (Long.bitCount(legal) - Long.bitCount(Bitboards.legalMoves(opponent, own)));
+        }
+    }
+}
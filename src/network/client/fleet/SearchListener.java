@@ -0,0 +1,17 @@
+package network.client.fleet;
+
+/**
+ * Gets the result of every depth of an analysis on the SearchEngine, as soon as that depth is complete.
+ */
+public interface SearchListener {
+
+    /**
+     * Called on the thread of the engine when a depth of the analysis is complete.
+     * @param depth the depth.
+     * @param score the score for the player to move, see SearchEngine.describe.
+     * @param line the best line: the fields of the moves, 64 for a pass.
+     * @param nodes the positions that the analysis visited so far.
+     * @param nanos the time that the analysis took so far.
+     */
+    void depthDone(int depth, int score, int[] line, long nodes, long nanos);
+}
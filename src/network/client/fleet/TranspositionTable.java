@@ -0,0 +1,122 @@
+package network.client.fleet;
+
+/**
+ * The transposition table that all searches of a BotFleet share: it remembers the score and best move of
+ * positions that were searched before, so a position that is reached again (in the same game, by another
+ * move order, or in a game of another bot) is not searched again.
+ * The table is two arrays of longs of a fixed size and takes no locks. Every entry is stored as its data and
+ * the hash of its position xor that data, so an entry that two threads write at the same time does not match
+ * either position and is only a miss.
+ */
+public class TranspositionTable {
+    public static final int EXACT = 0;
+    public static final int LOWER = 1; // the score is at least the stored score.
+    public static final int UPPER = 2; // the score is at most the stored score.
+    public static final int NO_MOVE = 127;
+
+    private static final int BYTES_PER_ENTRY = 16;
+    private final long[] checks; // the hash of the position xor the data.
+    private final long[] data; // score (32 bits), depth (8 bits), bound (2 bits) and move (7 bits).
+    private final int mask;
+
+    /**
+     * Constructs an empty table.
+     * @param megabytes the memory of the table, rounded down to a power of two amount of entries.
+     */
+    public TranspositionTable(int megabytes) {
+        long entries = Math.max(1024, (long) megabytes * 1024 * 1024 / BYTES_PER_ENTRY);
+        int size = Integer.highestOneBit((int) Math.min(entries, 1 << 30));
+        this.checks = new long[size];
+        this.data = new long[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Returns the hash of a position.
+     * @param own the fields of the player to move.
+     * @param opponent the fields of the opponent.
+     * @return the hash.
+     */
+    public static long hash(long own, long opponent) {
+        long h = own * 0x9E3779B97F4A7C15L ^ Long.rotateLeft(opponent * 0xC2B2AE3D27D4EB4FL, 31);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ h >>> 33;
+    }
+
+    /**
+     * Returns the entry of a position.
+     * @param hash the hash of the position.
+     * @return the data of the entry, or 0 if the table has no entry for the position.
+     */
+    public long probe(long hash) {
+        int i = (int) hash & mask;
+        long entry = data[i];
+        return (checks[i] ^ entry) == hash ? entry : 0;
+    }
+
+    /**
+     * Stores the result of a search, unless the table has a deeper search of the same position.
+     * @param hash the hash of the position.
+     * @param score the score of the position for the player to move.
+     * @param depth the depth of the search, at least 1.
+     * @param bound EXACT, LOWER or UPPER.
+     * @param move the best move, NO_MOVE if none.
+     */
+    public void store(long hash, int score, int depth, int bound, int move) {
+        int i = (int) hash & mask;
+        long old = data[i];
+        if ((checks[i] ^ old) == hash && depth(old) > depth) {
+            return;
+        }
+        long entry = (long) score << 32 | (long) depth << 16 | (long) bound << 8 | move;
+        data[i] = entry;
+        checks[i] = hash ^ entry;
+    }
+
+    /**
+     * Returns the score of an entry.
+     * @param entry the entry.
+     * @return the score.
+     */
+    public static int score(long entry) {
+        return (int) (entry >> 32);
+    }
+
+    /**
+     * Returns the depth of the search of an entry.
+     * @param entry the entry.
+     * @return the depth, 0 for no entry.
+     */
+    public static int depth(long entry) {
+        return (int) (entry >>> 16) & 0xFF;
+    }
+
+    /**
+     * Returns whether the score of an entry is exact, a lower bound or an upper bound.
+     * @param entry the entry.
+     * @return EXACT, LOWER or UPPER.
+     */
+    public static int bound(long entry) {
+        return (int) (entry >>> 8) & 0x3;
+    }
+
+    /**
+     * Returns the best move of an entry.
+     * @param entry the entry.
+     * @return the field of the move, NO_MOVE if none.
+     */
+    public static int move(long entry) {
+        return (int) entry & 0x7F;
+    }
+
+    /**
+     * Returns the memory of the table.
+     * @return the size in megabytes.
+     */
+    public long megabytes() {
+        return (long) data.length * BYTES_PER_ENTRY / (1024 * 1024);
+    }
+}
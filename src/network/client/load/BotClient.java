@@ -0,0 +1,458 @@
+package network.client.load;
+
+import game.Bitboards;
+import network.protocol.BinaryCodec;
+import network.protocol.Command;
+import network.protocol.Frame;
+import network.protocol.Frames;
+import network.protocol.MalformedFrameException;
+import network.protocol.ProtocolCodec;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * One simulated client of the LoadGenerator. It runs the same flow as the Client of a player with an AI:
+ * HELLO, LOGIN, QUEUE and a MOVE whenever it is its turn, and queues again after every GAMEOVER.
+ * The board is kept as two bitboards and the messages are parsed with the ProtocolCodec (or the BinaryCodec)
+ * and sent as pre-encoded Frames, so a client costs a few hundred bytes and almost no CPU.
+ * All methods are called by the thread of its EventLoop.
+ */
+public class BotClient implements LoopClient {
+    private static final int BUFFER_SIZE = 1024;
+    private static final long BLACK_START = 1L << 28 | 1L << 35; // the fields of the DefaultConfiguration.
+    private static final long WHITE_START = 1L << 27 | 1L << 36;
+
+    /**
+     * What the client is doing.
+     */
+    private enum State {
+        NEW, CONNECTING, HELLO, LOGIN, IDLE, QUEUED, PLAYING, CLOSED
+    }
+
+    private final LoadGenerator generator;
+    private final EventLoop loop;
+    private final String username;
+    private final Frame login;
+    private String host; // the server of the client, which changes when the server redirects it.
+    private int port;
+    private boolean redirected; // whether the client has to queue right after the login.
+    private State state;
+    private SocketChannel channel;
+    private SelectionKey key;
+    private ByteBuffer in;
+    private ByteBuffer out; // The bytes that could not be written yet, in write mode.
+    private boolean binaryRequested;
+    private boolean binary;
+    private long wakeAt;
+    private long connectAt;
+    private long sentAt; // The time the last MOVE was sent, 0 if the client waits for no MOVE.
+    private boolean isBlack;
+    private boolean blackToMove;
+    private long black;
+    private long white;
+
+    /**
+     * Constructs a client that connects at the given time.
+     * @param generator the load generator with the configuration of the test.
+     * @param loop the event loop that runs the client.
+     * @param username the username of the client.
+     * @param connectAt the System.nanoTime at which the client connects.
+     */
+    public BotClient(LoadGenerator generator, EventLoop loop, String username, long connectAt) {
+        this.generator = generator;
+        this.loop = loop;
+        this.username = username;
+        this.login = Frame.of("LOGIN~" + username);
+        this.host = generator.getHost();
+        this.port = generator.getPort();
+        this.state = State.NEW;
+        this.binaryRequested = generator.isBinary();
+        this.wakeAt = EventLoop.NOT_SCHEDULED;
+        this.in = ByteBuffer.allocate(BUFFER_SIZE);
+        this.out = ByteBuffer.allocate(BUFFER_SIZE);
+        loop.add(this);
+        loop.schedule(this, connectAt);
+    }
+
+    @Override
+    public long getWakeAt() {
+        return wakeAt;
+    }
+
+    @Override
+    public void setWakeAt(long wakeAt) {
+        this.wakeAt = wakeAt;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return state != State.NEW && state != State.CLOSED;
+    }
+
+    @Override
+    public void onTimer() {
+        switch (state) {
+            case NEW:
+                connect();
+                break;
+            case IDLE:
+                state = State.QUEUED;
+                send(Frames.QUEUE);
+                break;
+            case PLAYING:
+                move();
+                break;
+            default:
+        }
+    }
+
+    /**
+     * Starts to connect to the server without blocking.
+     */
+    private void connect() {
+        state = State.CONNECTING;
+        connectAt = System.nanoTime();
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            key = channel.register(loop.getSelector(), SelectionKey.OP_CONNECT, this);
+            if (channel.connect(new InetSocketAddress(host, port))) {
+                onConnectable();
+            }
+        } catch (IOException e) {
+            generator.getStats().connectErrors.increment();
+            close();
+        }
+    }
+
+    @Override
+    public void onConnectable() {
+        try {
+            if (channel.isConnectionPending() && !channel.finishConnect()) {
+                return;
+            }
+        } catch (IOException e) {
+            generator.getStats().connectErrors.increment();
+            close();
+            return;
+        }
+        generator.getStats().connects.increment();
+        generator.getStats().connectLatency.record(System.nanoTime() - connectAt);
+        key.interestOps(SelectionKey.OP_READ);
+        state = State.HELLO;
+        sendHello();
+    }
+
+    /**
+     * Sends the HELLO, asking for the binary protocol if that is configured.
+     */
+    private void sendHello() {
+        send(Frames.encode(binaryRequested ? "HELLO~Othello Load Client~" + BinaryCodec.HELLO_OPTION
+                : "HELLO~Othello Load Client"));
+    }
+
+    @Override
+    public void onWritable() {
+        out.flip();
+        try {
+            channel.write(out);
+        } catch (IOException e) {
+            out.compact();
+            failed();
+            return;
+        }
+        out.compact();
+        if (out.position() == 0) {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    @Override
+    public void onReadable() {
+        int read;
+        try {
+            read = channel.read(in);
+        } catch (IOException e) {
+            failed();
+            return;
+        }
+        if (read < 0) {
+            failed();
+            return;
+        }
+        in.flip();
+        Command command = loop.getCommand();
+        try {
+            while (state != State.CLOSED && state != State.NEW
+                    && (binary ? BinaryCodec.next(in, command) : ProtocolCodec.next(in, command))) {
+                handle(command);
+            }
+        } catch (MalformedFrameException e) {
+            failed();
+            return;
+        }
+        if (state == State.CLOSED) {
+            return;
+        }
+        if (state == State.NEW) {
+            // redirected: what is left is from the old server.
+            in.clear();
+            return;
+        }
+        in.compact();
+        if (!in.hasRemaining()) {
+            // a message that does not fit yet, for example a long LIST.
+            ByteBuffer larger = ByteBuffer.allocate(in.capacity() * 2);
+            in.flip();
+            larger.put(in);
+            in = larger;
+        }
+    }
+
+    /**
+     * Handles one message of the server.
+     * @param command the parsed message.
+     */
+    private void handle(Command command) {
+        LoadStats stats = generator.getStats();
+        switch (command.getOpcode()) {
+            case HELLO:
+                binary = binaryRequested && command.length() == 3
+                        && command.argumentEquals(2, BinaryCodec.HELLO_OPTION);
+                state = State.LOGIN;
+                send(login);
+                break;
+            case ERROR:
+                stats.serverErrors.increment();
+                if (state == State.HELLO && binaryRequested) {
+                    // the server does not know the binary option, so do the handshake in text.
+                    binaryRequested = false;
+                    sendHello();
+                }
+                break;
+            case PING:
+                send(Frames.PONG);
+                break;
+            case LOGIN:
+                stats.logins.increment();
+                if (redirected) {
+                    redirected = false;
+                    state = State.QUEUED;
+                    send(Frames.QUEUE);
+                } else {
+                    idle();
+                }
+                break;
+            case REDIRECT:
+                if (command.length() == 3 && command.isInt(2)) {
+                    redirect(command.argument(1), command.intArgument(2));
+                }
+                break;
+            case ALREADYLOGGEDIN:
+                stats.loginErrors.increment();
+                close();
+                break;
+            case NEWGAME:
+                startGame(command);
+                break;
+            case MOVE:
+                if (state == State.PLAYING) {
+                    applyMove(command.intArgument(1));
+                }
+                break;
+            case GAMEOVER:
+                if (state == State.PLAYING) {
+                    idle();
+                }
+                break;
+            default:
+        }
+    }
+
+    /**
+     * Moves to another server of a federation, which hosts the next game: the connection is closed,
+     * and the client connects to the new server right away, logs in and queues.
+     * @param newHost the host of the new server.
+     * @param newPort the port of the new server.
+     */
+    private void redirect(String newHost, int newPort) {
+        generator.getStats().redirects.increment();
+        host = newHost;
+        port = newPort;
+        redirected = true;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+
+        }
+        state = State.NEW;
+        binary = false;
+        binaryRequested = generator.isBinary();
+        out.clear();
+        loop.schedule(this, System.nanoTime());
+    }
+
+    /**
+     * Starts a game from a NEWGAME~black~white.
+     * @param command the NEWGAME.
+     */
+    private void startGame(Command command) {
+        isBlack = command.argumentEquals(1, username);
+        if (isBlack) {
+            generator.getStats().games.increment(); // counted by one of the two players only.
+        }
+        black = command.hasSnapshot() ? command.getBlack() : BLACK_START;
+        white = command.hasSnapshot() ? command.getWhite() : WHITE_START;
+        blackToMove = true;
+        sentAt = 0;
+        state = State.PLAYING;
+        if (isBlack) {
+            think();
+        }
+    }
+
+    /**
+     * Applies a MOVE of the server to the board, and thinks about the next move if it is the client's turn.
+     * @param move the field of the move, 64 for a pass.
+     */
+    private void applyMove(int move) {
+        boolean own = isBlack == blackToMove;
+        if (own && sentAt != 0) {
+            generator.getStats().moves.increment();
+            generator.getStats().moveLatency.record(System.nanoTime() - sentAt);
+            sentAt = 0;
+        }
+        if (move >= 0 && move < Frames.PASS) {
+            long bit = 1L << move;
+            if (blackToMove) {
+                long flips = Bitboards.flips(move, black, white);
+                black |= flips | bit;
+                white &= ~flips;
+            } else {
+                long flips = Bitboards.flips(move, white, black);
+                white |= flips | bit;
+                black &= ~flips;
+            }
+        }
+        blackToMove = !blackToMove;
+        if (isBlack == blackToMove) {
+            think();
+        }
+    }
+
+    /**
+     * Waits for the think time before the client moves.
+     */
+    private void think() {
+        long delay = generator.thinkTime(loop.getRandom());
+        if (delay == 0) {
+            move();
+        } else {
+            loop.schedule(this, System.nanoTime() + delay);
+        }
+    }
+
+    /**
+     * Chooses a move with the strategy and sends it. The client passes when it has no legal moves
+     * but the opponent has; when neither player can move, the server ends the game.
+     */
+    private void move() {
+        if (isBlack != blackToMove || sentAt != 0) {
+            return;
+        }
+        long own = isBlack ? black : white;
+        long opponent = isBlack ? white : black;
+        long legal = Bitboards.legalMoves(own, opponent);
+        int move;
+        if (legal != 0) {
+            move = generator.getStrategy().choose(own, opponent, legal, loop.getRandom());
+        } else if (Bitboards.legalMoves(opponent, own) != 0) {
+            move = Frames.PASS;
+        } else {
+            return;
+        }
+        sentAt = System.nanoTime();
+        send(Frames.move(move));
+    }
+
+    /**
+     * Waits for the think time before the client queues for a new game, unless the test is stopping.
+     */
+    private void idle() {
+        state = State.IDLE;
+        if (!loop.isStopped()) {
+            loop.schedule(this, System.nanoTime() + generator.thinkTime(loop.getRandom()));
+        }
+    }
+
+    /**
+     * Sends a pre-encoded message in the protocol of the connection.
+     * @param frame the message.
+     */
+    private void send(Frame frame) {
+        send(frame.bytes(binary));
+    }
+
+    /**
+     * Sends bytes, writing directly to the channel if nothing is waiting to be written.
+     * What cannot be written now is kept until the loop reports that the channel is writable.
+     * @param bytes the encoded message.
+     */
+    private void send(byte[] bytes) {
+        if (state == State.CLOSED) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (out.position() == 0) {
+            try {
+                channel.write(buffer);
+            } catch (IOException e) {
+                failed();
+                return;
+            }
+            if (!buffer.hasRemaining()) {
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+        if (out.remaining() < buffer.remaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + buffer.remaining()));
+            out.flip();
+            larger.put(out);
+            out = larger;
+        }
+        out.put(buffer);
+    }
+
+    /**
+     * Counts an unexpected end of the connection and closes it.
+     */
+    private void failed() {
+        if (!loop.isStopped()) {
+            generator.getStats().ioErrors.increment();
+        }
+        close();
+    }
+
+    /**
+     * Closes the connection. The client is not used anymore.
+     */
+    @Override
+    public void close() {
+        if (state == State.CLOSED) {
+            return;
+        }
+        state = State.CLOSED;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package network.client.load;
+
+import game.Bitboards;
+import java.util.Random;
+
+/**
+ * The strategies that can be chosen for the LoadGenerator by name.
+ */
+public enum BotStrategies implements BotStrategy {
+    /**
+     * A random legal move.
+     */
+    RANDOM {
+        @Override
+        public int choose(long own, long opponent, long legal, Random random) {
+            return nth(legal, random.nextInt(Long.bitCount(legal)));
+        }
+    },
+    /**
+     * The legal move with the lowest field number, so every game is the same.
+     */
+    FIRST {
+        @Override
+        public int choose(long own, long opponent, long legal, Random random) {
+            return Long.numberOfTrailingZeros(legal);
+        }
+    },
+    /**
+     * The legal move that flips the most fields.
+     */
+    GREEDY {
+        @Override
+        public int choose(long own, long opponent, long legal, Random random) {
+            int best = Long.numberOfTrailingZeros(legal);
+            int most = -1;
+            for (long moves = legal; moves != 0; moves &= moves - 1) {
+                int square = Long.numberOfTrailingZeros(moves);
+                int flips = Long.bitCount(Bitboards.flips(square, own, opponent));
+                if (flips > most) {
+                    most = flips;
+                    best = square;
+                }
+            }
+            return best;
+        }
+    },
+    /**
+     * A corner if possible, otherwise a random legal move.
+     */
+    CORNERS {
+        private static final long CORNER_FIELDS = 1L | 1L << 7 | 1L << 56 | 1L << 63;
+
+        @Override
+        public int choose(long own, long opponent, long legal, Random random) {
+            long corners = legal & CORNER_FIELDS;
+            return corners != 0 ? Long.numberOfTrailingZeros(corners) : RANDOM.choose(own, opponent, legal, random);
+        }
+    };
+
+    /**
+     * Returns the field of the n-th set bit.
+     * @param bits the bits.
+     * @param n the index of the bit, starting at 0.
+     * @return the field.
+     */
+    private static int nth(long bits, int n) {
+        long remaining = bits;
+        for (int i = 0; i < n; i++) {
+            remaining &= remaining - 1;
+        }
+        return Long.numberOfTrailingZeros(remaining);
+    }
+
+    /**
+     * Returns the strategy with the name, ignoring case.
+     * @param name the name of the strategy.
+     * @return the strategy.
+     * @throws IllegalArgumentException if there is no strategy with that name.
+     */
+    public static BotStrategies parse(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
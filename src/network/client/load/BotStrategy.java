@@ -0,0 +1,20 @@
+package network.client.load;
+
+import java.util.Random;
+
+/**
+ * A cheap strategy for the simulated clients of the LoadGenerator. It works on bitboards
+ * (one bit per field, see game.Bitboards), so choosing a move costs next to nothing compared to the server.
+ */
+public interface BotStrategy {
+
+    /**
+     * Chooses one of the legal moves.
+     * @param own the fields of the player to move.
+     * @param opponent the fields of the opponent.
+     * @param legal the legal moves, at least one bit is set.
+     * @param random the random generator of the event loop.
+     * @return the field of the move.
+     */
+    int choose(long own, long opponent, long legal, Random random);
+}
@@ -0,0 +1,185 @@
+package network.client.load;
+
+import network.protocol.Command;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One thread that runs many clients on a single Selector, for the LoadGenerator and the BotFleet.
+ * The clients never block: connecting, reading and writing are done when the selector reports
+ * that the channel is ready, and think times are timers that the loop fires between two selects.
+ * Every client belongs to exactly one loop, so the clients need no locking; other threads hand
+ * work to a client with execute.
+ */
+public class EventLoop implements Runnable {
+    public static final long NOT_SCHEDULED = Long.MIN_VALUE;
+
+    private final Selector selector;
+    private final List<LoopClient> clients;
+    private final PriorityQueue<LoopClient> timers; // The clients that wait for a timer, earliest first.
+    private final ConcurrentLinkedQueue<Runnable> tasks; // Work of other threads, run between two selects.
+    private final Random random;
+    private final Command command; // Reused for every message that is parsed on this loop.
+    private volatile boolean stopped;
+
+    /**
+     * Constructs an event loop without clients.
+     * @param seed the seed of the random generator that the strategies and think times use.
+     * @throws IOException if the selector cannot be opened.
+     */
+    public EventLoop(long seed) throws IOException {
+        this.selector = Selector.open();
+        this.clients = new ArrayList<>();
+        this.timers = new PriorityQueue<>(Comparator.comparingLong(LoopClient::getWakeAt));
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.random = new Random(seed);
+        this.command = new Command();
+    }
+
+    /**
+     * Adds a client to the loop. Must be called before the loop is started.
+     * @param client the client.
+     */
+    public void add(LoopClient client) {
+        clients.add(client);
+    }
+
+    /**
+     * Returns the amount of clients of this loop with an open connection.
+     * @return the amount of open connections.
+     */
+    public int openConnections() {
+        int open = 0;
+        for (LoopClient client : clients) {
+            if (client.isOpen()) {
+                open++;
+            }
+        }
+        return open;
+    }
+
+    /**
+     * Stops the loop, which closes all its connections.
+     */
+    public void stop() {
+        stopped = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Returns whether the loop is stopped.
+     * @return true if the loop is stopped.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Returns the selector of the loop, to register the channels of its clients.
+     * @return the selector.
+     */
+    public Selector getSelector() {
+        return selector;
+    }
+
+    /**
+     * Returns the random generator of the loop.
+     * @return the random generator.
+     */
+    public Random getRandom() {
+        return random;
+    }
+
+    /**
+     * Returns the command that messages are parsed into.
+     * @return the command.
+     */
+    public Command getCommand() {
+        return command;
+    }
+
+    /**
+     * Lets the loop call the client back at the given time. A client waits for at most one timer.
+     * @param client the client.
+     * @param wakeAt the System.nanoTime at which the client is called.
+     */
+    public void schedule(LoopClient client, long wakeAt) {
+        if (client.getWakeAt() != NOT_SCHEDULED) {
+            // rare (a game that ends while the client thinks), so the linear remove does not matter.
+            timers.remove(client);
+        }
+        client.setWakeAt(wakeAt);
+        timers.add(client);
+    }
+
+    /**
+     * Runs a task on the thread of the loop, for example the move that a search on another thread found.
+     * Can be called from any thread.
+     * @param task the task.
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Runs the loop until it is stopped: runs the tasks of other threads, fires the timers that are due
+     * and handles the ready channels.
+     */
+    @Override
+    public void run() {
+        try {
+            while (!stopped) {
+                for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+                    task.run();
+                }
+                long now = System.nanoTime();
+                while (!timers.isEmpty() && timers.peek().getWakeAt() <= now) {
+                    LoopClient client = timers.poll();
+                    client.setWakeAt(NOT_SCHEDULED);
+                    client.onTimer();
+                }
+                long timeout = timers.isEmpty() ? 0 : Math.max(1, (timers.peek().getWakeAt() - now) / 1_000_000);
+                selector.select(this::handle, timeout);
+            }
+        } catch (IOException e) {
+            System.out.println("Event loop failed: " + e.getMessage());
+        } finally {
+            for (LoopClient client : clients) {
+                client.close();
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+
+            }
+        }
+    }
+
+    /**
+     * Handles a channel that is ready.
+     * @param key the key of the channel, with the client as attachment.
+     */
+    private void handle(SelectionKey key) {
+        LoopClient client = (LoopClient) key.attachment();
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isConnectable()) {
+            client.onConnectable();
+        }
+        if (key.isValid() && key.isWritable()) {
+            client.onWritable();
+        }
+        if (key.isValid() && key.isReadable()) {
+            client.onReadable();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package network.client.load;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * A load generator for the GameServer: it simulates thousands of clients that log in, queue and play games
+ * against each other with a cheap BotStrategy, multiplexed over a few EventLoop threads.
+ * Every interval it prints the connect, login, game and move rates, the round-trip latency of a MOVE
+ * (from sending it until the server sends it back) and the amount of errors, and a summary at the end.
+ * It is configured with system properties:
+ * <pre>
+ * -Dothello.load.host=localhost    the address of the server.
+ * -Dothello.load.port=44444        the port of the server.
+ * -Dothello.load.clients=1000      the amount of simulated clients, an odd client never gets an opponent.
+ * -Dothello.load.threads=2         the amount of event loops.
+ * -Dothello.load.strategy=random   random, first, greedy or corners (see BotStrategies).
+ * -Dothello.load.think=0           the think time in milliseconds before every MOVE and QUEUE,
+ *                                  a fixed time (100) or a range that is chosen from uniformly (50-200).
+ * -Dothello.load.rampup=500        the amount of new connections per second, 0 to connect all at once.
+ * -Dothello.load.duration=60       the duration of the test in seconds.
+ * -Dothello.load.interval=5        the seconds between two reports.
+ * -Dothello.load.protocol=text     text or binary.
+ * -Dothello.load.prefix=bot        the prefix of the usernames, so several generators can run at once.
+ * </pre>
+ */
+public class LoadGenerator {
+    private final String host;
+    private final int port;
+    private final int clients;
+    private final int threads;
+    private final BotStrategy strategy;
+    private final long thinkMin; // nanoseconds
+    private final long thinkMax; // nanoseconds
+    private final int rampup;
+    private final long duration; // seconds
+    private final long interval; // seconds
+    private final boolean binary;
+    private final String prefix;
+    private final LoadStats stats;
+
+    /**
+     * Constructs a load generator from the system properties.
+     * @throws IllegalArgumentException if a property has an invalid value.
+     */
+    public LoadGenerator() {
+        this.host = System.getProperty("othello.load.host", "localhost");
+        this.port = Integer.getInteger("othello.load.port", 44444);
+        this.clients = Integer.getInteger("othello.load.clients", 1000);
+        this.threads = Math.max(1, Integer.getInteger("othello.load.threads", 2));
+        this.strategy = BotStrategies.parse(System.getProperty("othello.load.strategy", "random"));
+        String think = System.getProperty("othello.load.think", "0").trim();
+        int dash = think.indexOf('-');
+        long min = Long.parseLong(dash < 0 ? think : think.substring(0, dash).trim());
+        long max = dash < 0 ? min : Long.parseLong(think.substring(dash + 1).trim());
+        if (min < 0 || max < min) {
+            throw new IllegalArgumentException("Invalid think time: " + think);
+        }
+        this.thinkMin = min * 1_000_000;
+        this.thinkMax = max * 1_000_000;
+        this.rampup = Integer.getInteger("othello.load.rampup", 500);
+        this.duration = Long.getLong("othello.load.duration", 60);
+        this.interval = Math.max(1, Long.getLong("othello.load.interval", 5));
+        this.binary = "binary".equalsIgnoreCase(System.getProperty("othello.load.protocol"));
+        this.prefix = System.getProperty("othello.load.prefix", "bot");
+        this.stats = new LoadStats();
+    }
+
+    /**
+     * Returns the address of the server.
+     * @return the host name or IP address.
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Returns the port of the server.
+     * @return the port.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Returns the strategy of the clients.
+     * @return the strategy.
+     */
+    public BotStrategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Returns whether the clients ask for the binary protocol.
+     * @return true if the binary protocol is used.
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Returns the measurements of the test.
+     * @return the stats.
+     */
+    public LoadStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Chooses a think time.
+     * @param random the random generator of the calling loop.
+     * @return the think time in nanoseconds.
+     */
+    long thinkTime(Random random) {
+        if (thinkMax == thinkMin) {
+            return thinkMin;
+        }
+        return thinkMin + (long) (random.nextDouble() * (thinkMax - thinkMin));
+    }
+
+    /**
+     * Runs the test: starts the event loops, reports every interval and stops after the duration.
+     * @throws IOException if a selector cannot be opened.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void run() throws IOException, InterruptedException {
+        EventLoop[] loops = new EventLoop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new EventLoop(i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            long connectAt = rampup > 0 ? start + i * 1_000_000_000L / rampup : start;
+            new BotClient(this, loops[i % threads], prefix + i, connectAt);
+        }
+        Thread[] running = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            running[i] = new Thread(loops[i], "load-loop-" + i);
+            running[i].start();
+        }
+        System.out.println("Load test of " + host + ":" + port + " with " + clients + " clients on " + threads
+                + " threads for " + duration + " s (" + (binary ? "binary" : "text") + " protocol).");
+        LoadStats.Snapshot last = stats.snapshot();
+        long end = start + duration * 1_000_000_000L;
+        while (System.nanoTime() < end) {
+            Thread.sleep(Math.min(interval * 1000, Math.max(1, (end - System.nanoTime()) / 1_000_000)));
+            LoadStats.Snapshot now = stats.snapshot();
+            int open = 0;
+            for (EventLoop loop : loops) {
+                open += loop.openConnections();
+            }
+            System.out.println(now.format(last, start, open));
+            last = now;
+        }
+        for (int i = 0; i < threads; i++) {
+            loops[i].stop();
+        }
+        for (Thread thread : running) {
+            thread.join();
+        }
+        System.out.println();
+        System.out.print(stats.summary((System.nanoTime() - start) / 1e9));
+    }
+
+    public static void main(String[] args) {
+        try {
+            new LoadGenerator().run();
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.exit(-1);
+        } catch (IOException e) {
+            System.out.println("Could not start the load test: " + e.getMessage());
+            System.exit(-1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
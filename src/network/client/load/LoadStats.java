@@ -0,0 +1,120 @@
+package network.client.load;
+
+import network.server.metrics.Counter;
+import network.server.metrics.Histogram;
+import java.util.Locale;
+
+/**
+ * The measurements of a load test, shared by all event loops.
+ * The counters and histograms are the ones of the server metrics, so recording does not lock or allocate.
+ */
+public class LoadStats {
+    final Counter connects = new Counter();
+    final Counter logins = new Counter();
+    final Counter games = new Counter();
+    final Counter moves = new Counter();
+    final Counter redirects = new Counter();
+    final Counter connectErrors = new Counter();
+    final Counter ioErrors = new Counter();
+    final Counter serverErrors = new Counter();
+    final Counter loginErrors = new Counter();
+    final Histogram connectLatency = new Histogram();
+    final Histogram moveLatency = new Histogram();
+
+    /**
+     * The values of the stats at one moment, so the rates of an interval can be calculated.
+     */
+    public final class Snapshot {
+        private final long nanos;
+        private final long connected;
+        private final long loggedIn;
+        private final long started;
+        private final long moved;
+        private final Histogram.Snapshot connectTimes;
+        private final Histogram.Snapshot moveTimes;
+
+        /**
+         * Takes a snapshot of the current values.
+         */
+        private Snapshot() {
+            this.nanos = System.nanoTime();
+            this.connected = connects.get();
+            this.loggedIn = logins.get();
+            this.started = games.get();
+            this.moved = moves.get();
+            this.connectTimes = connectLatency.snapshot();
+            this.moveTimes = moveLatency.snapshot();
+        }
+
+        /**
+         * Formats one line with the rates and latencies since an earlier snapshot.
+         * @param earlier the earlier snapshot.
+         * @param start the System.nanoTime at which the test started.
+         * @param active the amount of connections that are open now.
+         * @return the line.
+         */
+        public String format(Snapshot earlier, long start, int active) {
+            double seconds = Math.max(nanos - earlier.nanos, 1) / 1e9;
+            Histogram.Snapshot rtt = moveTimes.since(earlier.moveTimes);
+            Histogram.Snapshot connect = connectTimes.since(earlier.connectTimes);
+            return String.format(Locale.ROOT, "%7.1fs %7d open %9.1f connects/s %9.1f logins/s %8.1f games/s"
+                            + " %10.1f moves/s | connect p50 %8.1f ms | move rtt p50 %8.3f p99 %8.3f p999 %8.3f"
+                            + " max %8.3f ms | errors %d",
+                    (nanos - start) / 1e9, active, (connected - earlier.connected) / seconds,
+                    (loggedIn - earlier.loggedIn) / seconds, (started - earlier.started) / seconds,
+                    (moved - earlier.moved) / seconds, millis(connect.percentile(0.5)), millis(rtt.percentile(0.5)),
+                    millis(rtt.percentile(0.99)), millis(rtt.percentile(0.999)), millis(rtt.getMax()), errors());
+        }
+    }
+
+    /**
+     * Takes a snapshot of the current values.
+     * @return the snapshot.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot();
+    }
+
+    /**
+     * Returns the amount of errors of all kinds.
+     * @return the sum of the error counters.
+     */
+    public long errors() {
+        return connectErrors.get() + ioErrors.get() + serverErrors.get() + loginErrors.get();
+    }
+
+    /**
+     * Returns a summary of the whole test.
+     * @param seconds the duration of the test in seconds.
+     * @return the summary, one value per line.
+     */
+    public String summary(double seconds) {
+        Histogram.Snapshot rtt = moveLatency.snapshot();
+        Histogram.Snapshot connect = connectLatency.snapshot();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "duration            %12.1f s%n", seconds));
+        sb.append(String.format(Locale.ROOT, "connects            %12d (%.1f/s)%n", connects.get(), connects.get() / seconds));
+        sb.append(String.format(Locale.ROOT, "logins              %12d (%.1f/s)%n", logins.get(), logins.get() / seconds));
+        sb.append(String.format(Locale.ROOT, "games started       %12d (%.1f/s)%n", games.get(), games.get() / seconds));
+        sb.append(String.format(Locale.ROOT, "moves               %12d (%.1f/s)%n", moves.get(), moves.get() / seconds));
+        sb.append(String.format(Locale.ROOT, "redirects           %12d%n", redirects.get()));
+        sb.append(String.format(Locale.ROOT, "connect time        p50 %.3f p99 %.3f p999 %.3f max %.3f ms%n",
+                millis(connect.percentile(0.5)), millis(connect.percentile(0.99)),
+                millis(connect.percentile(0.999)), millis(connect.getMax())));
+        sb.append(String.format(Locale.ROOT, "move round trip     p50 %.3f p99 %.3f p999 %.3f max %.3f ms%n",
+                millis(rtt.percentile(0.5)), millis(rtt.percentile(0.99)),
+                millis(rtt.percentile(0.999)), millis(rtt.getMax())));
+        sb.append(String.format(Locale.ROOT, "errors              connect %d, io %d, server %d, login %d%n",
+                connectErrors.get(), ioErrors.get(), serverErrors.get(), loginErrors.get()));
+        return sb.toString();
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds.
+     * @param nanos the nanoseconds.
+     * @return the milliseconds.
+     */
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,51 @@
+package network.client.load;
+
+/**
+ * A connection that an EventLoop runs, such as a simulated client of the LoadGenerator or a bot of the BotFleet.
+ * The loop calls these methods on its own thread only, so a client needs no locking.
+ */
+public interface LoopClient {
+
+    /**
+     * Returns the time at which the client waits to be called back.
+     * @return the System.nanoTime of the timer, EventLoop.NOT_SCHEDULED if there is none.
+     */
+    long getWakeAt();
+
+    /**
+     * Sets the time of the timer of the client.
+     * @param wakeAt the System.nanoTime of the timer, EventLoop.NOT_SCHEDULED if there is none.
+     */
+    void setWakeAt(long wakeAt);
+
+    /**
+     * Returns whether the client has an open connection.
+     * @return true if the client is connecting or connected.
+     */
+    boolean isOpen();
+
+    /**
+     * Called by the loop when the timer of the client is due.
+     */
+    void onTimer();
+
+    /**
+     * Called by the loop when the connection is established (or failed).
+     */
+    void onConnectable();
+
+    /**
+     * Called by the loop when the channel can take more bytes.
+     */
+    void onWritable();
+
+    /**
+     * Called by the loop when the channel has bytes to read.
+     */
+    void onReadable();
+
+    /**
+     * Closes the connection, when the loop stops.
+     */
+    void close();
+}
@@ -0,0 +1,270 @@
+package network.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The compact binary protocol that a client can ask for in its HELLO (HELLO~description~BINARY).
+ * Every message is a frame: the length of the rest of the frame as a varint, the code of the Opcode as a varint
+ * and then the payload:
+ * <ul>
+ *     <li>MOVE: one byte with the field (64 is a pass), optionally followed by the 8 byte legal-move mask
+ *     of the player that has to move next.</li>
+ *     <li>NEWGAME: the two usernames, optionally followed by a 128-bit snapshot of the board:
+ *     8 bytes with the black fields and 8 bytes with the white fields.</li>
+ *     <li>Any other command: its arguments, each as a varint length followed by the UTF-8 bytes.</li>
+ * </ul>
+ * Masks have one bit per field: bit i is set when field i is part of the mask.
+ */
+public final class BinaryCodec {
+    public static final String HELLO_OPTION = "BINARY";
+    public static final long INCOMPLETE = -1; // returned by readVarint when more bytes are needed.
+    public static final long MALFORMED = -2; // returned by readVarint when the varint is longer than 5 bytes.
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * Parses the next complete frame of the buffer, starting at its position.
+     * If a complete frame is found, the position of the buffer is moved after the frame.
+     * Otherwise, the buffer is left unchanged.
+     * @param buffer the buffer to read from, between its position and its limit.
+     * @param command the command to parse into.
+     * @return true if a frame is parsed, false if the buffer does not contain a complete frame.
+     * @throws MalformedFrameException if the length prefix is longer than 5 bytes.
+     */
+    public static boolean next(ByteBuffer buffer, Command command) {
+        int start = buffer.position();
+        long length = readVarint(buffer, start, buffer.limit());
+        if (length == MALFORMED) {
+            throw new MalformedFrameException("The length of a frame is longer than 5 bytes.");
+        }
+        if (length < 0) {
+            return false;
+        }
+        int from = start + varintSize(length);
+        long end = from + length;
+        if (end > buffer.limit()) {
+            return false;
+        }
+        parse(buffer, from, (int) end, command);
+        buffer.position((int) end);
+        return true;
+    }
+
+    /**
+     * Parses the frame that is stored in the buffer between from and to (without the length prefix).
+     * A frame with a malformed payload is parsed as UNKNOWN.
+     * @param buffer the buffer that contains the frame.
+     * @param from the index of the opcode.
+     * @param to the index after the last byte of the frame.
+     * @param command the command to parse into.
+     */
+    private static void parse(ByteBuffer buffer, int from, int to, Command command) {
+        command.reset(buffer);
+        long code = readVarint(buffer, from, to);
+        if (code < 0) {
+            return;
+        }
+        Opcode opcode = Opcode.ofCode((int) Math.min(code, Integer.MAX_VALUE));
+        int i = from + varintSize(code);
+        if (opcode == Opcode.MOVE) {
+            if (i >= to) {
+                return;
+            }
+            command.addArgument(buffer.get(i) & 0xFF);
+            i++;
+            if (to - i >= Long.BYTES) {
+                command.setMask(buffer.getLong(i));
+            }
+            command.setOpcode(opcode);
+            return;
+        }
+        int fields = opcode == Opcode.NEWGAME ? 2 : Integer.MAX_VALUE;
+        while (i < to && fields-- > 0) {
+            long size = readVarint(buffer, i, to);
+            if (size < 0) {
+                command.reset(buffer);
+                return;
+            }
+            i += varintSize(size);
+            if (i + size > to) {
+                command.reset(buffer);
+                return;
+            }
+            command.addArgument(i, (int) (i + size));
+            i += (int) size;
+        }
+        if (opcode == Opcode.NEWGAME && to - i >= 2 * Long.BYTES) {
+            command.setSnapshot(buffer.getLong(i), buffer.getLong(i + Long.BYTES));
+        }
+        command.setOpcode(opcode);
+    }
+
+    /**
+     * Encodes a NEWGAME as a binary frame, with a snapshot of the board.
+     * @param first the username of the first (black) player.
+     * @param second the username of the second (white) player.
+     * @param black the black fields, one bit per field.
+     * @param white the white fields, one bit per field.
+     * @return the binary frame.
+     */
+    public static byte[] encodeNewGame(String first, String second, long black, long white) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        writeVarint(payload, Opcode.NEWGAME.code());
+        writeField(payload, first);
+        writeField(payload, second);
+        writeLong(payload, black);
+        writeLong(payload, white);
+        return frame(payload);
+    }
+
+    /**
+     * Encodes a message of the text protocol as a binary frame.
+     * @param message the message in the text format.
+     * @return the binary frame.
+     */
+    public static byte[] encode(String message) {
+        String[] fields = message.split("~");
+        Opcode opcode = opcodeOf(fields[0]);
+        if (opcode == Opcode.MOVE && fields.length == 2 && fields[1].matches("\\d{1,3}")
+                && Integer.parseInt(fields[1]) <= 0xFF) {
+            return encodeMove(Integer.parseInt(fields[1]), 0, false);
+        }
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        writeVarint(payload, opcode.code());
+        for (int i = 1; i < fields.length; i++) {
+            writeField(payload, fields[i]);
+        }
+        return frame(payload);
+    }
+
+    /**
+     * Returns the bits of a set of fields.
+     * @param fields the indexes of the fields.
+     * @return a mask with one bit per field.
+     */
+    public static long mask(Iterable<Integer> fields) {
+        long mask = 0;
+        for (int field : fields) {
+            mask |= 1L << field;
+        }
+        return mask;
+    }
+
+    /**
+     * Encodes a MOVE as a binary frame.
+     * @param move the field of the move.
+     * @param mask the legal-move mask.
+     * @param withMask whether the mask is included.
+     * @return the binary frame.
+     */
+    public static byte[] encodeMove(int move, long mask, boolean withMask) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(12);
+        writeVarint(payload, Opcode.MOVE.code());
+        payload.write(move);
+        if (withMask) {
+            writeLong(payload, mask);
+        }
+        return frame(payload);
+    }
+
+    /**
+     * Returns the opcode with the given name.
+     * @param name the name of the command.
+     * @return the opcode, or UNKNOWN if it is not part of the protocol.
+     */
+    private static Opcode opcodeOf(String name) {
+        for (Opcode opcode : Opcode.values()) {
+            if (opcode.name().equals(name)) {
+                return opcode;
+            }
+        }
+        return Opcode.UNKNOWN;
+    }
+
+    /**
+     * Prefixes a payload with its length.
+     * @param payload the opcode and the payload.
+     * @return the complete frame.
+     */
+    private static byte[] frame(ByteArrayOutputStream payload) {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(payload.size() + 5);
+        writeVarint(frame, payload.size());
+        frame.writeBytes(payload.toByteArray());
+        return frame.toByteArray();
+    }
+
+    /**
+     * Writes a UTF-8 field with its length.
+     * @param out the stream to write to.
+     * @param field the field.
+     */
+    private static void writeField(ByteArrayOutputStream out, String field) {
+        byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    /**
+     * Writes a long in big-endian order, like ByteBuffer.getLong reads it.
+     * @param out the stream to write to.
+     * @param value the value.
+     */
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    /**
+     * Writes an unsigned varint: 7 bits per byte, the highest bit is set when more bytes follow.
+     * @param out the stream to write to.
+     * @param value the value, which must not be negative.
+     */
+    public static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Reads an unsigned varint.
+     * @param buffer the buffer to read from.
+     * @param from the index of the first byte of the varint.
+     * @param limit the index after the last byte that can be read.
+     * @return the value, INCOMPLETE if the limit is reached before the last byte,
+     * or MALFORMED if the varint is longer than 5 bytes.
+     */
+    public static long readVarint(ByteBuffer buffer, int from, int limit) {
+        long value = 0;
+        for (int i = from, shift = 0; i < limit; i++, shift += 7) {
+            if (shift == 35) {
+                return MALFORMED;
+            }
+            byte b = buffer.get(i);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        return INCOMPLETE;
+    }
+
+    /**
+     * Returns the amount of bytes of a varint.
+     * @param value the value of the varint.
+     * @return the amount of bytes.
+     */
+    public static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
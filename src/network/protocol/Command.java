@@ -0,0 +1,274 @@
+package network.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A parsed line of the protocol. A Command is reused for every line that is read:
+ * it only stores the opcode and the positions of the arguments in the buffer of the reader,
+ * so nothing is copied while parsing. Arguments are only turned into a String when asked for.
+ * Commands of the binary protocol can also hold integer arguments directly,
+ * the legal-move mask of a MOVE and the board snapshot of a NEWGAME.
+ * A Command is only valid until the next line is parsed into it.
+ */
+public class Command {
+    private Opcode opcode;
+    private ByteBuffer source;
+    private int[] starts;
+    private int[] ends;
+    private int arguments;
+    private boolean hasMask;
+    private long mask;
+    private boolean hasSnapshot;
+    private long black;
+    private long white;
+
+    /**
+     * Constructs an empty Command.
+     */
+    public Command() {
+        this.opcode = Opcode.UNKNOWN;
+        this.starts = new int[4];
+        this.ends = new int[4];
+    }
+
+    /**
+     * Returns the opcode of the command.
+     * @return the opcode of the command.
+     */
+    public Opcode getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * Returns the amount of fields of the line, including the opcode,
+     * so it is equal to the length of line.split("~").
+     * @return the amount of fields of the line.
+     */
+    public int length() {
+        return arguments + 1;
+    }
+
+    /**
+     * Returns the argument at position i as a String. The first argument (after the opcode) has position 1.
+     * @param i the position of the argument.
+     * @return the argument.
+     */
+    public String argument(int i) {
+        if (starts[i - 1] < 0) {
+            return Integer.toString(ends[i - 1]);
+        }
+        int from = starts[i - 1];
+        int length = ends[i - 1] - from;
+        if (source.hasArray()) {
+            return new String(source.array(), source.arrayOffset() + from, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        for (int j = 0; j < length; j++) {
+            bytes[j] = source.get(from + j);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks whether the argument at position i is equal to the given ASCII text, without creating a String.
+     * @param i the position of the argument.
+     * @param ascii the text to compare with.
+     * @return true if the argument is equal to the text.
+     */
+    public boolean argumentEquals(int i, String ascii) {
+        if (starts[i - 1] < 0) {
+            return argument(i).equals(ascii);
+        }
+        int from = starts[i - 1];
+        int length = ends[i - 1] - from;
+        if (length != ascii.length()) {
+            return false;
+        }
+        for (int j = 0; j < length; j++) {
+            if (source.get(from + j) != ascii.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the argument at position i is an integer, with the same rules as Integer.parseInt.
+     * @param i the position of the argument.
+     * @return true if the argument is an integer.
+     */
+    public boolean isInt(int i) {
+        return starts[i - 1] < 0 || parseLong(starts[i - 1], ends[i - 1]) != Long.MIN_VALUE;
+    }
+
+    /**
+     * Returns the argument at position i as an integer, without creating a String.
+     * @param i the position of the argument.
+     * @return the value of the argument.
+     * @throws NumberFormatException if the argument is not an integer.
+     */
+    public int intArgument(int i) {
+        int from = starts[i - 1];
+        int to = ends[i - 1];
+        if (from < 0) {
+            return to;
+        }
+        long value = parseLong(from, to);
+        if (value == Long.MIN_VALUE) {
+            throw new NumberFormatException("Argument " + i + " is not an integer: " + argument(i));
+        }
+        return (int) value;
+    }
+
+    /**
+     * Returns whether the command carries a legal-move mask (binary MOVE only).
+     * @return true if the command has a mask.
+     */
+    public boolean hasMask() {
+        return hasMask;
+    }
+
+    /**
+     * Returns the legal moves of the player to move after this MOVE, one bit per field.
+     * @return the legal-move mask.
+     */
+    public long getMask() {
+        return mask;
+    }
+
+    /**
+     * Returns whether the command carries a board snapshot (binary NEWGAME only).
+     * @return true if the command has a snapshot.
+     */
+    public boolean hasSnapshot() {
+        return hasSnapshot;
+    }
+
+    /**
+     * Returns the fields of the black player in the snapshot, one bit per field.
+     * @return the black fields.
+     */
+    public long getBlack() {
+        return black;
+    }
+
+    /**
+     * Returns the fields of the white player in the snapshot, one bit per field.
+     * @return the white fields.
+     */
+    public long getWhite() {
+        return white;
+    }
+
+    /**
+     * Parses the digits between from and to as an int.
+     * @param from the index of the first byte.
+     * @param to the index after the last byte.
+     * @return the value, or Long.MIN_VALUE if the bytes are not a valid int.
+     */
+    private long parseLong(int from, int to) {
+        if (from >= to) {
+            return Long.MIN_VALUE;
+        }
+        boolean negative = false;
+        int i = from;
+        byte first = source.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+            if (i == to) {
+                return Long.MIN_VALUE;
+            }
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = source.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                return Long.MIN_VALUE;
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+            return Long.MIN_VALUE;
+        }
+        return value;
+    }
+
+    /**
+     * Resets the command to parse a new line from the source buffer.
+     * @param source the buffer that contains the line.
+     */
+    void reset(ByteBuffer source) {
+        this.source = source;
+        this.opcode = Opcode.UNKNOWN;
+        this.arguments = 0;
+        this.hasMask = false;
+        this.hasSnapshot = false;
+    }
+
+    /**
+     * Sets the opcode of the command.
+     * @param opcode the opcode.
+     */
+    void setOpcode(Opcode opcode) {
+        this.opcode = opcode;
+    }
+
+    /**
+     * Adds an argument, stored in the source buffer between from (inclusive) and to (exclusive).
+     * @param from the index of the first byte of the argument.
+     * @param to the index after the last byte of the argument.
+     */
+    void addArgument(int from, int to) {
+        if (arguments == starts.length) {
+            starts = Arrays.copyOf(starts, arguments * 2);
+            ends = Arrays.copyOf(ends, arguments * 2);
+        }
+        starts[arguments] = from;
+        ends[arguments] = to;
+        arguments++;
+    }
+
+    /**
+     * Adds an integer argument that is not stored in the buffer.
+     * @param value the value of the argument.
+     */
+    void addArgument(int value) {
+        addArgument(-1, value);
+    }
+
+    /**
+     * Sets the legal-move mask of the command.
+     * @param mask the legal moves, one bit per field.
+     */
+    void setMask(long mask) {
+        this.mask = mask;
+        this.hasMask = true;
+    }
+
+    /**
+     * Sets the board snapshot of the command.
+     * @param black the black fields, one bit per field.
+     * @param white the white fields, one bit per field.
+     */
+    void setSnapshot(long black, long white) {
+        this.black = black;
+        this.white = white;
+        this.hasSnapshot = true;
+    }
+
+    /**
+     * Removes the trailing empty arguments, like String.split does.
+     */
+    void trimEmpty() {
+        while (arguments > 0 && starts[arguments - 1] >= 0 && starts[arguments - 1] == ends[arguments - 1]) {
+            arguments--;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package network.protocol;
+
+/**
+ * An encoded message that can be sent to clients of both protocols.
+ * It holds the text encoding and the binary encoding of the same message, so a message
+ * that is sent to many clients is only encoded once. A Frame is immutable and can be shared.
+ */
+public final class Frame {
+    private final byte[] text;
+    private final byte[] binary;
+
+    /**
+     * Constructs a Frame from its two encodings. The arrays are not copied and must not be changed.
+     * @param text the text encoding, including the line separator.
+     * @param binary the binary encoding, including the length prefix.
+     */
+    public Frame(byte[] text, byte[] binary) {
+        this.text = text;
+        this.binary = binary;
+    }
+
+    /**
+     * Encodes a text message in both protocols.
+     * @param message the message in the text format.
+     * @return the frame of the message.
+     */
+    public static Frame of(String message) {
+        return new Frame(Frames.encode(message), BinaryCodec.encode(message));
+    }
+
+    /**
+     * Returns the encoding for the given protocol.
+     * @param binary true for the binary protocol, false for the text protocol.
+     * @return the encoded message, which must not be changed.
+     */
+    public byte[] bytes(boolean binary) {
+        return binary ? this.binary : text;
+    }
+
+    /**
+     * Returns the text encoding.
+     * @return the text encoding, which must not be changed.
+     */
+    public byte[] text() {
+        return text;
+    }
+
+    /**
+     * Returns the binary encoding.
+     * @return the binary encoding, which must not be changed.
+     */
+    public byte[] binary() {
+        return binary;
+    }
+}
@@ -0,0 +1,91 @@
+package network.protocol;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pre-encoded lines of the protocol. The messages that never change are encoded once (in both protocols),
+ * and so is every possible MOVE, so sending them does not build or encode a String.
+ * The returned frames are shared.
+ */
+public final class Frames {
+    public static final Frame LOGIN = Frame.of("LOGIN");
+    public static final Frame ALREADYLOGGEDIN = Frame.of("ALREADYLOGGEDIN");
+    public static final Frame HELLO = Frame.of("HELLO~Server is ready.");
+    public static final Frame GAMEOVER_DRAW = Frame.of("GAMEOVER~DRAW");
+    public static final Frame QUEUE = Frame.of("QUEUE");
+    public static final Frame LIST = Frame.of("LIST");
+    public static final Frame PING = Frame.of("PING");
+    public static final Frame PONG = Frame.of("PONG");
+    public static final Frame ERROR_WRONG_COMMAND = Frame.of("ERROR~Wrong command.");
+    public static final Frame ERROR_NOT_LOGGED_IN = Frame.of("ERROR~Client not logged in yet.");
+    public static final Frame ERROR_NOT_IN_GAME = Frame.of("ERROR~Client not in a game.");
+    public static final Frame ERROR_INVALID_MOVE = Frame.of("ERROR~Invalid move");
+    public static final Frame ERROR_NOT_YOUR_TURN = Frame.of("ERROR~Not your turn");
+    public static final Frame ERROR_MOVE_ARGUMENTS = Frame.of("ERROR~Wrong arguments for MOVE command.");
+    public static final Frame ERROR_MOVE_NOT_INTEGER = Frame.of("ERROR~Wrong argument for MOVE: Not integer.");
+    public static final Frame ERROR_RATE_LIMITED = Frame.of("ERROR~Too many commands, slow down.");
+
+    /**
+     * The highest move that can be sent: 64 means that the player passes.
+     */
+    public static final int PASS = 64;
+
+    private static final Frame[] MOVES = new Frame[PASS + 1];
+
+    static {
+        for (int i = 0; i <= PASS; i++) {
+            MOVES[i] = new Frame(encode("MOVE~" + i), BinaryCodec.encodeMove(i, 0, false));
+        }
+    }
+
+    private Frames() {
+    }
+
+    /**
+     * Returns the encoded MOVE for the given move.
+     * @param move the index of the move, or 64 for a pass.
+     * @return the encoded move.
+     */
+    public static Frame move(int move) {
+        if (move >= 0 && move <= PASS) {
+            return MOVES[move];
+        }
+        return Frame.of("MOVE~" + move);
+    }
+
+    /**
+     * Returns the encoded MOVE for the given move, with the legal-move mask of the next player
+     * in the binary protocol. The text protocol has no mask, so its encoding is the shared one.
+     * @param move the index of the move, or 64 for a pass.
+     * @param mask the legal moves of the player that moves next, one bit per field.
+     * @return the encoded move.
+     */
+    public static Frame move(int move, long mask) {
+        if (move < 0 || move > PASS) {
+            return move(move);
+        }
+        return new Frame(MOVES[move].text(), BinaryCodec.encodeMove(move, mask, true));
+    }
+
+    /**
+     * Returns the encoded NEWGAME, with a snapshot of the board in the binary protocol.
+     * @param first the username of the first (black) player.
+     * @param second the username of the second (white) player.
+     * @param black the black fields, one bit per field.
+     * @param white the white fields, one bit per field.
+     * @return the encoded new game.
+     */
+    public static Frame newGame(String first, String second, long black, long white) {
+        return new Frame(encode("NEWGAME~" + first + "~" + second),
+                BinaryCodec.encodeNewGame(first, second, black, white));
+    }
+
+    /**
+     * Encodes a message as one line of the protocol.
+     * @param message the message to encode.
+     * @return the bytes of the line, including the line separator.
+     */
+    public static byte[] encode(String message) {
+        return (message + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+}
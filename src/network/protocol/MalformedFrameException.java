@@ -0,0 +1,17 @@
+package network.protocol;
+
+/**
+ * Thrown when the bytes of the binary protocol cannot be the start of a frame, like a length prefix
+ * that is longer than 5 bytes. The connection cannot be read any further and is closed.
+ */
+public class MalformedFrameException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a MalformedFrameException.
+     * @param message what is wrong with the frame.
+     */
+    public MalformedFrameException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,102 @@
+package network.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The commands of the Othello protocol. The first field of every line is one of these names.
+ * In the binary protocol the command is sent as its code instead. The codes must never change.
+ */
+public enum Opcode {
+    HELLO(1), LOGIN(2), ALREADYLOGGEDIN(3), LIST(4), LISTPAGE(5), PRESENCE(6), QUEUE(7), NEWGAME(8), MOVE(9),
+    GAMEOVER(10), ERROR(11), GAMES(12), WATCH(13), UNWATCH(14), BOARD(15), CHALLENGE(16), PING(17), PONG(18),
+    REDIRECT(19), RATING(20), TOP(21),
+    /**
+     * Any command that is not part of the protocol.
+     */
+    UNKNOWN(0);
+
+    private static final Opcode[][] BY_LENGTH = new Opcode[32][]; // the known opcodes, grouped by name length.
+    private static final Opcode[] BY_CODE = new Opcode[128];
+    private final byte[] name;
+    private final int code;
+
+    static {
+        for (Opcode opcode : values()) {
+            BY_CODE[opcode.code] = opcode;
+        }
+        for (int length = 0; length < BY_LENGTH.length; length++) {
+            int count = 0;
+            for (Opcode opcode : values()) {
+                if (opcode != UNKNOWN && opcode.name.length == length) {
+                    count++;
+                }
+            }
+            BY_LENGTH[length] = new Opcode[count];
+            for (Opcode opcode : values()) {
+                if (opcode != UNKNOWN && opcode.name.length == length) {
+                    BY_LENGTH[length][--count] = opcode;
+                }
+            }
+        }
+    }
+
+    Opcode(int code) {
+        this.name = name().getBytes(StandardCharsets.US_ASCII);
+        this.code = code;
+    }
+
+    /**
+     * Returns the code of the command in the binary protocol.
+     * @return the code of the command.
+     */
+    public int code() {
+        return code;
+    }
+
+    /**
+     * Looks up the command with the given binary code.
+     * @param code the code of the command.
+     * @return the command with that code or UNKNOWN.
+     */
+    public static Opcode ofCode(int code) {
+        if (code < 0 || code >= BY_CODE.length || BY_CODE[code] == null) {
+            return UNKNOWN;
+        }
+        return BY_CODE[code];
+    }
+
+    /**
+     * Returns the name of the command encoded as ASCII.
+     * @return the bytes of the name, which must not be changed.
+     */
+    public byte[] bytes() {
+        return name;
+    }
+
+    /**
+     * Looks up the command whose name is stored in the buffer between from (inclusive) and to (exclusive).
+     * No String is created for the lookup.
+     * @param buffer the bytes that contain the name.
+     * @param from the index of the first byte of the name.
+     * @param to the index after the last byte of the name.
+     * @return the command with that name or UNKNOWN.
+     */
+    public static Opcode lookup(ByteBuffer buffer, int from, int to) {
+        int length = to - from;
+        if (length >= BY_LENGTH.length) {
+            return UNKNOWN;
+        }
+        for (Opcode opcode : BY_LENGTH[length]) {
+            byte[] candidate = opcode.name;
+            int i = 0;
+            while (i < length && buffer.get(from + i) == candidate[i]) {
+                i++;
+            }
+            if (i == length) {
+                return opcode;
+            }
+        }
+        return UNKNOWN;
+    }
+}
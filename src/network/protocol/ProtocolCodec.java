@@ -0,0 +1,100 @@
+package network.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses the ~-delimited lines of the protocol directly from a ByteBuffer into a reusable Command.
+ * The parser only records where the opcode and the arguments are, it does not copy bytes
+ * or create Strings, so parsing a MOVE does not allocate anything.
+ */
+public final class ProtocolCodec {
+    public static final byte SEPARATOR = '~';
+    public static final byte NEWLINE = '\n';
+
+    private ProtocolCodec() {
+    }
+
+    /**
+     * Parses the next complete line of the buffer, starting at its position.
+     * If a complete line is found, the position of the buffer is moved after the line.
+     * Otherwise, the buffer is left unchanged so more bytes can be read after the partial line.
+     * @param buffer the buffer to read from, between its position and its limit.
+     * @param command the command to parse into.
+     * @return true if a line is parsed, false if the buffer does not contain a complete line.
+     */
+    public static boolean next(ByteBuffer buffer, Command command) {
+        int from = buffer.position();
+        int limit = buffer.limit();
+        int end = buffer.hasArray() ? find(buffer.array(), buffer.arrayOffset(), from, limit)
+                : find(buffer, from, limit);
+        if (end < 0) {
+            return false;
+        }
+        parse(buffer, from, end, command);
+        buffer.position(end + 1);
+        return true;
+    }
+
+    /**
+     * Finds the next line separator in a heap buffer.
+     * @param array the array of the buffer.
+     * @param offset the offset of the buffer in the array.
+     * @param from the index to start searching.
+     * @param limit the index to stop searching.
+     * @return the index of the line separator or -1.
+     */
+    private static int find(byte[] array, int offset, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (array[offset + i] == NEWLINE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the next line separator in a (direct) buffer.
+     * @param buffer the buffer.
+     * @param from the index to start searching.
+     * @param limit the index to stop searching.
+     * @return the index of the line separator or -1.
+     */
+    private static int find(ByteBuffer buffer, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (buffer.get(i) == NEWLINE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses one line, stored in the buffer between from (inclusive) and to (exclusive).
+     * A trailing carriage return is ignored. The fields are split on ~ with the same result as String.split,
+     * so empty fields at the end of the line are dropped.
+     * @param buffer the buffer that contains the line.
+     * @param from the index of the first byte of the line.
+     * @param to the index of the line separator.
+     * @param command the command to parse into.
+     */
+    public static void parse(ByteBuffer buffer, int from, int to, Command command) {
+        if (to > from && buffer.get(to - 1) == '\r') {
+            to--;
+        }
+        command.reset(buffer);
+        int start = from;
+        boolean opcode = true;
+        for (int i = from; i <= to; i++) {
+            if (i == to || buffer.get(i) == SEPARATOR) {
+                if (opcode) {
+                    command.setOpcode(Opcode.lookup(buffer, start, i));
+                    opcode = false;
+                } else {
+                    command.addArgument(start, i);
+                }
+                start = i + 1;
+            }
+        }
+        command.trimEmpty();
+    }
+}
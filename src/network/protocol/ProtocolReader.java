@@ -0,0 +1,101 @@
+package network.protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the lines of the protocol from a blocking input stream into one reusable buffer.
+ * Replaces BufferedReader.readLine and String.split: every line is parsed in place into a Command.
+ * After the HELLO handshake the reader can switch to the frames of the binary protocol.
+ */
+public class ProtocolReader {
+    public static final int DEFAULT_MAX_LINE = 1 << 16;
+
+    private final InputStream in;
+    private final int maxLine;
+    private ByteBuffer buffer;
+    private boolean binary;
+
+    /**
+     * Constructs a ProtocolReader with the default maximum line length.
+     * @param in the stream to read from.
+     */
+    public ProtocolReader(InputStream in) {
+        this(in, DEFAULT_MAX_LINE);
+    }
+
+    /**
+     * Constructs a ProtocolReader.
+     * @param in the stream to read from.
+     * @param maxLine the maximum length of a line in bytes. The buffer grows up to this size.
+     */
+    public ProtocolReader(InputStream in, int maxLine) {
+        this.in = in;
+        this.maxLine = maxLine;
+        this.buffer = ByteBuffer.allocate(Math.min(4096, maxLine));
+        this.buffer.limit(0);
+    }
+
+    /**
+     * Reads the next line and parses it into the command.
+     * @param command the command to parse into.
+     * @return true if a line is read, false if the end of the stream is reached.
+     * @throws IOException if reading fails, if a line is longer than the maximum line length
+     * or if a binary frame is malformed.
+     */
+    public boolean next(Command command) throws IOException {
+        try {
+            while (binary ? !BinaryCodec.next(buffer, command) : !ProtocolCodec.next(buffer, command)) {
+                if (!fill()) {
+                    return false;
+                }
+            }
+        } catch (MalformedFrameException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return true;
+    }
+
+    /**
+     * Switches between the text protocol and the binary protocol.
+     * The bytes that are already read but not parsed are parsed with the new protocol.
+     * @param binary true for the binary protocol.
+     */
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    /**
+     * Returns the underlying buffer. Between the position and the limit are the bytes
+     * that are read but not parsed yet.
+     * @return the buffer of the reader.
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Reads more bytes from the stream after the unparsed bytes of the buffer.
+     * @return false if the end of the stream is reached.
+     * @throws IOException if reading fails or if a line is too long.
+     */
+    private boolean fill() throws IOException {
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            if (buffer.capacity() >= maxLine) {
+                throw new IOException("Line longer than " + maxLine + " bytes.");
+            }
+            ByteBuffer bigger = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, maxLine));
+            buffer.flip();
+            bigger.put(buffer);
+            buffer = bigger;
+        }
+        int read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        if (read > 0) {
+            buffer.position(buffer.position() + read);
+        }
+        buffer.flip();
+        return read >= 0;
+    }
+}
@@ -1,25 +1,33 @@
 package network.server;
 
-import exceptions.IllegalMoveException;
-import exceptions.InvalidFieldException;
 import game.Game;
 import game.Player;
-import java.io.BufferedReader;
+import network.protocol.BinaryCodec;
+import network.protocol.Command;
+import network.protocol.Frame;
+import network.protocol.Frames;
+import network.protocol.Opcode;
+import network.protocol.ProtocolReader;
+import network.server.bot.BotType;
+import network.server.journal.GameJournal;
+import network.server.log.Log;
+import network.server.metrics.Counter;
+import network.server.metrics.Histogram;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Represents a Client Handler for the server of the Othello game.
  * Handles the connection for a client from the server side.
  */
-public class ClientHandler implements Runnable {
+public class ClientHandler implements Runnable, Participant {
     private final Socket socket;
     private final GameServer server;
-    private final BufferedReader in;
-    private final PrintWriter out;
+    private final ProtocolReader in;
+    private final OutboundQueue out;
     private String username;
     private Game game;
     private boolean isLogged;
@@ -27,6 +35,17 @@ public class ClientHandler implements Runnable {
     private boolean hello;
     private Player player;
     private String clientDescription;
+    private volatile boolean binary; // whether the client uses the binary protocol.
+    private GameSession watching; // the game that the client watches, null if none.
+    private final Histogram lockWait; // nanoseconds between reading a command and getting the server lock.
+    private final Histogram moveLatency; // nanoseconds between reading a MOVE and queueing its result.
+    private final Counter commands;
+    private final Counter dropped; // messages that the outbound queue did not accept.
+    private final CommandLimiter limiter; // the rate limits of the commands of the client.
+    private final Counter limited; // commands that were sent faster than their rate limit.
+    private long queuedAt; // the time at which the client joined the queue, in milliseconds since the epoch.
+    private volatile long lastRead; // System.nanoTime at which the last message of the client was read.
+    private volatile TimingWheel.Timeout heartbeat; // the next check whether the client is silent.
 
     /**
      * Constructs a ClientHandler with the given socket and server.
@@ -37,8 +56,35 @@ public class ClientHandler implements Runnable {
     public ClientHandler(Socket socket, GameServer server) throws IOException {
         this.socket = socket;
         this.server = server;
-        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        this.out = new PrintWriter(socket.getOutputStream(), true);
+        this.in = new ProtocolReader(socket.getInputStream());
+        this.out = new OutboundQueue(socket.getOutputStream(), server.getOutboundCapacity(),
+                server.getSlowConsumerPolicy(), this::dropConnection);
+        this.lockWait = server.getMetrics().histogram("lock.wait");
+        this.moveLatency = server.getMetrics().histogram("move.latency");
+        this.commands = server.getMetrics().counter("commands");
+        this.dropped = server.getMetrics().counter("outbound.dropped");
+        this.limiter = new CommandLimiter(server.getRateLimits());
+        this.limited = server.getMetrics().counter("commands.limited");
+    }
+
+    /**
+     * Sets the time at which the client joined the queue.
+     * @param queuedAt the time in milliseconds since the epoch.
+     */
+    public void setQueuedAt(long queuedAt) {
+        synchronized (server) {
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    /**
+     * Returns the time at which the client joined the queue.
+     * @return the time in milliseconds since the epoch.
+     */
+    public long getQueuedAt() {
+        synchronized (server) {
+            return queuedAt;
+        }
     }
 
     /**
@@ -47,24 +93,50 @@ public class ClientHandler implements Runnable {
      */
     public void setGame(Game game) {
         synchronized (server) {
+            server.unwatch(this);
             this.game = game;
             this.isInGame = true;
         }
     }
 
+    /**
+     * Sets the game that the client watches.
+     * @param watching the game, or null if the client stops watching.
+     */
+    public void setWatching(GameSession watching) {
+        synchronized (server) {
+            this.watching = watching;
+        }
+    }
+
+    /**
+     * Returns the game that the client watches.
+     * @return the game, or null if the client does not watch a game.
+     */
+    public GameSession getWatching() {
+        synchronized (server) {
+            return watching;
+        }
+    }
+
     /**
      * Closes the ClientHandler connection.
      * Removes the client from the server list and closes the socket.
      */
     public void close() {
         synchronized (server) {
+            TimingWheel.Timeout check = heartbeat;
+            if (check != null) {
+                check.cancel();
+            }
             try {
                 server.removeClient(this);
+                out.close();
                 socket.close();
                 //print in the server which client disconnected.
-                server.print("Client with username " + getUsername() + " is disconnected.");
+                Log.info("Client with username {} is disconnected.", getUsername());
             } catch (IOException e) {
-                System.out.println(e.getMessage());
+                Log.warn(e.getMessage());
             }
         }
     }
@@ -79,6 +151,16 @@ public class ClientHandler implements Runnable {
         }
     }
 
+    /**
+     * Returns whether the client is playing a game.
+     * @return true if the client is in a game.
+     */
+    public boolean isInGame() {
+        synchronized (server) {
+            return isInGame;
+        }
+    }
+
     /**
      * Returns the game of the ClientHandler.
      * @return the game of the ClientHandler.
@@ -120,13 +202,123 @@ public class ClientHandler implements Runnable {
     }
 
     /**
-     * Sends a message to the client using the output stream of the socket.
+     * Sends a message to the client. The message is queued and written by the writer thread
+     * of this client, so this method never blocks on the network.
      * @param message the message to be sent.
      */
     public void sendMessage(String message) {
-        synchronized (server) {
-            out.println(message);
+        offer(encode(message), null);
+    }
+
+    /**
+     * Sends a message to the client that may be superseded by a newer message with the same key,
+     * if the client is too slow and the slow consumer policy is COLLAPSE.
+     * @param message the message to be sent.
+     * @param key the collapse key of the message.
+     */
+    public void sendMessage(String message, String key) {
+        offer(encode(message), key);
+    }
+
+    /**
+     * Sends an encoded message to the client, for example one of the pre-encoded Frames.
+     * The encoding of the protocol of this client is used.
+     * @param frame the encoded message, which is shared.
+     */
+    public void sendFrame(Frame frame) {
+        offer(frame.bytes(binary), null);
+    }
+
+    /**
+     * Queues an encoded message and counts it if the outbound queue does not accept it.
+     * @param frame the encoded message.
+     * @param key the collapse key of the message, or null.
+     */
+    private void offer(byte[] frame, String key) {
+        if (!out.offer(frame, key)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Returns whether the client uses the binary protocol.
+     * @return true if the client uses the binary protocol.
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Encodes a message in the protocol of this client.
+     * @param message the message in the text format.
+     * @return the encoded message.
+     */
+    private byte[] encode(String message) {
+        return binary ? BinaryCodec.encode(message) : Frames.encode(message);
+    }
+
+    /**
+     * Returns the amount of messages that still have to be written to the client.
+     * @return the amount of queued messages.
+     */
+    public int getQueuedMessages() {
+        return out.size();
+    }
+
+    /**
+     * Closes the socket of a client that cannot keep up with its messages.
+     * The reading thread then handles the disconnect like any other.
+     */
+    private void dropConnection() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            Log.warn(e.getMessage());
+        }
+    }
+
+    /**
+     * Applies the penalty for a command that was sent faster than its rate limit.
+     * @param opcode the command.
+     * @param wait the nanoseconds until the command would be allowed.
+     * @return true if the command is handled after all (after a DELAY), false if it is dropped.
+     * @throws IOException if the client is disconnected.
+     */
+    private boolean penalize(Opcode opcode, long wait) throws IOException {
+        limited.increment();
+        switch (server.getRateLimits().getPenalty()) {
+            case DELAY:
+                LockSupport.parkNanos(wait);
+                return true;
+            case DISCONNECT:
+                server.getMetrics().counter("connections.limited").increment();
+                Log.info("Client with username {} sent too many {} commands and is disconnected.", getUsername(), opcode);
+                throw new IOException("Too many " + opcode + " commands.");
+            default:
+                sendFrame(Frames.ERROR_RATE_LIMITED);
+                return false;
+        }
+    }
+
+    /**
+     * Checks whether the client has been silent for too long. Runs on the timing wheel of the server.
+     * A client that is silent for the heartbeat interval gets a PING, which a live client answers with a PONG;
+     * a client that is silent for the idle timeout is disconnected, which ends its game and its thread.
+     */
+    private void checkSilence() {
+        long silent = (System.nanoTime() - lastRead) / 1_000_000;
+        long idleTimeout = server.getIdleTimeout();
+        long interval = server.getHeartbeat() > 0 ? server.getHeartbeat() : idleTimeout;
+        if (idleTimeout > 0 && silent >= idleTimeout) {
+            server.getMetrics().counter("connections.idle").increment();
+            Log.info("Client with username {} is silent for {} seconds and is disconnected.", getUsername(), silent / 1000);
+            dropConnection();
+            return;
         }
+        if (server.getHeartbeat() > 0 && silent >= server.getHeartbeat()) {
+            sendFrame(Frames.PING);
+        }
+        heartbeat = server.getTimers().schedule(this::checkSilence, interval);
     }
 
     /**
@@ -135,53 +327,71 @@ public class ClientHandler implements Runnable {
      */
     private void login(String name) {
         synchronized (server) {
-            if (server.checkFreeUsername(name)) {
+            if (name.getBytes(StandardCharsets.UTF_8).length > GameJournal.MAX_NAME_BYTES) {
+                sendMessage("ERROR~Username is longer than " + GameJournal.MAX_NAME_BYTES + " bytes.");
+            } else if (BotType.byUsername(name) == null && server.addLogged(this, name)) {
                 this.username = name;
                 isLogged = true;
-                server.addLogged(this);
-                sendMessage("LOGIN");
-                server.print("Client with username " + name + " logged in.");
+                sendFrame(Frames.LOGIN);
+                Log.info("Client with username {} logged in.", name);
+                server.resumeGame(this);
             } else {
-                sendMessage("ALREADYLOGGEDIN");
+                sendFrame(Frames.ALREADYLOGGEDIN);
             }
         }
     }
 
     /**
-     * Checks whether the provided string is an integer.
-     * @param move the string to be checked.
-     * @return true if the string is an int and false otherwise.
+     * Handles the watch command sent by the client.
+     * @param id the id of the game, as sent by the client.
      */
-    private boolean isValid(String move) {
-        synchronized (server) {
-            try {
-                int i = Integer.parseInt(move);
-            } catch (NumberFormatException e) {
-                return false;
-            }
-            return true;
+    private void watch(String id) {
+        long game;
+        try {
+            game = Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            sendMessage("ERROR~Wrong argument for WATCH: Not integer.");
+            return;
+        }
+        if (!server.watch(this, game)) {
+            sendMessage("ERROR~Unknown game.");
+        }
+    }
+
+    /**
+     * Handles the challenge command sent by the client: starts a game against one of the bots of the server.
+     * @param name the username of the bot.
+     */
+    private void challenge(String name) {
+        BotType type = BotType.byUsername(name);
+        if (type == null) {
+            sendMessage("ERROR~Unknown bot. The bots are: " + BotType.usernames() + ".");
+        } else if (!server.challenge(this, type)) {
+            sendMessage("ERROR~Too many games against bots. Try again later.");
         }
     }
 
     /**
      * Handles the disconnection of the client while being in a game.
      * Sends a GAMEOVER message to the other player.
+     * The player that disconnected is this client, so the check also works for players without a connection.
      */
     public void disconnect() {
-        List<ClientHandler> clientsPlayers = server.getPlayers().get(game);
-        //check if there is a game and which player disconnected
-        if (clientsPlayers != null && (!server.getClients().contains(clientsPlayers.get(0)) ||
-                !server.getClients().contains(clientsPlayers.get(1)))) {
-            if (!server.getClients().contains(clientsPlayers.get(0))) {
-                clientsPlayers.get(1).sendMessage("GAMEOVER~DISCONNECT~"
-                        + clientsPlayers.get(1).getUsername());
-                clientsPlayers.get(1).setInGame(false);
-                server.getPlayers().remove(game);
-            } else {
-                clientsPlayers.get(0).sendMessage("GAMEOVER~DISCONNECT~"
-                        + clientsPlayers.get(0).getUsername());
-                clientsPlayers.get(0).setInGame(false);
-                server.getPlayers().remove(game);
+        synchronized (server) {
+            List<Participant> clientsPlayers = server.getPlayers().get(game);
+            //check if there is a game and which player disconnected
+            if (clientsPlayers != null && clientsPlayers.contains(this)) {
+                if (clientsPlayers.get(0) == this) {
+                    clientsPlayers.get(1).sendMessage("GAMEOVER~DISCONNECT~"
+                            + clientsPlayers.get(1).getUsername());
+                    clientsPlayers.get(1).setInGame(false);
+                    server.endGame(game, GameResult.DISCONNECT_SECOND);
+                } else {
+                    clientsPlayers.get(0).sendMessage("GAMEOVER~DISCONNECT~"
+                            + clientsPlayers.get(0).getUsername());
+                    clientsPlayers.get(0).setInGame(false);
+                    server.endGame(game, GameResult.DISCONNECT_FIRST);
+                }
             }
         }
     }
@@ -189,71 +399,165 @@ public class ClientHandler implements Runnable {
     /**
      * The run method of the Runnable class ClientHandler.
      * It receives messages from the client according to the protocol and handles them accordingly.
+     * Every line is parsed in place into the same Command, so no Strings are created for a MOVE.
      * Also deals with disconnections from the client.
      */
     @Override
     public void run() {
-        String line;
+        new Thread(out, "writer-" + socket.getRemoteSocketAddress()).start();
+        lastRead = System.nanoTime();
+        long interval = server.getHeartbeat() > 0 ? server.getHeartbeat() : server.getIdleTimeout();
+        if (interval > 0) {
+            heartbeat = server.getTimers().schedule(this::checkSilence, interval);
+        }
+        Command command = new Command();
         try {
-            while ((line = in.readLine()) != null) {
+            while (in.next(command)) {
+                long received = System.nanoTime();
+                lastRead = received;
+                // the rate limit is checked before the lock, so a flood of commands never reaches the lock.
+                long wait = limiter.acquire(command.getOpcode(), received);
+                if (wait > 0 && !penalize(command.getOpcode(), wait)) {
+                    continue;
+                }
                 synchronized (server) {
-                    String[] command = line.split("~");
-                    switch (command[0]) {
-                        case "HELLO":
+                    lockWait.record(System.nanoTime() - received);
+                    commands.increment();
+                    switch (command.getOpcode()) {
+                        case HELLO:
                             if (hello) {
                                 sendMessage("ERROR~Hello handshake was already done.");
-                            } else if (command.length != 2) {
+                            } else if (command.length() == 3
+                                    && command.argumentEquals(2, BinaryCodec.HELLO_OPTION)) {
+                                this.clientDescription = command.argument(1);
+                                Log.info("New Client: {} connected (binary).", clientDescription);
+                                // the reply is still text, everything after it is binary.
+                                sendMessage("HELLO~Server is ready.~" + BinaryCodec.HELLO_OPTION);
+                                this.binary = true;
+                                in.setBinary(true);
+                                this.hello = true;
+                            } else if (command.length() != 2) {
                                 sendMessage("ERROR~Wrong arguments for HELLO command.");
                             } else {
                                 //print to the server which client has connected.
-                                server.print("New Client: " + command[1] + " connected.");
-                                this.clientDescription = command[1];
-                                sendMessage("HELLO~Server is ready.");
+                                this.clientDescription = command.argument(1);
+                                Log.info("New Client: {} connected.", clientDescription);
+                                sendFrame(Frames.HELLO);
                                 this.hello = true;
                             }
                             break;
-                        case "LOGIN":
-                            if (command.length != 2) {
+                        case LOGIN:
+                            if (command.length() != 2) {
                                 sendMessage("ERROR~Wrong arguments for LOGIN command.");
                             } else if (isLogged) {
                                 sendMessage("ERROR~Client already logged in.");
                             } else if (!hello) {
                                 sendMessage("ERROR~Hello handshake not completed.");
                             } else {
-                                login(command[1]);
+                                login(command.argument(1));
                             }
                             break;
-                        case "LIST":
+                        case LIST:
                             if (!isLogged) {
-                                sendMessage("ERROR~Client not logged in yet.");
-                            } else if (command.length != 1) {
-                                sendMessage("ERROR~Wrong arguments for LIST command.");
+                                sendFrame(Frames.ERROR_NOT_LOGGED_IN);
+                            } else if (command.length() == 1) {
+                                sendMessage(server.getList(), "LIST");
+                            } else if (command.length() == 2 && command.argumentEquals(1, "SUBSCRIBE")) {
+                                server.getLogin().subscribe(this);
+                            } else if (command.length() == 2 && command.argumentEquals(1, "UNSUBSCRIBE")) {
+                                server.getLogin().unsubscribe(this);
+                            } else if (command.length() == 3 && command.isInt(1) && command.isInt(2)) {
+                                sendMessage(server.getList(command.intArgument(1), command.intArgument(2)),
+                                        "LISTPAGE");
                             } else {
-                                sendMessage(server.getList());
+                                sendMessage("ERROR~Wrong arguments for LIST command.");
                             }
                             break;
-                        case "QUEUE":
-                            if (command.length != 1) {
+                        case QUEUE:
+                            if (command.length() != 1) {
                                 sendMessage("ERROR~Wrong arguments for QUEUE command.");
                             } else if (!isLogged) {
-                                sendMessage("ERROR~Client not logged in yet.");
+                                sendFrame(Frames.ERROR_NOT_LOGGED_IN);
                             } else {
                                 server.handleQueue(this);
                             }
                             break;
-                        case "MOVE":
-                            if (command.length != 2) {
-                                sendMessage("ERROR~Wrong arguments for MOVE command.");
+                        case MOVE:
+                            if (command.length() != 2) {
+                                sendFrame(Frames.ERROR_MOVE_ARGUMENTS);
                             } else if (!isInGame) {
-                                sendMessage("ERROR~Client not in a game.");
-                            } else if (!isValid(command[1])) {
-                                sendMessage("ERROR~Wrong argument for MOVE: Not integer.");
+                                sendFrame(Frames.ERROR_NOT_IN_GAME);
+                            } else if (!command.isInt(1)) {
+                                sendFrame(Frames.ERROR_MOVE_NOT_INTEGER);
+                            } else {
+                                server.makeMove(this, command.intArgument(1));
+                                moveLatency.record(System.nanoTime() - received);
+                            }
+                            break;
+                        case CHALLENGE:
+                            if (command.length() != 2) {
+                                sendMessage("ERROR~Wrong arguments for CHALLENGE command.");
+                            } else if (!isLogged) {
+                                sendFrame(Frames.ERROR_NOT_LOGGED_IN);
+                            } else if (isInGame) {
+                                sendMessage("ERROR~Client is playing a game.");
+                            } else {
+                                challenge(command.argument(1));
+                            }
+                            break;
+                        case PING:
+                            sendFrame(Frames.PONG);
+                            break;
+                        case PONG:
+                            // the client is alive, which is already recorded.
+                            break;
+                        case GAMES:
+                            if (command.length() != 1) {
+                                sendMessage("ERROR~Wrong arguments for GAMES command.");
+                            } else if (!isLogged) {
+                                sendFrame(Frames.ERROR_NOT_LOGGED_IN);
+                            } else {
+                                sendMessage(server.getGames());
+                            }
+                            break;
+                        case RATING:
+                            if (command.length() > 2) {
+                                sendMessage("ERROR~Wrong arguments for RATING command.");
+                            } else if (!isLogged) {
+                                sendFrame(Frames.ERROR_NOT_LOGGED_IN);
+                            } else {
+                                sendMessage(server.getRating(command.length() == 2 ? command.argument(1) : getUsername()));
+                            }
+                            break;
+                        case TOP:
+                            if (command.length() > 2 || command.length() == 2 && !command.isInt(1)) {
+                                sendMessage("ERROR~Wrong arguments for TOP command.");
+                            } else if (!isLogged) {
+                                sendFrame(Frames.ERROR_NOT_LOGGED_IN);
+                            } else {
+                                sendMessage(server.getTop(command.length() == 2 ? command.intArgument(1) : 10));
+                            }
+                            break;
+                        case WATCH:
+                            if (command.length() != 2) {
+                                sendMessage("ERROR~Wrong arguments for WATCH command.");
+                            } else if (!isLogged) {
+                                sendFrame(Frames.ERROR_NOT_LOGGED_IN);
+                            } else if (isInGame) {
+                                sendMessage("ERROR~Client is playing a game.");
+                            } else {
+                                watch(command.argument(1));
+                            }
+                            break;
+                        case UNWATCH:
+                            if (command.length() != 1) {
+                                sendMessage("ERROR~Wrong arguments for UNWATCH command.");
                             } else {
-                                server.makeMove(this, Integer.parseInt(command[1]));
+                                server.unwatch(this);
                             }
                             break;
                         default:
-                            sendMessage("ERROR~Wrong command.");
+                            sendFrame(Frames.ERROR_WRONG_COMMAND);
                     }
                 }
             }
@@ -262,8 +566,6 @@ public class ClientHandler implements Runnable {
         } catch (IOException e) {
             close();
             disconnect();
-        } catch (IllegalMoveException | InvalidFieldException e) {
-            System.out.println(e.getMessage());
         }
     }
 }
@@ -0,0 +1,51 @@
+package network.server;
+
+import network.protocol.Opcode;
+
+/**
+ * The token buckets of one client, one per command. Each bucket is a single number: the time at which
+ * the bucket would be full again (the "theoretical arrival time" of the generic cell rate algorithm).
+ * A command is allowed when that time is at most a burst ahead of now, and then moves it one interval further.
+ * Checking a command is a few additions on the time at which the command was read, without allocations.
+ * Only used by the thread that reads the commands of the client.
+ */
+class CommandLimiter {
+    private final RateLimits limits;
+    private final long[] full; // the System.nanoTime at which each bucket is full again, by opcode ordinal.
+
+    /**
+     * Constructs the buckets of a client, all full.
+     * @param limits the limits of the commands.
+     */
+    CommandLimiter(RateLimits limits) {
+        this.limits = limits;
+        this.full = new long[Opcode.values().length];
+        long now = System.nanoTime();
+        for (int i = 0; i < full.length; i++) {
+            full[i] = now;
+        }
+    }
+
+    /**
+     * Takes a token for a command.
+     * If the command is too fast, no token is taken, unless the penalty is DELAY: then the token is
+     * reserved and the client has to wait the returned time before the command is handled.
+     * @param opcode the command.
+     * @param now the System.nanoTime at which the command was read.
+     * @return 0 if the command is allowed, otherwise the nanoseconds until it would be allowed.
+     */
+    long acquire(Opcode opcode, long now) {
+        long interval = limits.interval(opcode);
+        if (interval == 0) {
+            return 0;
+        }
+        int i = opcode.ordinal();
+        long start = full[i] - now < 0 ? now : full[i];
+        long wait = start - now - limits.tolerance(opcode);
+        if (wait > 0 && limits.getPenalty() != RatePenalty.DELAY) {
+            return wait;
+        }
+        full[i] = start + interval;
+        return Math.max(0, wait);
+    }
+}
@@ -0,0 +1,81 @@
+package network.server;
+
+/**
+ * The ways in which a game on the server can end. The first player is the black player, who starts the game.
+ * The codes are stored in the journal and must never change.
+ */
+public enum GameResult {
+    DRAW(0, -1),
+    VICTORY_FIRST(1, 0),
+    VICTORY_SECOND(2, 1),
+    /**
+     * The first player won, because the second player disconnected.
+     */
+    DISCONNECT_FIRST(3, 0),
+    /**
+     * The second player won, because the first player disconnected.
+     */
+    DISCONNECT_SECOND(4, 1),
+    /**
+     * The first player won, because the clock of the second player ran out.
+     */
+    TIMEOUT_FIRST(5, 0),
+    /**
+     * The second player won, because the clock of the first player ran out.
+     */
+    TIMEOUT_SECOND(6, 1);
+
+    private final int code;
+    private final int winner;
+
+    GameResult(int code, int winner) {
+        this.code = code;
+        this.winner = winner;
+    }
+
+    /**
+     * Returns the code of the result in the journal.
+     * @return the code.
+     */
+    public int code() {
+        return code;
+    }
+
+    /**
+     * Returns the index of the winner in the players of the game.
+     * @return 0 for the first player, 1 for the second, -1 for a draw.
+     */
+    public int winner() {
+        return winner;
+    }
+
+    /**
+     * Returns whether the game ended because a player disconnected.
+     * @return true for DISCONNECT_FIRST and DISCONNECT_SECOND.
+     */
+    public boolean isDisconnect() {
+        return this == DISCONNECT_FIRST || this == DISCONNECT_SECOND;
+    }
+
+    /**
+     * Returns whether the game ended because the clock of a player ran out.
+     * @return true for TIMEOUT_FIRST and TIMEOUT_SECOND.
+     */
+    public boolean isTimeout() {
+        return this == TIMEOUT_FIRST || this == TIMEOUT_SECOND;
+    }
+
+    /**
+     * Returns the result with the given code.
+     * @param code the code of the result.
+     * @return the result, or null for an unknown code.
+     */
+    public static GameResult ofCode(int code) {
+        for (GameResult result : values()) {
+            if (result.code == code) {
+                return result;
+            }
+        }
+        return null;
+    }
+}
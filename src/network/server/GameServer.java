@@ -1,11 +1,25 @@
 package network.server;
 
-import exceptions.IllegalMoveException;
-import exceptions.InvalidFieldException;
+import game.Board;
 import game.Game;
 import game.OthelloGame;
 import game.Mark;
+import game.MoveResult;
 import game.Player;
+import network.protocol.Frame;
+import network.protocol.Frames;
+import network.server.archive.GameArchive;
+import network.server.bot.BotHandler;
+import network.server.bot.BotPool;
+import network.server.bot.BotType;
+import network.server.federation.Federation;
+import network.server.journal.GameJournal;
+import network.server.journal.RecoveredGame;
+import network.server.log.Log;
+import network.server.metrics.MetricsRegistry;
+import network.server.rating.Rating;
+import network.server.rating.RatingService;
+import network.server.tournament.Tournament;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
@@ -15,14 +29,42 @@ import java.util.*;
  * A representation of the server for the Othello game.
  */
 public class GameServer implements Server, Runnable {
+    public static final long DEFAULT_CLOCK = 600_000; // milliseconds of each player in a game.
+    public static final long DEFAULT_INCREMENT = 5_000; // milliseconds added to the clock after every move.
+    public static final long DEFAULT_HEARTBEAT = 30_000; // milliseconds of silence after which a client is pinged.
+    public static final long DEFAULT_IDLE = 90_000; // milliseconds of silence after which a client is disconnected.
+    private static final long FILL_INTERVAL = 1_000; // milliseconds between two checks of the queue filler.
+
     private final int port;
+    private final int outboundCapacity; // Maximum amount of queued messages per client.
+    private final SlowConsumerPolicy slowConsumerPolicy; // What to do when a client's queue is full.
+    private final MetricsRegistry metrics; // The counters, gauges and latency histograms of the server.
     private ServerSocket ss;
-    private List<ClientHandler> clients; // List of clients connected to the server.
-    private List<ClientHandler> queue; // List of clients that are in the queue.
+    private Set<ClientHandler> clients; // Set of clients connected to the server.
+    private Set<ClientHandler> queue; // Set of clients that are in the queue, in order of arrival.
 
-    private List<ClientHandler> logged; // List of clients that are logged in.
+    private PresenceRegistry logged; // Registry of clients that are logged in.
     private Thread s1;
-    private Map<Game, List<ClientHandler>> players; //Map of games and the players for each game.
+    private Map<Game, List<Participant>> players; //Map of games and the players for each game.
+    private Map<Game, GameSession> sessions; // The id and the moves of every game that is being played.
+    private Map<Long, GameSession> games; // The games that are being played, by id.
+    private Map<String, GameSession> suspended; // Recovered games that wait for their players, by username.
+    private Map<Long, long[]> suspendedClocks; // The clocks of the recovered games after their last move, by id.
+    private GameJournal journal; // The journal of the games, null if the games are not journaled.
+    private GameArchive archive; // The archive of the finished games, null if they are not archived.
+    private RatingService ratings; // The ratings of the players, updated when a game ends.
+    private RateLimits rateLimits; // How many commands of each kind a client can send.
+    private long nextGameId; // The id of the next game if there is no journal.
+    private BotPool bots; // The threads on which the bots of the server search for their moves.
+    private BotType queueFiller; // The bot that plays clients that waited too long in the queue, null if none.
+    private long queueFillWait; // Milliseconds a client waits in the queue before it plays the queue filler.
+    private final TimingWheel timers; // Runs the move clocks, the heartbeats and the queue filler.
+    private long clock; // Milliseconds of each player in a game, 0 if games have no clock.
+    private long increment; // Milliseconds added to the clock of a player after every move.
+    private long heartbeat; // Milliseconds of silence after which a client is pinged, 0 to never ping.
+    private long idleTimeout; // Milliseconds of silence after which a client is disconnected, 0 to never disconnect.
+    private Federation federation; // The other nodes of the federation, null if the server runs alone.
+    private Tournament tournament; // The last tournament, null if none was started.
 
 
     /**
@@ -31,7 +73,177 @@ public class GameServer implements Server, Runnable {
      * @param port the port where the server will start.
      */
     public GameServer(int port) {
+        this(port, OutboundQueue.DEFAULT_CAPACITY, SlowConsumerPolicy.DISCONNECT);
+    }
+
+    /**
+     * Constructor for the GameServer class with a custom outbound queue configuration.
+     * @param port the port where the server will start.
+     * @param outboundCapacity the maximum amount of messages that can wait to be sent to one client.
+     * @param slowConsumerPolicy what to do with a client whose outbound queue is full.
+     */
+    public GameServer(int port, int outboundCapacity, SlowConsumerPolicy slowConsumerPolicy) {
         this.port = port;
+        this.outboundCapacity = outboundCapacity;
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        this.metrics = new MetricsRegistry();
+        this.bots = new BotPool(metrics, BotPool.defaultThreads(), BotPool.DEFAULT_BUDGET,
+                BotPool.DEFAULT_MAX_DEPTH, BotPool.DEFAULT_MAX_GAMES);
+        this.ratings = new RatingService(RatingService.DEFAULT_K);
+        this.rateLimits = RateLimits.defaults(RatePenalty.DROP);
+        this.timers = new TimingWheel();
+        this.clock = DEFAULT_CLOCK;
+        this.increment = DEFAULT_INCREMENT;
+        this.heartbeat = DEFAULT_HEARTBEAT;
+        this.idleTimeout = DEFAULT_IDLE;
+    }
+
+    /**
+     * Sets the clocks of the games. Must be called before the server is started.
+     * A player whose clock runs out loses the game with GAMEOVER~TIMEOUT~winner.
+     * @param clock the milliseconds of each player in a game, 0 for games without a clock.
+     * @param increment the milliseconds that are added to the clock of a player after every move.
+     */
+    public void setClock(long clock, long increment) {
+        this.clock = clock;
+        this.increment = increment;
+    }
+
+    /**
+     * Sets when silent clients are pinged and disconnected. Must be called before the server is started.
+     * @param heartbeat the milliseconds of silence after which a client gets a PING, 0 to never ping.
+     * @param idleTimeout the milliseconds of silence after which a client is disconnected, 0 to never disconnect.
+     */
+    public void setHeartbeat(long heartbeat, long idleTimeout) {
+        this.heartbeat = heartbeat;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Returns the milliseconds of silence after which a client gets a PING.
+     * @return the heartbeat interval, 0 if clients are never pinged.
+     */
+    public long getHeartbeat() {
+        return heartbeat;
+    }
+
+    /**
+     * Returns the milliseconds of silence after which a client is disconnected.
+     * @return the idle timeout, 0 if clients are never disconnected.
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Returns the timing wheel that runs the timers of the server.
+     * @return the timing wheel.
+     */
+    public TimingWheel getTimers() {
+        return timers;
+    }
+
+    /**
+     * Returns the metrics of the server.
+     * @return the metrics registry.
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the maximum amount of messages that can wait to be sent to one client.
+     * @return the capacity of the outbound queue of each client.
+     */
+    public int getOutboundCapacity() {
+        return outboundCapacity;
+    }
+
+    /**
+     * Returns the policy for clients whose outbound queue is full.
+     * @return the slow consumer policy.
+     */
+    public SlowConsumerPolicy getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    /**
+     * Returns the rate limits of the commands of the clients.
+     * @return the rate limits.
+     */
+    public RateLimits getRateLimits() {
+        return rateLimits;
+    }
+
+    /**
+     * Sets the rate limits of the commands of the clients. Must be called before the server is started.
+     * @param rateLimits the rate limits.
+     */
+    public void setRateLimits(RateLimits rateLimits) {
+        this.rateLimits = rateLimits;
+    }
+
+    /**
+     * Journals the games of this server, so they can be resumed after a restart.
+     * Must be called before the server is started; the games that are still open in the journal
+     * are resumed as soon as both of their players are logged in again.
+     * @param journal the journal of the games.
+     */
+    public void setJournal(GameJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Archives the games of this server when they are over. Must be called before the server is started.
+     * @param archive the archive of the finished games.
+     */
+    public void setArchive(GameArchive archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * Replaces the ratings of the players, for example by ratings that are stored on disk.
+     * Must be called before the server is started.
+     * @param ratings the ratings.
+     */
+    public void setRatings(RatingService ratings) {
+        this.ratings = ratings;
+    }
+
+    /**
+     * Replaces the pool on which the bots search for their moves. Must be called before the server is started.
+     * @param bots the pool.
+     */
+    public void setBots(BotPool bots) {
+        this.bots.shutdown();
+        this.bots = bots;
+    }
+
+    /**
+     * Lets a bot play the clients that waited too long in the queue for an opponent.
+     * Must be called before the server is started.
+     * @param bot the bot that plays them.
+     * @param wait the milliseconds that a client waits before it plays the bot.
+     */
+    public void setQueueFiller(BotType bot, long wait) {
+        this.queueFiller = bot;
+        this.queueFillWait = wait;
+    }
+
+    /**
+     * Connects the server to the other nodes of a federation. Must be called before the server is started.
+     * @param federation the federation layer of this node.
+     */
+    public void setFederation(Federation federation) {
+        this.federation = federation;
+    }
+
+    /**
+     * Returns the archive of the finished games.
+     * @return the archive, or null if the games are not archived.
+     */
+    public GameArchive getArchive() {
+        return archive;
     }
 
     @Override
@@ -39,13 +251,24 @@ public class GameServer implements Server, Runnable {
         try {
             ss = new ServerSocket(port);
         } catch (IOException e) {
-            System.out.println("Could not start the server at port: " + port +
-                    "\n The port is probably already in use.");
+            Log.error("Could not start the server at port: {}. The port is probably already in use.", port);
             System.exit(-1);
         }
 
         s1 = new Thread(this);
         s1.start();
+        timers.start();
+        if (federation != null) {
+            try {
+                federation.start();
+            } catch (IOException e) {
+                Log.error("Could not open the peer port of the federation: {}", e.getMessage());
+                System.exit(-1);
+            }
+        }
+        if (queueFiller != null) {
+            timers.schedule(this::fillQueue, FILL_INTERVAL);
+        }
     }
 
     @Override
@@ -53,13 +276,26 @@ public class GameServer implements Server, Runnable {
         try {
             ss.close();
         } catch (IOException e) {
-            System.out.println("Couldn't close the ServerSocket!!!");
+            Log.warn("Couldn't close the ServerSocket!!!");
+        }
+        if (journal != null) {
+            journal.close();
         }
+        if (archive != null) {
+            archive.close();
+        }
+        ratings.close();
+        metrics.stopDump();
+        if (federation != null) {
+            federation.stop();
+        }
+        timers.stop();
+        bots.shutdown();
 
         try {
             s1.join();
         } catch (InterruptedException e) {
-            System.out.println(e.getMessage());
+            Log.warn(e.getMessage());
             Thread.currentThread().interrupt();
         }
 
@@ -69,7 +305,7 @@ public class GameServer implements Server, Runnable {
      * Returns the map with the games and players.
      * @return map with the games and players.
      */
-    public synchronized Map<Game, List<ClientHandler>> getPlayers() {
+    public synchronized Map<Game, List<Participant>> getPlayers() {
         return players;
     }
 
@@ -87,15 +323,21 @@ public class GameServer implements Server, Runnable {
      */
     public synchronized void addQueue(ClientHandler ch) {
         queue.add(ch);
-        System.out.println(ch.getUsername() + " is currently queueing. Queue-size:" + queue.size());
+        ch.setQueuedAt(System.currentTimeMillis());
+        Log.debug("{} is currently queueing. Queue-size: {}", ch.getUsername(), queue.size());
     }
 
     /**
-     * Add a client to the list of the clients that are logged in.
-     * @param ch the ClientHandler to be added to the list.
+     * Add a client to the clients that are logged in, if its username is still free.
+     * @param ch the ClientHandler to be added.
+     * @param username the username of the client.
+     * @return true if the client is logged in, false if the username is already used (on any node of the federation).
      */
-    public synchronized void addLogged(ClientHandler ch) {
-        logged.add(ch);
+    public synchronized boolean addLogged(ClientHandler ch, String username) {
+        if (federation != null && federation.isUsedElsewhere(username)) {
+            return false;
+        }
+        return logged.register(username, ch);
     }
 
     /**
@@ -104,6 +346,10 @@ public class GameServer implements Server, Runnable {
      * @param ch the ClientHandler to be removed from the list.
      */
     public synchronized void removeClient(ClientHandler ch) {
+        if (federation != null) {
+            federation.disconnected(ch);
+        }
+        unwatch(ch);
         removeLogin(ch);
         clients.remove(ch);
     }
@@ -117,36 +363,36 @@ public class GameServer implements Server, Runnable {
     }
 
     /**
-     * Removes a client from the list of the clients that are logged in.
-     * Also removes the client from the queue list.
-     * @param ch the ClientHandler to be removed from the list.
+     * Removes a client from the clients that are logged in.
+     * Also removes the client from the queue.
+     * @param ch the ClientHandler to be removed.
      */
     public synchronized void removeLogin(ClientHandler ch) {
         removeQueue(ch);
-        logged.remove(ch);
+        logged.unregister(ch.getUsername(), ch);
     }
 
     /**
-     * Returns the list of the clients that are connected to server.
-     * @return the list of the clients that are connected to server.
+     * Returns the set of the clients that are connected to server.
+     * @return the set of the clients that are connected to server.
      */
-    public List<ClientHandler> getClients() {
+    public Set<ClientHandler> getClients() {
         return clients;
     }
 
     /**
-     * Returns the list of the clients that are in the queue.
-     * @return the list of the clients that are in the queue.
+     * Returns the set of the clients that are in the queue, in order of arrival.
+     * @return the set of the clients that are in the queue.
      */
-    public synchronized List<ClientHandler> getQueue() {
+    public synchronized Set<ClientHandler> getQueue() {
         return queue;
     }
 
     /**
-     * Returns the list of the clients that are logged in.
-     * @return the list of the clients that are logged in.
+     * Returns the registry of the clients that are logged in.
+     * @return the registry of the clients that are logged in.
      */
-    public synchronized List<ClientHandler> getLogin() {
+    public PresenceRegistry getLogin() {
         return logged;
     }
 
@@ -156,6 +402,12 @@ public class GameServer implements Server, Runnable {
      * @param ch the ClientHandler for which to handle the queue.
      */
     public synchronized void handleQueue(ClientHandler ch) {
+        if (tournament != null && tournament.isPlaying(ch.getUsername())) {
+            return; // the tournament starts the games of its players.
+        }
+        if (federation != null && federation.onQueue(ch)) {
+            return;
+        }
         if (getQueue().contains(ch)) {
             removeQueue(ch);
         } else {
@@ -163,49 +415,126 @@ public class GameServer implements Server, Runnable {
         }
 
         if (getQueue().size() >= 2) {
-            List<ClientHandler> gamePlayers = new ArrayList<>();
-            ClientHandler p1 = getQueue().get(0);
-            ClientHandler p2 = getQueue().get(1);
-            removeQueue(p1);
-            removeQueue(p2);
-            Player player1 = new Player(p1.getUsername(), Mark.BLACK);
-            Player player2 = new Player(p2.getUsername(), Mark.WHITE);
-            p1.setPlayer(player1);
-            p2.setPlayer(player2);
+            Iterator<ClientHandler> waiting = getQueue().iterator();
+            startGame(waiting.next(), waiting.next());
+        }
+    }
 
-            OthelloGame game = new OthelloGame(player1, player2);
-            p1.setGame(game);
-            p2.setGame(game);
+    /**
+     * Starts a game between two clients that were matched by the federation, if both are still connected
+     * and neither of them is playing.
+     * @param p1 the first (black) player.
+     * @param p2 the second (white) player.
+     * @return true if the game is started.
+     */
+    public synchronized boolean startMatch(ClientHandler p1, ClientHandler p2) {
+        if (!clients.contains(p1) || !clients.contains(p2) || p1.isInGame() || p2.isInGame()) {
+            return false;
+        }
+        startGame(p1, p2);
+        return true;
+    }
+
+    /**
+     * Starts a game between two clients, who are removed from the queue.
+     * If the first player is a bot, it is asked for its first move.
+     * @param p1 the first (black) player.
+     * @param p2 the second (white) player.
+     */
+    private synchronized void startGame(Participant p1, Participant p2) {
+        List<Participant> gamePlayers = new ArrayList<>();
+        queue.remove(p1);
+        queue.remove(p2);
+        Player player1 = new Player(p1.getUsername(), Mark.BLACK);
+        Player player2 = new Player(p2.getUsername(), Mark.WHITE);
+        p1.setPlayer(player1);
+        p2.setPlayer(player2);
 
-            gamePlayers.add(p1);
-            gamePlayers.add(p2);
-            getPlayers().put(game, gamePlayers);
+        OthelloGame game = new OthelloGame(player1, player2);
+        p1.setGame(game);
+        p2.setGame(game);
 
-            System.out.println("Creating a game for users " + p1.getUsername() + " and " + p2.getUsername());
+        gamePlayers.add(p1);
+        gamePlayers.add(p2);
+        getPlayers().put(game, gamePlayers);
+        long id = journal == null ? nextGameId++ : journal.newGame(p1.getUsername(), p2.getUsername());
+        GameSession session = new GameSession(id, game, gamePlayers, System.currentTimeMillis());
+        sessions.put(game, session);
+        games.put(id, session);
+        metrics.counter("games.started").increment();
 
-            p1.sendMessage("NEWGAME~" + p1.getUsername() + "~" + p2.getUsername());
-            p2.sendMessage("NEWGAME~" + p1.getUsername() + "~" + p2.getUsername());
+        Log.info("Creating a game for users {} and {}", p1.getUsername(), p2.getUsername());
+
+        Frame newGame = Frames.newGame(p1.getUsername(), p2.getUsername(),
+                fieldsMask(game.getBoard(), Mark.BLACK), fieldsMask(game.getBoard(), Mark.WHITE));
+        p1.sendFrame(newGame);
+        p2.sendFrame(newGame);
+        startClock(session);
+        botTurn(game, gamePlayers);
+    }
+
+    /**
+     * Starts a game of a client against one of the bots of the server. The client plays black.
+     * @param ch the ClientHandler of the client.
+     * @param bot the bot to play against.
+     * @return false if the maximum amount of games against bots is being played.
+     */
+    public synchronized boolean challenge(ClientHandler ch, BotType bot) {
+        if (!bots.acquire()) {
+            return false;
+        }
+        startGame(ch, new BotHandler(this, bot, bots));
+        return true;
+    }
+
+    /**
+     * Lets the queue filler play the client that waited too long in the queue for an opponent.
+     * When there is no room for another game against a bot, the client keeps waiting.
+     */
+    private synchronized void fillQueue() {
+        timers.schedule(this::fillQueue, FILL_INTERVAL);
+        if (queue == null || queue.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        ClientHandler first = queue.iterator().next();
+        if (now - first.getQueuedAt() >= queueFillWait) {
+            Log.info("{} waited too long, {} plays the game.", first.getUsername(), queueFiller.getUsername());
+            challenge(first, queueFiller);
+        }
+    }
+
+    /**
+     * Asks the bot of a game for its move, if it is the turn of a bot.
+     * @param game the game.
+     * @param gamePlayers the players of the game.
+     */
+    private void botTurn(Game game, List<Participant> gamePlayers) {
+        for (Participant pl : gamePlayers) {
+            if (pl instanceof BotHandler && game.getCurrent().equals(pl.getPlayer())) {
+                ((BotHandler) pl).think();
+            }
         }
     }
 
     /**
      * Returns the list with all the logged in clients in the protocol format.
+     * The encoding is cached by the registry until somebody logs in or out.
      * @return the list with all the logged in clients.
      */
-    public synchronized String getList() {
-        StringBuilder list = new StringBuilder("LIST");
-        for (ClientHandler ch : getLogin()) {
-            list.append("~").append(ch.getUsername());
-        }
-        return list.toString();
+    public String getList() {
+        return federation == null ? logged.getList() : federation.withRemoteUsers(logged.getList());
     }
 
     /**
-     * Prints to the standard output of this class.
-     * @param message the message to be printed.
+     * Returns a page of the logged in clients in the protocol format. Like getList, it includes
+     * the users of the other nodes of the federation after the local clients.
+     * @param offset the position of the first client of the page.
+     * @param limit the maximum amount of clients on the page.
+     * @return the requested page of the logged in clients.
      */
-    public synchronized void print(String message) {
-        System.out.println(message);
+    public String getList(int offset, int limit) {
+        return federation == null ? logged.getPage(offset, limit) : federation.getPage(logged, offset, limit);
     }
 
     /**
@@ -213,71 +542,483 @@ public class GameServer implements Server, Runnable {
      * @param username the username to be checked.
      * @return true if the provided username is free and false otherwise.
      */
-    public synchronized boolean checkFreeUsername(String username) {
-        for (ClientHandler ch : getLogin()) {
-            if (ch.getUsername().equals(username)) {
-                return false;
-            }
-        }
-        return true;
+    public boolean checkFreeUsername(String username) {
+        return logged.isFree(username);
     }
 
     /**
-     * Handles the move that is sent by the ClientHandler.
-     * @param ch the ClientHandler which sent the move.
+     * Handles the move that is sent by a player, a client or a bot.
+     * The move is validated, applied and the outcome is determined by a single Game.applyMove,
+     * so the legal moves are generated once per move.
+     * @param ch the player which sent the move.
      * @param move the move to be handled.
-     * @throws IllegalMoveException if the move is not legal
-     * @throws InvalidFieldException if the field is not valid
      */
-    public synchronized void makeMove(ClientHandler ch, int move)
-            throws IllegalMoveException, InvalidFieldException {
+    public synchronized void makeMove(Participant ch, int move) {
         Game game = ch.getGame();
-        //get the list of ClientHandlers who play this game, basically the players of the game
-        List<ClientHandler> clientsPlayers = getPlayers().get(game);
+        //get the list of the players of this game
+        List<Participant> clientsPlayers = getPlayers().get(game);
         //checks whether the client is the current player
-        if (game.getCurrent().equals(ch.getPlayer())) {
-            //Check whether the move is possible
-            if (game.getBoard().possibleMoves(ch.getPlayer().getMark()).contains(move)) {
-                game.makeMove(move);
-                for (ClientHandler pl : clientsPlayers) {
-                    pl.sendMessage("MOVE~" + move);
-                }
-                //If the move is 64, then check if the player doesn't have any possible moves
-            } else if (move == 64 &&
-                    game.getBoard().possibleMoves(ch.getPlayer().getMark()).isEmpty()) {
-                game.pass(); //pass the turn to the other player
-                for (ClientHandler pl : clientsPlayers) {
-                    pl.sendMessage("MOVE~" + move);
-                }
-            } else {
-                ch.sendMessage("ERROR~Invalid move");
+        if (!game.getCurrent().equals(ch.getPlayer())) {
+            ch.sendFrame(Frames.ERROR_NOT_YOUR_TURN);
+            return;
+        }
+        //validates and makes the move, or passes the turn if the move is 64 and there are no possible moves
+        MoveResult result = game.applyMove(move);
+        if (!result.isLegal()) {
+            metrics.counter("moves.illegal").increment();
+            ch.sendFrame(Frames.ERROR_INVALID_MOVE);
+            return;
+        }
+        metrics.counter("moves").increment();
+        GameSession session = sessions.get(game);
+        int ply = session.recordMove(move);
+        long left = 0; // the milliseconds that the player to move next has left.
+        if (session.hasClock() && !result.isGameOver()) {
+            left = session.pressClock(clientsPlayers.get(0) == ch ? 0 : 1);
+        }
+        if (journal != null) {
+            journal.move(session.getId(), ply, move, session.hasClock() ? session.getClock(0) : -1,
+                    session.hasClock() ? session.getClock(1) : -1);
+        }
+        Frame frame = moveFrame(move, result, clientsPlayers);
+        for (Participant pl : clientsPlayers) {
+            pl.sendFrame(frame);
+        }
+        if (session.hasWatchers()) {
+            session.broadcast(frame, () -> boardFrame(session));
+        }
+        //check if the game is over
+        if (result.isGameOver()) {
+            GameResult outcome = outcome(game, result);
+            Frame gameOver = gameOverFrame(game, outcome);
+            for (Participant pl : clientsPlayers) {
+                pl.setInGame(false);
+                pl.sendFrame(gameOver);
             }
+            endGame(game, outcome);
         } else {
-            ch.sendMessage("ERROR~Not your turn");
+            if (session.hasClock()) {
+                runClock(session, left);
+            }
+            botTurn(game, clientsPlayers);
         }
-        //check if the game is over
-        if (game.getBoard().gameOver()) {
-            //check who is the winner
-            if (game.getBoard().isWinner(game.getPlayers()[0].getMark())) {
-                for (ClientHandler pl : clientsPlayers) {
-                    pl.setInGame(false);
-                    pl.sendMessage("GAMEOVER~" + "VICTORY~" + game.getPlayers()[0].getUsername());
-                }
-                players.remove(game);
-            } else if (game.getBoard().isWinner(game.getPlayers()[1].getMark())) {
-                for (ClientHandler pl : clientsPlayers) {
-                    pl.setInGame(false);
-                    pl.sendMessage("GAMEOVER~" + "VICTORY~" + game.getPlayers()[1].getUsername());
+    }
+
+    /**
+     * Starts the clocks of a game that just started, if games have a clock.
+     * @param session the game.
+     */
+    private void startClock(GameSession session) {
+        if (clock > 0) {
+            session.startClock(clock, increment);
+            runClock(session, clock);
+        }
+    }
+
+    /**
+     * Starts the clocks of a recovered game with the time that the players had left after the last move
+     * that was journaled. The time that the player to move thought before the restart is not counted.
+     * A game that was journaled without clocks gets full time banks.
+     * @param session the game.
+     * @param left the milliseconds of the first and the second player, null if they are not known.
+     */
+    private void resumeClock(GameSession session, long[] left) {
+        if (clock <= 0) {
+            return;
+        }
+        if (left == null) {
+            startClock(session);
+            return;
+        }
+        session.startClock(left[0], left[1], increment);
+        Game game = session.getGame();
+        runClock(session, left[game.getCurrent().equals(game.getPlayers()[0]) ? 0 : 1]);
+    }
+
+    /**
+     * Starts the timer that ends the game when the clock of the player to move runs out.
+     * @param session the game.
+     * @param left the milliseconds that the player to move has left.
+     */
+    private void runClock(GameSession session, long left) {
+        int ply = session.getPlies();
+        session.setExpiry(timers.schedule(() -> clockExpired(session, ply), left));
+    }
+
+    /**
+     * Ends a game because the clock of the player to move ran out. Runs on the timing wheel;
+     * if the player moved or the game ended in the meantime, nothing happens.
+     * @param session the game.
+     * @param ply the amount of moves when the clock was started.
+     */
+    private synchronized void clockExpired(GameSession session, int ply) {
+        Game game = session.getGame();
+        if (sessions.get(game) != session || session.getPlies() != ply) {
+            return;
+        }
+        GameResult result = game.getCurrent().equals(game.getPlayers()[0]) ? GameResult.TIMEOUT_SECOND
+                : GameResult.TIMEOUT_FIRST;
+        Frame gameOver = gameOverFrame(game, result);
+        for (Participant pl : session.getClients()) {
+            pl.setInGame(false);
+            pl.sendFrame(gameOver);
+        }
+        metrics.counter("games.timeout").increment();
+        Log.info("The clock of {} ran out in game {}", game.getCurrent().getUsername(), session.getId());
+        endGame(game, result);
+    }
+
+    /**
+     * Returns the GAMEOVER message for the result of a game.
+     * @param game the game that is over.
+     * @param result the result of the game.
+     * @return the encoded GAMEOVER.
+     */
+    private static Frame gameOverFrame(Game game, GameResult result) {
+        if (result == GameResult.DRAW) {
+            return Frames.GAMEOVER_DRAW;
+        }
+        String winner = game.getPlayers()[result.winner()].getUsername();
+        String reason = result.isDisconnect() ? "DISCONNECT" : result.isTimeout() ? "TIMEOUT" : "VICTORY";
+        return Frame.of("GAMEOVER~" + reason + "~" + winner);
+    }
+
+    /**
+     * Returns a snapshot of a game for its spectators:
+     * BOARD~id~black player~white player~black fields~white fields~player to move.
+     * The fields are masks with one bit per field, written as signed decimal longs.
+     * @param session the game.
+     * @return the encoded snapshot.
+     */
+    private static Frame boardFrame(GameSession session) {
+        Game game = session.getGame();
+        Player[] gamePlayers = game.getPlayers();
+        return Frame.of("BOARD~" + session.getId() + "~" + gamePlayers[0].getUsername() + "~"
+                + gamePlayers[1].getUsername() + "~" + game.getBoard().getBits(Mark.BLACK) + "~"
+                + game.getBoard().getBits(Mark.WHITE) + "~" + game.getCurrent().getUsername());
+    }
+
+    /**
+     * Returns the games that are being played in the protocol format: GAMES~id~black~white~id~black~white...
+     * @return the list of the games.
+     */
+    public synchronized String getGames() {
+        StringBuilder list = new StringBuilder("GAMES");
+        for (GameSession session : games.values()) {
+            Player[] gamePlayers = session.getGame().getPlayers();
+            list.append('~').append(session.getId()).append('~').append(gamePlayers[0].getUsername())
+                    .append('~').append(gamePlayers[1].getUsername());
+        }
+        return list.toString();
+    }
+
+    /**
+     * Returns the rating of a player in the protocol format: RATING~username~rating~rank~players~wins~draws~losses.
+     * Answered from memory, so it never waits for the disk.
+     * @param username the username of the player.
+     * @return the rating of the player, or an ERROR if the player has not played a game yet.
+     */
+    public String getRating(String username) {
+        Rating rating = ratings.get(username);
+        if (rating == null) {
+            return "ERROR~" + username + " has not played a rated game.";
+        }
+        return "RATING~" + username + "~" + rating.getRounded() + "~" + ratings.rank(username) + "~" + ratings.size()
+                + "~" + rating.getWins() + "~" + rating.getDraws() + "~" + rating.getLosses();
+    }
+
+    /**
+     * Returns the players with the highest ratings in the protocol format: TOP~username~rating~username~rating...
+     * @param count the maximum amount of players.
+     * @return the top of the ranking, the highest rating first.
+     */
+    public String getTop(int count) {
+        StringBuilder top = new StringBuilder("TOP");
+        for (Rating rating : ratings.top(count)) {
+            top.append('~').append(rating.getUsername()).append('~').append(rating.getRounded());
+        }
+        return top.toString();
+    }
+
+    /**
+     * Lets a client watch a game. A client watches at most one game; it gets a snapshot of the board
+     * and then every MOVE and the GAMEOVER of the game.
+     * @param ch the ClientHandler of the spectator.
+     * @param id the id of the game.
+     * @return false if there is no game with that id.
+     */
+    public synchronized boolean watch(ClientHandler ch, long id) {
+        GameSession session = games.get(id);
+        if (session == null) {
+            return false;
+        }
+        unwatch(ch);
+        session.watch(ch);
+        ch.setWatching(session);
+        ch.sendFrame(boardFrame(session));
+        return true;
+    }
+
+    /**
+     * Stops a client from watching its game, if it watches one.
+     * @param ch the ClientHandler of the spectator.
+     */
+    public synchronized void unwatch(ClientHandler ch) {
+        GameSession session = ch.getWatching();
+        if (session != null) {
+            session.unwatch(ch);
+            ch.setWatching(null);
+        }
+    }
+
+    /**
+     * Returns the result of a game that is over.
+     * @param game the game.
+     * @param result the result of the last move of the game.
+     * @return the result of the game.
+     */
+    private static GameResult outcome(Game game, MoveResult result) {
+        if (result.isDraw()) {
+            return GameResult.DRAW;
+        }
+        return result.getWinner().equals(game.getPlayers()[0]) ? GameResult.VICTORY_FIRST
+                : GameResult.VICTORY_SECOND;
+    }
+
+    /**
+     * Removes a game that is over from the server, archives it and journals its result.
+     * @param game the game that is over.
+     * @param result the result of the game.
+     */
+    public synchronized void endGame(Game game, GameResult result) {
+        players.remove(game);
+        GameSession session = sessions.remove(game);
+        if (session == null) {
+            return;
+        }
+        games.remove(session.getId());
+        session.setExpiry(null);
+        metrics.counter("games.finished").increment();
+        for (Participant pl : session.getClients()) {
+            if (pl instanceof BotHandler) {
+                bots.release();
+            }
+        }
+        if (session.hasWatchers()) {
+            session.finish(gameOverFrame(game, result), () -> boardFrame(session));
+        }
+        Player[] gamePlayers = game.getPlayers();
+        if (archive != null) {
+            archive.add(session.getId(), gamePlayers[0].getUsername(), gamePlayers[1].getUsername(),
+                    session.getStarted(), result.code(), session.getMoves(), session.getPlies());
+        }
+        if (journal != null) {
+            journal.gameOver(session.getId(), result.code());
+        }
+        ratings.gameOver(gamePlayers[0].getUsername(), gamePlayers[1].getUsername(), result.winner());
+        if (tournament != null) {
+            tournament.gameOver(game, result);
+        }
+    }
+
+    /**
+     * Starts a tournament, unless another tournament is still running.
+     * @param next the tournament.
+     * @return false if another tournament is running.
+     */
+    public synchronized boolean startTournament(Tournament next) {
+        if (tournament != null && !tournament.isFinished()) {
+            return false;
+        }
+        tournament = next;
+        next.start();
+        return true;
+    }
+
+    /**
+     * Stops the running tournament: its running games are played to the end, but no new games are started.
+     */
+    public synchronized void stopTournament() {
+        if (tournament != null) {
+            tournament.stop();
+        }
+    }
+
+    /**
+     * Returns the standings of the last tournament.
+     * @return the standings, null if no tournament was started.
+     */
+    public synchronized String getStandings() {
+        return tournament == null ? null : tournament.report();
+    }
+
+    /**
+     * Resumes a recovered game of a client that just logged in, if its opponent is logged in as well
+     * and neither of them is playing another game.
+     * Both players get a NEWGAME followed by every move that was made before the restart.
+     * @param ch the ClientHandler that logged in.
+     */
+    public synchronized void resumeGame(ClientHandler ch) {
+        GameSession session = suspended.get(ch.getUsername());
+        if (session == null) {
+            return;
+        }
+        Player[] gamePlayers = session.getGame().getPlayers();
+        Participant p1 = resumedPlayer(gamePlayers[0].getUsername());
+        Participant p2 = resumedPlayer(gamePlayers[1].getUsername());
+        if (p1 == null || p2 == null || p1.isInGame() || p2.isInGame()) {
+            return;
+        }
+        BotType bot = BotType.byUsername(p1 instanceof BotHandler ? p1.getUsername() : p2.getUsername());
+        if (bot != null && !bots.acquire()) {
+            return;
+        }
+        suspended.remove(gamePlayers[0].getUsername());
+        suspended.remove(gamePlayers[1].getUsername());
+        long[] left = suspendedClocks.remove(session.getId());
+        queue.remove(p1);
+        queue.remove(p2);
+        p1.setPlayer(gamePlayers[0]);
+        p2.setPlayer(gamePlayers[1]);
+        p1.setGame(session.getGame());
+        p2.setGame(session.getGame());
+        session.getClients().add(p1);
+        session.getClients().add(p2);
+        players.put(session.getGame(), session.getClients());
+        sessions.put(session.getGame(), session);
+        games.put(session.getId(), session);
+
+        Log.info("Resuming game {} for users {} and {}", session.getId(), p1.getUsername(), p2.getUsername());
+
+        Board start = new OthelloGame(gamePlayers[0], gamePlayers[1]).getBoard();
+        Frame newGame = Frames.newGame(p1.getUsername(), p2.getUsername(),
+                fieldsMask(start, Mark.BLACK), fieldsMask(start, Mark.WHITE));
+        p1.sendFrame(newGame);
+        p2.sendFrame(newGame);
+        for (int ply = 0; ply < session.getPlies(); ply++) {
+            Frame move = Frames.move(session.getMove(ply));
+            p1.sendFrame(move);
+            p2.sendFrame(move);
+        }
+        resumeClock(session, left);
+        botTurn(session.getGame(), session.getClients());
+    }
+
+    /**
+     * Returns the player of a recovered game: the ClientHandler of the logged in client with the username,
+     * or a new bot if the username is the one of a bot.
+     * @param username the username of the player.
+     * @return the player, or null if the player is not logged in.
+     */
+    private Participant resumedPlayer(String username) {
+        BotType bot = BotType.byUsername(username);
+        return bot != null ? new BotHandler(this, bot, bots) : logged.get(username);
+    }
+
+    /**
+     * Rebuilds the games that were still being played according to the journal.
+     * Every game waits until both of its players are logged in again.
+     */
+    private void restoreGames() {
+        for (RecoveredGame recovered : journal.recover()) {
+            Player player1 = new Player(recovered.getFirst(), Mark.BLACK);
+            Player player2 = new Player(recovered.getSecond(), Mark.WHITE);
+            OthelloGame game = new OthelloGame(player1, player2);
+            GameSession session = new GameSession(recovered.getId(), game, new ArrayList<>(),
+                    recovered.getStarted());
+            MoveResult last = null;
+            for (byte move : recovered.getMoves()) {
+                MoveResult result = game.applyMove(move);
+                if (!result.isLegal()) {
+                    break;
                 }
-                players.remove(game);
-            } else if (game.getBoard().isDraw()) {
-                for (ClientHandler pl : clientsPlayers) {
-                    pl.setInGame(false);
-                    pl.sendMessage("GAMEOVER~DRAW");
+                session.recordMove(move);
+                last = result;
+            }
+            if (last != null && last.isGameOver()) {
+                // the last move was journaled, but the server stopped before the GAMEOVER.
+                journal.gameOver(recovered.getId(), outcome(game, last).code());
+            } else {
+                suspended.put(recovered.getFirst(), session);
+                suspended.put(recovered.getSecond(), session);
+                if (recovered.getClocks() != null) {
+                    suspendedClocks.put(recovered.getId(), recovered.getClocks());
                 }
-                players.remove(game);
             }
         }
+        if (!suspended.isEmpty()) {
+            Log.info("Recovered {} games from the journal.", suspended.size() / 2);
+        }
+    }
+
+    /**
+     * Returns the encoded MOVE for the players of a game. Binary clients also get the legal moves
+     * of the player that moves next, which the result already contains.
+     * The binary encoding is only made when one of the players uses the binary protocol.
+     * @param move the move that is made.
+     * @param result the result of the move.
+     * @param recipients the clients that receive the move.
+     * @return the encoded move.
+     */
+    private Frame moveFrame(int move, MoveResult result, List<Participant> recipients) {
+        for (Participant pl : recipients) {
+            if (pl.isBinary()) {
+                return Frames.move(move, result.getLegalMoves());
+            }
+        }
+        return Frames.move(move);
+    }
+
+    /**
+     * Returns the fields of the board that contain the mark as a mask with one bit per field.
+     * @param board the board.
+     * @param mark the mark.
+     * @return the mask of the fields.
+     */
+    private static long fieldsMask(Board board, Mark mark) {
+        return board.getBits(mark);
+    }
+
+    /**
+     * Registers the gauges of the server. The gauges that read the collections of the server
+     * take the lock of the server, like every other access to them.
+     */
+    private void registerGauges() {
+        metrics.gauge("connections", () -> {
+            synchronized (this) {
+                return clients.size();
+            }
+        });
+        metrics.gauge("logged.in", () -> logged.size());
+        metrics.gauge("log.dropped", Log::getDropped);
+        metrics.gauge("queue.length", () -> {
+            synchronized (this) {
+                return queue.size();
+            }
+        });
+        metrics.gauge("games.active", () -> {
+            synchronized (this) {
+                return sessions.size();
+            }
+        });
+        metrics.gauge("outbound.queued.total", () -> {
+            synchronized (this) {
+                long total = 0;
+                for (ClientHandler ch : clients) {
+                    total += ch.getQueuedMessages();
+                }
+                return total;
+            }
+        });
+        metrics.gauge("outbound.queued.max", () -> {
+            synchronized (this) {
+                long max = 0;
+                for (ClientHandler ch : clients) {
+                    max = Math.max(max, ch.getQueuedMessages());
+                }
+                return max;
+            }
+        });
     }
 
     /**
@@ -287,10 +1028,18 @@ public class GameServer implements Server, Runnable {
      */
     @Override
     public void run() {
-        this.clients = new ArrayList<>();
-        this.queue = new ArrayList<>();
-        this.logged = new ArrayList<>();
+        this.clients = new LinkedHashSet<>();
+        this.queue = new LinkedHashSet<>();
+        this.logged = new PresenceRegistry();
         this.players = new HashMap<>();
+        this.sessions = new HashMap<>();
+        this.games = new LinkedHashMap<>();
+        this.suspended = new HashMap<>();
+        this.suspendedClocks = new HashMap<>();
+        if (journal != null) {
+            restoreGames();
+        }
+        registerGauges();
 
         boolean run = true;
 
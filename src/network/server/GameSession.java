@@ -0,0 +1,259 @@
+package network.server;
+
+import game.Game;
+import network.protocol.Frame;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * The server side of a game that is being played: its id, the players of it,
+ * the clients that watch it and the moves that are made so far (one byte per move, 64 is a pass).
+ */
+public class GameSession {
+    public static final int SLOW_WATCHER = 32; // queued messages after which a watcher skips events.
+
+    private final long id;
+    private final Game game;
+    private final List<Participant> clients;
+    private final long started;
+    private final Set<ClientHandler> watchers; // the spectators of the game.
+    private final Set<ClientHandler> behind; // the spectators that skipped events and need a snapshot.
+    private byte[] moves;
+    private int plies;
+    private long[] clocks; // the milliseconds that each player has left, null if the game has no clock.
+    private long increment; // the milliseconds that are added to the clock of a player after every move.
+    private long turnStarted; // System.nanoTime at which the clock of the player to move started.
+    private TimingWheel.Timeout expiry; // the timer that ends the game when the running clock is out.
+
+    /**
+     * Constructs a GameSession.
+     * @param id the id of the game on this server.
+     * @param game the game that is played.
+     * @param clients the players of the game, the first one is the black player.
+     * @param started the time at which the game started, in milliseconds since the epoch.
+     */
+    public GameSession(long id, Game game, List<Participant> clients, long started) {
+        this.id = id;
+        this.game = game;
+        this.clients = clients;
+        this.started = started;
+        this.moves = new byte[64];
+        this.watchers = new LinkedHashSet<>();
+        this.behind = new HashSet<>();
+    }
+
+    /**
+     * Returns the id of the game.
+     * @return the id of the game.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Returns the game.
+     * @return the game.
+     */
+    public Game getGame() {
+        return game;
+    }
+
+    /**
+     * Returns the players of the game.
+     * @return the players, the first one is the black player.
+     */
+    public List<Participant> getClients() {
+        return clients;
+    }
+
+    /**
+     * Returns the time at which the game started.
+     * @return the start time in milliseconds since the epoch.
+     */
+    public long getStarted() {
+        return started;
+    }
+
+    /**
+     * Adds a move to the moves of the game.
+     * @param move the field of the move, 64 for a pass.
+     * @return the number of the move (the ply), starting at 0.
+     */
+    public int recordMove(int move) {
+        if (plies == moves.length) {
+            moves = Arrays.copyOf(moves, plies * 2);
+        }
+        moves[plies] = (byte) move;
+        return plies++;
+    }
+
+    /**
+     * Returns the amount of moves that are made.
+     * @return the amount of moves.
+     */
+    public int getPlies() {
+        return plies;
+    }
+
+    /**
+     * Returns the move with the given number.
+     * @param ply the number of the move.
+     * @return the field of the move, 64 for a pass.
+     */
+    public int getMove(int ply) {
+        return moves[ply];
+    }
+
+    /**
+     * Returns the moves that are made so far.
+     * @return a copy of the moves, one byte per move (64 is a pass).
+     */
+    public byte[] getMoves() {
+        return Arrays.copyOf(moves, plies);
+    }
+
+    /**
+     * Starts the clocks of the game: both players get the same time bank, and the clock of the first player runs.
+     * @param bank the milliseconds of each player.
+     * @param increment the milliseconds that are added to the clock of a player after every move.
+     */
+    public void startClock(long bank, long increment) {
+        startClock(bank, bank, increment);
+    }
+
+    /**
+     * Starts the clocks of the game with the time that each player has left, like a game that is resumed.
+     * The clock of the player to move runs.
+     * @param first the milliseconds of the first player.
+     * @param second the milliseconds of the second player.
+     * @param increment the milliseconds that are added to the clock of a player after every move.
+     */
+    public void startClock(long first, long second, long increment) {
+        this.clocks = new long[]{first, second};
+        this.increment = increment;
+        this.turnStarted = System.nanoTime();
+    }
+
+    /**
+     * Returns whether the game has clocks.
+     * @return true if the clocks are started.
+     */
+    public boolean hasClock() {
+        return clocks != null;
+    }
+
+    /**
+     * Stops the clock of the player that moved, adds the increment to it and starts the clock of the opponent.
+     * @param mover the index of the player that moved, 0 for the first player.
+     * @return the milliseconds that the opponent has left.
+     */
+    public long pressClock(int mover) {
+        long now = System.nanoTime();
+        long used = (now - turnStarted) / 1_000_000;
+        clocks[mover] = Math.max(0, clocks[mover] - used) + increment;
+        turnStarted = now;
+        return clocks[1 - mover];
+    }
+
+    /**
+     * Returns the milliseconds that a player had left at the start of the current turn.
+     * @param player the index of the player, 0 for the first player.
+     * @return the milliseconds, 0 if the game has no clock.
+     */
+    public long getClock(int player) {
+        return clocks == null ? 0 : clocks[player];
+    }
+
+    /**
+     * Sets the timer that ends the game when the running clock is out, and cancels the previous one.
+     * @param expiry the timer, or null to only cancel the previous one.
+     */
+    public void setExpiry(TimingWheel.Timeout expiry) {
+        if (this.expiry != null) {
+            this.expiry.cancel();
+        }
+        this.expiry = expiry;
+    }
+
+    /**
+     * Adds a spectator to the game.
+     * @param ch the ClientHandler of the spectator.
+     */
+    public void watch(ClientHandler ch) {
+        watchers.add(ch);
+    }
+
+    /**
+     * Removes a spectator from the game.
+     * @param ch the ClientHandler of the spectator.
+     */
+    public void unwatch(ClientHandler ch) {
+        watchers.remove(ch);
+        behind.remove(ch);
+    }
+
+    /**
+     * Returns whether anybody watches the game.
+     * @return true if the game has spectators.
+     */
+    public boolean hasWatchers() {
+        return !watchers.isEmpty();
+    }
+
+    /**
+     * Returns the amount of spectators of the game.
+     * @return the amount of spectators.
+     */
+    public int getWatcherCount() {
+        return watchers.size();
+    }
+
+    /**
+     * Sends an event of the game to every spectator. The frame is encoded once and shared by all of them.
+     * A spectator with more than SLOW_WATCHER queued messages skips the event; when it has caught up,
+     * it gets one snapshot of the board instead of every event it skipped.
+     * @param frame the encoded event.
+     * @param snapshot makes the snapshot of the board after the event, at most once per event.
+     */
+    public void broadcast(Frame frame, Supplier<Frame> snapshot) {
+        Frame board = null;
+        for (ClientHandler watcher : watchers) {
+            if (watcher.getQueuedMessages() >= SLOW_WATCHER) {
+                behind.add(watcher);
+            } else if (behind.remove(watcher)) {
+                if (board == null) {
+                    board = snapshot.get();
+                }
+                watcher.sendFrame(board);
+            } else {
+                watcher.sendFrame(frame);
+            }
+        }
+    }
+
+    /**
+     * Sends the end of the game to every spectator and removes them. Spectators that skipped events
+     * get the final board first.
+     * @param gameOver the encoded GAMEOVER.
+     * @param snapshot makes the snapshot of the final board.
+     */
+    public void finish(Frame gameOver, Supplier<Frame> snapshot) {
+        Frame board = null;
+        for (ClientHandler watcher : watchers) {
+            if (behind.contains(watcher)) {
+                if (board == null) {
+                    board = snapshot.get();
+                }
+                watcher.sendFrame(board);
+            }
+            watcher.sendFrame(gameOver);
+            watcher.setWatching(null);
+        }
+        watchers.clear();
+        behind.clear();
+    }
+}
@@ -0,0 +1,162 @@
+package network.server;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A bounded queue with the messages that still have to be sent to one client.
+ * Senders only append to the queue and never block on the network.
+ * A dedicated writer thread drains the queue: all messages queued since its last write
+ * are written together and flushed once.
+ * When the queue is full the SlowConsumerPolicy decides what happens.
+ */
+public class OutboundQueue implements Runnable {
+    /**
+     * A message waiting in the queue, encoded as the bytes of the line (including the line separator).
+     */
+    private static class Frame {
+        final byte[] bytes;
+        final String key;
+
+        Frame(byte[] bytes, String key) {
+            this.bytes = bytes;
+            this.key = key;
+        }
+    }
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final OutputStream out;
+    private final int capacity;
+    private final SlowConsumerPolicy policy;
+    private final Runnable onOverflow; // Called when the client has to be disconnected.
+    private final ArrayDeque<Frame> pending;
+    private boolean closed;
+
+    /**
+     * Constructs an OutboundQueue that writes to the given stream.
+     * @param out the output stream of the socket.
+     * @param capacity the maximum amount of messages that can wait in the queue.
+     * @param policy what to do when the queue is full.
+     * @param onOverflow called (once) when the policy decides to disconnect the client.
+     */
+    public OutboundQueue(OutputStream out, int capacity, SlowConsumerPolicy policy, Runnable onOverflow) {
+        this.out = new BufferedOutputStream(out);
+        this.capacity = capacity;
+        this.policy = policy;
+        this.onOverflow = onOverflow;
+        this.pending = new ArrayDeque<>();
+    }
+
+    /**
+     * Adds an encoded message to the queue.
+     * @param frame the encoded line, which is not copied and must not be changed afterwards.
+     * @param key the collapse key of the message: a newer message with the same key supersedes this one
+     *            when the queue is full and the policy is COLLAPSE. Can be null.
+     * @return true if the message is queued, false if it is dropped.
+     */
+    public boolean offer(byte[] frame, String key) {
+        boolean overflow = false;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            if (pending.size() >= capacity) {
+                switch (policy) {
+                    case DROP:
+                        return false;
+                    case COLLAPSE:
+                        if (key == null || !collapse(key)) {
+                            overflow = true;
+                        }
+                        break;
+                    default:
+                        overflow = true;
+                }
+            }
+            if (overflow) {
+                closed = true;
+                pending.clear();
+            } else {
+                pending.addLast(new Frame(frame, key));
+            }
+            notifyAll();
+        }
+        if (overflow) {
+            onOverflow.run();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Removes the queued messages with the given collapse key.
+     * @param key the collapse key.
+     * @return true if at least one message is removed.
+     */
+    private boolean collapse(String key) {
+        boolean removed = false;
+        Iterator<Frame> it = pending.iterator();
+        while (it.hasNext()) {
+            if (key.equals(it.next().key)) {
+                it.remove();
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the amount of messages that are waiting to be written.
+     * @return the amount of queued messages.
+     */
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Stops the writer thread. Messages that are still queued are discarded.
+     */
+    public synchronized void close() {
+        closed = true;
+        pending.clear();
+        notifyAll();
+    }
+
+    /**
+     * The run method of the writer thread.
+     * Waits for messages and writes everything that is queued at that moment with a single flush.
+     */
+    @Override
+    public void run() {
+        List<Frame> batch = new ArrayList<>();
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (pending.isEmpty() && !closed) {
+                        wait();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    batch.addAll(pending);
+                    pending.clear();
+                }
+                for (Frame frame : batch) {
+                    out.write(frame.bytes);
+                }
+                out.flush();
+                batch.clear();
+            }
+        } catch (IOException e) {
+            close(); // the reading thread of the ClientHandler notices the broken connection.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
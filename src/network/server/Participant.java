@@ -0,0 +1,73 @@
+package network.server;
+
+import game.Game;
+import game.Player;
+import network.protocol.Frame;
+
+/**
+ * A player of a game that is hosted by the GameServer: the ClientHandler of a connected client,
+ * or a bot that the server hosts itself. The server only talks to the players of its games
+ * through this interface, so a player does not need a connection.
+ * The methods are called with the lock of the server.
+ */
+public interface Participant {
+    /**
+     * Returns the username of the player.
+     * @return the username.
+     */
+    String getUsername();
+
+    /**
+     * Sets the player of the game, with the mark that it plays.
+     * @param player the player.
+     */
+    void setPlayer(Player player);
+
+    /**
+     * Returns the player of the game.
+     * @return the player, null before the first game.
+     */
+    Player getPlayer();
+
+    /**
+     * Sets the game that is played, and marks the player as playing.
+     * @param game the game.
+     */
+    void setGame(Game game);
+
+    /**
+     * Returns the game that is played.
+     * @return the game, null before the first game.
+     */
+    Game getGame();
+
+    /**
+     * Sets whether the player is playing a game.
+     * @param inGame true if the player is in a game.
+     */
+    void setInGame(boolean inGame);
+
+    /**
+     * Returns whether the player is playing a game.
+     * @return true if the player is in a game.
+     */
+    boolean isInGame();
+
+    /**
+     * Sends a message of the game to the player.
+     * @param message the message in the text format.
+     */
+    void sendMessage(String message);
+
+    /**
+     * Sends an encoded message of the game to the player.
+     * @param frame the encoded message, which is shared.
+     */
+    void sendFrame(Frame frame);
+
+    /**
+     * Returns whether the player reads the binary protocol, so it gets the legal moves with every MOVE.
+     * @return true if the player uses the binary protocol.
+     */
+    boolean isBinary();
+}
@@ -0,0 +1,203 @@
+package network.server;
+
+import network.protocol.Frame;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the clients that are logged in to the server (the lobby).
+ * Usernames are indexed in a concurrent map, so a lookup does not have to scan every client.
+ * The LIST encoding of the lobby is cached and only rebuilt once after each change,
+ * which is tracked with a version number.
+ * Clients can also subscribe to the lobby, after which they receive the joins and leaves
+ * as PRESENCE deltas instead of having to request the full list again.
+ */
+public class PresenceRegistry {
+    private final Map<String, ClientHandler> index; // username -> client, for O(1) lookups.
+    private final Set<String> order; // usernames in the order in which they logged in.
+    private final Set<ClientHandler> subscribers; // clients that receive the PRESENCE deltas.
+    private long version;
+    private long cachedVersion;
+    private String[] cachedNames;
+    private String cachedList;
+
+    /**
+     * Constructs an empty PresenceRegistry.
+     */
+    public PresenceRegistry() {
+        this.index = new ConcurrentHashMap<>();
+        this.order = new LinkedHashSet<>();
+        this.subscribers = ConcurrentHashMap.newKeySet();
+        this.cachedVersion = -1;
+    }
+
+    /**
+     * Checks if the provided username is not already used by a logged in client.
+     * @param username the username to be checked.
+     * @return true if the username is free and false otherwise.
+     */
+    public boolean isFree(String username) {
+        return !index.containsKey(username);
+    }
+
+    /**
+     * Returns the logged in client with the given username.
+     * @param username the username to look up.
+     * @return the client with that username or null if nobody is logged in with it.
+     */
+    public ClientHandler get(String username) {
+        return index.get(username);
+    }
+
+    /**
+     * Registers a client under the given username, if the username is still free.
+     * The subscribers are notified of the join.
+     * @param username the username of the client.
+     * @param ch the client that logs in.
+     * @return true if the client is registered, false if the username was already taken.
+     */
+    public synchronized boolean register(String username, ClientHandler ch) {
+        if (index.putIfAbsent(username, ch) != null) {
+            return false;
+        }
+        order.add(username);
+        version++;
+        publish("PRESENCE~JOIN~" + username);
+        return true;
+    }
+
+    /**
+     * Removes the client from the lobby, if it is registered under the given username.
+     * The client is also removed from the subscribers and the remaining subscribers are notified of the leave.
+     * @param username the username of the client.
+     * @param ch the client that leaves.
+     */
+    public synchronized void unregister(String username, ClientHandler ch) {
+        subscribers.remove(ch);
+        if (username == null || !index.remove(username, ch)) {
+            return;
+        }
+        order.remove(username);
+        version++;
+        publish("PRESENCE~LEAVE~" + username);
+    }
+
+    /**
+     * Subscribes a client to the lobby deltas.
+     * The client first receives the current list, so that it can apply the following deltas to it.
+     * @param ch the client to subscribe.
+     */
+    public synchronized void subscribe(ClientHandler ch) {
+        ch.sendMessage(getList());
+        subscribers.add(ch);
+    }
+
+    /**
+     * Stops sending the lobby deltas to the client.
+     * @param ch the client to unsubscribe.
+     */
+    public void unsubscribe(ClientHandler ch) {
+        subscribers.remove(ch);
+    }
+
+    /**
+     * Returns the number of logged in clients.
+     * @return the number of logged in clients.
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Returns the current version of the lobby. It is incremented on every join and leave.
+     * @return the version of the lobby.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns all the logged in clients in the protocol format: LIST~name1~name2~...
+     * The encoding is cached until the lobby changes.
+     * @return the list with all the logged in clients.
+     */
+    public synchronized String getList() {
+        refresh();
+        return cachedList;
+    }
+
+    /**
+     * Returns a page of the logged in clients in the protocol format:
+     * LISTPAGE~version~total~offset~name1~name2~...
+     * @param offset the position of the first client of the page.
+     * @param limit the maximum amount of clients on the page.
+     * @return the requested page of the lobby.
+     */
+    public String getPage(int offset, int limit) {
+        return getPage(offset, limit, new String[0], 0);
+    }
+
+    /**
+     * Returns a page of the logged in clients followed by other users, such as the users of the other
+     * nodes of a federation, in the protocol format: LISTPAGE~version~total~offset~name1~name2~...
+     * The version is the sum of the version of the lobby and the version of the other users.
+     * @param offset the position of the first user of the page.
+     * @param limit the maximum amount of users on the page.
+     * @param others the users that follow the logged in clients.
+     * @param othersVersion the version of the other users, which grows when they change.
+     * @return the requested page.
+     */
+    public synchronized String getPage(int offset, int limit, String[] others, long othersVersion) {
+        refresh();
+        int total = cachedNames.length + others.length;
+        int from = Math.min(Math.max(offset, 0), total);
+        int to = (int) Math.min((long) from + Math.max(limit, 0), total);
+        StringBuilder page = new StringBuilder("LISTPAGE~");
+        page.append(version + othersVersion).append("~").append(total).append("~").append(from);
+        for (int i = from; i < to; i++) {
+            page.append("~").append(i < cachedNames.length ? cachedNames[i] : others[i - cachedNames.length]);
+        }
+        return page.toString();
+    }
+
+    /**
+     * Returns an unmodifiable view of the usernames of the logged in clients.
+     * @return the usernames of the logged in clients.
+     */
+    public Set<String> getUsernames() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    /**
+     * Rebuilds the cached snapshot and LIST encoding if the lobby changed since the last build.
+     */
+    private void refresh() {
+        if (cachedVersion == version) {
+            return;
+        }
+        cachedNames = order.toArray(new String[0]);
+        StringBuilder list = new StringBuilder("LIST");
+        for (String name : cachedNames) {
+            list.append("~").append(name);
+        }
+        cachedList = list.toString();
+        cachedVersion = version;
+    }
+
+    /**
+     * Sends a delta to all subscribers. The delta is encoded once and the frame is shared by all of them.
+     * @param delta the delta in the protocol format.
+     */
+    private void publish(String delta) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        Frame frame = Frame.of(delta);
+        for (ClientHandler subscriber : subscribers) {
+            subscriber.sendFrame(frame);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package network.server;
+
+import network.protocol.Opcode;
+
+/**
+ * The rate limits of the commands of a client: for every command, how many commands per second a client
+ * can send on average and how many it can send at once (the burst). A command without a limit is never limited.
+ * Every client checks its commands against these limits with its own CommandLimiter,
+ * before it takes the lock of the server.
+ */
+public class RateLimits {
+    private final long[] intervals; // the nanoseconds per command, by opcode ordinal, 0 for no limit.
+    private final long[] tolerances; // the nanoseconds a client can be ahead of its rate, by opcode ordinal.
+    private final RatePenalty penalty;
+
+    /**
+     * Constructs limits without any limit.
+     * @param penalty what happens to a client that sends a command too fast.
+     */
+    public RateLimits(RatePenalty penalty) {
+        this.intervals = new long[Opcode.values().length];
+        this.tolerances = new long[Opcode.values().length];
+        this.penalty = penalty;
+    }
+
+    /**
+     * Returns the default limits: generous for MOVE, PING and PONG, strict for the commands that take
+     * time under the lock of the server, like LIST and QUEUE.
+     * @param penalty what happens to a client that sends a command too fast.
+     * @return the default limits.
+     */
+    public static RateLimits defaults(RatePenalty penalty) {
+        RateLimits limits = new RateLimits(penalty);
+        limits.set(Opcode.HELLO, 1, 5);
+        limits.set(Opcode.LOGIN, 2, 10);
+        limits.set(Opcode.LIST, 2, 10);
+        limits.set(Opcode.GAMES, 2, 10);
+        limits.set(Opcode.QUEUE, 2, 10);
+        limits.set(Opcode.CHALLENGE, 2, 10);
+        limits.set(Opcode.WATCH, 2, 10);
+        limits.set(Opcode.UNWATCH, 2, 10);
+        limits.set(Opcode.RATING, 5, 20);
+        limits.set(Opcode.TOP, 2, 10);
+        limits.set(Opcode.MOVE, 50, 100);
+        limits.set(Opcode.PING, 10, 20);
+        limits.set(Opcode.PONG, 10, 20);
+        limits.set(Opcode.UNKNOWN, 5, 20);
+        return limits;
+    }
+
+    /**
+     * Sets the limit of a command.
+     * @param opcode the command.
+     * @param rate the commands per second on average, 0 for no limit.
+     * @param burst the commands that can be sent at once, at least 1.
+     */
+    public void set(Opcode opcode, double rate, int burst) {
+        if (rate <= 0) {
+            intervals[opcode.ordinal()] = 0;
+            tolerances[opcode.ordinal()] = 0;
+            return;
+        }
+        long interval = Math.max(1, (long) (1_000_000_000L / rate));
+        intervals[opcode.ordinal()] = interval;
+        tolerances[opcode.ordinal()] = interval * (Math.max(1, burst) - 1);
+    }
+
+    /**
+     * Sets the limit of a command from its setting, rate/burst, for example 2/10. A rate of 0 turns the limit off.
+     * @param opcode the command.
+     * @param setting the setting.
+     * @throws IllegalArgumentException if the setting is not rate/burst.
+     */
+    public void set(Opcode opcode, String setting) {
+        String[] parts = setting.trim().split("/");
+        try {
+            set(opcode, Double.parseDouble(parts[0]), parts.length > 1 ? Integer.parseInt(parts[1]) : 1);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The limit of " + opcode + " is not rate/burst: " + setting);
+        }
+    }
+
+    /**
+     * Returns what happens to a client that sends a command too fast.
+     * @return the penalty.
+     */
+    public RatePenalty getPenalty() {
+        return penalty;
+    }
+
+    /**
+     * Returns the nanoseconds between two commands at the average rate.
+     * @param opcode the command.
+     * @return the interval, 0 if the command has no limit.
+     */
+    long interval(Opcode opcode) {
+        return intervals[opcode.ordinal()];
+    }
+
+    /**
+     * Returns how many nanoseconds a client can be ahead of the average rate, which allows a burst.
+     * @param opcode the command.
+     * @return the tolerance.
+     */
+    long tolerance(Opcode opcode) {
+        return tolerances[opcode.ordinal()];
+    }
+}
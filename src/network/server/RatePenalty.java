@@ -0,0 +1,38 @@
+package network.server;
+
+/**
+ * Decides what happens when a client sends a command faster than its rate limit allows (see RateLimits).
+ */
+public enum RatePenalty {
+    /**
+     * The command is not handled and the client gets an ERROR.
+     */
+    DROP,
+    /**
+     * The thread of the client waits until the command is allowed, so it reads no further commands
+     * and the client is slowed down by its own connection.
+     */
+    DELAY,
+    /**
+     * The client is disconnected, which ends its game like any other disconnect.
+     */
+    DISCONNECT;
+
+    /**
+     * Returns the penalty with the given name, ignoring the case.
+     * @param name the name of the penalty.
+     * @param fallback the penalty to return when the name is null or unknown.
+     * @return the penalty with that name or the fallback.
+     */
+    public static RatePenalty parse(String name, RatePenalty fallback) {
+        if (name == null) {
+            return fallback;
+        }
+        for (RatePenalty penalty : values()) {
+            if (penalty.name().equalsIgnoreCase(name.trim())) {
+                return penalty;
+            }
+        }
+        return fallback;
+    }
+}
@@ -0,0 +1,40 @@
+package network.server;
+
+/**
+ * Decides what happens when a client does not read its messages fast enough
+ * and its outbound queue is full.
+ */
+public enum SlowConsumerPolicy {
+    /**
+     * The new message is dropped, the messages that are already queued are kept.
+     */
+    DROP,
+    /**
+     * The client is disconnected, which ends its game like any other disconnect.
+     */
+    DISCONNECT,
+    /**
+     * Queued messages that are superseded by the new message (the ones with the same collapse key,
+     * for example an older LIST reply) are removed, so the client only receives the latest state.
+     * If nothing can be collapsed, the client is disconnected.
+     */
+    COLLAPSE;
+
+    /**
+     * Returns the policy with the given name, ignoring the case.
+     * @param name the name of the policy.
+     * @param fallback the policy to return when the name is null or unknown.
+     * @return the policy with that name or the fallback.
+     */
+    public static SlowConsumerPolicy parse(String name, SlowConsumerPolicy fallback) {
+        if (name == null) {
+            return fallback;
+        }
+        for (SlowConsumerPolicy policy : values()) {
+            if (policy.name().equalsIgnoreCase(name.trim())) {
+                return policy;
+            }
+        }
+        return fallback;
+    }
+}
@@ -1,7 +1,27 @@
 package network.server;
 
+import network.protocol.Opcode;
+import network.server.archive.GameArchive;
+import network.server.bot.BotPool;
+import network.server.bot.BotType;
+import network.server.federation.Federation;
+import network.server.journal.GameJournal;
+import network.server.log.AsyncLogger;
+import network.server.log.Log;
+import network.server.log.LogLevel;
+import network.server.metrics.MetricsRegistry;
+import network.server.rating.RatingService;
+import network.server.rating.RatingStore;
+import network.server.shard.ShardedServer;
+import network.server.tournament.Tournament;
+import network.server.tournament.TournamentFormat;
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -23,6 +43,11 @@ public class StartServer {
     }
 
     public static void main(String[] args) {
+        // the log writes -Dothello.log.level=debug|info|warn|error and above, keeps at most
+        // -Dothello.log.capacity=n messages waiting and writes JSON lines with -Dothello.log.format=json
+        Log.configure(LogLevel.parse(System.getProperty("othello.log.level"), LogLevel.INFO),
+                Integer.getInteger("othello.log.capacity", AsyncLogger.DEFAULT_CAPACITY),
+                "json".equalsIgnoreCase(System.getProperty("othello.log.format")));
         Scanner sc = new Scanner(System.in);
         boolean validPort = false;
         int port = -1;
@@ -50,14 +75,157 @@ public class StartServer {
             }
         }
 
-        GameServer server = new GameServer(port);
+        // with -Dothello.shards=n the server runs on n event loops (for example one per core) instead of a thread per client
+        int shards = Integer.getInteger("othello.shards", 0);
+        if (shards > 0) {
+            ShardedServer server;
+            try {
+                server = new ShardedServer(port, shards);
+            } catch (IOException e) {
+                System.out.println("Could not start the event loops: " + e.getMessage());
+                System.exit(-1);
+                return;
+            }
+            server.start();
+            System.out.println("Server started at port " + port + " on " + shards + " shards\n");
+            console(server, server.getMetrics(), sc);
+            return;
+        }
+
+        // the outbound queues can be tuned with -Dothello.outbound.capacity=n
+        // and -Dothello.outbound.policy=drop|disconnect|collapse
+        int capacity = Integer.getInteger("othello.outbound.capacity", OutboundQueue.DEFAULT_CAPACITY);
+        SlowConsumerPolicy policy = SlowConsumerPolicy.parse(System.getProperty("othello.outbound.policy"),
+                SlowConsumerPolicy.DISCONNECT);
+        GameServer server = new GameServer(port, capacity, policy);
+        // every command has a rate limit per client, set with -Dothello.limit.<command>=rate/burst (for example
+        // -Dothello.limit.list=2/10, 0 for no limit); a client that is too fast is punished with
+        // -Dothello.limit.penalty=drop|delay|disconnect
+        RateLimits limits = RateLimits.defaults(RatePenalty.parse(System.getProperty("othello.limit.penalty"),
+                RatePenalty.DROP));
+        for (Opcode opcode : Opcode.values()) {
+            String limit = System.getProperty("othello.limit." + opcode.name().toLowerCase());
+            if (limit != null) {
+                try {
+                    limits.set(opcode, limit);
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(-1);
+                }
+            }
+        }
+        server.setRateLimits(limits);
+        // the games are journaled with -Dothello.journal=<directory>, so they survive a restart
+        String journalDirectory = System.getProperty("othello.journal");
+        if (journalDirectory != null) {
+            try {
+                server.setJournal(new GameJournal(Paths.get(journalDirectory)));
+            } catch (IOException e) {
+                System.out.println("Could not open the journal in " + journalDirectory + ": " + e.getMessage());
+                System.exit(-1);
+            }
+        }
+        // finished games are archived with -Dothello.archive=<directory>
+        String archiveDirectory = System.getProperty("othello.archive");
+        if (archiveDirectory != null) {
+            try {
+                server.setArchive(new GameArchive(Paths.get(archiveDirectory)));
+            } catch (IOException e) {
+                System.out.println("Could not open the archive in " + archiveDirectory + ": " + e.getMessage());
+                System.exit(-1);
+            }
+        }
+        // the ratings are kept in -Dothello.ratings=<directory>, written every -Dothello.ratings.interval=<seconds>;
+        // -Dothello.ratings.k=n is the largest change of a rating after one game
+        double k = Double.parseDouble(System.getProperty("othello.ratings.k", String.valueOf(RatingService.DEFAULT_K)));
+        String ratingsDirectory = System.getProperty("othello.ratings");
+        if (ratingsDirectory != null) {
+            try {
+                server.setRatings(new RatingService(k, new RatingStore(Paths.get(ratingsDirectory),
+                        Long.getLong("othello.ratings.interval", RatingStore.DEFAULT_INTERVAL))));
+            } catch (IOException e) {
+                System.out.println("Could not open the ratings in " + ratingsDirectory + ": " + e.getMessage());
+                System.exit(-1);
+            }
+        } else {
+            server.setRatings(new RatingService(k));
+        }
+        // the bots search on -Dothello.bots.threads=n threads, for at most -Dothello.bots.budget=<milliseconds>
+        // per move and -Dothello.bots.depth=n levels, in at most -Dothello.bots.games=n games at the same time
+        server.setBots(new BotPool(server.getMetrics(),
+                Integer.getInteger("othello.bots.threads", BotPool.defaultThreads()),
+                Long.getLong("othello.bots.budget", BotPool.DEFAULT_BUDGET),
+                Integer.getInteger("othello.bots.depth", BotPool.DEFAULT_MAX_DEPTH),
+                Integer.getInteger("othello.bots.games", BotPool.DEFAULT_MAX_GAMES)));
+        // with -Dothello.bots.fill=<seconds> a client that waits that long in the queue plays
+        // the bot -Dothello.bots.filler=<username> instead
+        long fill = Long.getLong("othello.bots.fill", 0);
+        if (fill > 0) {
+            BotType filler = BotType.byUsername(System.getProperty("othello.bots.filler",
+                    BotType.FIELD_VALUE.getUsername()));
+            if (filler == null) {
+                System.out.println("Unknown bot. The bots are: " + BotType.usernames() + ".");
+                System.exit(-1);
+            }
+            server.setQueueFiller(filler, fill * 1000);
+        }
+        // games have a clock of -Dothello.clock=<seconds> per player (0 for no clock), with an increment of
+        // -Dothello.clock.increment=<seconds> per move; silent clients are pinged after -Dothello.heartbeat=<seconds>
+        // and disconnected after -Dothello.idle=<seconds>
+        server.setClock(Long.getLong("othello.clock", GameServer.DEFAULT_CLOCK / 1000) * 1000,
+                Long.getLong("othello.clock.increment", GameServer.DEFAULT_INCREMENT / 1000) * 1000);
+        server.setHeartbeat(Long.getLong("othello.heartbeat", GameServer.DEFAULT_HEARTBEAT / 1000) * 1000,
+                Long.getLong("othello.idle", GameServer.DEFAULT_IDLE / 1000) * 1000);
+        // with -Dothello.federation.port=<port> the server joins a federation: it accepts peers on that port
+        // and connects to -Dothello.federation.peers=host:port,host:port; clients are redirected to
+        // -Dothello.federation.host (localhost by default)
+        int peerPort = Integer.getInteger("othello.federation.port", 0);
+        if (peerPort > 0) {
+            String host = System.getProperty("othello.federation.host", "localhost");
+            List<String> peers = new ArrayList<>();
+            for (String peer : System.getProperty("othello.federation.peers", "").split(",")) {
+                if (!peer.isBlank()) {
+                    peers.add(peer.trim());
+                }
+            }
+            server.setFederation(new Federation(server, System.getProperty("othello.federation.id", host + ":" + port),
+                    host, port, peerPort, peers, Long.getLong("othello.federation.interval", Federation.DEFAULT_INTERVAL)));
+        }
         server.start();
         System.out.println("Server started at port " + port + "\n");
-        System.out.println("Type 'quit' to close the server.\n");
+        console(server, server.getMetrics(), sc);
+    }
+
+    /**
+     * Reads the commands of the console until the server is closed.
+     * @param server the server that is running.
+     * @param metrics the metrics of the server.
+     * @param sc the scanner of the console.
+     */
+    private static void console(Server server, MetricsRegistry metrics, Scanner sc) {
+        // the metrics are written to a file every few seconds with -Dothello.metrics.file=<file>
+        // and -Dothello.metrics.interval=<seconds>
+        String metricsFile = System.getProperty("othello.metrics.file");
+        if (metricsFile != null) {
+            metrics.startDump(Paths.get(metricsFile), Long.getLong("othello.metrics.interval", 10));
+        }
+        System.out.println("Type 'metrics' to see the metrics of the server, 'tournament' for the tournaments"
+                + " and 'quit' to close the server.\n");
 
         while (true) {
+            String line = sc.nextLine();
+            if (line.equals("metrics")) {
+                System.out.print(metrics.report());
+            }
+            if (line.trim().startsWith("tournament")) {
+                if (server instanceof GameServer) {
+                    tournament((GameServer) server, line.trim().split("\\s+"));
+                } else {
+                    System.out.println("A sharded server has no tournaments.");
+                }
+            }
             //if the user types quit, it closes the server
-            if (sc.nextLine().equals("quit")) {
+            if (line.equals("quit")) {
                 server.stop();
                 System.out.println("The server is closed!!!");
                 System.exit(-1);
@@ -65,4 +233,49 @@ public class StartServer {
             }
         }
     }
+
+    /**
+     * Handles a tournament command of the console:
+     * "tournament" prints the standings, "tournament stop" stops the running tournament and
+     * "tournament roundrobin|doubleroundrobin|swiss games all|user1 user2 ..." starts a tournament
+     * between the given users (or every logged in user) with at most that many games at the same time.
+     * A Swiss tournament has -Dothello.tournament.rounds=n rounds (log2 of the amount of players by default)
+     * and the standings are written to -Dothello.tournament.standings=<file> after every game.
+     * @param server the server.
+     * @param words the words of the command.
+     */
+    private static void tournament(GameServer server, String[] words) {
+        if (words.length == 1) {
+            String standings = server.getStandings();
+            System.out.print(standings == null ? "No tournament was started.\n" : standings);
+            return;
+        }
+        if (words.length == 2 && words[1].equals("stop")) {
+            server.stopTournament();
+            System.out.println("No new games of the tournament are started.");
+            return;
+        }
+        TournamentFormat format = TournamentFormat.parse(words[1], null);
+        if (format == null || words.length < 4 || !words[2].matches("\\d+")) {
+            System.out.println("Use: tournament roundrobin|doubleroundrobin|swiss <parallel games> all|<user> <user> ...");
+            return;
+        }
+        List<String> players = new ArrayList<>();
+        if (words[3].equals("all")) {
+            players.addAll(server.getLogin().getUsernames());
+            Collections.sort(players);
+        } else {
+            players.addAll(Arrays.asList(words).subList(3, words.length));
+        }
+        String standings = System.getProperty("othello.tournament.standings");
+        try {
+            Tournament tournament = new Tournament(server, format, players, Integer.parseInt(words[2]),
+                    Integer.getInteger("othello.tournament.rounds", 0), standings == null ? null : Paths.get(standings));
+            if (!server.startTournament(tournament)) {
+                System.out.println("Another tournament is running.");
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,196 @@
+package network.server;
+
+import network.server.log.Log;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A hashed timing wheel: one thread that runs all timers of the server (move clocks, heartbeats, the queue filler).
+ * The wheel has a fixed amount of slots and advances one slot every tick; a timer is put in the slot in which
+ * it expires, with the amount of full rounds it still has to wait. Starting and cancelling a timer is O(1)
+ * and does not take a lock, and every tick only visits the timers of one slot, so thousands of timers
+ * cost no more than one thread. A timer fires at most one tick late.
+ * Timers run on the thread of the wheel, so they must be short: they take the lock of the server and return.
+ */
+public class TimingWheel implements Runnable {
+    public static final long DEFAULT_TICK = 100; // milliseconds per slot.
+    public static final int DEFAULT_SLOTS = 512; // slots of the wheel, a round is 51.2 seconds.
+
+    /**
+     * A timer on the wheel, which can be cancelled before it fires.
+     */
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadline; // tick at which the timer fires.
+        private volatile boolean cancelled;
+
+        /**
+         * Constructs a timer.
+         * @param task the task to run when it fires.
+         * @param deadline the tick at which it fires.
+         */
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the timer. Cancelling a timer that already fired does nothing.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Returns whether the timer is cancelled.
+         * @return true if the timer is cancelled.
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final long tick; // milliseconds
+    private final List<List<Timeout>> slots;
+    private final int mask;
+    private final Queue<Timeout> added; // timers that are started since the last tick.
+    private final long start; // System.nanoTime at which the wheel was created.
+    private volatile long current; // the tick that is being processed.
+    private volatile boolean stopped;
+    private Thread thread;
+
+    /**
+     * Constructs a wheel with the default tick and amount of slots.
+     */
+    public TimingWheel() {
+        this(DEFAULT_TICK, DEFAULT_SLOTS);
+    }
+
+    /**
+     * Constructs a wheel.
+     * @param tick the milliseconds per slot.
+     * @param slots the amount of slots, rounded up to a power of two.
+     */
+    public TimingWheel(long tick, int slots) {
+        this.tick = Math.max(1, tick);
+        int size = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+        this.slots = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            this.slots.add(new ArrayList<>());
+        }
+        this.mask = size - 1;
+        this.added = new ConcurrentLinkedQueue<>();
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Starts the thread of the wheel.
+     */
+    public synchronized void start() {
+        if (thread == null) {
+            thread = new Thread(this, "timing-wheel");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the thread of the wheel. Timers that did not fire yet never fire.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Starts a timer. Can be called from any thread.
+     * @param task the task to run when the timer fires.
+     * @param delay the milliseconds after which the timer fires.
+     * @return the timer, to cancel it.
+     */
+    public Timeout schedule(Runnable task, long delay) {
+        // round up, so a timer never fires early; it is processed by the tick after current at the earliest.
+        long deadline = Math.max(current + 1, ticks(System.nanoTime()) + (Math.max(0, delay) + tick - 1) / tick);
+        Timeout timeout = new Timeout(task, deadline);
+        added.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Returns the tick that contains the given time.
+     * @param nanos a System.nanoTime.
+     * @return the tick.
+     */
+    private long ticks(long nanos) {
+        return (nanos - start) / 1_000_000 / tick;
+    }
+
+    /**
+     * Runs the wheel: every tick, the new timers are put in their slots and the due timers of the slot fire.
+     */
+    @Override
+    public void run() {
+        long next = 0;
+        while (!stopped) {
+            long sleep = (start + (next + 1) * tick * 1_000_000 - System.nanoTime()) / 1_000_000;
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    if (stopped) {
+                        return;
+                    }
+                }
+            }
+            long now = ticks(System.nanoTime());
+            // process every tick up to now, so a late thread catches up instead of skipping slots.
+            while (next <= now && !stopped) {
+                current = next;
+                transferAdded();
+                expire(slots.get((int) (next & mask)), next);
+                next++;
+            }
+        }
+    }
+
+    /**
+     * Puts the timers that are started since the last tick in their slots.
+     */
+    private void transferAdded() {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (!timeout.cancelled) {
+                slots.get((int) (Math.max(timeout.deadline, current) & mask)).add(timeout);
+            }
+        }
+    }
+
+    /**
+     * Fires the timers of a slot that are due and removes the cancelled ones.
+     * @param slot the slot of the tick.
+     * @param now the tick.
+     */
+    private void expire(List<Timeout> slot, long now) {
+        int kept = 0;
+        for (int i = 0; i < slot.size(); i++) {
+            Timeout timeout = slot.get(i);
+            if (timeout.cancelled) {
+                continue;
+            }
+            if (timeout.deadline <= now) {
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    Log.error("A timer failed: {}", e.getMessage());
+                }
+            } else {
+                slot.set(kept++, timeout); // fires in a later round.
+            }
+        }
+        slot.subList(kept, slot.size()).clear();
+    }
+}
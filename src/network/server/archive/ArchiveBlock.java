@@ -0,0 +1,226 @@
+package network.server.archive;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * A block file of the archive: up to a few thousand finished games, stored column by column, so the start
+ * times and the players that a query filters on lie next to each other. The ArchiveCursor reads a whole
+ * block at once; every block starts with its own small index (the time range and the sorted ids of
+ * the players in it), which is kept in memory, so a query skips the blocks that cannot match without reading them.
+ * Layout (big-endian), for n games:
+ * <pre>
+ *   magic, n, first start time, last start time, amount of players p, p sorted player ids
+ *   n game ids (long), n start times (long), n first player ids (int), n second player ids (int),
+ *   n results (byte), n move counts (byte), n move lists of MOVES bytes
+ * </pre>
+ * Move lists only contain the placed fields; the passes follow from the rules and are not stored.
+ */
+class ArchiveBlock {
+    static final int MAGIC = 0x4F544741; // "OTGA"
+    static final int MOVES = 60;
+
+    private final Path file;
+    private final int count;
+    private final long minStarted;
+    private final long maxStarted;
+    private final int[] players;
+
+    /**
+     * Constructs the index of a block.
+     * @param file the block file.
+     * @param count the amount of games in the block.
+     * @param minStarted the earliest start time in the block.
+     * @param maxStarted the latest start time in the block.
+     * @param players the sorted ids of the players in the block.
+     */
+    ArchiveBlock(Path file, int count, long minStarted, long maxStarted, int[] players) {
+        this.file = file;
+        this.count = count;
+        this.minStarted = minStarted;
+        this.maxStarted = maxStarted;
+        this.players = players;
+    }
+
+    /**
+     * Returns the block file.
+     * @return the path of the block.
+     */
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the amount of games in the block.
+     * @return the amount of games.
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the size of the header, which is where the columns start.
+     * @return the size of the header in bytes.
+     */
+    int headerSize() {
+        return 28 + 4 * players.length;
+    }
+
+    /**
+     * Returns whether the block may contain games that match a query.
+     * @param player the id of the player, or -1 for every player.
+     * @param from the earliest start time.
+     * @param to the latest start time.
+     * @return false if no game in the block can match.
+     */
+    boolean mayMatch(int player, long from, long to) {
+        return maxStarted >= from && minStarted <= to
+                && (player < 0 || Arrays.binarySearch(players, player) >= 0);
+    }
+
+    /**
+     * Reads the index at the start of a block file.
+     * @param file the block file.
+     * @return the index of the block.
+     * @throws IOException if the file cannot be read or is not a block.
+     */
+    static ArchiveBlock read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not an archive block.");
+            }
+            int count = in.readInt();
+            long minStarted = in.readLong();
+            long maxStarted = in.readLong();
+            int[] players = new int[in.readInt()];
+            for (int i = 0; i < players.length; i++) {
+                players[i] = in.readInt();
+            }
+            return new ArchiveBlock(file, count, minStarted, maxStarted, players);
+        }
+    }
+
+    /**
+     * The games of a block that is being filled.
+     */
+    static final class Builder {
+        private final long[] ids;
+        private final long[] started;
+        private final int[] first;
+        private final int[] second;
+        private final byte[] results;
+        private final byte[] lengths;
+        private final byte[] moves;
+        private int count;
+
+        /**
+         * Constructs an empty builder.
+         * @param capacity the maximum amount of games in the block.
+         */
+        Builder(int capacity) {
+            ids = new long[capacity];
+            started = new long[capacity];
+            first = new int[capacity];
+            second = new int[capacity];
+            results = new byte[capacity];
+            lengths = new byte[capacity];
+            moves = new byte[capacity * MOVES];
+        }
+
+        /**
+         * Adds a game. Passes (64) in the moves are left out.
+         * @param id the id of the game.
+         * @param start the start time of the game.
+         * @param firstPlayer the id of the black player.
+         * @param secondPlayer the id of the white player.
+         * @param result the code of the result.
+         * @param gameMoves the moves of the game.
+         * @param plies the amount of moves.
+         */
+        void add(long id, long start, int firstPlayer, int secondPlayer, int result, byte[] gameMoves, int plies) {
+            ids[count] = id;
+            started[count] = start;
+            first[count] = firstPlayer;
+            second[count] = secondPlayer;
+            results[count] = (byte) result;
+            int length = 0;
+            for (int i = 0; i < plies && length < MOVES; i++) {
+                if (gameMoves[i] >= 0 && gameMoves[i] < 64) {
+                    moves[count * MOVES + length++] = gameMoves[i];
+                }
+            }
+            lengths[count] = (byte) length;
+            count++;
+        }
+
+        /**
+         * Returns whether the block cannot take more games.
+         * @return true if the block is full.
+         */
+        boolean isFull() {
+            return count == ids.length;
+        }
+
+        /**
+         * Returns whether the block has no games.
+         * @return true if the block is empty.
+         */
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        /**
+         * Writes the block to a temporary file and moves it into place, so a block file is always complete.
+         * @param file the block file.
+         * @return the index of the written block.
+         * @throws IOException if the block cannot be written.
+         */
+        ArchiveBlock write(Path file) throws IOException {
+            long minStarted = Long.MAX_VALUE;
+            long maxStarted = Long.MIN_VALUE;
+            int[] all = new int[count * 2];
+            for (int i = 0; i < count; i++) {
+                minStarted = Math.min(minStarted, started[i]);
+                maxStarted = Math.max(maxStarted, started[i]);
+                all[2 * i] = first[i];
+                all[2 * i + 1] = second[i];
+            }
+            int[] players = Arrays.stream(all).sorted().distinct().toArray();
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(count);
+                out.writeLong(minStarted);
+                out.writeLong(maxStarted);
+                out.writeInt(players.length);
+                for (int player : players) {
+                    out.writeInt(player);
+                }
+                for (int i = 0; i < count; i++) {
+                    out.writeLong(ids[i]);
+                }
+                for (int i = 0; i < count; i++) {
+                    out.writeLong(started[i]);
+                }
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(first[i]);
+                }
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(second[i]);
+                }
+                out.write(results, 0, count);
+                out.write(lengths, 0, count);
+                out.write(moves, 0, count * MOVES);
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return new ArchiveBlock(file, count, minStarted, maxStarted, players);
+        }
+    }
+}
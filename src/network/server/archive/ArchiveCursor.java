@@ -0,0 +1,191 @@
+package network.server.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A streaming reader over the games of an archive query. Only one block is in memory at a time
+ * and the same buffer is reused for every block, so millions of games can be read with a constant heap.
+ * The cursor points at one game at a time:
+ * <pre>
+ *   try (ArchiveCursor games = archive.query("alice", from, to)) {
+ *       while (games.next()) {
+ *           ... games.getMove(0), games.getResult() ...
+ *       }
+ *   }
+ * </pre>
+ */
+public class ArchiveCursor implements Closeable {
+    private final List<ArchiveBlock> blocks;
+    private final PlayerDictionary players;
+    private final int player;
+    private final long from;
+    private final long to;
+    private ByteBuffer buffer;
+    private int block; // the index of the next block to load.
+    private int count; // the amount of games in the loaded block.
+    private int row; // the game in the loaded block.
+    private int header;
+
+    /**
+     * Constructs a cursor over the blocks.
+     * @param blocks the blocks that may contain matching games, in order.
+     * @param players the dictionary of the usernames.
+     * @param player the id of the player that has to play the games, or -1 for every player.
+     * @param from the earliest start time of the games.
+     * @param to the latest start time of the games.
+     */
+    ArchiveCursor(List<ArchiveBlock> blocks, PlayerDictionary players, int player, long from, long to) {
+        this.blocks = blocks;
+        this.players = players;
+        this.player = player;
+        this.from = from;
+        this.to = to;
+        this.buffer = ByteBuffer.allocate(0);
+        this.row = -1;
+    }
+
+    /**
+     * Moves to the next game that matches the query.
+     * @return true if there is a game, false if every game is read.
+     * @throws IOException if a block cannot be read.
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            row++;
+            while (row >= count) {
+                if (block == blocks.size()) {
+                    return false;
+                }
+                load(blocks.get(block++));
+                row = 0;
+            }
+            long started = getStarted();
+            if (started >= from && started <= to
+                    && (player < 0 || getFirst() == player || getSecond() == player)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reads a whole block into the buffer.
+     * @param next the block to read.
+     * @throws IOException if the block cannot be read.
+     */
+    private void load(ArchiveBlock next) throws IOException {
+        try (FileChannel channel = FileChannel.open(next.getFile(), StandardOpenOption.READ)) {
+            int size = (int) channel.size();
+            if (buffer.capacity() < size) {
+                buffer = ByteBuffer.allocate(size);
+            }
+            buffer.clear().limit(size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading until the block is complete.
+            }
+        }
+        count = next.getCount();
+        header = next.headerSize();
+    }
+
+    /**
+     * Returns the id of the game.
+     * @return the id of the game.
+     */
+    public long getId() {
+        return buffer.getLong(header + 8 * row);
+    }
+
+    /**
+     * Returns the start time of the game.
+     * @return the start time in milliseconds since the epoch.
+     */
+    public long getStarted() {
+        return buffer.getLong(header + 8 * count + 8 * row);
+    }
+
+    /**
+     * Returns the id of the black player.
+     * @return the id of the first player in the dictionary.
+     */
+    public int getFirst() {
+        return buffer.getInt(header + 16 * count + 4 * row);
+    }
+
+    /**
+     * Returns the id of the white player.
+     * @return the id of the second player in the dictionary.
+     */
+    public int getSecond() {
+        return buffer.getInt(header + 20 * count + 4 * row);
+    }
+
+    /**
+     * Returns the username of the black player.
+     * @return the username of the first player.
+     */
+    public String getFirstName() {
+        return players.nameOf(getFirst());
+    }
+
+    /**
+     * Returns the username of the white player.
+     * @return the username of the second player.
+     */
+    public String getSecondName() {
+        return players.nameOf(getSecond());
+    }
+
+    /**
+     * Returns the result of the game.
+     * @return the code of the result, see GameResult.
+     */
+    public int getResult() {
+        return buffer.get(header + 24 * count + row);
+    }
+
+    /**
+     * Returns the amount of placed fields in the game; passes are not stored.
+     * @return the amount of moves.
+     */
+    public int getLength() {
+        return buffer.get(header + 25 * count + row);
+    }
+
+    /**
+     * Returns a move of the game.
+     * @param index the number of the move, without passes.
+     * @return the field of the move.
+     */
+    public int getMove(int index) {
+        return buffer.get(header + 26 * count + ArchiveBlock.MOVES * row + index);
+    }
+
+    /**
+     * Copies the moves of the game.
+     * @param into the array to copy into, of at least getLength() bytes.
+     * @return the amount of moves.
+     */
+    public int getMoves(byte[] into) {
+        int length = getLength();
+        int start = header + 26 * count + ArchiveBlock.MOVES * row;
+        for (int i = 0; i < length; i++) {
+            into[i] = buffer.get(start + i);
+        }
+        return length;
+    }
+
+    /**
+     * Releases the buffer of the cursor.
+     */
+    @Override
+    public void close() {
+        buffer = ByteBuffer.allocate(0);
+        count = 0;
+        block = blocks.size();
+    }
+}
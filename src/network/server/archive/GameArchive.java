@@ -0,0 +1,196 @@
+package network.server.archive;
+
+import network.server.log.Log;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The archive of the finished games of the server, for replays and analysis.
+ * A game takes about 90 bytes: the ids of both players in the PlayerDictionary, the start time,
+ * the result and a list of at most 60 moves of one byte. The games are collected in blocks of
+ * DEFAULT_BLOCK_GAMES games, which are written by a background thread as columnar ArchiveBlock files.
+ * New usernames are appended to the PlayerDictionary by the writer thread, before the block that uses them.
+ * The index of every block (its time range and its players) is kept in memory,
+ * so a query only reads the blocks that can contain matching games.
+ * Games in the block that is being filled are not visible to queries until the block is written
+ * (see flush), and are lost if the server crashes before that.
+ */
+public class GameArchive implements Closeable {
+    public static final int DEFAULT_BLOCK_GAMES = 4096;
+    private static final String PREFIX = "games-";
+    private static final String SUFFIX = ".blk";
+
+    private final Path directory;
+    private final PlayerDictionary players;
+    private final int blockGames;
+    private final List<ArchiveBlock> blocks; // the written blocks, in order.
+    private final ExecutorService writer;
+    private ArchiveBlock.Builder current;
+    private long nextBlock;
+
+    /**
+     * Opens the archive in the directory with the default block size.
+     * @param directory the directory of the archive, created if needed.
+     * @throws IOException if the archive cannot be read.
+     */
+    public GameArchive(Path directory) throws IOException {
+        this(directory, DEFAULT_BLOCK_GAMES);
+    }
+
+    /**
+     * Opens the archive in the directory and reads the index of every block.
+     * @param directory the directory of the archive, created if needed.
+     * @param blockGames the amount of games in a block.
+     * @throws IOException if the archive cannot be read.
+     */
+    public GameArchive(Path directory, int blockGames) throws IOException {
+        this.directory = directory;
+        this.blockGames = blockGames;
+        Files.createDirectories(directory);
+        this.players = new PlayerDictionary(directory.resolve("players.txt"));
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())),
+                            file);
+                } catch (NumberFormatException e) {
+                    // not a block of this archive.
+                }
+            }
+        }
+        List<ArchiveBlock> existing = new ArrayList<>();
+        for (Path file : files.values()) {
+            existing.add(ArchiveBlock.read(file));
+        }
+        this.blocks = new CopyOnWriteArrayList<>(existing);
+        this.nextBlock = files.isEmpty() ? 0 : files.lastKey() + 1;
+        this.current = new ArchiveBlock.Builder(blockGames);
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "archive-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds a finished game. When the block is full, it is handed to the writer thread.
+     * @param id the id of the game.
+     * @param first the username of the black player.
+     * @param second the username of the white player.
+     * @param started the start time of the game, in milliseconds since the epoch.
+     * @param result the code of the result, see GameResult.
+     * @param moves the moves of the game, passes (64) are left out.
+     * @param plies the amount of moves.
+     */
+    public synchronized void add(long id, String first, String second, long started, int result,
+                                 byte[] moves, int plies) {
+        current.add(id, started, players.idOf(first), players.idOf(second), result, moves, plies);
+        if (current.isFull()) {
+            submit();
+        }
+    }
+
+    /**
+     * Writes the games that are not written yet as a (smaller) block and waits until it is written.
+     * @throws IOException if the block cannot be written.
+     */
+    public void flush() throws IOException {
+        Future<?> written;
+        synchronized (this) {
+            if (current.isEmpty()) {
+                written = writer.submit(() -> { });
+            } else {
+                written = submit();
+            }
+        }
+        try {
+            written.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IOException("Could not write the archive block.", e.getCause());
+        }
+    }
+
+    /**
+     * Hands the current block to the writer thread and starts a new one.
+     * @return the future of the write.
+     */
+    private Future<?> submit() {
+        ArchiveBlock.Builder full = current;
+        Path file = directory.resolve(String.format("%s%010d%s", PREFIX, nextBlock++, SUFFIX));
+        current = new ArchiveBlock.Builder(blockGames);
+        return writer.submit(() -> {
+            try {
+                players.save(); // the block refers to the ids of its players.
+                blocks.add(full.write(file));
+            } catch (IOException e) {
+                Log.warn("Archive: {}", e.getMessage());
+                throw e;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Returns the games that a player played in a time range, in the order in which they were archived.
+     * @param player the username of the player, or null for every player.
+     * @param from the earliest start time, in milliseconds since the epoch.
+     * @param to the latest start time, in milliseconds since the epoch.
+     * @return a cursor over the matching games.
+     */
+    public ArchiveCursor query(String player, long from, long to) {
+        int id = player == null ? -1 : players.find(player);
+        List<ArchiveBlock> matching = new ArrayList<>();
+        if (player == null || id >= 0) {
+            for (ArchiveBlock block : blocks) {
+                if (block.mayMatch(id, from, to)) {
+                    matching.add(block);
+                }
+            }
+        }
+        return new ArchiveCursor(matching, players, id, from, to);
+    }
+
+    /**
+     * Returns every game in the archive.
+     * @return a cursor over all games.
+     */
+    public ArchiveCursor all() {
+        return query(null, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the dictionary of the usernames in the archive.
+     * @return the dictionary.
+     */
+    public PlayerDictionary getPlayers() {
+        return players;
+    }
+
+    /**
+     * Writes the remaining games and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        try {
+            flush();
+        } catch (IOException e) {
+            Log.warn("Archive: {}", e.getMessage());
+        }
+        writer.shutdown();
+    }
+}
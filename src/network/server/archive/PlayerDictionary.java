@@ -0,0 +1,116 @@
+package network.server.archive;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gives every username in the archive a small id, so a game stores two ints instead of two names.
+ * The usernames are kept in a text file with one username per line; the line number is the id.
+ * Usernames never contain a newline, because the protocol is line based.
+ * A new username gets its id in memory; it is appended to the file by save, which the writer thread
+ * of the archive calls before it writes a block, so adding a game never waits for the disk.
+ */
+public class PlayerDictionary {
+    private final Path file;
+    private final List<String> names;
+    private final Map<String, Integer> ids;
+    private int saved; // the amount of usernames that are in the file.
+
+    /**
+     * Loads the dictionary from the file, which is created when the first player is added.
+     * @param file the file of the dictionary.
+     * @throws IOException if the file cannot be read.
+     */
+    public PlayerDictionary(Path file) throws IOException {
+        this.file = file;
+        this.names = new ArrayList<>();
+        this.ids = new HashMap<>();
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String name;
+                while ((name = reader.readLine()) != null) {
+                    ids.putIfAbsent(name, names.size());
+                    names.add(name);
+                }
+            }
+        }
+        this.saved = names.size();
+    }
+
+    /**
+     * Returns the id of a username, adding it to the dictionary if it is new.
+     * A new username is only written to the file by the next save.
+     * @param name the username.
+     * @return the id of the username.
+     */
+    public synchronized int idOf(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        ids.put(name, names.size());
+        names.add(name);
+        return names.size() - 1;
+    }
+
+    /**
+     * Appends the usernames that were added since the last save to the file. The file is written
+     * without holding the lock of the dictionary, so idOf does not wait for it. Must be called by
+     * one thread at a time, the writer thread of the archive.
+     * @throws IOException if the usernames cannot be written; they are written by the next save.
+     */
+    public void save() throws IOException {
+        List<String> added;
+        synchronized (this) {
+            added = new ArrayList<>(names.subList(saved, names.size()));
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (String name : added) {
+                writer.write(name);
+                writer.write('\n');
+            }
+        }
+        synchronized (this) {
+            saved += added.size();
+        }
+    }
+
+    /**
+     * Returns the id of a username without adding it.
+     * @param name the username.
+     * @return the id of the username, or -1 if it is not in the dictionary.
+     */
+    public synchronized int find(String name) {
+        return ids.getOrDefault(name, -1);
+    }
+
+    /**
+     * Returns the username with the id.
+     * @param id the id of the username.
+     * @return the username.
+     */
+    public synchronized String nameOf(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * Returns the amount of usernames in the dictionary.
+     * @return the amount of usernames.
+     */
+    public synchronized int size() {
+        return names.size();
+    }
+}
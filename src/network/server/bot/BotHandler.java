@@ -0,0 +1,151 @@
+package network.server.bot;
+
+import game.Game;
+import game.Player;
+import network.protocol.Frame;
+import network.protocol.Frames;
+import network.server.GameServer;
+import network.server.Participant;
+
+/**
+ * A player of one game that is hosted by the server. It takes part in the game like the ClientHandler
+ * of a connected client, so its moves go through GameServer.makeMove, but it has no connection:
+ * the messages to it are ignored, and when it is its turn the server asks it to think,
+ * which runs its strategy on the BotPool.
+ */
+public class BotHandler implements Participant {
+    private final GameServer server;
+    private final BotType type;
+    private final BotPool pool;
+    private Player player;
+    private Game game;
+    private boolean isInGame;
+    private int turn; // counts the turns of the bot, so a search for an earlier turn is ignored.
+
+    /**
+     * Constructs a bot for one game.
+     * @param server the server that hosts the bot.
+     * @param type the bot.
+     * @param pool the pool that runs the searches of the bot.
+     */
+    public BotHandler(GameServer server, BotType type, BotPool pool) {
+        this.server = server;
+        this.type = type;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns which bot this is.
+     * @return the type of the bot.
+     */
+    public BotType getType() {
+        return type;
+    }
+
+    /**
+     * Returns the pool that runs the searches of the bot.
+     * @return the pool.
+     */
+    BotPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Starts a search for the move of the bot on a copy of the board.
+     * Must be called with the lock of the server, when it is the turn of the bot.
+     */
+    public void think() {
+        synchronized (server) {
+            turn++;
+            pool.submit(new BotSearch(this, turn, game.getBoard().deepCopy(), player.getMark()));
+        }
+    }
+
+    /**
+     * Makes the move that a search found, if the game is still waiting for it.
+     * @param turn the turn for which the search was started.
+     * @param move the move, or a negative value to pass.
+     */
+    void play(int turn, int move) {
+        synchronized (server) {
+            if (turn != this.turn || !isInGame) {
+                return;
+            }
+            server.makeMove(this, move < 0 ? Frames.PASS : move);
+        }
+    }
+
+    /**
+     * Returns whether a search for the turn is still needed.
+     * @param turn the turn for which the search was started.
+     * @return true if the bot is still in the game and the turn is the current one.
+     */
+    boolean isTurn(int turn) {
+        synchronized (server) {
+            return turn == this.turn && isInGame;
+        }
+    }
+
+    @Override
+    public String getUsername() {
+        return type.getUsername();
+    }
+
+    @Override
+    public void setPlayer(Player player) {
+        synchronized (server) {
+            this.player = player;
+        }
+    }
+
+    @Override
+    public Player getPlayer() {
+        synchronized (server) {
+            return player;
+        }
+    }
+
+    @Override
+    public void setGame(Game game) {
+        synchronized (server) {
+            this.game = game;
+            this.isInGame = true;
+        }
+    }
+
+    @Override
+    public Game getGame() {
+        synchronized (server) {
+            return game;
+        }
+    }
+
+    @Override
+    public void setInGame(boolean inGame) {
+        synchronized (server) {
+            this.isInGame = inGame;
+        }
+    }
+
+    @Override
+    public boolean isInGame() {
+        synchronized (server) {
+            return isInGame;
+        }
+    }
+
+    @Override
+    public void sendMessage(String message) {
+        // the bot reads the game itself.
+    }
+
+    @Override
+    public void sendFrame(Frame frame) {
+        // the bot reads the game itself.
+    }
+
+    @Override
+    public boolean isBinary() {
+        return false;
+    }
+}
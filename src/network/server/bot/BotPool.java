@@ -0,0 +1,142 @@
+package network.server.bot;
+
+import network.server.metrics.Counter;
+import network.server.metrics.Histogram;
+import network.server.metrics.MetricsRegistry;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The fixed-size pool of threads on which the bots of the server search for their moves.
+ * The threads have a lower priority than the threads of the connections, so the bots cannot starve them.
+ * Searches are run in the order in which they are submitted; a long search is split into slices that
+ * queue again after each other (see BotSearch), so every game gets its fair share of the threads.
+ * The amount of games against bots is limited, and so is the time that a bot may think about one move.
+ */
+public class BotPool {
+    public static final long DEFAULT_BUDGET = 1000; // milliseconds that a bot may think about a move.
+    public static final int DEFAULT_MAX_DEPTH = 6; // the deepest search of the MiniMax bot.
+    public static final int DEFAULT_MAX_GAMES = 256; // games against bots that can be played at the same time.
+
+    private final ThreadPoolExecutor executor;
+    private final long budget; // nanoseconds
+    private final int maxDepth;
+    private final int maxGames;
+    private final AtomicInteger games;
+    private final Histogram searchTime;
+    private final Counter moves;
+    private final Counter timeouts;
+
+    /**
+     * Constructs a pool. Its threads are only started when the first search is submitted.
+     * @param metrics the metrics of the server, to which the pool adds its own.
+     * @param threads the amount of threads.
+     * @param budget the milliseconds that a bot may think about one move.
+     * @param maxDepth the deepest search of the MiniMax bot.
+     * @param maxGames the amount of games against bots that can be played at the same time.
+     */
+    public BotPool(MetricsRegistry metrics, int threads, long budget, int maxDepth, int maxGames) {
+        AtomicInteger created = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "bot-" + created.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 2);
+                    return thread;
+                });
+        this.budget = TimeUnit.MILLISECONDS.toNanos(budget);
+        this.maxDepth = Math.max(1, maxDepth);
+        this.maxGames = maxGames;
+        this.games = new AtomicInteger();
+        this.searchTime = metrics.histogram("bots.search");
+        this.moves = metrics.counter("bots.moves");
+        this.timeouts = metrics.counter("bots.timeouts");
+        metrics.gauge("bots.games", games::get);
+        metrics.gauge("bots.queued", () -> executor.getQueue().size());
+    }
+
+    /**
+     * Returns the default amount of threads: half of the processors, so the bots never use all of them.
+     * @return the amount of threads.
+     */
+    public static int defaultThreads() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+
+    /**
+     * Reserves a place for a new game against a bot.
+     * @return false if the maximum amount of games against bots is being played.
+     */
+    public boolean acquire() {
+        while (true) {
+            int current = games.get();
+            if (current >= maxGames) {
+                return false;
+            }
+            if (games.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases the place of a game against a bot that is over.
+     */
+    public void release() {
+        games.decrementAndGet();
+    }
+
+    /**
+     * Stops the threads of the pool. Searches that are still queued are dropped.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues a search, or a slice of it, at the back of the queue.
+     * @param search the search.
+     */
+    void submit(BotSearch search) {
+        try {
+            executor.execute(search);
+        } catch (RejectedExecutionException ignored) {
+            // the server is stopping.
+        }
+    }
+
+    /**
+     * Returns the time that a bot may think about one move.
+     * @return the budget in nanoseconds.
+     */
+    long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Returns the deepest search of the MiniMax bot.
+     * @return the maximum depth.
+     */
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Records a search that found its move.
+     * @param nanos the time between starting the search and finding the move, including the time in the queue.
+     */
+    void searched(long nanos) {
+        moves.increment();
+        searchTime.record(nanos);
+    }
+
+    /**
+     * Counts a search that was stopped because its budget was used.
+     */
+    void timedOut() {
+        timeouts.increment();
+    }
+}
@@ -0,0 +1,89 @@
+package network.server.bot;
+
+import game.Board;
+import game.Mark;
+import network.server.log.Log;
+import strategies.MiniMaxStrategy;
+import strategies.NaiveStrategy;
+
+/**
+ * The search for one move of a bot, which runs on the BotPool on a copy of the board.
+ * The search of an iterative bot is split into slices of one depth each: after every depth
+ * the search goes to the back of the queue of the pool, so the searches of all games take turns
+ * on the threads, and it stops deepening when the time budget of the move is used.
+ * A depth that is still running when the budget is used is stopped, and the move of the last
+ * complete depth is played. Depth 1 always completes, so the bot always has a move.
+ */
+class BotSearch implements Runnable {
+    private final BotHandler bot;
+    private final int turn;
+    private final Board board;
+    private final Mark mark;
+    private final long started; // System.nanoTime at which the search was started.
+    private int depth;
+    private int best;
+
+    /**
+     * Constructs a search.
+     * @param bot the bot that searches.
+     * @param turn the turn of the bot for which the search is.
+     * @param board a copy of the board, which only this search uses.
+     * @param mark the mark of the bot.
+     */
+    BotSearch(BotHandler bot, int turn, Board board, Mark mark) {
+        this.bot = bot;
+        this.turn = turn;
+        this.board = board;
+        this.mark = mark;
+        this.started = System.nanoTime();
+        this.depth = 1;
+        this.best = -1;
+    }
+
+    /**
+     * Runs one slice of the search and either plays the move or queues the next slice.
+     */
+    @Override
+    public void run() {
+        BotPool pool = bot.getPool();
+        if (!bot.isTurn(turn)) {
+            return; // the game ended while the search waited.
+        }
+        try {
+            if (!board.hasMoves(mark)) {
+                finish(-1);
+            } else if (!bot.getType().isIterative()) {
+                finish(bot.getType().newStrategy().determineMove(board, mark));
+            } else {
+                MiniMaxStrategy strategy = new MiniMaxStrategy(depth);
+                long deadline = started + pool.getBudget();
+                int move = depth == 1 ? strategy.determineMove(board, mark)
+                        : strategy.determineMove(board, mark, deadline);
+                if (move == MiniMaxStrategy.TIMEOUT) {
+                    pool.timedOut();
+                    finish(best);
+                    return;
+                }
+                best = move;
+                if (depth >= pool.getMaxDepth() || System.nanoTime() - deadline >= 0) {
+                    finish(best);
+                } else {
+                    depth++;
+                    pool.submit(this);
+                }
+            }
+        } catch (RuntimeException e) {
+            Log.warn("The search of {} failed: {}", bot.getUsername(), e.getMessage());
+            finish(best >= 0 ? best : new NaiveStrategy().determineMove(board, mark));
+        }
+    }
+
+    /**
+     * Plays the move that is found.
+     * @param move the move, or a negative value to pass.
+     */
+    private void finish(int move) {
+        bot.getPool().searched(System.nanoTime() - started);
+        bot.play(turn, move);
+    }
+}
@@ -0,0 +1,89 @@
+package network.server.bot;
+
+import strategies.FieldValueStrategy;
+import strategies.LimitingStrategy;
+import strategies.NaiveStrategy;
+import strategies.StackStrategy;
+import strategies.StackableStrategy;
+import strategies.Strategy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * The bots that the server hosts. Their names are the usernames with which they play,
+ * so no client can log in with one of these names.
+ */
+public enum BotType {
+    NAIVE("NaiveBot", NaiveStrategy::new),
+    LIMITING("LimitingBot", LimitingStrategy::new),
+    FIELD_VALUE("FieldValueBot", FieldValueStrategy::new),
+    STACK("StackBot", () -> new StackStrategy(new ArrayList<StackableStrategy>(Arrays.asList(
+            new FieldValueStrategy(), new LimitingStrategy())))),
+    /**
+     * A MiniMaxStrategy that deepens its search one level at a time, until the time budget of its move
+     * is used or the maximum depth of the pool is reached.
+     */
+    MINIMAX("MiniMaxBot", null);
+
+    private final String username;
+    private final Supplier<Strategy> strategy;
+
+    BotType(String username, Supplier<Strategy> strategy) {
+        this.username = username;
+        this.strategy = strategy;
+    }
+
+    /**
+     * Returns the username of the bot.
+     * @return the username.
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns whether the bot searches deeper while it has time left.
+     * @return true for the MiniMax bot.
+     */
+    public boolean isIterative() {
+        return strategy == null;
+    }
+
+    /**
+     * Creates a new instance of the strategy of the bot, so searches of different games share no state.
+     * @return the strategy, or null for an iterative bot.
+     */
+    public Strategy newStrategy() {
+        return strategy == null ? null : strategy.get();
+    }
+
+    /**
+     * Returns the bot with the username, ignoring the case.
+     * @param username the username.
+     * @return the bot, or null if no bot has that name.
+     */
+    public static BotType byUsername(String username) {
+        if (username == null) {
+            return null;
+        }
+        for (BotType type : values()) {
+            if (type.username.equalsIgnoreCase(username.trim())) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the usernames of all bots, separated by commas.
+     * @return the usernames.
+     */
+    public static String usernames() {
+        StringBuilder names = new StringBuilder();
+        for (BotType type : values()) {
+            names.append(names.length() == 0 ? "" : ", ").append(type.username);
+        }
+        return names.toString();
+    }
+}
@@ -0,0 +1,710 @@
+package network.server.federation;
+
+import network.server.ClientHandler;
+import network.server.GameServer;
+import network.server.PresenceRegistry;
+import network.server.TimingWheel;
+import network.server.log.Log;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Connects the GameServer to the other nodes of a federation, so clients of different nodes can play each other.
+ * Every gossip round, each node sends the NODE state of itself and of every node it knows to all its peers:
+ * who is logged in and who waits in the queue. A node that sent nothing new for a few rounds is considered gone;
+ * its last state is kept for a while, so a peer that still relays it does not bring the node back,
+ * and its link is closed when that state is forgotten.
+ * A client that waited alone in the queue for a round is matched with a client that waits on another node:
+ * the node with the smaller id sends a PROPOSE to the other node, which reserves its client and answers with
+ * an ACCEPT (or a REJECT when its client is gone). The game is placed on the node that owns the pair of usernames
+ * on the consistent HashRing of the live nodes. That node EXPECTs both players; the players on other nodes get a
+ * REDIRECT~host~port, log in on the new node and queue again, and the game starts when both arrived.
+ * Players that do not arrive in time are put in the normal queue.
+ * The peer protocol is one line per message, with the fields separated by ~, like the client protocol.
+ * Everything that touches clients runs under the lock of the server; the known nodes are guarded by this object.
+ */
+public class Federation implements Runnable {
+    public static final long DEFAULT_INTERVAL = 1_000; // milliseconds between two gossip rounds.
+    private static final int DEAD_AFTER = 5; // rounds without a new state after which a node is considered gone.
+    private static final int TOMBSTONE_ROUNDS = 4 * DEAD_AFTER; // rounds the last state of a gone node is kept.
+    private static final int RESPONSE_ROUNDS = 5; // rounds a proposal waits for the answer of the other node.
+    private static final int ARRIVAL_ROUNDS = 10; // rounds a node waits for the players of a placed game.
+
+    /**
+     * A client of this node that is reserved for a game with a client of another node.
+     */
+    private static final class Proposal {
+        private final ClientHandler player;
+        private TimingWheel.Timeout timeout;
+
+        private Proposal(ClientHandler player) {
+            this.player = player;
+        }
+    }
+
+    /**
+     * A game that is placed on this node and waits for its players.
+     */
+    private static final class Expectation {
+        private final String[] names; // black, white
+        private final ClientHandler[] arrived;
+        private TimingWheel.Timeout timeout;
+
+        private Expectation(String black, String white) {
+            this.names = new String[] {black, white};
+            this.arrived = new ClientHandler[2];
+        }
+    }
+
+    private final GameServer server;
+    private final String id;
+    private final String host;
+    private final int clientPort;
+    private final int peerPort;
+    private final long interval;
+    private final List<String> seeds; // the configured peers as host:port.
+    private final Map<String, NodeState> nodes; // the other nodes, by id.
+    private final Map<String, NodeState> gone; // the last state of the nodes that left, by id.
+    private final Map<String, PeerLink> links; // the links to the other nodes, by host:port.
+    private final HashRing ring;
+    private final Map<String, Proposal> proposals; // by username of the local player, guarded by the server.
+    private final Map<String, Expectation> expected; // by username of both players, guarded by the server.
+    private final long incarnation; // the time at which this node started.
+    private long version;
+    private volatile String remoteUsers; // ~name~name... of the users of the other nodes.
+    private Set<String> remoteNames; // the users of the other nodes, guarded by this object.
+    private String[] remoteList; // the users of the other nodes in the order of remoteUsers, guarded by this object.
+    private long remoteVersion; // incremented when the users of the other nodes change, guarded by this object.
+    private volatile boolean stopped;
+    private ServerSocket listener;
+    private Thread thread;
+
+    /**
+     * Constructs the federation layer of a server.
+     * @param server the server of this node.
+     * @param id the id of this node, unique in the federation.
+     * @param host the host of this node as the clients and peers reach it.
+     * @param clientPort the port of the server for clients.
+     * @param peerPort the port on which this node accepts peers.
+     * @param seeds the peers to connect to as host:port; more nodes are found through the gossip.
+     * @param interval the milliseconds between two gossip rounds.
+     */
+    public Federation(GameServer server, String id, String host, int clientPort, int peerPort,
+                      List<String> seeds, long interval) {
+        this.server = server;
+        this.id = id;
+        this.host = host;
+        this.clientPort = clientPort;
+        this.peerPort = peerPort;
+        this.interval = Math.max(1, interval);
+        this.seeds = new ArrayList<>(seeds);
+        this.nodes = new LinkedHashMap<>();
+        this.gone = new HashMap<>();
+        this.links = new HashMap<>();
+        this.ring = new HashRing();
+        this.ring.add(id);
+        this.proposals = new HashMap<>();
+        this.expected = new HashMap<>();
+        this.incarnation = System.currentTimeMillis();
+        this.remoteUsers = "";
+        this.remoteNames = new HashSet<>();
+        this.remoteList = new String[0];
+    }
+
+    /**
+     * Returns the id of this node.
+     * @return the id.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Returns the amount of live nodes, including this one.
+     * @return the size of the federation.
+     */
+    public synchronized int getNodeCount() {
+        return nodes.size() + 1;
+    }
+
+    /**
+     * Opens the peer port, connects to the configured peers and starts the gossip.
+     * @throws IOException if the peer port cannot be opened.
+     */
+    public void start() throws IOException {
+        listener = new ServerSocket(peerPort);
+        synchronized (this) {
+            for (String seed : seeds) {
+                link(seed);
+            }
+        }
+        thread = new Thread(this, "federation");
+        thread.setDaemon(true);
+        thread.start();
+        server.getTimers().schedule(this::gossip, interval);
+        server.getMetrics().gauge("federation.nodes", this::getNodeCount);
+    }
+
+    /**
+     * Closes the peer port and the links to the peers.
+     */
+    public void stop() {
+        stopped = true;
+        try {
+            if (listener != null) {
+                listener.close();
+            }
+        } catch (IOException ignored) {
+
+        }
+        synchronized (this) {
+            for (PeerLink link : links.values()) {
+                link.stop();
+            }
+        }
+    }
+
+    /**
+     * Returns the link to a peer, and opens it if there is none yet.
+     * @param address the peer as host:port.
+     * @return the link, null if the address is malformed or is this node.
+     */
+    private synchronized PeerLink link(String address) {
+        if (address.equals(host + ":" + peerPort)) {
+            return null;
+        }
+        PeerLink link = links.get(address);
+        if (link == null) {
+            int colon = address.lastIndexOf(':');
+            try {
+                link = new PeerLink(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+            } catch (RuntimeException e) {
+                Log.warn("Not a valid peer address: {}", address);
+                return null;
+            }
+            links.put(address, link);
+            link.start();
+        }
+        return link;
+    }
+
+    /**
+     * Stops and forgets the link to the address of a node that left, unless the address is a configured
+     * peer or is used by a live node. A node that comes back gets a new link when its state is merged.
+     * Must be called while holding the lock of this object.
+     * @param address the peer as host:port.
+     */
+    private void unlink(String address) {
+        if (seeds.contains(address)) {
+            return;
+        }
+        for (NodeState state : nodes.values()) {
+            if (state.getPeerAddress().equals(address)) {
+                return;
+            }
+        }
+        PeerLink link = links.remove(address);
+        if (link != null) {
+            link.stop();
+        }
+    }
+
+    /**
+     * Sends a message to another node, if it is known.
+     * @param node the id of the node.
+     * @param message the message.
+     */
+    private void sendTo(String node, String message) {
+        NodeState state;
+        synchronized (this) {
+            state = nodes.get(node);
+        }
+        if (state != null) {
+            PeerLink link = link(state.getPeerAddress());
+            if (link != null) {
+                link.send(message);
+            }
+        }
+    }
+
+    /**
+     * Accepts the connections of peers and starts a thread that reads each of them.
+     */
+    @Override
+    public void run() {
+        while (!stopped) {
+            try {
+                Socket socket = listener.accept();
+                Thread reader = new Thread(() -> read(socket), "peer-reader-" + socket.getRemoteSocketAddress());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (listener.isClosed()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the messages of a peer until the connection is closed.
+     * @param socket the connection of the peer.
+     */
+    private void read(Socket socket) {
+        try (socket; BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                try {
+                    handle(line.split("~", -1));
+                } catch (RuntimeException e) {
+                    Log.warn("Wrong message of peer {}: {}", socket.getRemoteSocketAddress(), e.getMessage());
+                }
+            }
+        } catch (IOException ignored) {
+            // the peer is gone; its link reconnects when it comes back.
+        }
+    }
+
+    /**
+     * Handles one message of the peer protocol.
+     * @param fields the fields of the message.
+     */
+    private void handle(String[] fields) {
+        switch (fields[0]) {
+            case "NODE":
+                merge(NodeState.parse(fields));
+                break;
+            case "PROPOSE":
+                propose(fields[1], fields[2], fields[3]);
+                break;
+            case "ACCEPT":
+                accept(fields[1], fields[2], fields[3], fields[4]);
+                break;
+            case "REJECT":
+                reject(fields[2]);
+                break;
+            case "EXPECT":
+                synchronized (server) {
+                    expect(fields[2], fields[3]);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command " + fields[0] + ".");
+        }
+    }
+
+    /**
+     * Merges the state of a node into the known states, if it is newer. New nodes are added to the ring
+     * and get a link, so nodes find each other through any seed. A node that left only comes back
+     * with a state that is newer than the last one it sent, so a peer that still relays that state
+     * does not revive it.
+     * @param state the state of the node.
+     */
+    private void merge(NodeState state) {
+        if (state.getId().equals(id)) {
+            return;
+        }
+        synchronized (this) {
+            NodeState known = nodes.get(state.getId());
+            NodeState last = known != null ? known : gone.get(state.getId());
+            if (last != null && !state.isNewerThan(last)) {
+                return;
+            }
+            gone.remove(state.getId());
+            nodes.put(state.getId(), state);
+            if (known == null) {
+                ring.add(state.getId());
+                Log.info("Node {} joined the federation.", state.getId());
+            }
+            refreshRemoteUsers();
+        }
+        link(state.getPeerAddress());
+    }
+
+    /**
+     * Rebuilds the list of the users of the other nodes. Must be called while holding the lock of this object.
+     */
+    private void refreshRemoteUsers() {
+        StringBuilder users = new StringBuilder();
+        Set<String> names = new HashSet<>();
+        List<String> list = new ArrayList<>();
+        for (NodeState state : nodes.values()) {
+            for (String user : state.getUsers()) {
+                users.append('~').append(user);
+                names.add(user);
+                list.add(user);
+            }
+        }
+        if (!users.toString().equals(remoteUsers)) {
+            remoteVersion++;
+        }
+        remoteUsers = users.toString();
+        remoteNames = names;
+        remoteList = list.toArray(new String[0]);
+    }
+
+    /**
+     * One gossip round: publishes the state of this node, forgets the nodes that are gone,
+     * sends every live state to every peer and proposes a game for a client that waits alone.
+     * Runs on the timing wheel of the server and schedules the next round.
+     */
+    private void gossip() {
+        if (stopped) {
+            return;
+        }
+        List<String> users;
+        List<String> queued = new ArrayList<>();
+        synchronized (server) {
+            if (server.getLogin() == null) { // the server did not start yet.
+                server.getTimers().schedule(this::gossip, interval);
+                return;
+            }
+            users = new ArrayList<>(server.getLogin().getUsernames());
+            for (ClientHandler ch : server.getQueue()) {
+                queued.add(ch.getUsername());
+            }
+        }
+        List<String> messages = new ArrayList<>();
+        List<PeerLink> peers;
+        synchronized (this) {
+            long deadline = System.nanoTime() - DEAD_AFTER * interval * 1_000_000;
+            Iterator<NodeState> it = nodes.values().iterator();
+            while (it.hasNext()) {
+                NodeState state = it.next();
+                if (state.getSeenAt() < deadline) {
+                    it.remove();
+                    ring.remove(state.getId());
+                    gone.put(state.getId(), state);
+                    Log.info("Node {} left the federation.", state.getId());
+                }
+            }
+            long forgotten = deadline - TOMBSTONE_ROUNDS * interval * 1_000_000;
+            Iterator<NodeState> expired = gone.values().iterator();
+            while (expired.hasNext()) {
+                NodeState state = expired.next();
+                if (state.getSeenAt() < forgotten) {
+                    expired.remove();
+                    unlink(state.getPeerAddress());
+                }
+            }
+            refreshRemoteUsers();
+            messages.add(new NodeState(id, host, clientPort, peerPort, incarnation, ++version, users, queued).encode());
+            for (NodeState state : nodes.values()) {
+                messages.add(state.encode());
+            }
+            peers = new ArrayList<>(links.values());
+        }
+        for (PeerLink peer : peers) {
+            for (String message : messages) {
+                peer.send(message);
+            }
+        }
+        proposeMatch();
+        server.getTimers().schedule(this::gossip, interval);
+    }
+
+    /**
+     * Reserves a client that waited alone in the queue for a round and proposes a game with a client
+     * that waits on a node with a larger id. The node with the smaller id always proposes,
+     * so two nodes never propose the same pair to each other.
+     */
+    private void proposeMatch() {
+        synchronized (server) {
+            if (server.getQueue().size() != 1) {
+                return;
+            }
+            ClientHandler player = server.getQueue().iterator().next();
+            if (System.currentTimeMillis() - player.getQueuedAt() < interval) {
+                return;
+            }
+            String node = null;
+            String opponent = null;
+            synchronized (this) {
+                for (NodeState state : nodes.values()) {
+                    if (state.getId().compareTo(id) > 0 && !state.getQueued().isEmpty()) {
+                        node = state.getId();
+                        opponent = state.getQueued().get(0);
+                        break;
+                    }
+                }
+            }
+            if (opponent == null) {
+                return;
+            }
+            server.removeQueue(player);
+            Proposal proposal = new Proposal(player);
+            proposals.put(player.getUsername(), proposal);
+            proposal.timeout = server.getTimers().schedule(() -> reject(player.getUsername()),
+                    RESPONSE_ROUNDS * interval);
+            sendTo(node, "PROPOSE~" + id + "~" + player.getUsername() + "~" + opponent);
+        }
+    }
+
+    /**
+     * Handles the PROPOSE of another node: reserves the local client if it still waits in the queue,
+     * places the game on the ring and answers with ACCEPT~id~black~white~node, or with a REJECT.
+     * @param from the id of the proposing node.
+     * @param black the username of the player of the proposing node.
+     * @param white the username of the player of this node.
+     */
+    private void propose(String from, String black, String white) {
+        synchronized (server) {
+            ClientHandler player = server.getLogin().get(white);
+            if (player == null || !server.getQueue().contains(player) || player.isInGame()) {
+                sendTo(from, "REJECT~" + id + "~" + black + "~" + white);
+                return;
+            }
+            server.removeQueue(player);
+            String target;
+            synchronized (this) {
+                target = ring.owner(black + "~" + white);
+            }
+            sendTo(from, "ACCEPT~" + id + "~" + black + "~" + white + "~" + target);
+            place(target, from, black, white, player, 1);
+        }
+    }
+
+    /**
+     * Handles the ACCEPT of another node.
+     * @param from the id of the node that accepted.
+     * @param black the username of the player of this node.
+     * @param white the username of the player of the other node.
+     * @param target the id of the node on which the game is placed.
+     */
+    private void accept(String from, String black, String white, String target) {
+        synchronized (server) {
+            Proposal proposal = proposals.remove(black);
+            if (proposal == null) {
+                // the proposal timed out or the client left; the game on the target times out as well.
+                return;
+            }
+            proposal.timeout.cancel();
+            place(target, from, black, white, proposal.player, 0);
+        }
+    }
+
+    /**
+     * Handles a REJECT of another node, or a proposal that got no answer in time: the client waits in the queue again.
+     * @param black the username of the player of this node.
+     */
+    private void reject(String black) {
+        synchronized (server) {
+            Proposal proposal = proposals.remove(black);
+            if (proposal == null) {
+                return;
+            }
+            proposal.timeout.cancel();
+            requeue(proposal.player);
+        }
+    }
+
+    /**
+     * Sends the player of this node to the node of the game. Must be called while holding the lock of the server.
+     * @param target the id of the node of the game.
+     * @param other the id of the node of the opponent.
+     * @param black the username of the first player.
+     * @param white the username of the second player.
+     * @param player the player of this node.
+     * @param seat 0 if the player of this node is black, 1 if it is white.
+     */
+    private void place(String target, String other, String black, String white, ClientHandler player, int seat) {
+        if (target.equals(id)) {
+            arrive(expect(black, white), player, seat);
+            return;
+        }
+        if (!target.equals(other)) {
+            sendTo(target, "EXPECT~" + id + "~" + black + "~" + white);
+        }
+        NodeState state;
+        synchronized (this) {
+            state = nodes.get(target);
+        }
+        if (state == null) {
+            requeue(player);
+            return;
+        }
+        server.getMetrics().counter("federation.redirects").increment();
+        player.sendMessage("REDIRECT~" + state.getHost() + "~" + state.getClientPort());
+    }
+
+    /**
+     * Waits for the players of a game that is placed on this node. Must be called while holding the lock of the server.
+     * @param black the username of the first player.
+     * @param white the username of the second player.
+     * @return the expectation of the game.
+     */
+    private Expectation expect(String black, String white) {
+        Expectation expectation = expected.get(black);
+        if (expectation != null && expectation.names[1].equals(white)) {
+            return expectation;
+        }
+        Expectation created = new Expectation(black, white);
+        expected.put(black, created);
+        expected.put(white, created);
+        created.timeout = server.getTimers().schedule(() -> expire(created), ARRIVAL_ROUNDS * interval);
+        return created;
+    }
+
+    /**
+     * Registers a player of a placed game that arrived, and starts the game when both arrived.
+     * When the game cannot start, because a player started another game or disconnected in the meantime,
+     * the players wait in the queue instead. Must be called while holding the lock of the server.
+     * @param expectation the game.
+     * @param player the player.
+     * @param seat 0 for black, 1 for white.
+     */
+    private void arrive(Expectation expectation, ClientHandler player, int seat) {
+        expectation.arrived[seat] = player;
+        if (expectation.arrived[0] != null && expectation.arrived[1] != null) {
+            expectation.timeout.cancel();
+            forget(expectation);
+            if (!server.startMatch(expectation.arrived[0], expectation.arrived[1])) {
+                requeue(expectation.arrived[0]);
+                requeue(expectation.arrived[1]);
+                return;
+            }
+            server.getMetrics().counter("federation.games").increment();
+        }
+    }
+
+    /**
+     * Gives up on a placed game of which a player did not arrive in time; the player that did arrive
+     * waits in the queue instead.
+     * @param expectation the game.
+     */
+    private void expire(Expectation expectation) {
+        synchronized (server) {
+            if (expected.get(expectation.names[0]) != expectation) {
+                return;
+            }
+            forget(expectation);
+            for (ClientHandler player : expectation.arrived) {
+                if (player != null) {
+                    requeue(player);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes a placed game from the expected games.
+     * @param expectation the game.
+     */
+    private void forget(Expectation expectation) {
+        expected.remove(expectation.names[0], expectation);
+        expected.remove(expectation.names[1], expectation);
+    }
+
+    /**
+     * Puts a client back in the queue, if it is still connected and not playing.
+     * Must be called while holding the lock of the server.
+     * @param player the client.
+     */
+    private void requeue(ClientHandler player) {
+        if (server.getClients().contains(player) && !player.isInGame() && !server.getQueue().contains(player)) {
+            server.handleQueue(player);
+        }
+    }
+
+    /**
+     * Called by the server when a logged in client sends QUEUE. Handles the clients that are reserved
+     * for or expected by a game of the federation. Must be called while holding the lock of the server.
+     * @param ch the client.
+     * @return true if the federation handled the QUEUE, false if the client uses the normal queue.
+     */
+    public boolean onQueue(ClientHandler ch) {
+        Proposal proposal = proposals.get(ch.getUsername());
+        if (proposal != null && proposal.player == ch) {
+            // the client left the queue while it was reserved.
+            proposals.remove(ch.getUsername());
+            proposal.timeout.cancel();
+            return true;
+        }
+        Expectation expectation = expected.get(ch.getUsername());
+        if (expectation != null) {
+            int seat = expectation.names[0].equals(ch.getUsername()) ? 0 : 1;
+            if (expectation.arrived[seat] == ch) {
+                expectation.arrived[seat] = null; // the client left the queue.
+            } else {
+                arrive(expectation, ch, seat);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called by the server when a client disconnects. Must be called while holding the lock of the server.
+     * @param ch the client.
+     */
+    public void disconnected(ClientHandler ch) {
+        String name = ch.getUsername();
+        if (name == null) {
+            return;
+        }
+        Proposal proposal = proposals.get(name);
+        if (proposal != null && proposal.player == ch) {
+            proposals.remove(name);
+            proposal.timeout.cancel();
+        }
+        Expectation expectation = expected.get(name);
+        if (expectation != null) {
+            for (int i = 0; i < expectation.arrived.length; i++) {
+                if (expectation.arrived[i] == ch) {
+                    expectation.arrived[i] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether a username is used on another node. A player that is expected by a game
+     * of this node may log in, even if its old node did not report that it left yet.
+     * Must be called while holding the lock of the server.
+     * @param username the username.
+     * @return true if the username is taken on another node.
+     */
+    public boolean isUsedElsewhere(String username) {
+        if (expected.containsKey(username)) {
+            return false;
+        }
+        synchronized (this) {
+            return remoteNames.contains(username);
+        }
+    }
+
+    /**
+     * Adds the users of the other nodes to a LIST of this node.
+     * @param list the LIST of the local users.
+     * @return the LIST of the whole federation.
+     */
+    public String withRemoteUsers(String list) {
+        String remote = remoteUsers;
+        return remote.isEmpty() ? list : list + remote;
+    }
+
+    /**
+     * Returns a LISTPAGE of the whole federation: the users of this node followed by the users
+     * of the other nodes, in the same order as a LIST.
+     * @param lobby the users of this node.
+     * @param offset the position of the first user of the page.
+     * @param limit the maximum amount of users on the page.
+     * @return the requested page.
+     */
+    public synchronized String getPage(PresenceRegistry lobby, int offset, int limit) {
+        return lobby.getPage(offset, limit, remoteList, remoteVersion);
+    }
+}
@@ -0,0 +1,96 @@
+package network.server.federation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A consistent hash ring of the nodes of the federation. Every node is put on the ring a number of times
+ * (its virtual nodes), and a key belongs to the first node at or after the hash of the key.
+ * When a node joins or leaves, only the keys next to its virtual nodes change owner.
+ * All nodes that know the same members compute the same owner for a key.
+ */
+public class HashRing {
+    public static final int DEFAULT_REPLICAS = 64; // virtual nodes per node.
+
+    private final NavigableMap<Long, String> ring;
+    private final int replicas;
+
+    /**
+     * Constructs an empty ring with the default amount of virtual nodes.
+     */
+    public HashRing() {
+        this(DEFAULT_REPLICAS);
+    }
+
+    /**
+     * Constructs an empty ring.
+     * @param replicas the amount of virtual nodes per node.
+     */
+    public HashRing(int replicas) {
+        this.ring = new TreeMap<>();
+        this.replicas = Math.max(1, replicas);
+    }
+
+    /**
+     * Adds a node to the ring.
+     * @param node the id of the node.
+     */
+    public void add(String node) {
+        for (int i = 0; i < replicas; i++) {
+            ring.put(hash(node + "#" + i), node);
+        }
+    }
+
+    /**
+     * Removes a node from the ring.
+     * @param node the id of the node.
+     */
+    public void remove(String node) {
+        for (int i = 0; i < replicas; i++) {
+            ring.remove(hash(node + "#" + i), node);
+        }
+    }
+
+    /**
+     * Returns the node that owns a key.
+     * @param key the key, for example the usernames of the players of a game.
+     * @return the id of the node, null if the ring is empty.
+     */
+    public String owner(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * Returns whether the ring has no nodes.
+     * @return true if the ring is empty.
+     */
+    public boolean isEmpty() {
+        return ring.isEmpty();
+    }
+
+    /**
+     * Hashes a string to a position on the ring: 64-bit FNV-1a, followed by the finalizer of MurmurHash3
+     * so that similar keys spread over the whole ring.
+     * @param key the string.
+     * @return the position of the string.
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,171 @@
+package network.server.federation;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * What one node of the federation tells the others about itself: where clients and peers can reach it,
+ * who is logged in and who waits in its queue. A node sends a new state with a higher version every
+ * gossip round; a state with a lower version than the known one is old and ignored. The incarnation is the
+ * time at which the node started and is compared before the version, so a node that restarted with
+ * version 1 is newer than everything it sent before.
+ * The state is sent as NODE~id~host~client port~peer port~incarnation~version~amount of users~users...~queued users...
+ */
+public final class NodeState {
+    private final String id;
+    private final String host;
+    private final int clientPort;
+    private final int peerPort;
+    private final long incarnation; // the time at which the node started, in milliseconds since the epoch.
+    private final long version;
+    private final List<String> users;
+    private final List<String> queued;
+    private final long seenAt; // System.nanoTime at which this node received the state.
+
+    /**
+     * Constructs a state.
+     * @param id the id of the node.
+     * @param host the host of the node, for clients and peers.
+     * @param clientPort the port for clients.
+     * @param peerPort the port for peers.
+     * @param incarnation the time at which the node started, in milliseconds since the epoch.
+     * @param version the version of the state.
+     * @param users the logged in users of the node.
+     * @param queued the users that wait in the queue of the node.
+     */
+    public NodeState(String id, String host, int clientPort, int peerPort, long incarnation, long version,
+                     List<String> users, List<String> queued) {
+        this.id = id;
+        this.host = host;
+        this.clientPort = clientPort;
+        this.peerPort = peerPort;
+        this.incarnation = incarnation;
+        this.version = version;
+        this.users = users;
+        this.queued = queued;
+        this.seenAt = System.nanoTime();
+    }
+
+    /**
+     * Parses a NODE message.
+     * @param fields the fields of the message, starting with NODE.
+     * @return the state.
+     * @throws IllegalArgumentException if the message is malformed.
+     */
+    public static NodeState parse(String[] fields) {
+        if (fields.length < 8) {
+            throw new IllegalArgumentException("Wrong arguments for NODE.");
+        }
+        int count = Integer.parseInt(fields[7]);
+        if (count < 0 || 8 + count > fields.length) {
+            throw new IllegalArgumentException("Wrong amount of users in NODE.");
+        }
+        List<String> users = Arrays.asList(Arrays.copyOfRange(fields, 8, 8 + count));
+        List<String> queued = Arrays.asList(Arrays.copyOfRange(fields, 8 + count, fields.length));
+        return new NodeState(fields[1], fields[2], Integer.parseInt(fields[3]), Integer.parseInt(fields[4]),
+                Long.parseLong(fields[5]), Long.parseLong(fields[6]), users, queued);
+    }
+
+    /**
+     * Encodes the state as a NODE message.
+     * @return the message, without a line separator.
+     */
+    public String encode() {
+        StringBuilder message = new StringBuilder("NODE~");
+        message.append(id).append('~').append(host).append('~').append(clientPort).append('~').append(peerPort)
+                .append('~').append(incarnation).append('~').append(version).append('~').append(users.size());
+        for (String user : users) {
+            message.append('~').append(user);
+        }
+        for (String user : queued) {
+            message.append('~').append(user);
+        }
+        return message.toString();
+    }
+
+    /**
+     * Returns the id of the node.
+     * @return the id.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Returns the host of the node.
+     * @return the host name or address.
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Returns the port of the node for clients.
+     * @return the client port.
+     */
+    public int getClientPort() {
+        return clientPort;
+    }
+
+    /**
+     * Returns the address of the node for peers.
+     * @return host:port of the peer protocol.
+     */
+    public String getPeerAddress() {
+        return host + ":" + peerPort;
+    }
+
+    /**
+     * Returns the incarnation of the node.
+     * @return the time at which the node started, in milliseconds since the epoch.
+     */
+    public long getIncarnation() {
+        return incarnation;
+    }
+
+    /**
+     * Returns the version of the state.
+     * @return the version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns whether this state is newer than another state of the same node:
+     * it has a later incarnation, or the same incarnation and a higher version.
+     * @param other the other state.
+     * @return true if this state is newer.
+     */
+    public boolean isNewerThan(NodeState other) {
+        if (incarnation != other.incarnation) {
+            return incarnation > other.incarnation;
+        }
+        return version > other.version;
+    }
+
+    /**
+     * Returns the logged in users of the node.
+     * @return the usernames.
+     */
+    public List<String> getUsers() {
+        return users;
+    }
+
+    /**
+     * Returns the users that wait in the queue of the node.
+     * @return the usernames, in the order of the queue.
+     */
+    public List<String> getQueued() {
+        return queued;
+    }
+
+    /**
+     * Returns when the state was received.
+     * @return the System.nanoTime of the arrival.
+     */
+    public long getSeenAt() {
+        return seenAt;
+    }
+
+}
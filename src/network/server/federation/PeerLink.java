@@ -0,0 +1,109 @@
+package network.server.federation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The connection of this node to one peer, on which it sends its messages of the peer protocol.
+ * Every node only writes on the links it opened and only reads from the links that peers opened,
+ * so a message and its answer travel on different sockets.
+ * Messages are queued and written by the thread of the link, so sending never blocks the server.
+ * While the peer is unreachable, the link tries to connect again every second and drops its messages:
+ * the gossip is repeated every round anyway, and a lost proposal times out.
+ */
+public class PeerLink implements Runnable {
+    private static final int CAPACITY = 1024; // messages that can wait to be written.
+    private static final long RETRY = 1_000; // milliseconds between two connection attempts.
+
+    private final String host;
+    private final int port;
+    private final BlockingQueue<String> pending;
+    private volatile boolean stopped;
+    private volatile Socket socket;
+    private Thread thread;
+
+    /**
+     * Constructs a link.
+     * @param host the host of the peer.
+     * @param port the peer port of the peer.
+     */
+    public PeerLink(String host, int port) {
+        this.host = host;
+        this.port = port;
+        this.pending = new ArrayBlockingQueue<>(CAPACITY);
+    }
+
+    /**
+     * Starts the thread of the link.
+     */
+    public synchronized void start() {
+        if (thread == null) {
+            thread = new Thread(this, "peer-" + host + ":" + port);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the thread of the link and closes the connection.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        Socket s = socket;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException ignored) {
+
+            }
+        }
+    }
+
+    /**
+     * Sends a message to the peer. The message is dropped if too many messages wait.
+     * @param message the message, without a line separator.
+     */
+    public void send(String message) {
+        pending.offer(message);
+    }
+
+    /**
+     * Connects to the peer and writes the queued messages, reconnecting when the connection breaks.
+     */
+    @Override
+    public void run() {
+        while (!stopped) {
+            try (Socket s = new Socket(host, port)) {
+                s.setTcpNoDelay(true);
+                socket = s;
+                Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+                while (!stopped) {
+                    String message = pending.take();
+                    do {
+                        out.write(message);
+                        out.write('\n');
+                    } while ((message = pending.poll()) != null);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                pending.clear();
+                try {
+                    Thread.sleep(RETRY);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
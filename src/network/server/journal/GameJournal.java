@@ -0,0 +1,577 @@
+package network.server.journal;
+
+import network.server.log.Log;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An append-only journal of the games on the server, so the games that are being played survive a restart.
+ * Every NEWGAME, MOVE and GAMEOVER is one record of RECORD_SIZE bytes in a segment file of the directory.
+ * The segments are memory-mapped and preallocated, so appending a record is a few stores into memory:
+ * a writer reserves its record with a single atomic increment, writes the fields and publishes the record
+ * by writing the header last. Unrelated games never wait for each other.
+ * A committer thread forces the written records to disk every commit interval (group commit),
+ * so one fsync covers all records of that interval. A crash of the process loses nothing,
+ * a crash of the machine at most the records of the last interval.
+ * Record layout (big-endian):
+ * <pre>
+ *   0  header: type (1 byte), value (1 byte, the move or the result), ply (2 bytes). Zero if not written.
+ *   4  checksum of the header and the bytes 8..127
+ *   8  game id
+ *  16  time in milliseconds since the epoch
+ *  24  NEWGAME only: length and UTF-8 bytes of the first username, at 24 and 25..72
+ *  73  NEWGAME only: length and UTF-8 bytes of the second username, at 73 and 74..121
+ *  24  MOVE only: the milliseconds that the first player has left after the move, plus one; zero without a clock
+ *  32  MOVE only: the same for the second player
+ * </pre>
+ */
+public class GameJournal implements Closeable {
+    public static final int RECORD_SIZE = 128;
+    public static final int MAX_NAME_BYTES = 48; // the longest username that fits in a record, in UTF-8 bytes.
+    public static final int DEFAULT_SEGMENT_RECORDS = 65536; // 8MB segments.
+    public static final long DEFAULT_COMMIT_INTERVAL = 5; // milliseconds between two forces.
+
+    static final int NEWGAME = 1;
+    static final int MOVE = 2;
+    static final int GAMEOVER = 3;
+
+    private static final int CHECKSUM = 4;
+    private static final int GAME = 8;
+    private static final int TIME = 16;
+    private static final int FIRST = 24;
+    private static final int SECOND = FIRST + 1 + MAX_NAME_BYTES;
+    private static final int CLOCKS = 24;
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".seg";
+
+    // release/acquire access to the header, so a record is only seen after all its fields are written.
+    private static final VarHandle HEADER =
+            MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final long commitInterval;
+    private final AtomicLong next; // the sequence number of the next record.
+    private final Map<Long, Segment> segments; // the mapped segments of this run, by index.
+    private final Map<Long, Long> openGames; // the first segment of every game that is not over, by game id.
+    private final List<RecoveredGame> recovered; // the games that were not over when the journal was opened.
+    private final Thread committer;
+    private volatile Segment current; // the segment of the newest record.
+    private volatile long committed; // every record before this sequence number is on disk.
+    private volatile boolean closed;
+
+    /**
+     * A mapped segment file.
+     */
+    private static final class Segment {
+        private final long index;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        private Segment(long index, FileChannel channel, MappedByteBuffer buffer) {
+            this.index = index;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Opens the journal in the directory with the default segment size and commit interval.
+     * @param directory the directory of the segment files, created if needed.
+     * @throws IOException if the directory or a segment cannot be opened.
+     */
+    public GameJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_RECORDS, DEFAULT_COMMIT_INTERVAL);
+    }
+
+    /**
+     * Opens the journal in the directory. The segments that already exist are replayed first,
+     * new records are appended after them.
+     * @param directory the directory of the segment files, created if needed.
+     * @param segmentRecords the amount of records in one segment.
+     * @param commitInterval the milliseconds between two forces of the written records.
+     * @throws IOException if the directory or a segment cannot be opened.
+     */
+    public GameJournal(Path directory, int segmentRecords, long commitInterval) throws IOException {
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        this.commitInterval = commitInterval;
+        this.segments = new ConcurrentHashMap<>();
+        this.openGames = new ConcurrentHashMap<>();
+        Files.createDirectories(directory);
+        TreeMap<Long, Path> existing = existingSegments();
+        this.recovered = replay(existing);
+        long first = existing.isEmpty() ? 0 : existing.lastKey() + 1;
+        this.next = new AtomicLong(first * segmentRecords);
+        this.committed = next.get();
+        this.current = segment(first);
+        this.committer = new Thread(this::commitLoop, "journal-commit");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Appends the start of a game. The id of the game is the sequence number of this record,
+     * so it is unique for the lifetime of the journal.
+     * @param first the username of the black player, at most MAX_NAME_BYTES in UTF-8.
+     * @param second the username of the white player, at most MAX_NAME_BYTES in UTF-8.
+     * @return the id of the game.
+     * @throws IllegalArgumentException if a username is too long.
+     */
+    public long newGame(String first, String second) {
+        byte[] firstBytes = first.getBytes(StandardCharsets.UTF_8);
+        byte[] secondBytes = second.getBytes(StandardCharsets.UTF_8);
+        if (firstBytes.length > MAX_NAME_BYTES || secondBytes.length > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("Username is longer than " + MAX_NAME_BYTES + " bytes.");
+        }
+        long sequence = next.getAndIncrement();
+        Segment segment = segmentOf(sequence);
+        openGames.put(sequence, segment.index);
+        int offset = offset(sequence);
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.putLong(offset + GAME, sequence);
+        buffer.putLong(offset + TIME, System.currentTimeMillis());
+        putName(buffer, offset + FIRST, firstBytes);
+        putName(buffer, offset + SECOND, secondBytes);
+        publish(buffer, offset, header(NEWGAME, 0, 0));
+        return sequence;
+    }
+
+    /**
+     * Appends a move of a game.
+     * @param game the id of the game.
+     * @param ply the number of the move in the game, starting at 0.
+     * @param move the field of the move, 64 for a pass.
+     * @return the sequence number of the record.
+     */
+    public long move(long game, int ply, int move) {
+        return move(game, ply, move, -1, -1);
+    }
+
+    /**
+     * Appends a move of a game with the clocks of both players after the move, so a recovered game
+     * continues with the time that the players had left.
+     * @param game the id of the game.
+     * @param ply the number of the move in the game, starting at 0.
+     * @param move the field of the move, 64 for a pass.
+     * @param first the milliseconds that the first player has left, -1 if the game has no clock.
+     * @param second the milliseconds that the second player has left, -1 if the game has no clock.
+     * @return the sequence number of the record.
+     */
+    public long move(long game, int ply, int move, long first, long second) {
+        long sequence = next.getAndIncrement();
+        MappedByteBuffer buffer = segmentOf(sequence).buffer;
+        int offset = offset(sequence);
+        buffer.putLong(offset + GAME, game);
+        buffer.putLong(offset + TIME, System.currentTimeMillis());
+        buffer.putLong(offset + CLOCKS, first + 1);
+        buffer.putLong(offset + CLOCKS + Long.BYTES, second + 1);
+        publish(buffer, offset, header(MOVE, move, ply));
+        return sequence;
+    }
+
+    /**
+     * Appends the end of a game, after which it is not recovered anymore.
+     * @param game the id of the game.
+     * @param result the code of the result of the game.
+     * @return the sequence number of the record.
+     */
+    public long gameOver(long game, int result) {
+        long sequence = append(game, GAMEOVER, result, 0);
+        openGames.remove(game);
+        return sequence;
+    }
+
+    /**
+     * Waits until the record with the sequence number is on disk.
+     * @param sequence the sequence number of the record.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public synchronized void awaitCommit(long sequence) throws InterruptedException {
+        while (committed <= sequence && !closed) {
+            LockSupport.unpark(committer);
+            wait(commitInterval);
+        }
+    }
+
+    /**
+     * Returns the games that were not over yet when the journal was opened, in order of their id.
+     * The recovered games are kept in the journal until their GAMEOVER is appended.
+     * @return the games that were still being played.
+     */
+    public List<RecoveredGame> recover() {
+        return recovered;
+    }
+
+    /**
+     * Reads the segments that already exist and returns the games that were not over yet, in order of their id.
+     * Only the moves up to the first move that is missing are returned, so a game is always consistent.
+     * @param files the segment files by index.
+     * @return the games that were still being played.
+     * @throws IOException if a segment cannot be read.
+     */
+    private List<RecoveredGame> replay(TreeMap<Long, Path> files) throws IOException {
+        Map<Long, RecoveredGame> started = new TreeMap<>();
+        Map<Long, Long> firstSegment = new HashMap<>();
+        Map<Long, byte[]> moves = new HashMap<>();
+        Map<Long, long[]> clocks = new HashMap<>(); // the clocks after every move, two per ply, plus one.
+        Map<Long, Integer> plies = new HashMap<>();
+        Set<Long> over = new HashSet<>();
+        for (Map.Entry<Long, Path> file : files.entrySet()) {
+            try (FileChannel channel = FileChannel.open(file.getValue(), StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                for (int offset = 0; offset + RECORD_SIZE <= buffer.capacity(); offset += RECORD_SIZE) {
+                    int header = buffer.getInt(offset);
+                    if (header == 0 || buffer.getInt(offset + CHECKSUM) != checksum(buffer, offset, header)) {
+                        continue; // never written, or torn by a crash of the machine.
+                    }
+                    long game = buffer.getLong(offset + GAME);
+                    int type = header >>> 24;
+                    int value = (header >>> 16) & 0xFF;
+                    int ply = header & 0xFFFF;
+                    if (type == NEWGAME) {
+                        started.put(game, new RecoveredGame(game, getName(buffer, offset + FIRST),
+                                getName(buffer, offset + SECOND), buffer.getLong(offset + TIME), null, null));
+                        firstSegment.put(game, file.getKey());
+                    } else if (type == MOVE) {
+                        byte[] gameMoves = moves.computeIfAbsent(game, g -> new byte[64]);
+                        if (ply >= gameMoves.length) {
+                            gameMoves = Arrays.copyOf(gameMoves, Math.max(ply + 1, gameMoves.length * 2));
+                            moves.put(game, gameMoves);
+                        }
+                        gameMoves[ply] = (byte) (value + 1); // zero marks a missing move.
+                        long[] gameClocks = clocks.computeIfAbsent(game, g -> new long[128]);
+                        if (2 * ply + 1 >= gameClocks.length) {
+                            gameClocks = Arrays.copyOf(gameClocks, Math.max(2 * ply + 2, gameClocks.length * 2));
+                            clocks.put(game, gameClocks);
+                        }
+                        gameClocks[2 * ply] = buffer.getLong(offset + CLOCKS);
+                        gameClocks[2 * ply + 1] = buffer.getLong(offset + CLOCKS + Long.BYTES);
+                        plies.merge(game, ply + 1, Math::max);
+                    } else if (type == GAMEOVER) {
+                        over.add(game);
+                    }
+                }
+            }
+        }
+        List<RecoveredGame> games = new ArrayList<>();
+        for (RecoveredGame game : started.values()) {
+            if (over.contains(game.getId())) {
+                continue;
+            }
+            byte[] gameMoves = moves.getOrDefault(game.getId(), new byte[0]);
+            int length = 0;
+            while (length < plies.getOrDefault(game.getId(), 0) && gameMoves[length] != 0) {
+                length++;
+            }
+            byte[] ordered = new byte[length];
+            for (int i = 0; i < length; i++) {
+                ordered[i] = (byte) (gameMoves[i] - 1);
+            }
+            long[] left = null;
+            long[] gameClocks = clocks.get(game.getId());
+            if (length > 0 && gameClocks[2 * length - 2] > 0 && gameClocks[2 * length - 1] > 0) {
+                left = new long[] {gameClocks[2 * length - 2] - 1, gameClocks[2 * length - 1] - 1};
+            }
+            openGames.put(game.getId(), firstSegment.get(game.getId()));
+            games.add(new RecoveredGame(game.getId(), game.getFirst(), game.getSecond(),
+                    game.getStarted(), ordered, left));
+        }
+        return games;
+    }
+
+    /**
+     * Forces the remaining records to disk and closes the segments.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(committer);
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            for (Segment segment : segments.values()) {
+                segment.buffer.force();
+                closeQuietly(segment);
+            }
+            segments.clear();
+            notifyAll();
+        }
+    }
+
+    /**
+     * Appends a record without usernames.
+     * @param game the id of the game.
+     * @param type the type of the record.
+     * @param value the move or the result.
+     * @param ply the number of the move.
+     * @return the sequence number of the record.
+     */
+    private long append(long game, int type, int value, int ply) {
+        long sequence = next.getAndIncrement();
+        MappedByteBuffer buffer = segmentOf(sequence).buffer;
+        int offset = offset(sequence);
+        buffer.putLong(offset + GAME, game);
+        buffer.putLong(offset + TIME, System.currentTimeMillis());
+        publish(buffer, offset, header(type, value, ply));
+        return sequence;
+    }
+
+    /**
+     * Writes the checksum and then the header of a record, which makes it visible to the committer.
+     * @param buffer the buffer of the segment.
+     * @param offset the offset of the record.
+     * @param header the header of the record.
+     */
+    private static void publish(MappedByteBuffer buffer, int offset, int header) {
+        buffer.putInt(offset + CHECKSUM, checksum(buffer, offset, header));
+        HEADER.setRelease(buffer, offset, header);
+    }
+
+    /**
+     * Returns the header of a record.
+     * @param type the type of the record.
+     * @param value the move or the result.
+     * @param ply the number of the move.
+     * @return the header.
+     */
+    private static int header(int type, int value, int ply) {
+        return type << 24 | (value & 0xFF) << 16 | (ply & 0xFFFF);
+    }
+
+    /**
+     * Calculates the checksum of a record.
+     * @param buffer the buffer of the segment.
+     * @param offset the offset of the record.
+     * @param header the header of the record.
+     * @return the checksum.
+     */
+    private static int checksum(MappedByteBuffer buffer, int offset, int header) {
+        int hash = header;
+        for (int i = GAME; i < RECORD_SIZE; i += Long.BYTES) {
+            hash = hash * 31 + Long.hashCode(buffer.getLong(offset + i));
+        }
+        return hash;
+    }
+
+    /**
+     * Writes a username with its length.
+     * @param buffer the buffer of the segment.
+     * @param position the position of the length.
+     * @param name the UTF-8 bytes of the username.
+     */
+    private static void putName(MappedByteBuffer buffer, int position, byte[] name) {
+        buffer.put(position, (byte) name.length);
+        for (int i = 0; i < name.length; i++) {
+            buffer.put(position + 1 + i, name[i]);
+        }
+    }
+
+    /**
+     * Reads a username that is written by putName.
+     * @param buffer the buffer of the segment.
+     * @param position the position of the length.
+     * @return the username.
+     */
+    private static String getName(MappedByteBuffer buffer, int position) {
+        byte[] name = new byte[Math.min(buffer.get(position) & 0xFF, MAX_NAME_BYTES)];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = buffer.get(position + 1 + i);
+        }
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the offset of a record in its segment.
+     * @param sequence the sequence number of the record.
+     * @return the offset in bytes.
+     */
+    private int offset(long sequence) {
+        return (int) (sequence % segmentRecords) * RECORD_SIZE;
+    }
+
+    /**
+     * Returns the segment of a record. Only the first record of a segment that is not
+     * preallocated by the committer takes a lock.
+     * @param sequence the sequence number of the record.
+     * @return the segment.
+     */
+    private Segment segmentOf(long sequence) {
+        long index = sequence / segmentRecords;
+        Segment segment = current;
+        if (segment.index == index) {
+            return segment;
+        }
+        segment = segments.get(index);
+        if (segment == null) {
+            try {
+                segment = segment(index);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not create journal segment " + index, e);
+            }
+        }
+        if (index > current.index) {
+            current = segment;
+        }
+        return segment;
+    }
+
+    /**
+     * Returns the segment with the index, which is created and mapped if it does not exist yet.
+     * @param index the index of the segment.
+     * @return the segment.
+     * @throws IOException if the segment cannot be created.
+     */
+    private synchronized Segment segment(long index) throws IOException {
+        Segment segment = segments.get(index);
+        if (segment == null) {
+            FileChannel channel = FileChannel.open(path(index), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    (long) segmentRecords * RECORD_SIZE);
+            segment = new Segment(index, channel, buffer);
+            segments.put(index, segment);
+        }
+        return segment;
+    }
+
+    /**
+     * The loop of the committer: every commit interval, the records that are written since the last round
+     * are forced to disk, the next segment is preallocated when the current one is half full,
+     * and segments without any game that is not over are deleted.
+     */
+    private void commitLoop() {
+        while (!closed) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(commitInterval));
+            try {
+                commit();
+                long reserved = next.get();
+                if (reserved % segmentRecords >= segmentRecords / 2) {
+                    segment(reserved / segmentRecords + 1);
+                }
+                retire();
+            } catch (IOException | RuntimeException e) {
+                Log.warn("Journal: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Forces the written records to disk. Only the records up to the first one that is reserved
+     * but not written yet count as committed.
+     */
+    private void commit() {
+        long from = committed;
+        long to = next.get();
+        long written = from;
+        while (written < to) {
+            Segment segment = segments.get(written / segmentRecords);
+            if (segment == null || (int) HEADER.getAcquire(segment.buffer, offset(written)) == 0) {
+                break;
+            }
+            written++;
+        }
+        if (written == from) {
+            return;
+        }
+        for (long index = from / segmentRecords; index <= (written - 1) / segmentRecords; index++) {
+            Segment segment = segments.get(index);
+            if (segment != null) {
+                segment.buffer.force();
+            }
+        }
+        synchronized (this) {
+            committed = written;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Deletes the segments before the first segment of the oldest game that is not over
+     * and before the segment of the newest committed record.
+     * @throws IOException if a segment cannot be deleted.
+     */
+    private void retire() throws IOException {
+        long keep = (committed - 1) / segmentRecords;
+        for (long first : openGames.values()) {
+            keep = Math.min(keep, first);
+        }
+        for (Map.Entry<Long, Path> file : existingSegments().headMap(keep).entrySet()) {
+            Segment segment;
+            synchronized (this) {
+                segment = segments.remove(file.getKey());
+            }
+            if (segment != null) {
+                closeQuietly(segment);
+            }
+            Files.deleteIfExists(file.getValue());
+        }
+    }
+
+    /**
+     * Closes the channel of a segment.
+     * @param segment the segment.
+     */
+    private static void closeQuietly(Segment segment) {
+        try {
+            segment.channel.close();
+        } catch (IOException e) {
+            Log.warn("Journal: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the segment files in the directory.
+     * @return the paths of the segments by index.
+     * @throws IOException if the directory cannot be read.
+     */
+    private TreeMap<Long, Path> existingSegments() throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())),
+                            file);
+                } catch (NumberFormatException e) {
+                    // not a segment of this journal.
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Returns the path of a segment.
+     * @param index the index of the segment.
+     * @return the path of the segment file.
+     */
+    private Path path(long index) {
+        return directory.resolve(String.format("%s%010d%s", PREFIX, index, SUFFIX));
+    }
+}
@@ -0,0 +1,83 @@
+package network.server.journal;
+
+import java.util.Arrays;
+
+/**
+ * A game that was still being played according to the journal, rebuilt by GameJournal.recover.
+ */
+public class RecoveredGame {
+    private final long id;
+    private final String first;
+    private final String second;
+    private final long started;
+    private final byte[] moves;
+    private final long[] clocks; // the milliseconds each player had left after the last move, null if unknown.
+
+    /**
+     * Constructs a RecoveredGame.
+     * @param id the id of the game.
+     * @param first the username of the black player.
+     * @param second the username of the white player.
+     * @param started the time at which the game started, in milliseconds since the epoch.
+     * @param moves the moves of the game in order, one byte per move (64 is a pass).
+     * @param clocks the milliseconds that the first and the second player had left after the last move,
+     *               null if the game had no clock or no move was made.
+     */
+    public RecoveredGame(long id, String first, String second, long started, byte[] moves, long[] clocks) {
+        this.id = id;
+        this.first = first;
+        this.second = second;
+        this.started = started;
+        this.moves = moves;
+        this.clocks = clocks;
+    }
+
+    /**
+     * Returns the id of the game.
+     * @return the id of the game.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Returns the username of the black player.
+     * @return the username of the first player.
+     */
+    public String getFirst() {
+        return first;
+    }
+
+    /**
+     * Returns the username of the white player.
+     * @return the username of the second player.
+     */
+    public String getSecond() {
+        return second;
+    }
+
+    /**
+     * Returns the time at which the game started.
+     * @return the start time in milliseconds since the epoch.
+     */
+    public long getStarted() {
+        return started;
+    }
+
+    /**
+     * Returns the moves of the game.
+     * @return a copy of the moves in order, one byte per move (64 is a pass).
+     */
+    public byte[] getMoves() {
+        return Arrays.copyOf(moves, moves.length);
+    }
+
+    /**
+     * Returns the clocks of the players after the last move that was journaled.
+     * @return a copy of the milliseconds that the first and the second player had left,
+     * or null if the game had no clock or no move was made.
+     */
+    public long[] getClocks() {
+        return clocks == null ? null : Arrays.copyOf(clocks, clocks.length);
+    }
+}
@@ -0,0 +1,303 @@
+package network.server.log;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A logger that never makes the thread that logs wait for the console.
+ * A message is written into a slot of a ring buffer that is allocated once: the logging thread claims a slot
+ * with one compare-and-set, fills in the level, the time, its thread name, the message and up to three
+ * arguments, and publishes the slot. A single drain thread formats the messages and writes them with one
+ * flush per batch. When the ring is full, new messages are dropped and counted, and the drain thread reports
+ * how many were lost, so a burst of logins can never block the server on its log.
+ * Messages can contain {} placeholders that are replaced by the arguments on the drain thread, so the
+ * logging thread does not build strings. Each line has the time, the level, the thread and the message;
+ * in the JSON format each line is one object with those fields.
+ */
+public class AsyncLogger implements Runnable {
+    public static final int DEFAULT_CAPACITY = 8192; // messages that can wait to be written.
+    private static final long IDLE_PARK = 5_000_000; // nanoseconds the drain thread sleeps when there is nothing to write.
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS")
+            .withZone(ZoneId.systemDefault());
+
+    /**
+     * A slot of the ring. The fields are written by the thread that claimed the slot and read by the drain
+     * thread after the sequence is published.
+     */
+    private static final class Entry {
+        private volatile long sequence; // the sequence of the message + 1 when it is published, so 0 is empty.
+        private long time;
+        private LogLevel level;
+        private String thread;
+        private String message;
+        private int args;
+        private Object a;
+        private Object b;
+        private Object c;
+    }
+
+    private final Entry[] ring;
+    private final int mask;
+    private final AtomicLong tail; // the next sequence to claim.
+    private volatile long head; // the next sequence to write, only changed by the drain thread.
+    private final LongAdder dropped;
+    private final PrintStream out;
+    private final boolean json;
+    private final StringBuilder line; // only used by the drain thread.
+    private volatile LogLevel level;
+    private volatile boolean stopped;
+    private long reported; // the dropped messages that are already reported.
+    private final Entry report; // the message about dropped messages, only used by the drain thread.
+    private volatile Thread thread;
+
+    /**
+     * Constructs a logger.
+     * @param out the stream to write to.
+     * @param level the lowest level that is logged.
+     * @param capacity the amount of messages that can wait, rounded up to a power of two.
+     * @param json true to write every message as a JSON object, false for plain lines.
+     */
+    public AsyncLogger(PrintStream out, LogLevel level, int capacity, boolean json) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.ring = new Entry[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Entry();
+        }
+        this.mask = size - 1;
+        this.tail = new AtomicLong();
+        this.dropped = new LongAdder();
+        this.out = out;
+        this.json = json;
+        this.line = new StringBuilder(256);
+        this.level = level;
+        this.report = new Entry();
+        report.level = LogLevel.WARN;
+        report.thread = "logger";
+        report.message = "{} log messages were dropped because the log could not keep up.";
+        report.args = 1;
+    }
+
+    /**
+     * Starts the drain thread.
+     */
+    public synchronized void start() {
+        if (thread == null) {
+            thread = new Thread(this, "logger");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Writes the messages that are still waiting and stops the drain thread.
+     */
+    public void stop() {
+        stopped = true;
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+            try {
+                t.join(1_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Waits until the messages that were logged before the call are written, at most one second.
+     */
+    public void flush() {
+        long target = tail.get();
+        long deadline = System.nanoTime() + 1_000_000_000L;
+        Thread t = thread;
+        while (head < target && System.nanoTime() < deadline && t != null && t.isAlive()) {
+            LockSupport.unpark(t);
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    /**
+     * Returns whether messages of a level are logged.
+     * @param messageLevel the level.
+     * @return true if the level is at least the level of the logger.
+     */
+    public boolean isEnabled(LogLevel messageLevel) {
+        return messageLevel.ordinal() >= level.ordinal();
+    }
+
+    /**
+     * Changes the lowest level that is logged.
+     * @param level the level.
+     */
+    public void setLevel(LogLevel level) {
+        this.level = level;
+    }
+
+    /**
+     * Returns the amount of messages that were dropped because the ring was full.
+     * @return the amount of dropped messages.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Logs a message, if its level is enabled. Never blocks: the message is dropped if the ring is full.
+     * @param messageLevel the level of the message.
+     * @param message the message, with a {} for every argument.
+     * @param args the amount of arguments.
+     * @param a the first argument.
+     * @param b the second argument.
+     * @param c the third argument.
+     */
+    public void log(LogLevel messageLevel, String message, int args, Object a, Object b, Object c) {
+        if (!isEnabled(messageLevel)) {
+            return;
+        }
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= ring.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        Entry entry = ring[(int) sequence & mask];
+        entry.time = System.currentTimeMillis();
+        entry.level = messageLevel;
+        entry.thread = Thread.currentThread().getName();
+        entry.message = message;
+        entry.args = args;
+        entry.a = a;
+        entry.b = b;
+        entry.c = c;
+        entry.sequence = sequence + 1; // publishes the entry to the drain thread.
+    }
+
+    /**
+     * The loop of the drain thread: writes the published messages and sleeps a little when there are none.
+     */
+    @Override
+    public void run() {
+        while (true) {
+            int written = drain();
+            if (written == 0) {
+                if (stopped) {
+                    return;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK);
+            }
+        }
+    }
+
+    /**
+     * Writes every published message, in order, and flushes the stream once.
+     * A message that is claimed but not published yet stops the batch; it is written in the next one.
+     * @return the amount of messages that were written.
+     */
+    private int drain() {
+        long next = head;
+        int written = 0;
+        while (true) {
+            Entry entry = ring[(int) next & mask];
+            if (entry.sequence != next + 1) {
+                break;
+            }
+            format(entry);
+            out.append(line);
+            entry.message = null;
+            entry.a = null;
+            entry.b = null;
+            entry.c = null;
+            next++;
+            head = next; // gives the slot back to the logging threads.
+            written++;
+        }
+        long lost = dropped.sum();
+        if (lost > reported) {
+            report.time = System.currentTimeMillis();
+            report.a = lost - reported;
+            format(report);
+            out.append(line);
+            reported = lost;
+            written++;
+        }
+        if (written > 0) {
+            out.flush();
+        }
+        return written;
+    }
+
+    /**
+     * Formats a message into the line buffer.
+     * @param entry the message.
+     */
+    private void format(Entry entry) {
+        line.setLength(0);
+        if (json) {
+            line.append("{\"time\":").append(entry.time).append(",\"level\":\"").append(entry.level)
+                    .append("\",\"thread\":");
+            quote(entry.thread);
+            line.append(",\"message\":");
+            int start = line.length();
+            appendMessage(entry);
+            String text = line.substring(start);
+            line.setLength(start);
+            quote(text);
+            line.append('}');
+        } else {
+            line.append(TIME.format(Instant.ofEpochMilli(entry.time))).append(' ');
+            String name = entry.level.name();
+            line.append(name);
+            for (int i = name.length(); i < 6; i++) {
+                line.append(' ');
+            }
+            line.append('[').append(entry.thread).append("] ");
+            appendMessage(entry);
+        }
+        line.append(System.lineSeparator());
+    }
+
+    /**
+     * Appends the message of an entry with its placeholders replaced by the arguments.
+     * @param entry the message.
+     */
+    private void appendMessage(Entry entry) {
+        String message = entry.message;
+        int from = 0;
+        for (int i = 0; i < entry.args; i++) {
+            int at = message.indexOf("{}", from);
+            if (at < 0) {
+                break;
+            }
+            line.append(message, from, at).append(i == 0 ? entry.a : i == 1 ? entry.b : entry.c);
+            from = at + 2;
+        }
+        line.append(message, from, message.length());
+    }
+
+    /**
+     * Appends a string as a JSON string.
+     * @param text the string.
+     */
+    private void quote(String text) {
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                line.append('\\').append(ch);
+            } else if (ch < 0x20) {
+                line.append(String.format("\\u%04x", (int) ch));
+            } else {
+                line.append(ch);
+            }
+        }
+        line.append('"');
+    }
+}
@@ -0,0 +1,218 @@
+package network.server.log;
+
+/**
+ * The log of the server. Every class of the server logs through these static methods, which hand the
+ * message to one AsyncLogger that writes to System.out on its own thread.
+ * There is a method for every amount of arguments up to three, so logging does not allocate an array,
+ * and nothing is allocated at all when the level is disabled.
+ * Until configure is called, the logger logs INFO and above in the text format.
+ */
+public final class Log {
+    private static volatile AsyncLogger logger = start(new AsyncLogger(System.out, LogLevel.INFO,
+            AsyncLogger.DEFAULT_CAPACITY, false));
+
+    /**
+     * Not used: the log only has static methods.
+     */
+    private Log() {
+    }
+
+    /**
+     * Starts a logger and makes sure its messages are written when the program exits.
+     * @param logger the logger.
+     * @return the logger.
+     */
+    private static AsyncLogger start(AsyncLogger logger) {
+        logger.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(logger::stop, "logger-shutdown"));
+        return logger;
+    }
+
+    /**
+     * Replaces the logger by one with the given settings. The messages of the old logger are written first.
+     * @param level the lowest level that is logged.
+     * @param capacity the amount of messages that can wait to be written.
+     * @param json true to write every message as a JSON object, false for plain lines.
+     */
+    public static synchronized void configure(LogLevel level, int capacity, boolean json) {
+        AsyncLogger old = logger;
+        logger = start(new AsyncLogger(System.out, level, capacity, json));
+        old.stop();
+    }
+
+    /**
+     * Returns whether messages of a level are logged, to skip building expensive arguments.
+     * @param level the level.
+     * @return true if the level is enabled.
+     */
+    public static boolean isEnabled(LogLevel level) {
+        return logger.isEnabled(level);
+    }
+
+    /**
+     * Returns the amount of messages that were dropped because the log could not keep up.
+     * @return the amount of dropped messages.
+     */
+    public static long getDropped() {
+        return logger.getDropped();
+    }
+
+    /**
+     * Waits until the messages that were logged before the call are written.
+     */
+    public static void flush() {
+        logger.flush();
+    }
+
+    /**
+     * Logs a DEBUG message.
+     * @param message the message.
+     */
+    public static void debug(String message) {
+        logger.log(LogLevel.DEBUG, message, 0, null, null, null);
+    }
+
+    /**
+     * Logs a DEBUG message with one argument.
+     * @param message the message, with a {} for the argument.
+     * @param a the argument.
+     */
+    public static void debug(String message, Object a) {
+        logger.log(LogLevel.DEBUG, message, 1, a, null, null);
+    }
+
+    /**
+     * Logs a DEBUG message with two arguments.
+     * @param message the message, with a {} for every argument.
+     * @param a the first argument.
+     * @param b the second argument.
+     */
+    public static void debug(String message, Object a, Object b) {
+        logger.log(LogLevel.DEBUG, message, 2, a, b, null);
+    }
+
+    /**
+     * Logs a DEBUG message with three arguments.
+     * @param message the message, with a {} for every argument.
+     * @param a the first argument.
+     * @param b the second argument.
+     * @param c the third argument.
+     */
+    public static void debug(String message, Object a, Object b, Object c) {
+        logger.log(LogLevel.DEBUG, message, 3, a, b, c);
+    }
+
+    /**
+     * Logs an INFO message.
+     * @param message the message.
+     */
+    public static void info(String message) {
+        logger.log(LogLevel.INFO, message, 0, null, null, null);
+    }
+
+    /**
+     * Logs an INFO message with one argument.
+     * @param message the message, with a {} for the argument.
+     * @param a the argument.
+     */
+    public static void info(String message, Object a) {
+        logger.log(LogLevel.INFO, message, 1, a, null, null);
+    }
+
+    /**
+     * Logs an INFO message with two arguments.
+     * @param message the message, with a {} for every argument.
+     * @param a the first argument.
+     * @param b the second argument.
+     */
+    public static void info(String message, Object a, Object b) {
+        logger.log(LogLevel.INFO, message, 2, a, b, null);
+    }
+
+    /**
+     * Logs an INFO message with three arguments.
+     * @param message the message, with a {} for every argument.
+     * @param a the first argument.
+     * @param b the second argument.
+     * @param c the third argument.
+     */
+    public static void info(String message, Object a, Object b, Object c) {
+        logger.log(LogLevel.INFO, message, 3, a, b, c);
+    }
+
+    /**
+     * Logs a WARN message.
+     * @param message the message.
+     */
+    public static void warn(String message) {
+        logger.log(LogLevel.WARN, message, 0, null, null, null);
+    }
+
+    /**
+     * Logs a WARN message with one argument.
+     * @param message the message, with a {} for the argument.
+     * @param a the argument.
+     */
+    public static void warn(String message, Object a) {
+        logger.log(LogLevel.WARN, message, 1, a, null, null);
+    }
+
+    /**
+     * Logs a WARN message with two arguments.
+     * @param message the message, with a {} for every argument.
+     * @param a the first argument.
+     * @param b the second argument.
+     */
+    public static void warn(String message, Object a, Object b) {
+        logger.log(LogLevel.WARN, message, 2, a, b, null);
+    }
+
+    /**
+     * Logs a WARN message with three arguments.
+     * @param message the message, with a {} for every argument.
+     * @param a the first argument.
+     * @param b the second argument.
+     * @param c the third argument.
+     */
+    public static void warn(String message, Object a, Object b, Object c) {
+        logger.log(LogLevel.WARN, message, 3, a, b, c);
+    }
+
+    /**
+     * Logs an ERROR message.
+     * @param message the message.
+     */
+    public static void error(String message) {
+        logger.log(LogLevel.ERROR, message, 0, null, null, null);
+    }
+
+    /**
+     * Logs an ERROR message with one argument.
+     * @param message the message, with a {} for the argument.
+     * @param a the argument.
+     */
+    public static void error(String message, Object a) {
+        logger.log(LogLevel.ERROR, message, 1, a, null, null);
+    }
+
+    /**
+     * Logs an ERROR message with two arguments.
+     * @param message the message, with a {} for every argument.
+     * @param a the first argument.
+     * @param b the second argument.
+     */
+    public static void error(String message, Object a, Object b) {
+        logger.log(LogLevel.ERROR, message, 2, a, b, null);
+    }
+
+    /**
+     * Logs an ERROR message with three arguments.
+     * @param message the message, with a {} for every argument.
+     * @param a the first argument.
+     * @param b the second argument.
+     * @param c the third argument.
+     */
+    public static void error(String message, Object a, Object b, Object c) {
+        logger.log(LogLevel.ERROR, message, 3, a, b, c);
+    }
+}
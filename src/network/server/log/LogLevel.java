@@ -0,0 +1,42 @@
+package network.server.log;
+
+/**
+ * The levels of the log messages of the server, from the least to the most important.
+ * Messages below the level of the logger are dropped before anything is formatted or queued.
+ */
+public enum LogLevel {
+    /**
+     * Details of every client action, like every join of the queue.
+     */
+    DEBUG,
+    /**
+     * Logins, disconnects, games and other normal events.
+     */
+    INFO,
+    /**
+     * Something failed, but the server continues.
+     */
+    WARN,
+    /**
+     * The server cannot continue a part of its work.
+     */
+    ERROR;
+
+    /**
+     * Returns the level with the given name, ignoring the case.
+     * @param name the name of the level.
+     * @param fallback the level to return when the name is null or unknown.
+     * @return the level with that name or the fallback.
+     */
+    public static LogLevel parse(String name, LogLevel fallback) {
+        if (name == null) {
+            return fallback;
+        }
+        for (LogLevel level : values()) {
+            if (level.name().equalsIgnoreCase(name.trim())) {
+                return level;
+            }
+        }
+        return fallback;
+    }
+}
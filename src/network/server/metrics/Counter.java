@@ -0,0 +1,34 @@
+package network.server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter that only goes up. Threads that increment it at the same time do not contend,
+ * because every thread adds to its own cell and the cells are only summed when the counter is read.
+ */
+public class Counter {
+    private final LongAdder value = new LongAdder();
+
+    /**
+     * Adds one to the counter.
+     */
+    public void increment() {
+        value.increment();
+    }
+
+    /**
+     * Adds an amount to the counter.
+     * @param amount the amount to add.
+     */
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    /**
+     * Returns the value of the counter.
+     * @return the sum of everything that is added.
+     */
+    public long get() {
+        return value.sum();
+    }
+}
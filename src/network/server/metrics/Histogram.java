@@ -0,0 +1,172 @@
+package network.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative values (for example latencies in nanoseconds) with a fixed relative precision,
+ * in the style of HdrHistogram: values below 32 have their own bucket, and every power of two above that
+ * is split into 16 buckets, so a percentile is off by at most 1/16 of its value.
+ * Recording a value is two atomic increments and does not allocate; all of Long's range fits in 1024 buckets.
+ */
+public class Histogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS; // values below SUB are exact.
+    private static final int HALF = SUB / 2; // buckets per power of two.
+    private static final int BUCKETS = 64 * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value.
+     * @param value the value, negative values are recorded as 0.
+     */
+    public void record(long value) {
+        long v = Math.max(value, 0);
+        counts.incrementAndGet(bucket(v));
+        if (v > max.get()) {
+            max.accumulateAndGet(v, Math::max);
+        }
+    }
+
+    /**
+     * Returns the bucket of a value.
+     * @param value the non-negative value.
+     * @return the index of the bucket.
+     */
+    static int bucket(long value) {
+        if (value < SUB) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the smallest value of a bucket.
+     * @param bucket the index of the bucket.
+     * @return the lowest value that is recorded in the bucket.
+     */
+    static long lowest(int bucket) {
+        if (bucket < SUB) {
+            return bucket;
+        }
+        int shift = bucket / HALF - 1;
+        return (long) (bucket % HALF + HALF) << shift;
+    }
+
+    /**
+     * Returns the value in the middle of a bucket, which is used to report the values in the bucket.
+     * @param bucket the index of the bucket.
+     * @return the middle of the bucket.
+     */
+    static long middle(int bucket) {
+        if (bucket < SUB) {
+            return bucket;
+        }
+        int shift = bucket / HALF - 1;
+        return lowest(bucket) + (1L << shift) / 2;
+    }
+
+    /**
+     * Copies the current counts, so they can be reported without stopping the recording threads.
+     * @return a snapshot of the histogram.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, max.get());
+    }
+
+    /**
+     * The counts of a histogram at one moment.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long max;
+
+        /**
+         * Constructs a snapshot.
+         * @param counts the count of every bucket.
+         * @param max the highest recorded value.
+         */
+        private Snapshot(long[] counts, long max) {
+            this.counts = counts;
+            this.max = max;
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            this.count = total;
+        }
+
+        /**
+         * Returns the values that are recorded after an earlier snapshot of the same histogram.
+         * The maximum stays the maximum since the start.
+         * @param earlier the earlier snapshot.
+         * @return a snapshot of the values in between.
+         */
+        public Snapshot since(Snapshot earlier) {
+            long[] difference = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                difference[i] = counts[i] - earlier.counts[i];
+            }
+            return new Snapshot(difference, max);
+        }
+
+        /**
+         * Returns the amount of recorded values.
+         * @return the amount of values.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the highest recorded value.
+         * @return the maximum, 0 if nothing is recorded.
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Returns the value below which a fraction of the recorded values are.
+         * @param quantile the fraction, for example 0.99 for the 99th percentile.
+         * @return the value, 0 if nothing is recorded.
+         */
+        public long percentile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(middle(i), max);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Returns the average of the recorded values, taking the middle of every bucket.
+         * @return the average, 0 if nothing is recorded.
+         */
+        public double mean() {
+            if (count == 0) {
+                return 0;
+            }
+            double sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                sum += (double) counts[i] * middle(i);
+            }
+            return sum / count;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package network.server.metrics;
+
+import network.server.log.Log;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics of the server by name: counters, gauges (values that are read when they are reported)
+ * and histograms of latencies in nanoseconds.
+ * Recording never takes a lock; only reporting reads every metric.
+ */
+public class MetricsRegistry {
+    private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+    private final Map<String, Histogram.Snapshot> dumped = new HashMap<>(); // the snapshots of the last dump.
+    private ScheduledExecutorService dumper;
+
+    /**
+     * Returns the counter with the name, which is created if it does not exist yet.
+     * @param name the name of the counter.
+     * @return the counter.
+     */
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    /**
+     * Registers a gauge, which replaces an earlier gauge with the same name.
+     * @param name the name of the gauge.
+     * @param gauge reads the value of the gauge, from the thread that reports.
+     */
+    public void gauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Returns the histogram with the name, which is created if it does not exist yet.
+     * @param name the name of the histogram.
+     * @return the histogram.
+     */
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    /**
+     * Returns a table with the current value of every metric; the histograms contain every value
+     * since the start of the server.
+     * @return the report.
+     */
+    public String report() {
+        Map<String, Histogram.Snapshot> snapshots = new HashMap<>();
+        for (Map.Entry<String, Histogram> histogram : histograms.entrySet()) {
+            snapshots.put(histogram.getKey(), histogram.getValue().snapshot());
+        }
+        return report(snapshots, "since start");
+    }
+
+    /**
+     * Builds the report.
+     * @param snapshots the snapshots of the histograms to report.
+     * @param period the period of the histograms, for the header.
+     * @return the report.
+     */
+    private String report(Map<String, Histogram.Snapshot> snapshots, String period) {
+        StringBuilder report = new StringBuilder();
+        report.append("counters\n");
+        for (Map.Entry<String, Counter> counter : counters.entrySet()) {
+            report.append(String.format("  %-28s %12d%n", counter.getKey(), counter.getValue().get()));
+        }
+        report.append("gauges\n");
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            report.append(String.format("  %-28s %12d%n", gauge.getKey(), gauge.getValue().getAsLong()));
+        }
+        report.append(String.format("histograms in microseconds (%s)%n", period));
+        report.append(String.format("  %-28s %12s %9s %9s %9s %9s %9s %9s%n",
+                "", "count", "mean", "p50", "p90", "p99", "p999", "max"));
+        for (Map.Entry<String, Histogram.Snapshot> entry : new TreeMap<>(snapshots).entrySet()) {
+            Histogram.Snapshot snapshot = entry.getValue();
+            report.append(String.format("  %-28s %12d %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f%n", entry.getKey(),
+                    snapshot.getCount(), snapshot.mean() / 1000, micros(snapshot.percentile(0.5)),
+                    micros(snapshot.percentile(0.9)), micros(snapshot.percentile(0.99)),
+                    micros(snapshot.percentile(0.999)), micros(snapshot.getMax())));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Converts nanoseconds to microseconds.
+     * @param nanos the nanoseconds.
+     * @return the microseconds.
+     */
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    /**
+     * Writes a report to the file every period. The histograms in the file only contain the values
+     * of the last period, so a degrading latency is visible right away.
+     * The file is replaced atomically, so it can be read at any time.
+     * @param file the file to write to.
+     * @param period the seconds between two dumps.
+     */
+    public synchronized void startDump(Path file, long period) {
+        if (dumper != null) {
+            dumper.shutdownNow();
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> dump(file, period), period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic dump.
+     */
+    public synchronized void stopDump() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+
+    /**
+     * Writes one report with the histograms of the last period.
+     * @param file the file to write to.
+     * @param period the seconds between two dumps.
+     */
+    private void dump(Path file, long period) {
+        Map<String, Histogram.Snapshot> interval = new HashMap<>();
+        synchronized (dumped) {
+            for (Map.Entry<String, Histogram> histogram : histograms.entrySet()) {
+                Histogram.Snapshot now = histogram.getValue().snapshot();
+                Histogram.Snapshot before = dumped.put(histogram.getKey(), now);
+                interval.put(histogram.getKey(), before == null ? now : now.since(before));
+            }
+        }
+        String report = Instant.now() + "\n" + report(interval, "last " + period + " s");
+        try {
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temporary, report.getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Log.warn("Could not write the metrics to {}: {}", file, e.getMessage());
+        }
+    }
+}
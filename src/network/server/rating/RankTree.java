@@ -0,0 +1,205 @@
+package network.server.rating;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The ranking of the players: a treap (a binary search tree that is balanced by random priorities)
+ * of the ratings in the order of Rating.compareRank, where every node also stores the size of its subtree.
+ * With the sizes, the rank of a rating is found in one walk from the root,
+ * so adding, removing and ranking all take O(log n) expected time, and the top n ratings O(log n + n).
+ * Not thread safe: the RatingService guards it.
+ */
+class RankTree {
+    /**
+     * A node of the tree.
+     */
+    private static final class Node {
+        private final Rating rating;
+        private final int priority;
+        private int size;
+        private Node left;
+        private Node right;
+
+        /**
+         * Constructs a leaf.
+         * @param rating the rating of the node.
+         * @param priority the random priority; a parent has a higher priority than its children.
+         */
+        Node(Rating rating, int priority) {
+            this.rating = rating;
+            this.priority = priority;
+            this.size = 1;
+        }
+    }
+
+    private Node root;
+    private int seed = 0x2545F491; // state of the xorshift generator of the priorities.
+
+    /**
+     * Returns the amount of ratings in the tree.
+     * @return the size of the tree.
+     */
+    int size() {
+        return size(root);
+    }
+
+    /**
+     * Adds a rating. The rating must not be in the tree.
+     * @param rating the rating.
+     */
+    void add(Rating rating) {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        Node node = new Node(rating, seed);
+        Node[] parts = split(root, rating);
+        root = merge(merge(parts[0], node), parts[1]);
+    }
+
+    /**
+     * Removes a rating. Its value must not have changed since it was added.
+     * @param rating the rating.
+     */
+    void remove(Rating rating) {
+        root = remove(root, rating);
+    }
+
+    /**
+     * Returns the position of a rating in the ranking. Its value must not have changed since it was added.
+     * @param rating the rating.
+     * @return the amount of ratings that are ranked before it.
+     */
+    int rank(Rating rating) {
+        int rank = 0;
+        Node node = root;
+        while (node != null) {
+            int c = rating.compareRank(node.rating);
+            if (c < 0) {
+                node = node.left;
+            } else {
+                rank += size(node.left);
+                if (c == 0) {
+                    return rank;
+                }
+                rank++;
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Returns the ratings at the top of the ranking.
+     * @param count the maximum amount of ratings.
+     * @return the ratings, the highest first.
+     */
+    List<Rating> top(int count) {
+        List<Rating> top = new ArrayList<>(Math.min(count, size()));
+        collect(root, top, count);
+        return top;
+    }
+
+    /**
+     * Adds the ratings of a subtree in order, until the list has count ratings.
+     * @param node the root of the subtree.
+     * @param top the list to add to.
+     * @param count the maximum size of the list.
+     */
+    private static void collect(Node node, List<Rating> top, int count) {
+        while (node != null && top.size() < count) {
+            collect(node.left, top, count);
+            if (top.size() < count) {
+                top.add(node.rating);
+            }
+            node = node.right;
+        }
+    }
+
+    /**
+     * Removes a rating from a subtree.
+     * @param node the root of the subtree.
+     * @param rating the rating.
+     * @return the new root of the subtree.
+     */
+    private static Node remove(Node node, Rating rating) {
+        if (node == null) {
+            return null;
+        }
+        int c = rating.compareRank(node.rating);
+        if (c == 0) {
+            return merge(node.left, node.right);
+        }
+        if (c < 0) {
+            node.left = remove(node.left, rating);
+        } else {
+            node.right = remove(node.right, rating);
+        }
+        update(node);
+        return node;
+    }
+
+    /**
+     * Splits a subtree in the ratings that are ranked before a rating and the others.
+     * @param node the root of the subtree.
+     * @param rating the rating to split at.
+     * @return the root of the ratings before it and the root of the others.
+     */
+    private static Node[] split(Node node, Rating rating) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (node.rating.compareRank(rating) < 0) {
+            Node[] parts = split(node.right, rating);
+            node.right = parts[0];
+            update(node);
+            parts[0] = node;
+            return parts;
+        }
+        Node[] parts = split(node.left, rating);
+        node.left = parts[1];
+        update(node);
+        parts[1] = node;
+        return parts;
+    }
+
+    /**
+     * Merges two subtrees, where every rating of the first is ranked before every rating of the second.
+     * @param a the root of the first subtree.
+     * @param b the root of the second subtree.
+     * @return the root of the merged tree.
+     */
+    private static Node merge(Node a, Node b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        update(b);
+        return b;
+    }
+
+    /**
+     * Recomputes the size of a node from its children.
+     * @param node the node.
+     */
+    private static void update(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+
+    /**
+     * Returns the size of a subtree.
+     * @param node the root of the subtree, or null.
+     * @return the amount of ratings in the subtree.
+     */
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+}
@@ -0,0 +1,120 @@
+package network.server.rating;
+
+/**
+ * The Elo rating of a player and the results that led to it.
+ * A Rating is only changed by the RatingService, while it is out of the RankTree.
+ */
+public class Rating {
+    private final String username;
+    private double value;
+    private int wins;
+    private int draws;
+    private int losses;
+
+    /**
+     * Constructs a rating.
+     * @param username the username of the player.
+     * @param value the rating.
+     * @param wins the amount of games the player won.
+     * @param draws the amount of games that ended in a draw.
+     * @param losses the amount of games the player lost.
+     */
+    Rating(String username, double value, int wins, int draws, int losses) {
+        this.username = username;
+        this.value = value;
+        this.wins = wins;
+        this.draws = draws;
+        this.losses = losses;
+    }
+
+    /**
+     * Returns the username of the player.
+     * @return the username.
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns the rating of the player.
+     * @return the rating.
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the rating rounded to a whole number, as it is shown to the clients.
+     * @return the rounded rating.
+     */
+    public long getRounded() {
+        return Math.round(value);
+    }
+
+    /**
+     * Returns the amount of rated games of the player.
+     * @return the amount of games.
+     */
+    public int getGames() {
+        return wins + draws + losses;
+    }
+
+    /**
+     * Returns the amount of games the player won.
+     * @return the amount of wins.
+     */
+    public int getWins() {
+        return wins;
+    }
+
+    /**
+     * Returns the amount of games that ended in a draw.
+     * @return the amount of draws.
+     */
+    public int getDraws() {
+        return draws;
+    }
+
+    /**
+     * Returns the amount of games the player lost.
+     * @return the amount of losses.
+     */
+    public int getLosses() {
+        return losses;
+    }
+
+    /**
+     * Adds the result of a game.
+     * @param delta the change of the rating.
+     * @param score 1 for a win, 0.5 for a draw and 0 for a loss.
+     */
+    void record(double delta, double score) {
+        value += delta;
+        if (score > 0.5) {
+            wins++;
+        } else if (score < 0.5) {
+            losses++;
+        } else {
+            draws++;
+        }
+    }
+
+    /**
+     * Returns a copy of this rating, to be written by the store while this rating keeps changing.
+     * @return the copy.
+     */
+    Rating copy() {
+        return new Rating(username, value, wins, draws, losses);
+    }
+
+    /**
+     * Compares the position of two ratings in the ranking: the highest rating first,
+     * and equal ratings by username.
+     * @param other the other rating.
+     * @return a negative number if this rating is ranked before the other one.
+     */
+    int compareRank(Rating other) {
+        int byValue = Double.compare(other.value, value);
+        return byValue != 0 ? byValue : username.compareTo(other.username);
+    }
+}
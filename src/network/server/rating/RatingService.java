@@ -0,0 +1,190 @@
+package network.server.rating;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The Elo ratings of the players of the server. A rating changes in memory when a game ends,
+ * and lookups, ranks and the top of the ranking are answered from memory as well (see RankTree),
+ * so they never wait for the disk. With a RatingStore, the changed ratings are written behind by its thread.
+ * Every player starts at DEFAULT_RATING; after a game, a player gets k * (score - expected score),
+ * where the score is 1 for a win, 0.5 for a draw and 0 for a loss.
+ */
+public class RatingService {
+    public static final double DEFAULT_RATING = 1500;
+    public static final double DEFAULT_K = 32;
+    public static final int MAX_TOP = 100; // the most ratings a TOP can ask for.
+
+    private final double k;
+    private final RatingStore store;
+    private final Map<String, Rating> ratings;
+    private final RankTree ranking;
+    private final Set<Rating> dirty; // the ratings that changed since the store wrote them.
+
+    /**
+     * Constructs a service that keeps the ratings in memory only.
+     * @param k the largest change of a rating after one game.
+     */
+    public RatingService(double k) {
+        this.k = k;
+        this.store = null;
+        this.ratings = new HashMap<>();
+        this.ranking = new RankTree();
+        this.dirty = new LinkedHashSet<>();
+    }
+
+    /**
+     * Constructs a service that reads the ratings from a store and writes every change back to it.
+     * @param k the largest change of a rating after one game.
+     * @param store the store of the ratings.
+     * @throws IOException if the ratings cannot be read.
+     */
+    public RatingService(double k, RatingStore store) throws IOException {
+        this.k = k;
+        this.store = store;
+        this.ratings = new HashMap<>();
+        this.ranking = new RankTree();
+        this.dirty = new LinkedHashSet<>();
+        for (Rating rating : store.load()) {
+            ratings.put(rating.getUsername(), rating);
+            ranking.add(rating);
+        }
+        store.start(this::takeDirty, this::markDirty, this::size, this::copyAll);
+    }
+
+    /**
+     * Returns the rating of a player.
+     * @param username the username of the player.
+     * @return a copy of the rating, or null if the player has not played a rated game.
+     */
+    public synchronized Rating get(String username) {
+        Rating rating = ratings.get(username);
+        return rating == null ? null : rating.copy();
+    }
+
+    /**
+     * Returns the position of a player in the ranking.
+     * @param username the username of the player.
+     * @return 1 for the highest rating, 0 if the player has not played a rated game.
+     */
+    public synchronized int rank(String username) {
+        Rating rating = ratings.get(username);
+        return rating == null ? 0 : ranking.rank(rating) + 1;
+    }
+
+    /**
+     * Returns the amount of rated players.
+     * @return the amount of players.
+     */
+    public synchronized int size() {
+        return ranking.size();
+    }
+
+    /**
+     * Returns the players with the highest ratings.
+     * @param count the maximum amount of players, at most MAX_TOP.
+     * @return copies of the ratings, the highest first.
+     */
+    public synchronized List<Rating> top(int count) {
+        List<Rating> top = ranking.top(Math.max(0, Math.min(count, MAX_TOP)));
+        top.replaceAll(Rating::copy);
+        return top;
+    }
+
+    /**
+     * Updates the ratings of both players of a game that ended.
+     * @param first the username of the first player.
+     * @param second the username of the second player.
+     * @param winner 0 if the first player won, 1 if the second player won, -1 for a draw.
+     */
+    public synchronized void gameOver(String first, String second, int winner) {
+        if (first.equals(second)) {
+            return;
+        }
+        Rating a = take(first);
+        Rating b = take(second);
+        double expected = 1 / (1 + Math.pow(10, (b.getValue() - a.getValue()) / 400));
+        double score = winner == 0 ? 1 : winner == 1 ? 0 : 0.5;
+        double delta = k * (score - expected);
+        a.record(delta, score);
+        b.record(-delta, 1 - score);
+        ranking.add(a);
+        ranking.add(b);
+        if (store != null) {
+            dirty.add(a);
+            dirty.add(b);
+        }
+    }
+
+    /**
+     * Returns the rating of a player and removes it from the ranking, so it can change.
+     * A player without games gets a new rating.
+     * @param username the username of the player.
+     * @return the rating, which is not in the ranking.
+     */
+    private Rating take(String username) {
+        Rating rating = ratings.get(username);
+        if (rating == null) {
+            rating = new Rating(username, DEFAULT_RATING, 0, 0, 0);
+            ratings.put(username, rating);
+        } else {
+            ranking.remove(rating);
+        }
+        return rating;
+    }
+
+    /**
+     * Returns copies of the ratings that changed since the last call and marks them as written.
+     * Called by the thread of the store.
+     * @return the changed ratings.
+     */
+    private synchronized List<Rating> takeDirty() {
+        List<Rating> changed = new ArrayList<>(dirty.size());
+        for (Rating rating : dirty) {
+            changed.add(rating.copy());
+        }
+        dirty.clear();
+        return changed;
+    }
+
+    /**
+     * Marks ratings as dirty again because the store could not write them. The current rating of
+     * each username is marked, which is the same or newer than the copy that was not written.
+     * Called by the thread of the store.
+     * @param unwritten the copies that were not written.
+     */
+    private synchronized void markDirty(List<Rating> unwritten) {
+        for (Rating copy : unwritten) {
+            Rating rating = ratings.get(copy.getUsername());
+            if (rating != null) {
+                dirty.add(rating);
+            }
+        }
+    }
+
+    /**
+     * Returns copies of every rating. Called by the thread of the store.
+     * @return the ratings.
+     */
+    private synchronized List<Rating> copyAll() {
+        List<Rating> all = new ArrayList<>(ratings.size());
+        for (Rating rating : ratings.values()) {
+            all.add(rating.copy());
+        }
+        return all;
+    }
+
+    /**
+     * Writes the ratings that are not written yet and stops the store, if there is one.
+     */
+    public void close() {
+        if (store != null) {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package network.server.rating;
+
+import network.server.log.Log;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * The file of the ratings, written behind the games: a rating that changes is only marked as dirty,
+ * and a background thread appends the dirty ratings every few seconds in one write, so ending a game
+ * never waits for the disk. Every line is username~rating~wins~draws~losses and the last line of a
+ * username wins when the file is read. When the file has grown to more than four times the amount of
+ * players, it is rewritten with one line per player.
+ * The ratings of the last interval are lost if the server crashes.
+ */
+public class RatingStore implements Closeable {
+    public static final long DEFAULT_INTERVAL = 5; // seconds between two writes.
+    private static final String FILE = "ratings.txt";
+
+    private final Path file;
+    private final long interval;
+    private ScheduledExecutorService writer;
+    private Supplier<List<Rating>> dirty; // takes the dirty ratings of the service.
+    private Consumer<List<Rating>> unwritten; // marks ratings of the service as dirty again.
+    private IntSupplier players; // the amount of rated players of the service.
+    private Supplier<List<Rating>> all; // copies every rating of the service.
+    private long lines; // the lines in the file, only used by the writer thread.
+
+    /**
+     * Opens the store in a directory.
+     * @param directory the directory of the file, created if needed.
+     * @param interval the seconds between two writes.
+     * @throws IOException if the directory cannot be created.
+     */
+    public RatingStore(Path directory, long interval) throws IOException {
+        Files.createDirectories(directory);
+        this.file = directory.resolve(FILE);
+        this.interval = interval;
+    }
+
+    /**
+     * Reads the ratings in the file.
+     * @return the latest rating of every username.
+     * @throws IOException if the file cannot be read.
+     */
+    Collection<Rating> load() throws IOException {
+        Map<String, Rating> ratings = new LinkedHashMap<>();
+        if (!Files.exists(file)) {
+            return ratings.values();
+        }
+        lines = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String[] fields = line.split("~");
+            if (fields.length != 5) {
+                continue; // a line that was cut off by a crash.
+            }
+            try {
+                ratings.put(fields[0], new Rating(fields[0], Double.parseDouble(fields[1]),
+                        Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), Integer.parseInt(fields[4])));
+                lines++;
+            } catch (NumberFormatException e) {
+                // a line that was cut off by a crash.
+            }
+        }
+        return ratings.values();
+    }
+
+    /**
+     * Starts the writer thread.
+     * @param dirty takes the ratings that changed since the last call, as copies.
+     * @param unwritten marks the ratings with these usernames as dirty again, after a write failed.
+     * @param players returns the amount of rated players.
+     * @param all copies every rating, to rewrite the file.
+     */
+    synchronized void start(Supplier<List<Rating>> dirty, Consumer<List<Rating>> unwritten, IntSupplier players,
+                            Supplier<List<Rating>> all) {
+        this.dirty = dirty;
+        this.unwritten = unwritten;
+        this.players = players;
+        this.all = all;
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "rating-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::write, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Appends the dirty ratings to the file, and rewrites the file when it has grown too much.
+     * When the append fails, the ratings are marked as dirty again, so the next write tries them again.
+     */
+    private void write() {
+        List<Rating> changed = dirty.get();
+        if (changed.isEmpty()) {
+            return;
+        }
+        try {
+            append(changed);
+        } catch (IOException e) {
+            unwritten.accept(changed);
+            Log.warn("Could not write the ratings to {}: {}", file, e.getMessage());
+            return;
+        }
+        try {
+            if (lines > 4L * players.getAsInt() + 1024) {
+                compact(all.get());
+            }
+        } catch (IOException e) {
+            Log.warn("Could not write the ratings to {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Appends ratings to the file in one write.
+     * @param ratings the ratings.
+     * @throws IOException if the file cannot be written.
+     */
+    private void append(List<Rating> ratings) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            channel.write(StandardCharsets.UTF_8.encode(format(ratings)));
+            channel.force(false);
+        }
+        lines += ratings.size();
+    }
+
+    /**
+     * Rewrites the file with one line per player.
+     * @param ratings the rating of every player.
+     * @throws IOException if the file cannot be written.
+     */
+    private void compact(List<Rating> ratings) throws IOException {
+        Path temporary = file.resolveSibling(FILE + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            out.write(format(ratings));
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lines = ratings.size();
+    }
+
+    /**
+     * Formats ratings as lines of the file.
+     * @param ratings the ratings.
+     * @return the lines.
+     */
+    private static String format(List<Rating> ratings) {
+        StringBuilder text = new StringBuilder(ratings.size() * 32);
+        for (Rating rating : ratings) {
+            text.append(rating.getUsername()).append('~').append(rating.getValue()).append('~')
+                    .append(rating.getWins()).append('~').append(rating.getDraws()).append('~')
+                    .append(rating.getLosses()).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Writes the ratings that are still dirty and stops the writer thread.
+     */
+    @Override
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        write();
+        writer = null;
+    }
+}
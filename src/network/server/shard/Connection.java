@@ -0,0 +1,96 @@
+package network.server.shard;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * The connection of one client of the sharded server.
+ * A connection is owned by exactly one Shard at a time, and only the thread of that shard touches its fields.
+ * When a connection moves to another shard, it is handed over through the Mailboxes of the lobby,
+ * which makes the writes of the old shard visible to the new one.
+ */
+final class Connection {
+    private static final int BUFFER_SIZE = 1024;
+
+    final SocketChannel channel;
+    Shard shard; // The shard that owns the connection.
+    SelectionKey key; // The key of the channel in the selector of the shard, null while the connection moves.
+    ByteBuffer in; // Bytes that were read but not handled yet, in write mode.
+    ByteBuffer out; // Bytes that were not written yet, in write mode.
+    boolean hello;
+    boolean binary;
+    boolean loggingIn; // True while the lobby decides about the LOGIN.
+    boolean dirty; // True if the connection has bytes to write at the end of the loop.
+    boolean closed;
+    String username; // Null until the client is logged in.
+    ShardGame game; // The game the client is playing, null if none.
+
+    /**
+     * Constructs a connection.
+     * @param channel the channel of the client, in non-blocking mode.
+     * @param shard the shard that owns the connection.
+     */
+    Connection(SocketChannel channel, Shard shard) {
+        this.channel = channel;
+        this.shard = shard;
+        this.in = ByteBuffer.allocate(BUFFER_SIZE);
+        this.out = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * Adds bytes to the bytes that wait to be written.
+     * @param bytes the encoded message.
+     * @param limit the maximum amount of bytes that may wait.
+     * @return false if the client is too slow, so the bytes would exceed the limit.
+     */
+    boolean append(byte[] bytes, int limit) {
+        if (out.remaining() < bytes.length) {
+            int needed = out.position() + bytes.length;
+            if (needed > limit) {
+                return false;
+            }
+            ByteBuffer larger = ByteBuffer.allocate(Math.min(limit, Math.max(out.capacity() * 2, needed)));
+            out.flip();
+            larger.put(out);
+            out = larger;
+        }
+        out.put(bytes);
+        return true;
+    }
+
+    /**
+     * Writes as many of the waiting bytes as the channel takes.
+     * @return true if every byte is written.
+     * @throws IOException if the connection is broken.
+     */
+    boolean flush() throws IOException {
+        out.flip();
+        try {
+            channel.write(out);
+        } finally {
+            out.compact();
+        }
+        return out.position() == 0;
+    }
+
+    /**
+     * Makes room in the input buffer when a message does not fit in it yet.
+     * @param limit the maximum size of the buffer.
+     * @return false if the buffer is full and cannot grow anymore.
+     */
+    boolean growInput(int limit) {
+        if (in.hasRemaining()) {
+            return true;
+        }
+        if (in.capacity() >= limit) {
+            return false;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.min(limit, in.capacity() * 2));
+        in.flip();
+        larger.put(in);
+        in = larger;
+        return true;
+    }
+}
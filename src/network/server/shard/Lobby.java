@@ -0,0 +1,403 @@
+package network.server.shard;
+
+import network.protocol.Frame;
+import network.server.bot.BotType;
+import network.server.metrics.Counter;
+import network.server.metrics.MetricsRegistry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The lobby of the sharded server: the one thread that knows every client. It owns the usernames,
+ * the queue and the list of games, and places every new game on a shard.
+ * The shards send it tasks through one Mailbox each and it answers through the Mailbox of the shard,
+ * so the lobby and the shards never share a lock.
+ * A connection that moves between shards is "in transit" from the moment the lobby asks the old shard
+ * to release it until the new shard adopts it; the tasks for it are kept and sent after the adoption.
+ */
+public class Lobby implements Runnable {
+    private static final int INBOX_CAPACITY = 1 << 14;
+    private static final long IDLE_PARK = 100_000_000; // nanoseconds the lobby sleeps when there is nothing to do.
+
+    private final MetricsRegistry metrics;
+    private final Counter migrations;
+    private final Shard[] shards;
+    private final Mailbox[] inboxes; // one per shard, in the order of the shards.
+    private final Map<String, Connection> names; // the logged in clients, by username.
+    private final Map<Connection, String> usernames;
+    private final Map<Connection, Shard> owners; // the shard of every logged in client.
+    private final Map<Connection, List<Runnable>> inTransit; // tasks for connections that move to another shard.
+    private final Set<Connection> queue;
+    private final Set<Connection> playing;
+    private final Map<Long, String> games; // "~id~black~white" of the games that are being played, by id.
+    private long nextGameId;
+    private Frame list; // The cached LIST, null if a client logged in or out since it was built.
+    private String[] sortedNames; // The cached usernames for LISTPAGE, in the order of the LIST.
+    private long version; // Incremented every time a client logs in or out.
+    private volatile int loggedIn;
+    private volatile int queued;
+    private volatile int active;
+    private volatile boolean sleeping;
+    private volatile boolean stopped;
+    private volatile Thread thread;
+
+    /**
+     * Constructs a lobby.
+     * @param metrics the metrics of the server.
+     * @param shardCount the amount of shards of the server.
+     */
+    Lobby(MetricsRegistry metrics, int shardCount) {
+        this.metrics = metrics;
+        this.migrations = metrics.counter("shard.migrations");
+        this.shards = new Shard[shardCount];
+        this.inboxes = new Mailbox[shardCount];
+        this.names = new HashMap<>();
+        this.usernames = new HashMap<>();
+        this.owners = new HashMap<>();
+        this.inTransit = new HashMap<>();
+        this.queue = new LinkedHashSet<>();
+        this.playing = new HashSet<>();
+        this.games = new LinkedHashMap<>();
+    }
+
+    /**
+     * Returns the metrics of the server.
+     * @return the metrics registry.
+     */
+    MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Creates the Mailbox in which a shard sends its tasks to the lobby. Called once per shard, before the start.
+     * @param index the number of the shard.
+     * @return the mailbox of the shard.
+     */
+    Mailbox register(int index) {
+        inboxes[index] = new Mailbox(INBOX_CAPACITY, this::wakeup);
+        return inboxes[index];
+    }
+
+    /**
+     * Sets the shard with the given number. Called once per shard, before the start.
+     * @param shard the shard.
+     */
+    void setShard(Shard shard) {
+        shards[shard.getIndex()] = shard;
+    }
+
+    /**
+     * Returns the amount of logged in clients.
+     * @return the amount of clients.
+     */
+    public int getLoggedIn() {
+        return loggedIn;
+    }
+
+    /**
+     * Returns the amount of clients in the queue.
+     * @return the length of the queue.
+     */
+    public int getQueued() {
+        return queued;
+    }
+
+    /**
+     * Returns the amount of games that are being played.
+     * @return the amount of games.
+     */
+    public int getActive() {
+        return active;
+    }
+
+    /**
+     * Wakes up the thread of the lobby if it is parked.
+     */
+    private void wakeup() {
+        Thread t = thread;
+        if (sleeping && t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Stops the loop of the lobby.
+     */
+    void stop() {
+        stopped = true;
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * The loop of the lobby: runs the tasks of the shards in turn and parks when there are none.
+     */
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        while (!stopped) {
+            int ran = 0;
+            for (Mailbox inbox : inboxes) {
+                ran += inbox.drain();
+            }
+            boolean overflow = false;
+            for (Shard shard : shards) {
+                shard.flushInbox();
+            }
+            for (Shard shard : shards) {
+                overflow |= shard.hasInboxOverflow();
+            }
+            if (ran == 0) {
+                sleeping = true;
+                if (allEmpty()) {
+                    LockSupport.parkNanos(this, overflow ? 1_000_000 : IDLE_PARK);
+                }
+                sleeping = false;
+            }
+        }
+    }
+
+    /**
+     * Returns whether none of the shards has sent a task that is not run yet.
+     * @return true if every inbox of the lobby is empty.
+     */
+    private boolean allEmpty() {
+        for (Mailbox inbox : inboxes) {
+            if (!inbox.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sends a task to the shard that owns a connection, or keeps it until the connection arrived there.
+     * The owner of a connection in transit is already its new shard.
+     * @param conn the connection.
+     * @param task the task for its shard.
+     */
+    private void toOwner(Connection conn, Runnable task) {
+        List<Runnable> pending = inTransit.get(conn);
+        if (pending != null) {
+            pending.add(task);
+            return;
+        }
+        Shard owner = owners.get(conn);
+        if (owner != null) {
+            owner.post(task);
+        }
+    }
+
+    /**
+     * Sends a message to a logged in client.
+     * @param conn the connection of the client.
+     * @param frame the encoded message.
+     */
+    private void reply(Connection conn, Frame frame) {
+        Shard owner = owners.get(conn);
+        if (owner != null) {
+            toOwner(conn, () -> owner.deliver(conn, frame));
+        }
+    }
+
+    /**
+     * Logs in a client if the username is free and is not the name of a bot.
+     * @param conn the connection of the client.
+     * @param shard the shard of the connection.
+     * @param name the username.
+     */
+    void login(Connection conn, Shard shard, String name) {
+        boolean accepted = BotType.byUsername(name) == null && !names.containsKey(name)
+                && !usernames.containsKey(conn);
+        if (accepted) {
+            names.put(name, conn);
+            usernames.put(conn, name);
+            owners.put(conn, shard);
+            changed();
+        }
+        shard.post(() -> shard.loggedIn(conn, name, accepted));
+    }
+
+    /**
+     * Removes a client that disconnected.
+     * @param conn the connection of the client.
+     */
+    void disconnected(Connection conn) {
+        String name = usernames.remove(conn);
+        if (name == null) {
+            return;
+        }
+        names.remove(name);
+        owners.remove(conn);
+        queue.remove(conn);
+        playing.remove(conn);
+        queued = queue.size();
+        changed();
+    }
+
+    /**
+     * Marks the list of clients as changed.
+     */
+    private void changed() {
+        list = null;
+        sortedNames = null;
+        version++;
+        loggedIn = names.size();
+    }
+
+    /**
+     * Rebuilds the cached LIST if a client logged in or out since it was built.
+     */
+    private void refresh() {
+        if (list == null) {
+            sortedNames = names.keySet().toArray(new String[0]);
+            StringBuilder message = new StringBuilder("LIST");
+            for (String name : sortedNames) {
+                message.append('~').append(name);
+            }
+            list = Frame.of(message.toString());
+        }
+    }
+
+    /**
+     * Sends the LIST of the logged in clients to a client.
+     * @param conn the connection of the client.
+     */
+    void list(Connection conn) {
+        refresh();
+        reply(conn, list);
+    }
+
+    /**
+     * Sends a LISTPAGE~version~total~offset~name1~name2~... to a client.
+     * @param conn the connection of the client.
+     * @param offset the position of the first client of the page.
+     * @param limit the maximum amount of clients on the page.
+     */
+    void page(Connection conn, int offset, int limit) {
+        refresh();
+        int from = Math.min(Math.max(offset, 0), sortedNames.length);
+        int to = (int) Math.min((long) from + Math.max(limit, 0), sortedNames.length);
+        StringBuilder page = new StringBuilder("LISTPAGE~");
+        page.append(version).append("~").append(sortedNames.length).append("~").append(from);
+        for (int i = from; i < to; i++) {
+            page.append("~").append(sortedNames[i]);
+        }
+        reply(conn, Frame.of(page.toString()));
+    }
+
+    /**
+     * Sends the GAMES~id~black~white~... of the games that are being played to a client.
+     * @param conn the connection of the client.
+     */
+    void games(Connection conn) {
+        StringBuilder list = new StringBuilder("GAMES");
+        for (String game : games.values()) {
+            list.append(game);
+        }
+        reply(conn, Frame.of(list.toString()));
+    }
+
+    /**
+     * Adds a client to the queue, or removes it if it is already queued.
+     * When two clients are queued, they are matched.
+     * @param conn the connection of the client.
+     */
+    void queue(Connection conn) {
+        if (!usernames.containsKey(conn) || playing.contains(conn)) {
+            return;
+        }
+        if (!queue.remove(conn)) {
+            queue.add(conn);
+        }
+        if (queue.size() >= 2) {
+            Iterator<Connection> waiting = queue.iterator();
+            Connection black = waiting.next();
+            Connection white = waiting.next();
+            queue.remove(black);
+            queue.remove(white);
+            match(black, white);
+        }
+        queued = queue.size();
+    }
+
+    /**
+     * Places a game on the shard of the first player. If the second player is on another shard,
+     * that shard is asked to release it, and the game starts after the new shard adopted it.
+     * @param black the first player.
+     * @param white the second player.
+     */
+    private void match(Connection black, Connection white) {
+        long id = nextGameId++;
+        playing.add(black);
+        playing.add(white);
+        games.put(id, "~" + id + "~" + usernames.get(black) + "~" + usernames.get(white));
+        active = games.size();
+        Shard target = owners.get(black);
+        Shard from = owners.get(white);
+        if (from != target) {
+            migrations.increment();
+            inTransit.put(white, new ArrayList<>());
+            owners.put(white, target);
+            from.post(() -> from.release(white, target));
+        }
+        // the black player is never in transit: it is only moved when it is matched as the second player.
+        Runnable start = () -> target.startGame(id, black, white);
+        if (inTransit.containsKey(white)) {
+            inTransit.get(white).add(start);
+        } else {
+            target.post(start);
+        }
+    }
+
+    /**
+     * Called when a shard released a connection: gives it to its new shard, followed by the tasks
+     * that were kept for it.
+     * @param conn the connection.
+     * @param target the new shard of the connection.
+     */
+    void released(Connection conn, Shard target) {
+        List<Runnable> pending = inTransit.remove(conn);
+        target.post(() -> target.adopt(conn));
+        if (pending != null) {
+            for (Runnable task : pending) {
+                target.post(task);
+            }
+        }
+    }
+
+    /**
+     * Called when a game ended.
+     * @param id the id of the game.
+     * @param black the first player.
+     * @param white the second player.
+     */
+    void gameOver(long id, Connection black, Connection white) {
+        games.remove(id);
+        active = games.size();
+        playing.remove(black);
+        playing.remove(white);
+    }
+
+    /**
+     * Called when a game could not start because a player disconnected; the other player is queued again.
+     * @param id the id of the game.
+     * @param black the first player.
+     * @param white the second player.
+     */
+    void aborted(long id, Connection black, Connection white) {
+        gameOver(id, black, white);
+        queue(black);
+        queue(white);
+    }
+}
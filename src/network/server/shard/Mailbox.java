@@ -0,0 +1,102 @@
+package network.server.shard;
+
+import network.server.log.Log;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
+
+/**
+ * The tasks that one thread sends to another: an SpscQueue of Runnables with a wakeup of the consumer.
+ * Every pair of threads of the sharded server that talk to each other has its own Mailbox per direction,
+ * so there is always exactly one producer and one consumer.
+ * When the queue is full the producer keeps the tasks in an overflow list of its own, in order,
+ * and moves them to the queue with flush; the producer never blocks, so two threads that send
+ * to each other cannot deadlock.
+ */
+final class Mailbox {
+    private static final int DRAIN_BATCH = 1024; // tasks that are run before the consumer looks at other work.
+
+    private final SpscQueue<Runnable> queue;
+    private final ArrayDeque<Runnable> overflow; // only used by the producer.
+    private final Runnable wakeup;
+
+    /**
+     * Constructs a mailbox.
+     * @param capacity the capacity of the queue.
+     * @param wakeup wakes up the consumer if it is sleeping; called by the producer after every post.
+     */
+    Mailbox(int capacity, Runnable wakeup) {
+        this.queue = new SpscQueue<>(capacity);
+        this.overflow = new ArrayDeque<>();
+        this.wakeup = wakeup;
+    }
+
+    /**
+     * Sends a task to the consumer. Must only be called by the producer thread.
+     * @param task the task, which runs on the thread of the consumer.
+     */
+    void post(Runnable task) {
+        if (!overflow.isEmpty() || !queue.offer(task)) {
+            overflow.add(task);
+        }
+        // the consumer sets its sleeping flag and then checks the queue; the fence makes sure that
+        // either the consumer sees the task or the wakeup sees the flag.
+        VarHandle.fullFence();
+        wakeup.run();
+    }
+
+    /**
+     * Moves the tasks of the overflow list to the queue, as far as they fit. Must only be called by the producer.
+     */
+    void flush() {
+        if (overflow.isEmpty()) {
+            return;
+        }
+        while (!overflow.isEmpty() && queue.offer(overflow.peekFirst())) {
+            overflow.pollFirst();
+        }
+        VarHandle.fullFence();
+        wakeup.run();
+    }
+
+    /**
+     * Returns whether the producer still has tasks that did not fit in the queue.
+     * @return true if the overflow list is not empty.
+     */
+    boolean hasOverflow() {
+        return !overflow.isEmpty();
+    }
+
+    /**
+     * Runs the tasks in the queue, at most one batch. Must only be called by the consumer thread.
+     * @return the amount of tasks that were run.
+     */
+    int drain() {
+        int ran = 0;
+        Runnable task;
+        while (ran < DRAIN_BATCH && (task = queue.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Log.error("A task of the sharded server failed: {}", e);
+            }
+            ran++;
+        }
+        return ran;
+    }
+
+    /**
+     * Returns whether the queue is empty. Tasks in the overflow list of the producer are not counted.
+     * @return true if the consumer has nothing to run.
+     */
+    boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    /**
+     * Returns the amount of tasks that wait in the queue.
+     * @return the amount of tasks.
+     */
+    int size() {
+        return queue.size();
+    }
+}
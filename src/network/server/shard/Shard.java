@@ -0,0 +1,633 @@
+package network.server.shard;
+
+import game.Mark;
+import game.MoveResult;
+import game.OthelloGame;
+import game.Player;
+import network.protocol.BinaryCodec;
+import network.protocol.Command;
+import network.protocol.Frame;
+import network.protocol.Frames;
+import network.protocol.MalformedFrameException;
+import network.protocol.ProtocolCodec;
+import network.protocol.ProtocolReader;
+import network.server.journal.GameJournal;
+import network.server.log.Log;
+import network.server.metrics.Counter;
+import network.server.metrics.Histogram;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One event loop of the sharded server. A shard owns a set of connections and every game between them:
+ * it reads, parses and handles their messages, makes the moves and writes the replies on one thread,
+ * without any lock. Everything that needs all clients (LOGIN, LIST, GAMES and the queue) is sent to the
+ * Lobby as a task through an SPSC Mailbox, and the lobby answers the same way.
+ * When the lobby matches two clients of different shards, the second one moves to the shard of the first,
+ * so both players of a game are always on the same shard.
+ */
+public class Shard implements Runnable {
+    private static final int INBOX_CAPACITY = 1 << 14;
+    private static final int ACCEPT_CAPACITY = 1 << 12;
+    private static final int MAX_OUTBOUND = 1 << 20; // bytes that may wait for a slow client before it is dropped.
+
+    private final int index;
+    private final Lobby lobby;
+    private final Selector selector;
+    private final Mailbox inbox; // tasks of the lobby.
+    private final Mailbox toLobby; // tasks for the lobby.
+    private final SpscQueue<SocketChannel> accepted; // new connections of the acceptor thread.
+    private final List<Connection> dirty; // connections with bytes to write at the end of the loop.
+    private final Command command;
+    private final Counter commands;
+    private final Counter moves;
+    private final Counter illegalMoves;
+    private final Counter gamesStarted;
+    private final Counter gamesFinished;
+    private final Histogram moveLatency;
+    private volatile boolean sleeping; // True while the thread may block in select.
+    private volatile boolean stopped;
+    private volatile int connections;
+
+    /**
+     * Constructs a shard.
+     * @param index the number of the shard.
+     * @param lobby the lobby of the server.
+     * @throws IOException if the selector cannot be opened.
+     */
+    Shard(int index, Lobby lobby) throws IOException {
+        this.index = index;
+        this.lobby = lobby;
+        this.selector = Selector.open();
+        this.inbox = new Mailbox(INBOX_CAPACITY, this::wakeup);
+        this.toLobby = lobby.register(index);
+        this.accepted = new SpscQueue<>(ACCEPT_CAPACITY);
+        this.dirty = new ArrayList<>();
+        this.command = new Command();
+        this.commands = lobby.getMetrics().counter("commands");
+        this.moves = lobby.getMetrics().counter("moves");
+        this.illegalMoves = lobby.getMetrics().counter("moves.illegal");
+        this.gamesStarted = lobby.getMetrics().counter("games.started");
+        this.gamesFinished = lobby.getMetrics().counter("games.finished");
+        this.moveLatency = lobby.getMetrics().histogram("move.latency");
+    }
+
+    /**
+     * Returns the number of the shard.
+     * @return the index of the shard.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the amount of connections the shard owns.
+     * @return the amount of connections.
+     */
+    public int getConnections() {
+        return connections;
+    }
+
+    /**
+     * Returns the amount of tasks of the lobby that wait to be run.
+     * @return the size of the inbox.
+     */
+    public int getInboxSize() {
+        return inbox.size();
+    }
+
+    /**
+     * Sends a task to the shard. Must only be called by the thread of the lobby.
+     * @param task the task, which runs on the thread of the shard.
+     */
+    void post(Runnable task) {
+        inbox.post(task);
+    }
+
+    /**
+     * Moves the tasks for the shard that did not fit in its inbox. Must only be called by the thread of the lobby.
+     */
+    void flushInbox() {
+        inbox.flush();
+    }
+
+    /**
+     * Returns whether the lobby has tasks for the shard that did not fit in its inbox yet.
+     * Must only be called by the thread of the lobby.
+     * @return true if the lobby still has to flush tasks.
+     */
+    boolean hasInboxOverflow() {
+        return inbox.hasOverflow();
+    }
+
+    /**
+     * Gives a new connection to the shard. Must only be called by the acceptor thread.
+     * Waits while the shard has too many connections that it did not register yet.
+     * @param channel the channel of the connection.
+     */
+    void accept(SocketChannel channel) {
+        while (!accepted.offer(channel)) {
+            selector.wakeup();
+            Thread.onSpinWait();
+        }
+        VarHandle.fullFence(); // see Mailbox.post
+        wakeup();
+    }
+
+    /**
+     * Wakes up the thread of the shard if it is blocked in select.
+     */
+    private void wakeup() {
+        if (sleeping) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Stops the loop and closes every connection of the shard.
+     */
+    void stop() {
+        stopped = true;
+        selector.wakeup();
+    }
+
+    /**
+     * The loop of the shard: runs the tasks of the lobby, registers new connections, handles the
+     * ready channels, and writes what the clients got in this round with one write per client.
+     */
+    @Override
+    public void run() {
+        try {
+            while (!stopped) {
+                inbox.drain();
+                registerAccepted();
+                toLobby.flush();
+                flushDirty();
+                sleeping = true;
+                if (inbox.isEmpty() && accepted.isEmpty()) {
+                    selector.select(this::handle, toLobby.hasOverflow() ? 1 : 0);
+                } else {
+                    selector.selectNow(this::handle);
+                }
+                sleeping = false;
+            }
+        } catch (IOException e) {
+            Log.error("Shard {} stopped: {}", index, e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    closeQuietly((Connection) key.attachment());
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+
+            }
+        }
+    }
+
+    /**
+     * Registers the connections that the acceptor gave to the shard.
+     */
+    private void registerAccepted() {
+        SocketChannel channel;
+        while ((channel = accepted.poll()) != null) {
+            Connection conn = new Connection(channel, this);
+            try {
+                conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+                connections++;
+            } catch (ClosedChannelException e) {
+                conn.closed = true;
+            }
+        }
+    }
+
+    /**
+     * Handles a channel that is ready.
+     * @param key the key of the channel.
+     */
+    private void handle(SelectionKey key) {
+        Connection conn = (Connection) key.attachment();
+        if (key.isValid() && key.isWritable()) {
+            write(conn);
+        }
+        if (key.isValid() && key.isReadable()) {
+            read(conn);
+        }
+    }
+
+    /**
+     * Reads the bytes of a connection and handles every complete message.
+     * @param conn the connection.
+     */
+    private void read(Connection conn) {
+        int read;
+        try {
+            read = conn.channel.read(conn.in);
+        } catch (IOException e) {
+            close(conn);
+            return;
+        }
+        if (read < 0) {
+            close(conn);
+            return;
+        }
+        process(conn);
+    }
+
+    /**
+     * Handles the complete messages in the input buffer of a connection.
+     * @param conn the connection.
+     */
+    private void process(Connection conn) {
+        long received = System.nanoTime();
+        conn.in.flip();
+        try {
+            while (!conn.closed && conn.shard == this
+                    && (conn.binary ? BinaryCodec.next(conn.in, command) : ProtocolCodec.next(conn.in, command))) {
+                commands.increment();
+                handle(conn, command, received);
+            }
+        } catch (MalformedFrameException e) {
+            Log.info("Client with username {} sent a malformed frame.", conn.username);
+            close(conn);
+            return;
+        }
+        if (conn.closed) {
+            return;
+        }
+        conn.in.compact();
+        if (!conn.growInput(ProtocolReader.DEFAULT_MAX_LINE)) {
+            Log.info("Client with username {} sent a message that is too long.", conn.username);
+            close(conn);
+        }
+    }
+
+    /**
+     * Handles one message of a client, like the ClientHandler of the GameServer does.
+     * @param conn the connection of the client.
+     * @param command the parsed message.
+     * @param received the System.nanoTime at which the message was read.
+     */
+    private void handle(Connection conn, Command command, long received) {
+        switch (command.getOpcode()) {
+            case HELLO:
+                if (conn.hello) {
+                    send(conn, "ERROR~Hello handshake was already done.");
+                } else if (command.length() == 3 && command.argumentEquals(2, BinaryCodec.HELLO_OPTION)) {
+                    // the reply is still text, everything after it is binary.
+                    send(conn, "HELLO~Server is ready.~" + BinaryCodec.HELLO_OPTION);
+                    conn.binary = true;
+                    conn.hello = true;
+                } else if (command.length() != 2) {
+                    send(conn, "ERROR~Wrong arguments for HELLO command.");
+                } else {
+                    send(conn, Frames.HELLO);
+                    conn.hello = true;
+                }
+                break;
+            case LOGIN:
+                if (command.length() != 2) {
+                    send(conn, "ERROR~Wrong arguments for LOGIN command.");
+                } else if (conn.username != null || conn.loggingIn) {
+                    send(conn, "ERROR~Client already logged in.");
+                } else if (!conn.hello) {
+                    send(conn, "ERROR~Hello handshake not completed.");
+                } else {
+                    String name = command.argument(1);
+                    if (name.getBytes(StandardCharsets.UTF_8).length > GameJournal.MAX_NAME_BYTES) {
+                        send(conn, "ERROR~Username is longer than " + GameJournal.MAX_NAME_BYTES + " bytes.");
+                    } else {
+                        conn.loggingIn = true;
+                        toLobby.post(() -> lobby.login(conn, this, name));
+                    }
+                }
+                break;
+            case LIST:
+                if (conn.username == null) {
+                    send(conn, Frames.ERROR_NOT_LOGGED_IN);
+                } else if (command.length() == 1) {
+                    toLobby.post(() -> lobby.list(conn));
+                } else if (command.length() == 3 && command.isInt(1) && command.isInt(2)) {
+                    int offset = command.intArgument(1);
+                    int limit = command.intArgument(2);
+                    toLobby.post(() -> lobby.page(conn, offset, limit));
+                } else if (command.length() == 2) {
+                    send(conn, "ERROR~LIST subscriptions are not supported by a sharded server.");
+                } else {
+                    send(conn, "ERROR~Wrong arguments for LIST command.");
+                }
+                break;
+            case QUEUE:
+                if (command.length() != 1) {
+                    send(conn, "ERROR~Wrong arguments for QUEUE command.");
+                } else if (conn.username == null) {
+                    send(conn, Frames.ERROR_NOT_LOGGED_IN);
+                } else if (conn.game == null) {
+                    toLobby.post(() -> lobby.queue(conn));
+                }
+                break;
+            case MOVE:
+                if (command.length() != 2) {
+                    send(conn, Frames.ERROR_MOVE_ARGUMENTS);
+                } else if (conn.game == null) {
+                    send(conn, Frames.ERROR_NOT_IN_GAME);
+                } else if (!command.isInt(1)) {
+                    send(conn, Frames.ERROR_MOVE_NOT_INTEGER);
+                } else {
+                    makeMove(conn, command.intArgument(1));
+                    moveLatency.record(System.nanoTime() - received);
+                }
+                break;
+            case GAMES:
+                if (command.length() != 1) {
+                    send(conn, "ERROR~Wrong arguments for GAMES command.");
+                } else if (conn.username == null) {
+                    send(conn, Frames.ERROR_NOT_LOGGED_IN);
+                } else {
+                    toLobby.post(() -> lobby.games(conn));
+                }
+                break;
+            case PING:
+                send(conn, Frames.PONG);
+                break;
+            case PONG:
+                break;
+            case CHALLENGE:
+            case WATCH:
+            case UNWATCH:
+            case RATING:
+            case TOP:
+                send(conn, "ERROR~" + command.getOpcode() + " is not supported by a sharded server.");
+                break;
+            default:
+                send(conn, Frames.ERROR_WRONG_COMMAND);
+        }
+    }
+
+    /**
+     * Called by the lobby with the outcome of a LOGIN.
+     * @param conn the connection that sent the LOGIN.
+     * @param name the username.
+     * @param accepted true if the username was free.
+     */
+    void loggedIn(Connection conn, String name, boolean accepted) {
+        conn.loggingIn = false;
+        if (accepted) {
+            conn.username = name;
+            send(conn, Frames.LOGIN);
+        } else {
+            send(conn, Frames.ALREADYLOGGEDIN);
+        }
+    }
+
+    /**
+     * Sends a message of the lobby to a connection of the shard.
+     * @param conn the connection.
+     * @param frame the encoded message.
+     */
+    void deliver(Connection conn, Frame frame) {
+        if (conn.shard == this) {
+            send(conn, frame);
+        }
+    }
+
+    /**
+     * Gives a connection to another shard, because its client is matched with a client of that shard.
+     * The connection is removed from the selector of this shard; bytes that were read but not handled yet
+     * stay in its buffer and are handled by the new shard.
+     * @param conn the connection.
+     * @param target the shard that gets the connection.
+     */
+    void release(Connection conn, Shard target) {
+        if (!conn.closed) {
+            if (conn.dirty) {
+                dirty.remove(conn);
+                conn.dirty = false;
+                write(conn);
+            }
+            if (conn.key != null) {
+                conn.key.cancel();
+                conn.key = null;
+            }
+            connections--;
+        }
+        conn.shard = target;
+        toLobby.post(() -> lobby.released(conn, target));
+    }
+
+    /**
+     * Takes over a connection of another shard.
+     * @param conn the connection.
+     */
+    void adopt(Connection conn) {
+        if (conn.closed) {
+            return;
+        }
+        int ops = conn.out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        try {
+            try {
+                conn.key = conn.channel.register(selector, ops, conn);
+            } catch (CancelledKeyException e) {
+                // the connection left this shard before and the selector still holds its cancelled key;
+                // a select removes it. Ready channels are reported again by the next select.
+                selector.selectNow(key -> { });
+                conn.key = conn.channel.register(selector, ops, conn);
+            }
+            connections++;
+        } catch (IOException e) {
+            closeQuietly(conn);
+            toLobby.post(() -> lobby.disconnected(conn));
+            return;
+        }
+        if (conn.in.position() > 0) {
+            process(conn);
+        }
+    }
+
+    /**
+     * Starts a game between two clients of the shard. If one of them disconnected in the meantime,
+     * the game is given back to the lobby, which queues the other client again.
+     * @param id the id of the game.
+     * @param black the connection of the first player.
+     * @param white the connection of the second player.
+     */
+    void startGame(long id, Connection black, Connection white) {
+        if (black.closed || white.closed || black.shard != this || white.shard != this
+                || black.game != null || white.game != null) {
+            toLobby.post(() -> lobby.aborted(id, black, white));
+            return;
+        }
+        Player player1 = new Player(black.username, Mark.BLACK);
+        Player player2 = new Player(white.username, Mark.WHITE);
+        OthelloGame othello = new OthelloGame(player1, player2);
+        ShardGame game = new ShardGame(id, othello, black, white);
+        black.game = game;
+        white.game = game;
+        gamesStarted.increment();
+        Frame newGame = Frames.newGame(black.username, white.username,
+                othello.getBoard().getBits(Mark.BLACK), othello.getBoard().getBits(Mark.WHITE));
+        send(black, newGame);
+        send(white, newGame);
+    }
+
+    /**
+     * Handles a move of a client, like GameServer.makeMove. The game and both players are owned by this shard.
+     * @param conn the connection that sent the move.
+     * @param move the move.
+     */
+    private void makeMove(Connection conn, int move) {
+        ShardGame game = conn.game;
+        if (!game.game.getCurrent().getUsername().equals(conn.username)) {
+            send(conn, Frames.ERROR_NOT_YOUR_TURN);
+            return;
+        }
+        MoveResult result = game.game.applyMove(move);
+        if (!result.isLegal()) {
+            illegalMoves.increment();
+            send(conn, Frames.ERROR_INVALID_MOVE);
+            return;
+        }
+        moves.increment();
+        Frame frame = game.binary ? Frames.move(move, result.getLegalMoves()) : Frames.move(move);
+        send(game.players[0], frame);
+        send(game.players[1], frame);
+        if (result.isGameOver()) {
+            Frame gameOver = result.isDraw() ? Frames.GAMEOVER_DRAW
+                    : Frame.of("GAMEOVER~VICTORY~" + result.getWinner().getUsername());
+            endGame(game, gameOver);
+        }
+    }
+
+    /**
+     * Ends a game: sends the GAMEOVER to the players that are still connected and tells the lobby.
+     * @param game the game.
+     * @param gameOver the encoded GAMEOVER.
+     */
+    private void endGame(ShardGame game, Frame gameOver) {
+        Connection black = game.players[0];
+        Connection white = game.players[1];
+        black.game = null;
+        white.game = null;
+        send(black, gameOver);
+        send(white, gameOver);
+        gamesFinished.increment();
+        toLobby.post(() -> lobby.gameOver(game.id, black, white));
+    }
+
+    /**
+     * Sends a text message to a connection, in the protocol of the connection.
+     * @param conn the connection.
+     * @param message the message in the text format.
+     */
+    private void send(Connection conn, String message) {
+        send(conn, conn.binary ? BinaryCodec.encode(message) : Frames.encode(message));
+    }
+
+    /**
+     * Sends a pre-encoded message to a connection, in the protocol of the connection.
+     * @param conn the connection.
+     * @param frame the message.
+     */
+    private void send(Connection conn, Frame frame) {
+        send(conn, frame.bytes(conn.binary));
+    }
+
+    /**
+     * Adds bytes to what a connection gets at the end of this round of the loop.
+     * A client that lets more than MAX_OUTBOUND bytes wait is disconnected.
+     * @param conn the connection.
+     * @param bytes the encoded message.
+     */
+    private void send(Connection conn, byte[] bytes) {
+        if (conn.closed) {
+            return;
+        }
+        if (!conn.append(bytes, MAX_OUTBOUND)) {
+            Log.info("Client with username {} is too slow and is disconnected.", conn.username);
+            close(conn);
+            return;
+        }
+        if (!conn.dirty && conn.key != null && (conn.key.interestOps() & SelectionKey.OP_WRITE) == 0) {
+            conn.dirty = true;
+            dirty.add(conn);
+        }
+    }
+
+    /**
+     * Writes the bytes of the connections that got messages in this round.
+     */
+    private void flushDirty() {
+        for (int i = 0; i < dirty.size(); i++) {
+            Connection conn = dirty.get(i);
+            conn.dirty = false;
+            write(conn);
+        }
+        dirty.clear();
+    }
+
+    /**
+     * Writes the waiting bytes of a connection. What does not fit in the socket is written
+     * when the selector reports that the channel is writable.
+     * @param conn the connection.
+     */
+    private void write(Connection conn) {
+        if (conn.closed || conn.key == null) {
+            return;
+        }
+        try {
+            if (conn.flush()) {
+                conn.key.interestOps(SelectionKey.OP_READ);
+            } else {
+                conn.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        } catch (IOException e) {
+            close(conn);
+        }
+    }
+
+    /**
+     * Closes a connection. If its client was playing, the opponent wins with GAMEOVER~DISCONNECT.
+     * The lobby is told, so the username is free again.
+     * @param conn the connection.
+     */
+    private void close(Connection conn) {
+        if (conn.closed) {
+            return;
+        }
+        closeQuietly(conn);
+        connections--;
+        ShardGame game = conn.game;
+        if (game != null) {
+            endGame(game, Frame.of("GAMEOVER~DISCONNECT~" + game.opponent(conn).username));
+        }
+        if (conn.username != null || conn.loggingIn) {
+            toLobby.post(() -> lobby.disconnected(conn));
+        }
+    }
+
+    /**
+     * Closes the channel of a connection.
+     * @param conn the connection.
+     */
+    private static void closeQuietly(Connection conn) {
+        conn.closed = true;
+        if (conn.key != null) {
+            conn.key.cancel();
+        }
+        try {
+            conn.channel.close();
+        } catch (IOException ignored) {
+
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package network.server.shard;
+
+import game.OthelloGame;
+
+/**
+ * A game of the sharded server. Both players are connections of the same shard, and only the thread
+ * of that shard touches the game, so it needs no lock.
+ */
+final class ShardGame {
+    final long id;
+    final OthelloGame game;
+    final Connection[] players; // black, white
+    final boolean binary; // true if one of the players uses the binary protocol, so MOVEs carry the legal moves.
+
+    /**
+     * Constructs a game.
+     * @param id the id of the game, given by the lobby.
+     * @param game the game itself.
+     * @param black the connection of the first player.
+     * @param white the connection of the second player.
+     */
+    ShardGame(long id, OthelloGame game, Connection black, Connection white) {
+        this.id = id;
+        this.game = game;
+        this.players = new Connection[] {black, white};
+        this.binary = black.binary || white.binary;
+    }
+
+    /**
+     * Returns the opponent of a player of the game.
+     * @param player the connection of one of the players.
+     * @return the connection of the other player.
+     */
+    Connection opponent(Connection player) {
+        return players[0] == player ? players[1] : players[0];
+    }
+}
@@ -0,0 +1,148 @@
+package network.server.shard;
+
+import network.server.Server;
+import network.server.log.Log;
+import network.server.metrics.MetricsRegistry;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A server for the Othello game that runs on a fixed amount of event loops instead of a thread per client.
+ * Every Shard owns a part of the connections and the games between them; the Lobby owns the usernames,
+ * the queue and the list of games. They only talk through SPSC Mailboxes, so a MOVE is handled without
+ * any lock or any other thread. New connections are spread over the shards by the acceptor thread.
+ * It speaks the same protocol as the GameServer, without bots, spectators, LIST subscriptions,
+ * clocks, the journal and the archive.
+ */
+public class ShardedServer implements Server, Runnable {
+    private final int port;
+    private final MetricsRegistry metrics;
+    private final Lobby lobby;
+    private final Shard[] shards;
+    private final Thread[] threads; // the threads of the shards, followed by the thread of the lobby.
+    private ServerSocketChannel ss;
+    private Thread acceptor;
+
+    /**
+     * Constructs a sharded server.
+     * @param port the port where the server will start.
+     * @param shardCount the amount of event loops, for example one per core.
+     * @throws IOException if a selector cannot be opened.
+     */
+    public ShardedServer(int port, int shardCount) throws IOException {
+        this.port = port;
+        this.metrics = new MetricsRegistry();
+        int count = Math.max(1, shardCount);
+        this.lobby = new Lobby(metrics, count);
+        this.shards = new Shard[count];
+        this.threads = new Thread[count + 1];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(i, lobby);
+            lobby.setShard(shards[i]);
+        }
+        registerGauges();
+    }
+
+    /**
+     * Returns the metrics of the server.
+     * @return the metrics registry.
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the amount of shards.
+     * @return the amount of event loops.
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    @Override
+    public void start() {
+        try {
+            ss = ServerSocketChannel.open();
+            ss.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            Log.error("Could not start the server at port: {}. The port is probably already in use.", port);
+            System.exit(-1);
+        }
+        for (int i = 0; i < shards.length; i++) {
+            threads[i] = new Thread(shards[i], "shard-" + i);
+        }
+        threads[shards.length] = new Thread(lobby, "lobby");
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        acceptor = new Thread(this, "acceptor");
+        acceptor.start();
+    }
+
+    @Override
+    public void stop() {
+        try {
+            ss.close();
+        } catch (IOException e) {
+            Log.warn("Couldn't close the ServerSocket!!!");
+        }
+        metrics.stopDump();
+        for (Shard shard : shards) {
+            shard.stop();
+        }
+        lobby.stop();
+        try {
+            acceptor.join();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Log.warn(e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Registers the gauges of the server. They read volatile counts of the shards and the lobby, so they take no lock.
+     */
+    private void registerGauges() {
+        metrics.gauge("connections", () -> {
+            long total = 0;
+            for (Shard shard : shards) {
+                total += shard.getConnections();
+            }
+            return total;
+        });
+        metrics.gauge("logged.in", lobby::getLoggedIn);
+        metrics.gauge("queue.length", lobby::getQueued);
+        metrics.gauge("games.active", lobby::getActive);
+        metrics.gauge("log.dropped", Log::getDropped);
+        for (Shard shard : shards) {
+            metrics.gauge("shard." + shard.getIndex() + ".connections", shard::getConnections);
+            metrics.gauge("shard." + shard.getIndex() + ".inbox", shard::getInboxSize);
+        }
+    }
+
+    /**
+     * The run method of the acceptor thread: accepts new connections and gives them to the shards in turn.
+     */
+    @Override
+    public void run() {
+        int next = 0;
+        while (true) {
+            try {
+                SocketChannel channel = ss.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                shards[next].accept(channel);
+                next = (next + 1) % shards.length;
+            } catch (IOException e) {
+                if (!ss.isOpen()) {
+                    return;
+                }
+            }
+        }
+    }
+}
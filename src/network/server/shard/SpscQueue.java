@@ -0,0 +1,84 @@
+package network.server.shard;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded queue for exactly one producer thread and one consumer thread, without locks.
+ * The producer only writes the tail and the consumer only writes the head, so offer and poll
+ * are a few plain array accesses and one ordered store each. Each side caches the last index
+ * it read of the other side and only reads the shared index again when the cache says the
+ * queue is full (or empty), so the two threads rarely touch the same cache line.
+ * @param <E> the type of the elements.
+ */
+public final class SpscQueue<E> {
+    private final Object[] buffer;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // next element to poll, written by the consumer.
+    private final AtomicLong tail = new AtomicLong(); // next free slot, written by the producer.
+    private long cachedHead; // the head as last seen by the producer.
+    private long cachedTail; // the tail as last seen by the consumer.
+
+    /**
+     * Constructs a queue.
+     * @param capacity the maximum amount of elements, rounded up to a power of two.
+     */
+    public SpscQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.buffer = new Object[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adds an element. Must only be called by the producer thread.
+     * @param element the element, not null.
+     * @return false if the queue is full.
+     */
+    public boolean offer(E element) {
+        long t = tail.get();
+        if (t - cachedHead >= buffer.length) {
+            cachedHead = head.get();
+            if (t - cachedHead >= buffer.length) {
+                return false;
+            }
+        }
+        buffer[(int) t & mask] = element;
+        tail.lazySet(t + 1); // publishes the element to the consumer.
+        return true;
+    }
+
+    /**
+     * Removes the oldest element. Must only be called by the consumer thread.
+     * @return the element, null if the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long h = head.get();
+        if (h >= cachedTail) {
+            cachedTail = tail.get();
+            if (h >= cachedTail) {
+                return null;
+            }
+        }
+        int index = (int) h & mask;
+        E element = (E) buffer[index];
+        buffer[index] = null;
+        head.lazySet(h + 1); // gives the slot back to the producer.
+        return element;
+    }
+
+    /**
+     * Returns whether the queue is empty. Can be called by both threads.
+     * @return true if there is no element to poll.
+     */
+    public boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+
+    /**
+     * Returns the amount of elements in the queue. The value is only an estimate while the threads run.
+     * @return the amount of elements.
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+}
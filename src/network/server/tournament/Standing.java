@@ -0,0 +1,151 @@
+package network.server.tournament;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The score of one player of a tournament. Points are counted in halves, so a draw is 1 and a win is 2.
+ */
+public class Standing {
+    private final String username;
+    private final List<Standing> opponents; // every opponent of a played game, once per game.
+    private int halfPoints;
+    private int wins;
+    private int draws;
+    private int losses;
+    private int blacks; // the games in which the player played black.
+    private boolean bye;
+    private boolean withdrawn;
+
+    /**
+     * Constructs the standing of a player without games.
+     * @param username the username of the player.
+     */
+    Standing(String username) {
+        this.username = username;
+        this.opponents = new ArrayList<>();
+    }
+
+    /**
+     * Returns the username of the player.
+     * @return the username.
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns the points of the player: 1 for a win or a bye and 0.5 for a draw.
+     * @return the points times two.
+     */
+    public int getHalfPoints() {
+        return halfPoints;
+    }
+
+    /**
+     * Returns the sum of the points of the opponents of the player, the usual tie-break.
+     * @return the Buchholz score times two.
+     */
+    public int getBuchholz() {
+        int sum = 0;
+        for (Standing opponent : opponents) {
+            sum += opponent.halfPoints;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the amount of games the player won, including forfeits.
+     * @return the amount of wins.
+     */
+    public int getWins() {
+        return wins;
+    }
+
+    /**
+     * Returns the amount of games that ended in a draw.
+     * @return the amount of draws.
+     */
+    public int getDraws() {
+        return draws;
+    }
+
+    /**
+     * Returns the amount of games the player lost, including forfeits.
+     * @return the amount of losses.
+     */
+    public int getLosses() {
+        return losses;
+    }
+
+    /**
+     * Returns whether the player left the tournament; its remaining games are lost by forfeit.
+     * @return true if the player withdrew.
+     */
+    public boolean isWithdrawn() {
+        return withdrawn;
+    }
+
+    /**
+     * Marks the player as withdrawn.
+     */
+    void withdraw() {
+        withdrawn = true;
+    }
+
+    /**
+     * Returns the amount of games the player played black.
+     * @return the amount of games with black.
+     */
+    int getBlacks() {
+        return blacks;
+    }
+
+    /**
+     * Returns whether the player got a bye in a Swiss tournament.
+     * @return true after a bye.
+     */
+    boolean hadBye() {
+        return bye;
+    }
+
+    /**
+     * Returns whether the player played a game against another player.
+     * @param other the other player.
+     * @return true if they played each other.
+     */
+    boolean played(Standing other) {
+        return opponents.contains(other);
+    }
+
+    /**
+     * Adds the result of a game.
+     * @param opponent the opponent, null for a game that was not played.
+     * @param black whether the player played black.
+     * @param score 2 for a win, 1 for a draw and 0 for a loss.
+     */
+    void record(Standing opponent, boolean black, int score) {
+        if (opponent != null) {
+            opponents.add(opponent);
+        }
+        if (black) {
+            blacks++;
+        }
+        halfPoints += score;
+        if (score == 2) {
+            wins++;
+        } else if (score == 1) {
+            draws++;
+        } else {
+            losses++;
+        }
+    }
+
+    /**
+     * Gives the player a bye: a point without a game, in a round with an odd amount of players.
+     */
+    void recordBye() {
+        bye = true;
+        halfPoints += 2;
+    }
+}
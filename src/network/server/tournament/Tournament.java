@@ -0,0 +1,454 @@
+package network.server.tournament;
+
+import game.Game;
+import network.server.ClientHandler;
+import network.server.GameResult;
+import network.server.GameServer;
+import network.server.log.Log;
+import network.server.metrics.Counter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A tournament between logged in clients of a GameServer. The games are started through the same path
+ * as every other game (GameServer.startMatch), at most maxParallel at the same time, and a new game
+ * is started as soon as a game ends and both of its players are free.
+ * In a round robin every pairing is known from the start, so the games are not held back by rounds:
+ * a player starts its next game as soon as its opponent is free. In a Swiss tournament the next round is
+ * paired as soon as the last game of the previous round ended.
+ * A participant that logs out withdraws: its remaining games are lost by forfeit.
+ * While the tournament runs, QUEUE is ignored for its participants.
+ * All methods except the writer of the standings are called with the lock of the server.
+ */
+public class Tournament {
+    private static final int PAIRING_STEPS = 100_000; // the most pairings the backtracking of a Swiss round tries.
+
+    /**
+     * A game of the tournament that still has to be played or is being played.
+     */
+    private static final class Pairing {
+        private final Standing black;
+        private final Standing white;
+
+        /**
+         * Constructs a pairing.
+         * @param black the player with black, who starts.
+         * @param white the player with white.
+         */
+        Pairing(Standing black, Standing white) {
+            this.black = black;
+            this.white = white;
+        }
+    }
+
+    private final GameServer server;
+    private final TournamentFormat format;
+    private final Map<String, Standing> standings; // by username, in the order of registration.
+    private final int maxParallel;
+    private final int rounds; // the rounds of a Swiss tournament.
+    private final int totalGames;
+    private final Path file; // the file of the standings, null if they are not written.
+    private final List<Pairing> pending; // the games that can be started, in order.
+    private final Map<Game, Pairing> running;
+    private final Set<Standing> busy; // the players of the running games.
+    private final Counter games;
+    private final ExecutorService writer;
+    private final AtomicBoolean writeQueued;
+    private int round;
+    private int played;
+    private boolean finished;
+
+    /**
+     * Constructs a tournament.
+     * @param server the server on which the games are played.
+     * @param format the format of the tournament.
+     * @param players the usernames of the players, at least two and each once.
+     * @param maxParallel the maximum amount of games that are played at the same time.
+     * @param rounds the amount of rounds of a Swiss tournament, 0 for the default (log2 of the amount of players).
+     * @param file the file to which the standings are written after every game, null to not write them.
+     * @throws IllegalArgumentException if there are fewer than two players or a player appears twice.
+     */
+    public Tournament(GameServer server, TournamentFormat format, List<String> players, int maxParallel,
+                      int rounds, Path file) {
+        this.standings = new LinkedHashMap<>();
+        for (String player : players) {
+            if (standings.put(player, new Standing(player)) != null) {
+                throw new IllegalArgumentException(player + " is registered twice.");
+            }
+        }
+        if (standings.size() < 2) {
+            throw new IllegalArgumentException("A tournament needs at least two players.");
+        }
+        int n = standings.size();
+        this.server = server;
+        this.format = format;
+        this.maxParallel = Math.max(1, maxParallel);
+        this.rounds = rounds > 0 ? Math.min(rounds, n - 1)
+                : Math.max(1, 32 - Integer.numberOfLeadingZeros(n - 1));
+        this.file = file;
+        this.pending = new LinkedList<>();
+        this.running = new HashMap<>();
+        this.busy = new HashSet<>();
+        this.games = server.getMetrics().counter("tournament.games");
+        this.writeQueued = new AtomicBoolean();
+        this.writer = file == null ? null : Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "tournament-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        switch (format) {
+            case ROUND_ROBIN:
+                this.totalGames = n * (n - 1) / 2;
+                break;
+            case DOUBLE_ROUND_ROBIN:
+                this.totalGames = n * (n - 1);
+                break;
+            default:
+                this.totalGames = this.rounds * (n / 2);
+        }
+    }
+
+    /**
+     * Pairs the games and starts as many of them as allowed. Called by the server with its lock.
+     */
+    public void start() {
+        Log.info("Starting a {} tournament with {} players, {} games.", format.describe(), standings.size(), totalGames);
+        if (format == TournamentFormat.SWISS) {
+            pairSwissRound();
+        } else {
+            pairRoundRobin();
+        }
+        schedule();
+        changed();
+    }
+
+    /**
+     * Returns whether a client takes part in the tournament and the tournament is still running.
+     * @param username the username of the client.
+     * @return true if the client plays in the tournament.
+     */
+    public boolean isPlaying(String username) {
+        Standing standing = standings.get(username);
+        return !finished && standing != null && !standing.isWithdrawn();
+    }
+
+    /**
+     * Returns whether every game of the tournament is played or the tournament is stopped.
+     * @return true if the tournament is over.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Stops the tournament: the running games are played to the end, but no new games are started.
+     */
+    public void stop() {
+        if (finished) {
+            return;
+        }
+        pending.clear();
+        if (format == TournamentFormat.SWISS) {
+            round = rounds;
+        }
+        if (running.isEmpty()) {
+            finish();
+        }
+    }
+
+    /**
+     * Records the result of a game that ended and starts the games that can start now.
+     * Called by the server for every game that ends, with its lock; a game outside the tournament
+     * matters as well when one of its players is a participant, who is free now.
+     * @param game the game.
+     * @param result the result of the game.
+     */
+    public void gameOver(Game game, GameResult result) {
+        Pairing pairing = running.remove(game);
+        if (pairing == null) {
+            if (isPlaying(game.getPlayers()[0].getUsername()) || isPlaying(game.getPlayers()[1].getUsername())) {
+                schedule();
+            }
+            return;
+        }
+        busy.remove(pairing.black);
+        busy.remove(pairing.white);
+        int black = result.winner() == 0 ? 2 : result.winner() == 1 ? 0 : 1;
+        pairing.black.record(pairing.white, true, black);
+        pairing.white.record(pairing.black, false, 2 - black);
+        played++;
+        games.increment();
+        schedule();
+        changed();
+    }
+
+    /**
+     * Pairs every game of a (double) round robin with the circle method: in every round the first player
+     * stays in place and the others rotate, so every pair meets once per cycle. The colors alternate.
+     */
+    private void pairRoundRobin() {
+        List<Standing> circle = new ArrayList<>(standings.values());
+        if (circle.size() % 2 == 1) {
+            circle.add(null); // the player that is paired with null sits out the round.
+        }
+        int n = circle.size();
+        int cycles = format == TournamentFormat.DOUBLE_ROUND_ROBIN ? 2 : 1;
+        List<Pairing> first = new ArrayList<>();
+        for (int r = 0; r < n - 1; r++) {
+            for (int i = 0; i < n / 2; i++) {
+                Standing a = circle.get(i);
+                Standing b = circle.get(n - 1 - i);
+                if (a != null && b != null) {
+                    first.add((r + i) % 2 == 0 ? new Pairing(a, b) : new Pairing(b, a));
+                }
+            }
+            circle.add(1, circle.remove(n - 1));
+        }
+        pending.addAll(first);
+        if (cycles == 2) {
+            for (Pairing pairing : first) {
+                pending.add(new Pairing(pairing.white, pairing.black));
+            }
+        }
+    }
+
+    /**
+     * Pairs the next round of a Swiss tournament: the players are sorted by points, and every player is
+     * paired with the highest ranked player it did not play yet. When that leaves players that all met
+     * before, the earlier pairs are tried with their next candidates, so no pairing is repeated while that
+     * is possible. Only when no round without a repeat exists (or it is not found in PAIRING_STEPS tries)
+     * is every player paired with the highest ranked player left, and the repeat is logged.
+     * With an odd amount of players, the lowest ranked player without a bye gets a bye.
+     * The player that played black less often gets black.
+     */
+    private void pairSwissRound() {
+        round++;
+        List<Standing> players = new ArrayList<>();
+        for (Standing standing : standings.values()) {
+            if (!standing.isWithdrawn()) {
+                players.add(standing);
+            }
+        }
+        players.sort(ranking());
+        if (players.size() % 2 == 1) {
+            for (int i = players.size() - 1; i >= 0; i--) {
+                if (!players.get(i).hadBye() || i == 0) {
+                    players.remove(i).recordBye();
+                    break;
+                }
+            }
+        }
+        List<Standing> paired = new ArrayList<>();
+        if (!pairUnplayed(new ArrayList<>(players), paired, new int[1])) {
+            Log.warn("Round {} of the tournament repeats a pairing: no pairing without a repeat was found.", round);
+            paired = players;
+        }
+        for (int i = 0; i + 1 < paired.size(); i += 2) {
+            Standing a = paired.get(i);
+            Standing b = paired.get(i + 1);
+            pending.add(a.getBlacks() <= b.getBlacks() ? new Pairing(a, b) : new Pairing(b, a));
+        }
+    }
+
+    /**
+     * Pairs the players without repeating a game, by backtracking: the highest ranked player is paired with
+     * the highest ranked player it did not play yet, and when the rest cannot be paired, with the next one.
+     * @param players the players to pair, by rank; the list is the same again when false is returned.
+     * @param paired the pairs that are found, as two players after each other.
+     * @param steps the amount of tries so far, in an array so the calls share it.
+     * @return true if every player is paired, false if it is impossible or took more than PAIRING_STEPS tries.
+     */
+    private static boolean pairUnplayed(List<Standing> players, List<Standing> paired, int[] steps) {
+        if (players.isEmpty()) {
+            return true;
+        }
+        if (++steps[0] > PAIRING_STEPS) {
+            return false;
+        }
+        Standing a = players.remove(0);
+        for (int i = 0; i < players.size(); i++) {
+            Standing b = players.get(i);
+            if (a.played(b)) {
+                continue;
+            }
+            players.remove(i);
+            paired.add(a);
+            paired.add(b);
+            if (pairUnplayed(players, paired, steps)) {
+                return true;
+            }
+            paired.remove(paired.size() - 1);
+            paired.remove(paired.size() - 1);
+            players.add(i, b);
+        }
+        players.add(0, a);
+        return false;
+    }
+
+    /**
+     * Starts the pending games whose players are both free, until maxParallel games are running.
+     * A game of a player that logged out is lost by forfeit. When nothing is pending or running,
+     * the next Swiss round is paired or the tournament is over.
+     */
+    private void schedule() {
+        Iterator<Pairing> games = pending.iterator();
+        while (games.hasNext() && running.size() < maxParallel && busy.size() < standings.size() - 1) {
+            Pairing pairing = games.next();
+            if (busy.contains(pairing.black) || busy.contains(pairing.white)) {
+                continue;
+            }
+            ClientHandler black = present(pairing.black);
+            ClientHandler white = present(pairing.white);
+            if (black == null || white == null) {
+                games.remove();
+                forfeit(pairing, black == null, white == null);
+                continue;
+            }
+            if (black.isInGame() || white.isInGame() || !server.startMatch(black, white)) {
+                continue;
+            }
+            games.remove();
+            running.put(black.getGame(), pairing);
+            busy.add(pairing.black);
+            busy.add(pairing.white);
+        }
+        if (pending.isEmpty() && running.isEmpty() && !finished) {
+            if (format == TournamentFormat.SWISS && round < rounds) {
+                pairSwissRound();
+                schedule();
+            } else {
+                finish();
+            }
+        }
+    }
+
+    /**
+     * Returns the client of a player, or withdraws the player if it is not logged in anymore.
+     * @param standing the player.
+     * @return the client, null if the player withdrew.
+     */
+    private ClientHandler present(Standing standing) {
+        ClientHandler ch = standing.isWithdrawn() ? null : server.getLogin().get(standing.getUsername());
+        if (ch == null && !standing.isWithdrawn()) {
+            Log.info("{} left the tournament, its remaining games are lost.", standing.getUsername());
+            standing.withdraw();
+        }
+        return ch;
+    }
+
+    /**
+     * Records a game that cannot be played because a player withdrew.
+     * @param pairing the game.
+     * @param blackGone whether the black player withdrew.
+     * @param whiteGone whether the white player withdrew.
+     */
+    private void forfeit(Pairing pairing, boolean blackGone, boolean whiteGone) {
+        pairing.black.record(null, true, blackGone ? 0 : 2);
+        pairing.white.record(null, false, whiteGone ? 0 : 2);
+        played++;
+    }
+
+    /**
+     * Ends the tournament.
+     */
+    private void finish() {
+        finished = true;
+        List<Standing> ranked = new ArrayList<>(standings.values());
+        ranked.sort(ranking());
+        Log.info("The tournament is over after {} games, {} won with {} points.", played,
+                ranked.get(0).getUsername(), points(ranked.get(0).getHalfPoints()));
+        changed();
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    /**
+     * Asks the writer thread to write the standings, unless it is already asked to.
+     * Many games that end at the same time therefore lead to one write.
+     */
+    private void changed() {
+        if (writer != null && !writer.isShutdown() && writeQueued.compareAndSet(false, true)) {
+            writer.execute(this::write);
+        }
+    }
+
+    /**
+     * Writes the standings to the file. Runs on the writer thread; only building the text takes
+     * the lock of the server.
+     */
+    private void write() {
+        writeQueued.set(false);
+        String text;
+        synchronized (server) {
+            text = report();
+        }
+        try {
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temporary, text.getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Log.warn("Could not write the standings to {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the standings as a table: the players by points and then Buchholz score.
+     * @return the standings.
+     */
+    public String report() {
+        List<Standing> ranked = new ArrayList<>(standings.values());
+        ranked.sort(ranking());
+        StringBuilder report = new StringBuilder();
+        report.append(format.describe()).append(" tournament, ").append(played).append(" of ").append(totalGames)
+                .append(" games played");
+        if (format == TournamentFormat.SWISS) {
+            report.append(", round ").append(round).append(" of ").append(rounds);
+        }
+        report.append(finished ? ", finished\n" : ", " + running.size() + " running\n");
+        report.append(String.format("%4s  %-24s %7s %5s %5s %5s %8s%n", "rank", "player", "points", "won", "draw",
+                "lost", "buchholz"));
+        for (int i = 0; i < ranked.size(); i++) {
+            Standing standing = ranked.get(i);
+            report.append(String.format("%4d  %-24s %7s %5d %5d %5d %8s%s%n", i + 1, standing.getUsername(),
+                    points(standing.getHalfPoints()), standing.getWins(), standing.getDraws(), standing.getLosses(),
+                    points(standing.getBuchholz()), standing.isWithdrawn() ? "  withdrawn" : ""));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Formats half points as points.
+     * @param halfPoints the points times two.
+     * @return the points, like 3 or 3.5.
+     */
+    private static String points(int halfPoints) {
+        return halfPoints % 2 == 0 ? String.valueOf(halfPoints / 2) : halfPoints / 2 + ".5";
+    }
+
+    /**
+     * Returns the order of the standings: the most points first, then the highest Buchholz score, then by username.
+     * @return the comparator.
+     */
+    private static Comparator<Standing> ranking() {
+        return Comparator.comparingInt(Standing::getHalfPoints).reversed()
+                .thenComparing(Comparator.comparingInt(Standing::getBuchholz).reversed())
+                .thenComparing(Standing::getUsername);
+    }
+}
@@ -0,0 +1,47 @@
+package network.server.tournament;
+
+/**
+ * The formats of a tournament.
+ */
+public enum TournamentFormat {
+    /**
+     * Every player plays every other player once.
+     */
+    ROUND_ROBIN,
+    /**
+     * Every player plays every other player twice, once with each color.
+     */
+    DOUBLE_ROUND_ROBIN,
+    /**
+     * A fixed amount of rounds in which players with the same score play each other, and never twice.
+     */
+    SWISS;
+
+    /**
+     * Returns the format with the given name, ignoring the case and the underscores,
+     * so both "ROUND_ROBIN" and "roundrobin" are found.
+     * @param name the name of the format.
+     * @param fallback the format to return when the name is null or unknown.
+     * @return the format with that name or the fallback.
+     */
+    public static TournamentFormat parse(String name, TournamentFormat fallback) {
+        if (name == null) {
+            return fallback;
+        }
+        String wanted = name.trim().replace("_", "").replace("-", "");
+        for (TournamentFormat format : values()) {
+            if (format.name().replace("_", "").equalsIgnoreCase(wanted)) {
+                return format;
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * Returns the name of the format as it is shown in the standings.
+     * @return the name in lower case, with spaces.
+     */
+    public String describe() {
+        return name().toLowerCase().replace('_', ' ');
+    }
+}
@@ -14,22 +14,25 @@ import java.util.*;
  */
 public class FieldValueStrategy implements StackableStrategy, Strategy {
 
-    private final ArrayList<Integer> values;
+    // The value of every field, shared with the MiniMaxStrategy and the engine of the bot fleet.
+    private static final int[] VALUES = {
+        100, -20, 10,  5,  5, 10, -20, 100,
+        -20, -50, -2, -2, -2, -2, -50, -20,
+         10, -2,  -1, -1, -1, -1, -2,  10,
+          5, -2,  -1, -1, -1, -1, -2,   5,
+          5, -2,  -1, -1, -1, -1, -2,   5,
+         10, -2,  -1, -1, -1, -1, -2,  10,
+        -20, -50, -2, -2, -2, -2, -50, -20,
+        100, -20, 10,  5,  5, 10, -20, 100
+    };
 
     /**
-     * Constructs a Field Value strategy.
+     * Returns the positional value of a field.
+     * @param field the index of the field.
+     * @return the value of the field.
      */
-    public FieldValueStrategy() {
-        this.values = new ArrayList<>(Arrays.asList(
-                100, -20, 10,  5,  5, 10, -20, 100,
-                -20, -50, -2, -2, -2, -2, -50, -20,
-                 10, -2,  -1, -1, -1, -1, -2,  10,
-                  5, -2,  -1, -1, -1, -1, -2,   5,
-                  5, -2,  -1, -1, -1, -1, -2,   5,
-                 10, -2,  -1, -1, -1, -1, -2,  10,
-                -20, -50, -2, -2, -2, -2, -50, -20,
-                100, -20, 10, 5, 5, 10, -20, 100
-                ));
+    public static int value(int field) {
+        return VALUES[field];
     }
 
     @Override
@@ -67,13 +70,13 @@ public class FieldValueStrategy implements StackableStrategy, Strategy {
         HashSet<Integer> bestMoves = new HashSet<>();
         int bestValue = Integer.MIN_VALUE;
         for (int i : board.possibleMoves(mark)) {
-            if (values.get(i) > bestValue) {
+            if (VALUES[i] > bestValue) {
                 bestMoves = new HashSet<>();
                 bestMoves.add(i);
-                bestValue = values.get(i);
+                bestValue = VALUES[i];
                 continue;
             }
-            if (values.get(i) == bestValue) {
+            if (VALUES[i] == bestValue) {
                 bestMoves.add(i);
             }
         }
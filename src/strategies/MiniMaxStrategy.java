@@ -5,9 +5,6 @@ import exceptions.InvalidFieldException;
 import game.Board;
 import game.Mark;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-
 /**
  * The minimax strategy looks at n turns in the future to determine what is the best move, assuming the opponent has perfect play.
  * More on <a href="https://en.wikipedia.org/wiki/Minimax">...</a>.
@@ -25,27 +22,33 @@ public class MiniMaxStrategy implements Strategy {
         }
     }
 
+    /**
+     * Returned by determineMove when the deadline passed before the search was complete.
+     */
+    public static final int TIMEOUT = -2;
+
+    /**
+     * Thrown inside the search when the deadline has passed. It has no stack trace, because it is thrown often.
+     */
+    private static class Timeout extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Timeout() {
+            super(null, null, false, false);
+        }
+    }
+
     private Mark myMark;
     private final int DEPTH;
-
-    private final ArrayList<Integer> values;
+    private long deadline; // System.nanoTime at which the search stops.
+    private boolean limited; // whether there is a deadline.
 
     /**
-     * The constructor of a miniMax strategy. This adds all the values to the fields on which the
-     * heuristic evaluation is calculated. It also set the depth.
+     * The constructor of a miniMax strategy. The heuristic evaluation uses the values of the fields
+     * of the FieldValueStrategy.
      * @param depth the depth to calculate to
      */
     public MiniMaxStrategy(int depth) {
-        this.values = new ArrayList<>(Arrays.asList(
-                100, -20, 10,  5,  5, 10, -20, 100,
-                -20, -50, -2, -2, -2, -2, -50, -20,
-                10, -2,  -1, -1, -1, -1, -2,  10,
-                5, -2,  -1, -1, -1, -1, -2,   5,
-                5, -2,  -1, -1, -1, -1, -2,   5,
-                10, -2,  -1, -1, -1, -1, -2,  10,
-                -20, -50, -2, -2, -2, -2, -50, -20,
-                100, -20, 10, 5, 5, 10, -20, 100
-        ));
         this.DEPTH = depth;
     }
 
@@ -56,11 +59,35 @@ public class MiniMaxStrategy implements Strategy {
 
     @Override
     public int determineMove(Board board, Mark mark) {
+        limited = false;
         myMark = mark;
         Node node = minimax(board, DEPTH, mark, Integer.MIN_VALUE, Integer.MAX_VALUE);
         return node.index;
     }
 
+    /**
+     * Calculates the move to make, but stops searching when the deadline passes.
+     * The mark must have a possible move: without one the result is not a move of the mark,
+     * so callers check hasMoves first.
+     * @param board the board of the game
+     * @param mark the mark to calculate for, which has at least one possible move
+     * @param deadline the System.nanoTime at which the search stops
+     * @return the index of the move, or TIMEOUT if the search was stopped
+     */
+    public int determineMove(Board board, Mark mark, long deadline) {
+        this.deadline = deadline;
+        limited = true;
+        myMark = mark;
+        try {
+            Node node = minimax(board, DEPTH, mark, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            return node.index;
+        } catch (Timeout e) {
+            return TIMEOUT;
+        } finally {
+            limited = false;
+        }
+    }
+
     /**
      * A recursive function which does all the estimation based on the MiniMax strategy.
      * For more information read <a href="https://en.wikipedia.org/wiki/Minimax">...</a>
@@ -72,6 +99,9 @@ public class MiniMaxStrategy implements Strategy {
      * @return a node which holds the score and index of that node or leaf.
      */
     public Node minimax(Board board, int depth, Mark mark, int alpha, int beta) {
+        if (limited && System.nanoTime() - deadline > 0) {
+            throw new Timeout();
+        }
         if (depth == 0 || board.gameOver()) {
             return new Node(eval(board));
         }
@@ -147,8 +177,8 @@ public class MiniMaxStrategy implements Strategy {
         int val = 0;
         for (int i = 0; i < 64; i++) {
             try {
-                val += (board.getField(i) == myMark) ? values.get(i) : 0;
-                val -= (board.getField(i) == myMark.other()) ? values.get(i) : 0;
+                val += (board.getField(i) == myMark) ? FieldValueStrategy.value(i) : 0;
+                val -= (board.getField(i) == myMark.other()) ? FieldValueStrategy.value(i) : 0;
             } catch (InvalidFieldException e) {
                 e.printStackTrace();
             }